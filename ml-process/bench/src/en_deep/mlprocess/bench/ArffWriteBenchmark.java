@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.utils.FileUtils;
+import java.io.File;
+import weka.core.Instances;
+
+/**
+ * Measures the writing of ARFF files by {@link FileUtils#writeArff(String, Instances)}; one operation is
+ * the writing of one instance.
+ *
+ * @author Ondrej Dusek
+ */
+public class ArffWriteBenchmark extends Benchmark {
+
+    /* DATA */
+
+    /** The data to be written */
+    private Instances data;
+    /** The output file */
+    private File outFile;
+
+    /* METHODS */
+
+    public ArffWriteBenchmark(){
+        super("FileUtils.writeArff");
+    }
+
+    @Override
+    public void setUp(DataGenerator gen) throws Exception {
+
+        initProcess(gen.getWorkDir());
+        this.data = FileUtils.readArff(gen.getArffFile().getAbsolutePath());
+        this.outFile = new File(gen.getWorkDir(), "bench-out.arff");
+    }
+
+    @Override
+    public Object run() throws Exception {
+
+        FileUtils.writeArff(this.outFile.getAbsolutePath(), this.data);
+        return this.outFile.length();
+    }
+
+    @Override
+    public int getOperations() {
+        return this.data.numInstances();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        this.outFile.delete();
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.exception.ParamException;
+import en_deep.mlprocess.utils.StringUtils;
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Vector;
+
+/**
+ * The main entry point for the benchmarks. Runs all (or the selected) {@link Benchmark}s on synthetic
+ * data and writes the results in JSON, so that the results of different runs may be compared.
+ * <p>
+ * Each benchmark is run for a few warm-up iterations (not measured) and then for the given number
+ * of measured iterations. Each iteration calls the benchmark repeatedly for (at least) the given time
+ * and computes the average time per one operation. The results contain mean, standard deviation,
+ * minimum and maximum of these values over the measured iterations, in nanoseconds per operation.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+public class BenchRunner {
+
+    /* CONSTANTS */
+
+    /** The --size option long name */
+    private static final String OPTL_SIZE = "size";
+    /** The --size option short name */
+    private static final char OPTS_SIZE = 's';
+
+    /** The --warmup option long name */
+    private static final String OPTL_WARMUP = "warmup";
+    /** The --warmup option short name */
+    private static final char OPTS_WARMUP = 'w';
+
+    /** The --iterations option long name */
+    private static final String OPTL_ITERATIONS = "iterations";
+    /** The --iterations option short name */
+    private static final char OPTS_ITERATIONS = 'i';
+
+    /** The --time option long name */
+    private static final String OPTL_TIME = "time";
+    /** The --time option short name */
+    private static final char OPTS_TIME = 't';
+
+    /** The --seed option long name */
+    private static final String OPTL_SEED = "seed";
+    /** The --seed option short name */
+    private static final char OPTS_SEED = 'r';
+
+    /** The --work_dir option long name */
+    private static final String OPTL_WORK_DIR = "work_dir";
+    /** The --work_dir option short name */
+    private static final char OPTS_WORK_DIR = 'd';
+
+    /** The --out option long name */
+    private static final String OPTL_OUT = "out";
+    /** The --out option short name */
+    private static final char OPTS_OUT = 'o';
+
+    /** The --verbosity option long name */
+    private static final String OPTL_VERBOSITY = "verbosity";
+    /** The --verbosity option short name */
+    private static final char OPTS_VERBOSITY = 'v';
+
+    /** Program name as it's passed to getopts */
+    private static final String PROGNAME = "ML-Process_bench";
+
+    /** Optstring for getopts, must correspond to the OPTS_ constants */
+    private static final String OPTSTRING = "s:w:i:t:r:d:o:v:";
+
+    /** Basic help string */
+    private static final String USAGE = "Usage:\n\tjava -cp ml-process.jar:bench en_deep.mlprocess.bench.BenchRunner\n\t"
+            + "[-s size] [-w warmup] [-i iterations] [-t ms] [-r seed] [-d work_dir] [-o out.json] [-v verbosity]\n\t"
+            + "[benchmark_name_part ...]\n\n";
+
+    /** Default data size (number of ST sentences) */
+    private static final int DEFAULT_SIZE = 200;
+    /** Default number of warm-up iterations */
+    private static final int DEFAULT_WARMUP = 3;
+    /** Default number of measured iterations */
+    private static final int DEFAULT_ITERATIONS = 5;
+    /** Default minimum duration of one iteration, in milliseconds */
+    private static final int DEFAULT_TIME = 1000;
+    /** Default random seed for the data */
+    private static final int DEFAULT_SEED = 1;
+
+    /* DATA */
+
+    /** Accumulates the results of all benchmark calls, so that they cannot be optimized away */
+    private static volatile int sink;
+
+    /** The data size */
+    private int size = DEFAULT_SIZE;
+    /** The number of warm-up iterations */
+    private int warmup = DEFAULT_WARMUP;
+    /** The number of measured iterations */
+    private int iterations = DEFAULT_ITERATIONS;
+    /** The minimum duration of one iteration, in milliseconds */
+    private int time = DEFAULT_TIME;
+    /** The random seed */
+    private int seed = DEFAULT_SEED;
+    /** The working directory for the data */
+    private String workDir;
+    /** The output file, or null for standard output */
+    private String outFile;
+    /** Only benchmarks whose names contain one of these strings are run (all, if empty) */
+    private Vector<String> filters = new Vector<String>();
+
+    /* METHODS */
+
+    /**
+     * The main program entry. Possible command arguments:
+     * <ul>
+     * <li><tt>--size|-s</tt> -- The size of the generated data, in ST sentences (ARFF files have ten times
+     * as many instances, default: 200).</li>
+     * <li><tt>--warmup|-w</tt> -- Number of warm-up iterations (default: 3).</li>
+     * <li><tt>--iterations|-i</tt> -- Number of measured iterations (default: 5).</li>
+     * <li><tt>--time|-t</tt> -- Minimum duration of one iteration in milliseconds (default: 1000).</li>
+     * <li><tt>--seed|-r</tt> -- Random seed for the generated data (default: 1).</li>
+     * <li><tt>--work_dir|-d</tt> -- Directory for the generated data (default: a new temporary directory).</li>
+     * <li><tt>--out|-o</tt> -- The output JSON file (default: standard output).</li>
+     * <li><tt>--verbosity|-v</tt> -- Verbosity setting (0-4, default: 1).</li>
+     * </ul>
+     * All other arguments are taken as parts of names of the benchmarks to be run.
+     *
+     * @param args the command-line arguments
+     */
+    public static void main(String[] args) {
+
+        BenchRunner runner = new BenchRunner();
+        int verbosity = Logger.DEFAULT_VERBOSITY;
+
+        try {
+            LongOpt[] possibleOpts = new LongOpt[8];
+            possibleOpts[0] = new LongOpt(OPTL_SIZE, LongOpt.REQUIRED_ARGUMENT, null, OPTS_SIZE);
+            possibleOpts[1] = new LongOpt(OPTL_WARMUP, LongOpt.REQUIRED_ARGUMENT, null, OPTS_WARMUP);
+            possibleOpts[2] = new LongOpt(OPTL_ITERATIONS, LongOpt.REQUIRED_ARGUMENT, null, OPTS_ITERATIONS);
+            possibleOpts[3] = new LongOpt(OPTL_TIME, LongOpt.REQUIRED_ARGUMENT, null, OPTS_TIME);
+            possibleOpts[4] = new LongOpt(OPTL_SEED, LongOpt.REQUIRED_ARGUMENT, null, OPTS_SEED);
+            possibleOpts[5] = new LongOpt(OPTL_WORK_DIR, LongOpt.REQUIRED_ARGUMENT, null, OPTS_WORK_DIR);
+            possibleOpts[6] = new LongOpt(OPTL_OUT, LongOpt.REQUIRED_ARGUMENT, null, OPTS_OUT);
+            possibleOpts[7] = new LongOpt(OPTL_VERBOSITY, LongOpt.REQUIRED_ARGUMENT, null, OPTS_VERBOSITY);
+
+            Getopt getter = new Getopt(PROGNAME, args, OPTSTRING, possibleOpts);
+            int c;
+            getter.setOpterr(false);
+
+            while ((c = getter.getopt()) != -1) {
+                switch (c) {
+                    case OPTS_SIZE:
+                        runner.size = StringUtils.getNumericArgPar(OPTL_SIZE, getter.getOptarg());
+                        break;
+                    case OPTS_WARMUP:
+                        runner.warmup = StringUtils.getNumericArgPar(OPTL_WARMUP, getter.getOptarg());
+                        break;
+                    case OPTS_ITERATIONS:
+                        runner.iterations = StringUtils.getNumericArgPar(OPTL_ITERATIONS, getter.getOptarg());
+                        break;
+                    case OPTS_TIME:
+                        runner.time = StringUtils.getNumericArgPar(OPTL_TIME, getter.getOptarg());
+                        break;
+                    case OPTS_SEED:
+                        runner.seed = StringUtils.getNumericArgPar(OPTL_SEED, getter.getOptarg());
+                        break;
+                    case OPTS_WORK_DIR:
+                        runner.workDir = getter.getOptarg();
+                        break;
+                    case OPTS_OUT:
+                        runner.outFile = getter.getOptarg();
+                        break;
+                    case OPTS_VERBOSITY:
+                        verbosity = StringUtils.getNumericArgPar(OPTL_VERBOSITY, getter.getOptarg());
+                        break;
+                    case ':':
+                        throw new ParamException(ParamException.ERR_MISSING, "" + (char) getter.getOptopt());
+                    case '?':
+                        throw new ParamException(ParamException.ERR_INVPAR, "" + (char) getter.getOptopt());
+                }
+            }
+            for (int i = getter.getOptind(); i < args.length; ++i){
+                runner.filters.add(args[i]);
+            }
+            if (runner.size <= 0 || runner.iterations <= 0 || runner.time <= 0 || runner.warmup < 0){
+                throw new ParamException(ParamException.ERR_INVPAR, "size/iterations/time/warmup");
+            }
+        }
+        catch (ParamException e){
+            Logger.getInstance().message(e.getMessage(), Logger.V_IMPORTANT);
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+
+        Logger.getInstance().setVerbosity(verbosity);
+
+        try {
+            runner.run();
+        }
+        catch (Exception e){
+            Logger.getInstance().message("Benchmark failed - " + e.getMessage(), Logger.V_IMPORTANT);
+            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            Logger.getInstance().close();
+            System.exit(1);
+        }
+        Logger.getInstance().close();
+    }
+
+    /**
+     * Returns all the available benchmarks.
+     * @return a list of all benchmarks
+     */
+    private static Benchmark [] getAllBenchmarks(){
+
+        return new Benchmark [] {
+            new StReaderBenchmark(),
+            new FeatureBenchmark(),
+            new ArffReadBenchmark(),
+            new ArffWriteBenchmark(),
+            new NominalToBinaryBenchmark(),
+            new MutualInformationBenchmark(),
+            new SimpleParseBenchmark()
+        };
+    }
+
+    /**
+     * Generates the data, runs all the selected benchmarks and writes the results.
+     * @throws Exception if a benchmark fails or the results cannot be written
+     */
+    private void run() throws Exception {
+
+        File dir;
+        if (this.workDir != null){
+            dir = new File(this.workDir);
+            if (!dir.isDirectory() && !dir.mkdirs()){
+                throw new ParamException(ParamException.ERR_DIR_NOT_FOUND);
+            }
+        }
+        else {
+            dir = File.createTempFile("ml-process-bench", "");
+            dir.delete();
+            dir.mkdirs();
+        }
+
+        DataGenerator gen = new DataGenerator(dir, this.size, this.seed);
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\n");
+        json.append("  \"size\": ").append(this.size).append(",\n");
+        json.append("  \"seed\": ").append(this.seed).append(",\n");
+        json.append("  \"warmup\": ").append(this.warmup).append(",\n");
+        json.append("  \"iterations\": ").append(this.iterations).append(",\n");
+        json.append("  \"time_ms\": ").append(this.time).append(",\n");
+        json.append("  \"java_version\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+        json.append("  \"benchmarks\": [");
+
+        boolean first = true;
+        for (Benchmark bench : getAllBenchmarks()){
+
+            if (!this.isSelected(bench)){
+                continue;
+            }
+            Logger.getInstance().message("Running benchmark " + bench.getName() + " ...", Logger.V_INFO);
+
+            double [] results = this.measure(bench, gen);
+
+            json.append(first ? "\n" : ",\n");
+            this.appendResults(json, bench, results);
+            first = false;
+        }
+        json.append("\n  ]\n}\n");
+
+        if (this.outFile != null){
+            Writer out = new OutputStreamWriter(new FileOutputStream(this.outFile), "UTF-8");
+            out.write(json.toString());
+            out.close();
+        }
+        else {
+            System.out.print(json.toString());
+            System.out.flush();
+        }
+        Logger.getInstance().message("Benchmarks finished (" + sink + ").", Logger.V_DEBUG);
+    }
+
+    /**
+     * Checks if the given benchmark is selected by the command-line filters.
+     */
+    private boolean isSelected(Benchmark bench){
+
+        if (this.filters.isEmpty()){
+            return true;
+        }
+        for (String filter : this.filters){
+            if (bench.getName().contains(filter)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets up the given benchmark and runs all its iterations.
+     *
+     * @param bench the benchmark to run
+     * @param gen the data generator
+     * @return the measured times per operation (ns) for all measured iterations
+     */
+    private double [] measure(Benchmark bench, DataGenerator gen) throws Exception {
+
+        double [] results = new double [this.iterations];
+
+        bench.setUp(gen);
+        try {
+            for (int i = 0; i < this.warmup; ++i){
+                double res = this.iteration(bench);
+                Logger.getInstance().message(bench.getName() + " warm-up " + (i + 1) + ": "
+                        + String.format(Locale.US, "%.1f", res) + " ns/op", Logger.V_DEBUG);
+            }
+            for (int i = 0; i < this.iterations; ++i){
+                results[i] = this.iteration(bench);
+                Logger.getInstance().message(bench.getName() + " iteration " + (i + 1) + ": "
+                        + String.format(Locale.US, "%.1f", results[i]) + " ns/op", Logger.V_INFO);
+            }
+        }
+        finally {
+            bench.tearDown();
+        }
+        return results;
+    }
+
+    /**
+     * Runs one iteration of the given benchmark, i.e\. calls it repeatedly for at least {@link #time}
+     * milliseconds.
+     *
+     * @param bench the benchmark
+     * @return the average time per one operation, in nanoseconds
+     */
+    private double iteration(Benchmark bench) throws Exception {
+
+        long limit = this.time * 1000000L;
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+
+        do {
+            Object res = bench.run();
+            sink ^= (res != null ? res.hashCode() : 0);
+            ops += bench.getOperations();
+            elapsed = System.nanoTime() - start;
+        }
+        while (elapsed < limit);
+
+        return elapsed / (double) ops;
+    }
+
+    /**
+     * Appends the JSON object with the statistics of the measured results for one benchmark.
+     */
+    private void appendResults(StringBuilder json, Benchmark bench, double [] results){
+
+        double mean = 0.0, min = Double.MAX_VALUE, max = 0.0, var = 0.0;
+
+        for (double res : results){
+            mean += res;
+            min = Math.min(min, res);
+            max = Math.max(max, res);
+        }
+        mean /= results.length;
+        for (double res : results){
+            var += (res - mean) * (res - mean);
+        }
+        var = results.length > 1 ? var / (results.length - 1) : 0.0;
+
+        json.append("    {\n");
+        json.append("      \"name\": ").append(quote(bench.getName())).append(",\n");
+        json.append("      \"unit\": \"ns/op\",\n");
+        json.append("      \"mean\": ").append(format(mean)).append(",\n");
+        json.append("      \"stdev\": ").append(format(Math.sqrt(var))).append(",\n");
+        json.append("      \"min\": ").append(format(min)).append(",\n");
+        json.append("      \"max\": ").append(format(max)).append(",\n");
+        json.append("      \"samples\": [");
+        for (int i = 0; i < results.length; ++i){
+            json.append(i > 0 ? ", " : "").append(format(results[i]));
+        }
+        json.append("]\n    }");
+    }
+
+    /**
+     * Formats a number for the JSON output.
+     */
+    private static String format(double val){
+        return String.format(Locale.US, "%.3f", val);
+    }
+
+    /**
+     * Quotes and escapes a string for the JSON output.
+     */
+    private static String quote(String str){
+
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); ++i){
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\'){
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20){
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
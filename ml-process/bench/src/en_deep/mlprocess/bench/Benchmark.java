@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.Process;
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A base class for all the micro-benchmarks run by the {@link BenchRunner}. Each benchmark prepares
+ * its data in {@link #setUp(DataGenerator)} and then performs one batch of the measured operation
+ * in each call to {@link #run()}. The result of the operation must be returned, so that the runner
+ * may consume it and the JIT compiler cannot eliminate the measured code.
+ *
+ * @author Ondrej Dusek
+ */
+public abstract class Benchmark {
+
+    /* DATA */
+
+    /** The name of this benchmark, as used in the results */
+    private final String name;
+
+    /* METHODS */
+
+    /**
+     * Creates a new benchmark with the given name.
+     * @param name the benchmark name
+     */
+    protected Benchmark(String name){
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this benchmark.
+     * @return the benchmark name
+     */
+    public String getName(){
+        return this.name;
+    }
+
+    /**
+     * Prepares all the data needed for the benchmark. This is not measured.
+     *
+     * @param gen the generator of synthetic input data
+     * @throws Exception if the benchmark data cannot be prepared
+     */
+    public abstract void setUp(DataGenerator gen) throws Exception;
+
+    /**
+     * Performs one batch of the measured operation, i.e\. {@link #getOperations()} single operations.
+     *
+     * @return the result of the operation (to be consumed by the runner)
+     * @throws Exception if the operation fails
+     */
+    public abstract Object run() throws Exception;
+
+    /**
+     * Returns the number of single operations performed in one call to {@link #run()}. The
+     * results are reported per one operation.
+     * @return the number of operations in a batch
+     */
+    public int getOperations(){
+        return 1;
+    }
+
+    /**
+     * Releases the resources held by the benchmark after all measurements. Does nothing by default.
+     * @throws Exception if the resources cannot be released
+     */
+    public void tearDown() throws Exception {
+    }
+
+    /**
+     * Creates the {@link Process} singleton with the default options, using the given working directory,
+     * so that the classes that need it (e.g\. to resolve paths or charsets) may be used outside of
+     * a running process.
+     *
+     * @param workDir the working directory for the process
+     * @throws Exception if the process cannot be created
+     */
+    static synchronized void initProcess(File workDir) throws Exception {
+
+        if (Process.getInstance() != null){
+            return;
+        }
+        Class<?> optsClass = Class.forName(Process.class.getName() + "$ProcessOptions");
+        Constructor<?> optsConstr = optsClass.getDeclaredConstructor();
+        optsConstr.setAccessible(true);
+        Object opts = optsConstr.newInstance();
+
+        setField(opts, "threads", 1);
+        setField(opts, "instances", 1);
+        setField(opts, "workDir", workDir.getAbsolutePath() + File.separator);
+        setField(opts, "inputFile", "bench.scen");
+
+        Constructor<Process> processConstr = Process.class.getDeclaredConstructor(optsClass);
+        processConstr.setAccessible(true);
+        processConstr.newInstance(opts);
+    }
+
+    /**
+     * Returns a non-public method of the given class, made accessible.
+     *
+     * @param cls the class that declares the method
+     * @param methodName the method name
+     * @param paramTypes the method parameter types
+     * @return the accessible method
+     * @throws NoSuchMethodException if the method is not found
+     */
+    static Method getMethod(Class<?> cls, String methodName, Class<?>... paramTypes) throws NoSuchMethodException {
+
+        Method method = cls.getDeclaredMethod(methodName, paramTypes);
+        method.setAccessible(true);
+        return method;
+    }
+
+    /**
+     * Calls a method obtained by {@link #getMethod(Class, String, Class[])}, unwrapping any exception
+     * thrown by the method itself.
+     *
+     * @param method the method to be called
+     * @param target the target object (null for static methods)
+     * @param args the method arguments
+     * @return the return value of the method
+     * @throws Exception if the method throws one
+     */
+    static Object invoke(Method method, Object target, Object... args) throws Exception {
+
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e){
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sets a (possibly non-public) field of the given object.
+     */
+    private static void setField(Object target, String fieldName, Object value) throws Exception {
+
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.utils.StringUtils;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * This generates synthetic input data for the benchmarks, so that they may be run offline and with
+ * a configurable amount of data. All the data are generated from a fixed random seed, so that the results
+ * of different runs are comparable. The files are created in the given working directory on the first
+ * request and reused by all benchmarks.
+ * <p>
+ * The generated data are:
+ * </p>
+ * <ul>
+ * <li>a CoNLL 2009 ST file with the given number of sentences, along with a language configuration
+ * file for the {@link en_deep.mlprocess.manipulation.StReader},</li>
+ * <li>an ARFF file with nominal, set-valued nominal and numeric attributes and a nominal class
+ * ({@link #INSTANCES_PER_SENTENCE} times more instances than there are sentences in the ST file).</li>
+ * </ul>
+ *
+ * @author Ondrej Dusek
+ */
+public class DataGenerator {
+
+    /* CONSTANTS */
+
+    /** Number of ARFF instances generated per one unit of size */
+    public static final int INSTANCES_PER_SENTENCE = 10;
+
+    /** Number of plain nominal attributes in the ARFF file */
+    public static final int NOMINAL_ATTRIBS = 10;
+    /** Number of set-valued nominal attributes in the ARFF file */
+    public static final int SET_ATTRIBS = 3;
+    /** Number of numeric attributes in the ARFF file */
+    public static final int NUMERIC_ATTRIBS = 5;
+    /** Prefix of the set-valued attributes' names */
+    public static final String SET_PREFIX = "set_";
+    /** The name of the class attribute */
+    public static final String CLASS_ATTR = "class";
+    /** The separator of the values in the set-valued attributes */
+    public static final String SET_SEPARATOR = " ";
+
+    /** Name of the generated ST file */
+    private static final String ST_FILE = "bench.st";
+    /** Name of the generated language configuration file */
+    private static final String LANG_CONF_FILE = "bench.conf";
+    /** Name of the generated ARFF file */
+    private static final String ARFF_FILE = "bench.arff";
+
+    /** Minimum sentence length */
+    private static final int MIN_SENT_LEN = 5;
+    /** Maximum sentence length */
+    private static final int MAX_SENT_LEN = 40;
+    /** Size of the word forms vocabulary */
+    private static final int VOCAB_SIZE = 500;
+    /** Probability that a verb is marked as a predicate */
+    private static final double PRED_PROB = 0.7;
+    /** Probability that a word is an argument of a predicate */
+    private static final double ARG_PROB = 0.15;
+    /** Probability of a missing value in the ARFF data */
+    private static final double MISSING_PROB = 0.05;
+
+    /** Part-of-speech tags used in the ST file */
+    private static final String [] POS_TAGS = { "NN", "NNS", "VB", "VBD", "VBZ", "JJ", "DT", "IN", "RB", "PRP" };
+    /** Syntactic relations used in the ST file */
+    private static final String [] DEPRELS = { "SBJ", "OBJ", "NMOD", "PMOD", "ADV" };
+    /** Semantic roles used in the ST file */
+    private static final String [] SEM_ROLES = { "A0", "A1", "A2", "A3", "AM-TMP", "AM-LOC", "AM-MNR", "AM-ADV" };
+    /** The name of the (single) additional column in the ST file */
+    private static final String ADDITIONAL_COLUMN = "extra";
+
+    /* DATA */
+
+    /** The directory where the data are created */
+    private final File workDir;
+    /** The number of sentences to be generated */
+    private final int size;
+    /** The random seed for all data */
+    private final long seed;
+
+    /** The generated ST file, or null if not yet generated */
+    private File stFile;
+    /** The generated language configuration file, or null if not yet generated */
+    private File langConfFile;
+    /** The generated ARFF file, or null if not yet generated */
+    private File arffFile;
+
+    /* METHODS */
+
+    /**
+     * Creates a new data generator.
+     *
+     * @param workDir the directory where the data will be created
+     * @param size the size of the data (number of ST sentences)
+     * @param seed the random seed
+     */
+    public DataGenerator(File workDir, int size, long seed){
+
+        this.workDir = workDir;
+        this.size = size;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the working directory for the generated data.
+     * @return the working directory
+     */
+    public File getWorkDir(){
+        return this.workDir;
+    }
+
+    /**
+     * Returns the size of the generated data (number of ST sentences).
+     * @return the data size
+     */
+    public int getSize(){
+        return this.size;
+    }
+
+    /**
+     * Returns the generated ST file, creating it on the first call.
+     *
+     * @return the ST file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized File getStFile() throws IOException {
+
+        if (this.stFile == null){
+            File file = new File(this.workDir, ST_FILE);
+            this.writeSt(file);
+            this.stFile = file;
+        }
+        return this.stFile;
+    }
+
+    /**
+     * Returns the language configuration file for the ST file, creating it on the first call.
+     *
+     * @return the language configuration file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized File getLangConfFile() throws IOException {
+
+        if (this.langConfFile == null){
+            File file = new File(this.workDir, LANG_CONF_FILE);
+            BufferedWriter out = new BufferedWriter(new FileWriter(file));
+
+            out.write("\n"); // no FEAT handling
+            out.write("NN.*\n");
+            out.write("VB.*\n");
+            out.write(StringUtils.join(SEM_ROLES, " ") + "\n");
+            out.write("AM-.*\n");
+            out.write(ADDITIONAL_COLUMN + "\n");
+            out.close();
+            this.langConfFile = file;
+        }
+        return this.langConfFile;
+    }
+
+    /**
+     * Returns the generated ARFF file, creating it on the first call.
+     *
+     * @return the ARFF file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized File getArffFile() throws IOException {
+
+        if (this.arffFile == null){
+            File file = new File(this.workDir, ARFF_FILE);
+            this.writeArff(file);
+            this.arffFile = file;
+        }
+        return this.arffFile;
+    }
+
+    /**
+     * Writes the ST file. Each sentence forms a valid dependency tree, all verbs are predicate
+     * candidates and each predicate has a few randomly selected arguments.
+     */
+    private void writeSt(File file) throws IOException {
+
+        Random rnd = new Random(this.seed);
+        BufferedWriter out = new BufferedWriter(new FileWriter(file));
+
+        for (int s = 0; s < this.size; ++s){
+
+            int len = MIN_SENT_LEN + rnd.nextInt(MAX_SENT_LEN - MIN_SENT_LEN + 1);
+            String [] pos = new String [len];
+            int [] heads = new int [len];
+            boolean [] isPred = new boolean [len];
+            int numPreds = 0;
+
+            for (int i = 0; i < len; ++i){
+                pos[i] = POS_TAGS[rnd.nextInt(POS_TAGS.length)];
+                heads[i] = i == 0 ? 0 : 1 + rnd.nextInt(i); // the head always precedes the word -> a tree
+                isPred[i] = pos[i].startsWith("VB") && rnd.nextDouble() < PRED_PROB;
+                if (isPred[i]){
+                    numPreds++;
+                }
+            }
+
+            for (int i = 0; i < len; ++i){
+
+                int word = rnd.nextInt(VOCAB_SIZE);
+                String deprel = heads[i] == 0 ? "ROOT" : DEPRELS[rnd.nextInt(DEPRELS.length)];
+                StringBuilder line = new StringBuilder();
+
+                line.append(i + 1).append('\t');
+                line.append("w").append(word).append('\t'); // FORM
+                line.append("l").append(word).append('\t'); // LEMMA
+                line.append("l").append(word).append('\t'); // PLEMMA
+                line.append(pos[i]).append('\t').append(pos[i]).append('\t'); // POS, PPOS
+                line.append("_\t_\t"); // FEAT, PFEAT
+                line.append(heads[i]).append('\t').append(heads[i]).append('\t'); // HEAD, PHEAD
+                line.append(deprel).append('\t').append(deprel).append('\t'); // DEPREL, PDEPREL
+                line.append(isPred[i] ? "Y" : "_").append('\t'); // FILLPRED
+                line.append(isPred[i] ? "l" + word + ".01" : "_").append('\t'); // PRED
+                line.append("_"); // the additional column
+
+                for (int p = 0; p < numPreds; ++p){ // APREDs
+                    line.append('\t');
+                    line.append(rnd.nextDouble() < ARG_PROB ? SEM_ROLES[rnd.nextInt(SEM_ROLES.length)] : "_");
+                }
+                out.write(line.toString());
+                out.write("\n");
+            }
+            out.write("\n");
+        }
+        out.close();
+    }
+
+    /**
+     * Writes the ARFF file with {@link #NOMINAL_ATTRIBS} nominal, {@link #SET_ATTRIBS} set-valued and
+     * {@link #NUMERIC_ATTRIBS} numeric attributes and a nominal class.
+     */
+    private void writeArff(File file) throws IOException {
+
+        Random rnd = new Random(this.seed);
+        BufferedWriter out = new BufferedWriter(new FileWriter(file));
+        String [][] values = new String [NOMINAL_ATTRIBS + SET_ATTRIBS][];
+
+        out.write("@RELATION bench\n\n");
+
+        for (int i = 0; i < NOMINAL_ATTRIBS; ++i){
+            values[i] = new String [5 + rnd.nextInt(46)];
+            for (int j = 0; j < values[i].length; ++j){
+                values[i][j] = "v" + j;
+            }
+            out.write("@ATTRIBUTE nom_" + i + " {" + StringUtils.join(values[i], ",") + "}\n");
+        }
+        for (int i = NOMINAL_ATTRIBS; i < NOMINAL_ATTRIBS + SET_ATTRIBS; ++i){
+            values[i] = new String [20 + rnd.nextInt(31)];
+            for (int j = 0; j < values[i].length; ++j){ // sets of 1-3 members from a vocabulary of 20, plus a unique one
+                String [] members = new String [2 + rnd.nextInt(3)];
+                for (int k = 0; k < members.length - 1; ++k){
+                    members[k] = "s" + rnd.nextInt(20);
+                }
+                members[members.length - 1] = "u" + j; // ensure the values are unique
+                values[i][j] = "'" + StringUtils.join(members, SET_SEPARATOR) + "'";
+            }
+            out.write("@ATTRIBUTE " + SET_PREFIX + (i - NOMINAL_ATTRIBS) + " {" + StringUtils.join(values[i], ",") + "}\n");
+        }
+        for (int i = 0; i < NUMERIC_ATTRIBS; ++i){
+            out.write("@ATTRIBUTE num_" + i + " NUMERIC\n");
+        }
+        out.write("@ATTRIBUTE " + CLASS_ATTR + " {" + StringUtils.join(SEM_ROLES, ",") + ",_}\n");
+        out.write("\n@DATA\n");
+
+        for (int n = 0; n < this.size * INSTANCES_PER_SENTENCE; ++n){
+
+            StringBuilder line = new StringBuilder();
+            // make the class depend on the first attribute, so that the mutual information is non-trivial
+            int classVal = rnd.nextInt(SEM_ROLES.length + 1);
+
+            for (int i = 0; i < values.length; ++i){
+                if (rnd.nextDouble() < MISSING_PROB){
+                    line.append('?');
+                }
+                else if (i == 0 && rnd.nextBoolean()){
+                    line.append(values[i][classVal % values[i].length]);
+                }
+                else {
+                    line.append(values[i][rnd.nextInt(values[i].length)]);
+                }
+                line.append(',');
+            }
+            for (int i = 0; i < NUMERIC_ATTRIBS; ++i){
+                if (rnd.nextDouble() < MISSING_PROB){
+                    line.append('?');
+                }
+                else {
+                    line.append(rnd.nextInt(1000) / 10.0);
+                }
+                line.append(',');
+            }
+            line.append(classVal < SEM_ROLES.length ? SEM_ROLES[classVal] : "_");
+            out.write(line.toString());
+            out.write("\n");
+        }
+        out.close();
+    }
+}
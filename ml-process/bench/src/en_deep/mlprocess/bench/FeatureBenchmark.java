@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.manipulation.StReader;
+import en_deep.mlprocess.manipulation.genfeat.Feature;
+import java.lang.reflect.Method;
+import java.util.Vector;
+
+/**
+ * Measures the generation of all the {@link Feature}s that may be used with the generated ST data
+ * (i.e\. all features that do not require additional resources). One operation is the generation
+ * of all features for one word-predicate pair. The time includes reading of the sentences, which
+ * is measured separately by the {@link StReaderBenchmark}.
+ *
+ * @author Ondrej Dusek
+ */
+public class FeatureBenchmark extends Benchmark {
+
+    /* CONSTANTS */
+
+    /** All the features in the {@link en_deep.mlprocess.manipulation.genfeat} package */
+    private static final String [] FEATURES = { "Children", "ChildrenTypes", "Clusters", "DepPath", "Head",
+            "HeadDistance", "HeadPos", "Neighbors", "PredArg", "RelPos", "Siblings", "SyntRel", "VoiceEn",
+            "WordDistance" };
+
+    /* DATA */
+
+    /** The reader used for the benchmark */
+    private StReader reader;
+    /** The ST file to be read */
+    private String stFile;
+    /** {@link StReader#setInputFile(String)}, which is not public */
+    private Method setInputFile;
+    /** {@link StReader#loadNextSentence()}, which is not public */
+    private Method loadNextSentence;
+    /** StReader.getPredicates(), which is not public */
+    private Method getPredicates;
+    /** The features that can be generated */
+    private Feature [] features;
+    /** The number of word-predicate pairs in the data */
+    private int pairs;
+
+    /* METHODS */
+
+    public FeatureBenchmark(){
+        super("Feature.generate");
+    }
+
+    @Override
+    public void setUp(DataGenerator gen) throws Exception {
+
+        this.reader = StReaderBenchmark.createReader(gen);
+        this.stFile = gen.getStFile().getAbsolutePath();
+        this.setInputFile = getMethod(StReader.class, "setInputFile", String.class);
+        this.loadNextSentence = getMethod(StReader.class, "loadNextSentence");
+        this.getPredicates = getMethod(StReader.class, "getPredicates");
+
+        // find out which features work with the generated data
+        Vector<Feature> usable = new Vector<Feature>();
+
+        invoke(this.setInputFile, this.reader, this.stFile);
+        invoke(this.loadNextSentence, this.reader);
+
+        for (String name : FEATURES){
+            Feature feat = Feature.createFeature(name, this.reader);
+            if (feat == null){
+                continue;
+            }
+            try {
+                feat.startSentence();
+                feat.generate(0, 0);
+                usable.add(feat);
+            }
+            catch (Exception e){
+                // the feature needs something the generated data do not provide, skip it
+            }
+        }
+        while ((Boolean) invoke(this.loadNextSentence, this.reader)){
+            // read the rest of the file to close it
+        }
+        this.features = usable.toArray(new Feature [usable.size()]);
+
+        // count the operations
+        this.pairs = 0;
+        invoke(this.setInputFile, this.reader, this.stFile);
+        while ((Boolean) invoke(this.loadNextSentence, this.reader)){
+            this.pairs += ((int []) invoke(this.getPredicates, this.reader)).length * this.reader.getSentenceLength();
+        }
+    }
+
+    @Override
+    public Object run() throws Exception {
+
+        int total = 0;
+
+        invoke(this.setInputFile, this.reader, this.stFile);
+        while ((Boolean) invoke(this.loadNextSentence, this.reader)){
+
+            int [] preds = (int []) invoke(this.getPredicates, this.reader);
+
+            for (Feature feat : this.features){
+                feat.startSentence();
+            }
+
+            for (int pred : preds){
+                for (int word = 0; word < this.reader.getSentenceLength(); ++word){
+                    for (Feature feat : this.features){
+                        total += feat.generate(word, pred).length();
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int getOperations() {
+        return Math.max(this.pairs, 1);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.computation.MutualInformation;
+import en_deep.mlprocess.utils.FileUtils;
+import java.lang.reflect.Method;
+import weka.core.Instances;
+
+/**
+ * Measures the computation of mutual information of all the nominal attributes with the class
+ * in the generated ARFF data, using MutualInformation.mutualInformation(Instances, int, int).
+ * One operation is the computation for one pair of attributes.
+ *
+ * @author Ondrej Dusek
+ */
+public class MutualInformationBenchmark extends Benchmark {
+
+    /* DATA */
+
+    /** The data to be used */
+    private Instances data;
+    /** The indexes of the nominal attributes (excluding the class) */
+    private int [] attribs;
+    /** The mutual information computation, which is not public */
+    private Method mutualInformation;
+
+    /* METHODS */
+
+    public MutualInformationBenchmark(){
+        super("MutualInformation.mutualInformation");
+    }
+
+    @Override
+    public void setUp(DataGenerator gen) throws Exception {
+
+        initProcess(gen.getWorkDir());
+        this.data = FileUtils.readArff(gen.getArffFile().getAbsolutePath());
+        this.data.setClassIndex(this.data.numAttributes() - 1);
+        this.mutualInformation = getMethod(MutualInformation.class, "mutualInformation",
+                Instances.class, int.class, int.class);
+
+        int num = 0;
+        this.attribs = new int [this.data.numAttributes()];
+        for (int i = 0; i < this.data.numAttributes(); ++i){
+            if (i != this.data.classIndex() && this.data.attribute(i).isNominal()){
+                this.attribs[num++] = i;
+            }
+        }
+        int [] nominal = new int [num];
+        System.arraycopy(this.attribs, 0, nominal, 0, num);
+        this.attribs = nominal;
+    }
+
+    @Override
+    public Object run() throws Exception {
+
+        double sum = 0.0;
+
+        for (int attr : this.attribs){
+            sum += (Double) invoke(this.mutualInformation, null, this.data, attr, this.data.classIndex());
+        }
+        return sum;
+    }
+
+    @Override
+    public int getOperations() {
+        return this.attribs.length;
+    }
+}
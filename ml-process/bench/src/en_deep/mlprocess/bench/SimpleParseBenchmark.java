@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.simple.Simple;
+import en_deep.mlprocess.utils.FileUtils;
+import java.lang.reflect.Method;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+/**
+ * Measures the parsing of input lines in the {@link Simple} classification interface. The lines
+ * are created from the generated ARFF data, every other one in the sparse format. One operation is
+ * the parsing of one line.
+ *
+ * @author Ondrej Dusek
+ */
+public class SimpleParseBenchmark extends Benchmark {
+
+    /* DATA */
+
+    /** The Simple interface object */
+    private Simple simple;
+    /** The line parsing method, which is not public */
+    private Method addInstance;
+    /** The data headers */
+    private Instances header;
+    /** The input lines */
+    private String [] lines;
+
+    /* METHODS */
+
+    public SimpleParseBenchmark(){
+        super("Simple.addInstance");
+    }
+
+    @Override
+    public void setUp(DataGenerator gen) throws Exception {
+
+        initProcess(gen.getWorkDir());
+
+        Instances data = FileUtils.readArff(gen.getArffFile().getAbsolutePath());
+
+        this.simple = new Simple();
+        this.addInstance = getMethod(Simple.class, "addInstance", Instances.class, String.class);
+        this.header = new Instances(data, 0);
+        this.lines = new String [data.numInstances()];
+
+        for (int i = 0; i < data.numInstances(); ++i){
+            if (i % 2 == 0){
+                this.lines[i] = data.instance(i).toString();
+            }
+            else {
+                SparseInstance sparse = new SparseInstance(data.instance(i));
+                sparse.setDataset(data);
+                this.lines[i] = sparse.toString();
+            }
+        }
+    }
+
+    @Override
+    public Object run() throws Exception {
+
+        Instances data = new Instances(this.header, this.lines.length);
+
+        for (String line : this.lines){
+            invoke(this.addInstance, this.simple, data, line);
+        }
+        return data.numInstances();
+    }
+
+    @Override
+    public int getOperations() {
+        return this.lines.length;
+    }
+}
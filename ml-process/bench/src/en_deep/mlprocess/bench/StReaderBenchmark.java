@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.bench;
+
+import en_deep.mlprocess.manipulation.StReader;
+import en_deep.mlprocess.manipulation.StToArff;
+import java.lang.reflect.Method;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Measures the reading of ST files by {@link StReader#loadNextSentence()}; one operation is
+ * the loading of one sentence.
+ *
+ * @author Ondrej Dusek
+ */
+public class StReaderBenchmark extends Benchmark {
+
+    /* DATA */
+
+    /** The reader used for the benchmark */
+    private StReader reader;
+    /** The ST file to be read */
+    private String stFile;
+    /** {@link StReader#setInputFile(String)}, which is not public */
+    private Method setInputFile;
+    /** {@link StReader#loadNextSentence()}, which is not public */
+    private Method loadNextSentence;
+    /** The number of sentences in the ST file */
+    private int sentences;
+
+    /* METHODS */
+
+    public StReaderBenchmark(){
+        super("StReader.loadNextSentence");
+    }
+
+    @Override
+    public void setUp(DataGenerator gen) throws Exception {
+
+        this.reader = createReader(gen);
+        this.stFile = gen.getStFile().getAbsolutePath();
+        this.setInputFile = getMethod(StReader.class, "setInputFile", String.class);
+        this.loadNextSentence = getMethod(StReader.class, "loadNextSentence");
+        this.sentences = gen.getSize();
+    }
+
+    @Override
+    public Object run() throws Exception {
+
+        int words = 0;
+
+        invoke(this.setInputFile, this.reader, this.stFile);
+        while ((Boolean) invoke(this.loadNextSentence, this.reader)){
+            words += this.reader.getSentenceLength();
+        }
+        return words;
+    }
+
+    @Override
+    public int getOperations() {
+        return this.sentences;
+    }
+
+    /**
+     * Creates an {@link StReader} for the generated ST data, working for a dummy {@link StToArff} task.
+     *
+     * @param gen the data generator
+     * @return a new reader, with no input file open
+     * @throws Exception if the reader cannot be created
+     */
+    static StReader createReader(DataGenerator gen) throws Exception {
+
+        initProcess(gen.getWorkDir());
+
+        Hashtable<String, String> params = new Hashtable<String, String>();
+        Vector<String> input = new Vector<String>();
+        Vector<String> output = new Vector<String>();
+
+        params.put("lang_conf", gen.getLangConfFile().getAbsolutePath());
+        input.add(gen.getStFile().getAbsolutePath());
+        output.add(gen.getWorkDir().getAbsolutePath() + "/bench-**.arff");
+
+        return new StReader(new StToArff("bench", params, input, output));
+    }
+}
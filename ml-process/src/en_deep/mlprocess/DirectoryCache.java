@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package en_deep.mlprocess;
+
+import en_deep.mlprocess.utils.StringUtils;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/**
+ * This caches directory listings and compiled file patterns for the {@link TaskExpander}, so that a directory
+ * is not listed again and again for each task expansion within one {@link Plan} operation. A cached listing
+ * is only used as long as the directory modification time has not changed.
+ * <p>
+ * The listings are kept sorted, so that the candidate files for a pattern may be found by the pattern's
+ * constant prefix using a binary search and checked for the constant suffix before the regular expression
+ * is applied.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+class DirectoryCache {
+
+    /* DATA */
+
+    /** The cached directory listings, by directory name */
+    private HashMap<String, Listing> listings = new HashMap<String, Listing>();
+    /** The compiled patterns, by the original (normalized) file patterns */
+    private HashMap<String, Pattern> patterns = new HashMap<String, Pattern>();
+
+    /* METHODS */
+
+    /**
+     * This returns the sorted list of all files in the given directory, using the cached version if the
+     * directory has not been modified since.
+     *
+     * @param dir the directory name
+     * @return a sorted list of all files in the directory, or null if the directory cannot be listed
+     */
+    synchronized String [] getFiles(String dir){
+
+        File dirFile = new File(dir);
+        long modified = dirFile.lastModified();
+        Listing listing = this.listings.get(dir);
+
+        if (listing == null || listing.modified != modified){
+
+            String [] files = dirFile.list();
+
+            if (files == null){
+                this.listings.remove(dir);
+                return null;
+            }
+            Arrays.sort(files);
+            listing = new Listing(modified, files);
+            this.listings.put(dir, listing);
+        }
+        return listing.files;
+    }
+
+    /**
+     * This finds all the files in the given directory that match the given pattern and returns the expansions
+     * of all the pattern variables for each of them (see {@link StringUtils#matchesEx(String, Pattern)}).
+     *
+     * @param dir the directory name
+     * @param filePattern the file pattern (normalized using {@link StringUtils#normalizeFilePattern(String)})
+     * @return the variable expansions for all matching files, or null if the directory cannot be listed
+     */
+    synchronized ArrayList<String []> findMatches(String dir, String filePattern){
+
+        String [] files = this.getFiles(dir);
+
+        if (files == null){
+            return null;
+        }
+
+        Pattern pattern = this.patterns.get(filePattern);
+        if (pattern == null){
+            pattern = StringUtils.compileFilePattern(filePattern);
+            this.patterns.put(filePattern, pattern);
+        }
+
+        String prefix = StringUtils.getFixedPrefix(filePattern);
+        String suffix = StringUtils.getFixedSuffix(filePattern);
+        ArrayList<String []> matches = new ArrayList<String []>();
+
+        // find the first file that may start with the prefix, go on while it still matches
+        int pos = Arrays.binarySearch(files, prefix);
+        if (pos < 0){
+            pos = -pos - 1;
+        }
+        for (; pos < files.length && files[pos].startsWith(prefix); ++pos){
+
+            if (!files[pos].endsWith(suffix) || files[pos].length() < prefix.length() + suffix.length()){
+                continue;
+            }
+            String [] match = StringUtils.matchesEx(files[pos], pattern);
+            if (match != null){
+                matches.add(match);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * One cached directory listing.
+     */
+    private static class Listing {
+
+        /** The directory modification time at the moment of listing */
+        long modified;
+        /** The sorted list of files */
+        String [] files;
+
+        Listing(long modified, String [] files){
+            this.modified = modified;
+            this.files = files;
+        }
+    }
+}
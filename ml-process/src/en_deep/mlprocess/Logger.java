@@ -27,15 +27,30 @@
 
 package en_deep.mlprocess;
 
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Aggregates all the informative / debug messages and prints only those that correspond
  * to the program verbosity setting.
- * Currently, the only output possible is the system error stream. The class is a singleton,
+ * The output goes to the system error stream and, optionally, to per-task log files. The class is a singleton,
  * its only instance is created at process startup. For verbosity setting, see the
  * description of {@link Process}.
+ * <p>
+ * The messages are not written by the calling threads -- they are put into a lock-free ring buffer, which is
+ * drained by a background thread that writes them out in batches. The verbosity is checked before anything
+ * is formatted, so the {@link #messagef(String, int, Object[])} variant or an {@link #isLoggable(int)} check
+ * should be used for messages that are expensive to build.
+ * </p>
  * @author Ondrej Dusek
  */
 public class Logger {
@@ -56,26 +71,69 @@ public class Logger {
     /** Default verbosity setting */
     public static final int DEFAULT_VERBOSITY = V_WARNING;
 
+    /** Size of the message ring buffer (must be a power of 2) */
+    private static final int RING_SIZE = 1 << 12;
+    /** The maximum number of messages written out at once */
+    private static final int BATCH_SIZE = 256;
+    /** The time the writer thread waits if there are no messages, in nanoseconds */
+    private static final long IDLE_WAIT = 10000000L;
+
     /* DATA */
 
     /** The verbosity setting, set to 1 at startup (for the startup errors to be seen). */
-    private int verbosity = 1;
+    private volatile int verbosity = 1;
 
     /** The only {@link Logger} instance */
     private static final Logger instance = new Logger();
 
-    /** This serves for formating dates */
+    /** This serves for formating dates (used only by the thread that writes out the messages) */
     private SimpleDateFormat dateFormatter;
 
+    /** The message ring buffer */
+    private final AtomicReferenceArray<Record> ring = new AtomicReferenceArray<Record>(RING_SIZE);
+    /** Sequence number of the next message to be put into the ring buffer */
+    private final AtomicLong writeSeq = new AtomicLong();
+    /** Sequence number of the next message to be written out (changed only when holding {@link #drainLock}) */
+    private volatile long readSeq;
+    /** Lock for the thread that writes out the messages (only one may do it at a time) */
+    private final Object drainLock = new Object();
+    /** Has the logger been closed (the messages are then written out directly) ? */
+    private volatile boolean closed;
+
+    /** The task log file for the current thread, if any */
+    private final InheritableThreadLocal<String> taskLog = new InheritableThreadLocal<String>();
+    /** The open task log files (used only by the thread that writes out the messages) */
+    private final Hashtable<String, Writer> taskLogWriters = new Hashtable<String, Writer>();
+
     /* METHODS */
 
     /**
      * Creates a new logger - this is called once at process startup. All classes should
      * access the {@link Logger} instance via the {@link getInstance} method. Verbosity is
-     * set to 0 at startup.
+     * set to 0 at startup. This starts the background thread that writes out the messages
+     * and makes sure all messages are written out on exit.
      */
     private Logger(){
+
         this.dateFormatter = new SimpleDateFormat("MMMM dd, yyyy HH:mm:ss z --- ");
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                while (!closed){
+                    if (drain() == 0){
+                        LockSupport.parkNanos(IDLE_WAIT);
+                    }
+                }
+            }
+        }, "Logger");
+        writer.setDaemon(true);
+        writer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                close();
+            }
+        }));
     }
 
     /**
@@ -95,17 +153,41 @@ public class Logger {
         return Logger.instance;
     }
 
+    /**
+     * Returns true if messages of the given importance are output with the current verbosity setting.
+     *
+     * @param importance the importance of the message (1 - important ... 4 - debug)
+     * @return true if the messages will be output
+     */
+    public boolean isLoggable(int importance){
+        return importance <= this.verbosity;
+    }
+
     /**
      * Outputs a message, if the current verbosity setting meets the message importance.
      *
      * @param importance the importance of the message (1 - important ... 4 - debug)
      * @param text the actual text of the message
      */
-    public synchronized void message(String text, int importance){
+    public void message(String text, int importance){
+
+        if (importance <= this.verbosity){
+            this.enqueue(new Record(text, this.taskLog.get()));
+        }
+    }
+
+    /**
+     * Outputs a message, if the current verbosity setting meets the message importance. The message is
+     * only formatted (see {@link String#format(String, Object[])}) if it is to be output.
+     *
+     * @param format the message format
+     * @param importance the importance of the message (1 - important ... 4 - debug)
+     * @param args the message arguments
+     */
+    public void messagef(String format, int importance, Object... args){
 
         if (importance <= this.verbosity){
-            System.err.print(this.dateFormatter.format(new Date()));
-            System.err.println(text);
+            this.enqueue(new Record(String.format(format, args), this.taskLog.get()));
         }
     }
 
@@ -115,17 +197,17 @@ public class Logger {
      * @param ex the exception
      * @param importance the given importance
      */
-    public synchronized void logStackTrace(Throwable ex, int importance) {
+    public void logStackTrace(Throwable ex, int importance) {
 
         if (importance <= this.verbosity){
 
-            System.err.println(this.dateFormatter.format(new Date()) + ex.getClass().getName() + ":");
-
+            StringBuilder sb = new StringBuilder(ex.getClass().getName()).append(":");
             StackTraceElement [] stackTrace = ex.getStackTrace();
 
             for (int i = 0; i < stackTrace.length; ++i){
-                System.err.println("\tat " + stackTrace[i].toString());
+                sb.append("\n\tat ").append(stackTrace[i].toString());
             }
+            this.enqueue(new Record(sb.toString(), this.taskLog.get()));
         }
     }
 
@@ -136,4 +218,172 @@ public class Logger {
     public int getVerbosity() {
         return this.verbosity;
     }
+
+    /**
+     * Starts copying all messages of the current thread (and the threads it creates) to the given
+     * task log file, which will be appended to.
+     *
+     * @param fileName the task log file name
+     */
+    public void startTaskLog(String fileName){
+        this.taskLog.set(fileName);
+    }
+
+    /**
+     * Stops copying the messages of the current thread to its task log file and closes the file.
+     */
+    public void endTaskLog(){
+
+        String fileName = this.taskLog.get();
+
+        if (fileName != null){
+            this.taskLog.remove();
+            this.enqueue(new Record(null, fileName));
+        }
+    }
+
+    /**
+     * Writes out all pending messages and closes the logger; any further messages are written out directly.
+     */
+    public void close(){
+
+        this.closed = true;
+        this.drain();
+
+        synchronized (this.drainLock){
+            for (Writer w : this.taskLogWriters.values()){
+                try {
+                    w.close();
+                }
+                catch (IOException e){
+                    // nothing to do here
+                }
+            }
+            this.taskLogWriters.clear();
+        }
+    }
+
+    /**
+     * Puts a message into the ring buffer. If the buffer is full, this waits until there is free space.
+     * @param rec the message to be output
+     */
+    private void enqueue(Record rec){
+
+        long seq = this.writeSeq.getAndIncrement();
+
+        while (seq - this.readSeq >= RING_SIZE){
+            if (this.closed){ // nobody else will make space
+                this.drain();
+            }
+            Thread.yield();
+        }
+        this.ring.set((int) (seq & (RING_SIZE - 1)), rec);
+
+        if (this.closed){
+            this.drain();
+        }
+    }
+
+    /**
+     * Writes out all the messages that are in the ring buffer, in batches.
+     * @return the number of messages written
+     */
+    private int drain(){
+
+        synchronized (this.drainLock){
+
+            int total = 0, batch;
+            StringBuilder out = new StringBuilder();
+
+            do {
+                batch = 0;
+                Record rec;
+
+                while (batch < BATCH_SIZE && (rec = this.ring.get((int) (this.readSeq & (RING_SIZE - 1)))) != null){
+
+                    this.ring.set((int) (this.readSeq & (RING_SIZE - 1)), null);
+                    this.readSeq++;
+                    batch++;
+                    this.write(rec, out);
+                }
+                if (out.length() > 0){
+                    System.err.print(out);
+                    System.err.flush();
+                    out.setLength(0);
+                }
+                total += batch;
+            }
+            while (batch == BATCH_SIZE);
+
+            for (Writer w : this.taskLogWriters.values()){
+                try {
+                    w.flush();
+                }
+                catch (IOException e){
+                    // nothing to do here
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Formats one message for the error stream output and writes it to its task log, if needed.
+     * @param rec the message
+     * @param out the error stream output buffer
+     */
+    private void write(Record rec, StringBuilder out){
+
+        // task log end
+        if (rec.text == null){
+            Writer w = this.taskLogWriters.remove(rec.taskLog);
+            try {
+                if (w != null){
+                    w.close();
+                }
+            }
+            catch (IOException e){
+                out.append("Cannot close task log ").append(rec.taskLog).append(": ").append(e.getMessage()).append("\n");
+            }
+            return;
+        }
+
+        String line = this.dateFormatter.format(new Date(rec.time)) + rec.text + "\n";
+        out.append(line);
+
+        if (rec.taskLog != null){
+            try {
+                Writer w = this.taskLogWriters.get(rec.taskLog);
+                if (w == null){
+                    w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rec.taskLog, true),
+                            Process.getInstance().getCharset()));
+                    this.taskLogWriters.put(rec.taskLog, w);
+                }
+                w.write(line);
+            }
+            catch (IOException e){
+                out.append("Cannot write task log ").append(rec.taskLog).append(": ").append(e.getMessage()).append("\n");
+            }
+        }
+    }
+
+    /**
+     * One message waiting in the ring buffer.
+     */
+    private static class Record {
+
+        /** The message creation time */
+        final long time;
+        /** The message text (null marks the end of a task log) */
+        final String text;
+        /** The task log this message should be copied to, or null */
+        final String taskLog;
+
+        /** Creates a new message */
+        Record(String text, String taskLog){
+            this.time = System.currentTimeMillis();
+            this.text = text;
+            this.taskLog = taskLog;
+        }
+    }
 }
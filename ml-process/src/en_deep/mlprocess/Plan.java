@@ -32,8 +32,10 @@ import en_deep.mlprocess.exception.DataException;
 import en_deep.mlprocess.exception.PlanException;
 import en_deep.mlprocess.exception.SchedulingException;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -69,9 +71,26 @@ public class Plan {
     public static final String RESET_FILE_SUFFIX =  ".reset";
     /** File extension for the status file */
     public static final String STATUS_FILE_SUFFIX = ".status";
+    /** File extension for the directory with private outputs of task runs */
+    public static final String ATTEMPT_DIR_SUFFIX = ".attempts";
+    /** File extension for the file with resource usage of all task runs */
+    public static final String METRICS_FILE_SUFFIX = ".metrics";
+    /** File extension for the snapshot of the initial plan created from the scenario file */
+    public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
 
     /** Number of tasks to retrieve at once @todo make RETRIEVE_TASKS configurable */
     static final int DEFAULT_RETRIEVE_COUNT = 10;
+    /** Default time in seconds for which a {@link Worker} owns its tasks without renewing them */
+    static final int DEFAULT_LEASE_TIME = 600;
+    /** Default number of lease expirations before a task is marked as {@link TaskStatus#FAILED} */
+    static final int DEFAULT_MAX_RETRIES = 2;
+
+    /** Minimum number of finished tasks of an algorithm before its tasks may be run speculatively */
+    private static final int SPECULATION_MIN_SAMPLES = 3;
+    /** How many times longer than the median must a task run to be run speculatively */
+    private static final double SPECULATION_FACTOR = 3.0;
+    /** Minimum time in msecs a task must run longer than the median to be run speculatively */
+    private static final long SPECULATION_MIN_TIME = 60000;
 
     /* DATA */
 
@@ -85,6 +104,19 @@ public class Plan {
     private File statusFile;
     /** Number of tasks that should be retrieved at the same time */
     private int retrieveCount;
+    /** Time in msecs for which a {@link Worker} owns its tasks without renewing them */
+    private long leaseTime;
+    /** Number of lease expirations allowed before a task is marked as failed */
+    private int maxRetries;
+    /** Should idle workers run speculative duplicates of slow tasks ? */
+    private boolean speculative;
+    /** Should chains of row-wise tasks be fused into one task ? */
+    private boolean fuseTasks;
+    /** Directory for private outputs of task runs */
+    private File attemptDir;
+
+    /** Running times of finished tasks, by algorithm (stored in the plan file, valid after {@link #readPlan}) */
+    private Hashtable<String, RuntimeStats> runtimes;
 
     /** Were there any tasks with a {@link TaskStatus#FAILED} in the plan file upon last use ? */
     private boolean failedTasks;
@@ -94,6 +126,9 @@ public class Plan {
     /** The only instance of {@link Plan}. */
     private static Plan instance = null;
 
+    /** Directory listings cache for task expansions, valid within one plan operation only */
+    private DirectoryCache dirCache;
+
 
     /* METHODS */
 
@@ -107,6 +142,11 @@ public class Plan {
         this.resetFile = new File(Process.getInstance().getInputFile() + RESET_FILE_SUFFIX);
         this.statusFile = new File(Process.getInstance().getInputFile() + STATUS_FILE_SUFFIX);
         this.retrieveCount = Process.getInstance().getRetrieveCount();
+        this.leaseTime = Process.getInstance().getLeaseTime();
+        this.maxRetries = Process.getInstance().getMaxRetries();
+        this.speculative = Process.getInstance().isSpeculative();
+        this.fuseTasks = Process.getInstance().isFusing();
+        this.attemptDir = new File(Process.getInstance().getInputFile() + ATTEMPT_DIR_SUFFIX);
 
         // create the needed files if necessary
         try {
@@ -144,13 +184,18 @@ public class Plan {
      * </p><p>
      * Returns null in case of nothing else to do. If an error occurs, it is logged with
      * the highest importance setting and an exception is thrown.
+     * </p><p>
+     * The retrieved tasks are leased to the given owner for {@link #leaseTime}; the owner must keep renewing
+     * the lease using {@link #renewLeases(List, String)}, otherwise the tasks are returned to the plan.
      * <p>
      *
+     * @param owner the identification of the {@link Worker} that retrieves the tasks
      * @return the next pending task to be done, or an empty vector if there are no tasks to be done
      * @throws PlanException if an exception occurs when working with the scenario or plan file
      * @throws SchedulingException if there are no tasks to process and we have to wait for them
      */
-    public synchronized Vector<TaskDescription> getNextPendingTasks() throws PlanException, SchedulingException {
+    public synchronized Vector<TaskDescription> getNextPendingTasks(String owner)
+            throws PlanException, SchedulingException {
 
         FileLock planLock = null;
         FileLock resetLock = null;
@@ -165,6 +210,7 @@ public class Plan {
             
             planFileIO = new RandomAccessFile(this.planFile, "rw");
             planLock = planFileIO.getChannel().lock();
+            this.dirCache = new DirectoryCache();
 
             if (planFileIO.length() == 0){ // the planFile file - the planFile has not yet been created
                 this.createPlan(planFileIO);
@@ -176,7 +222,7 @@ public class Plan {
                 this.resetTasks(planFileIO, resetFileIO);
             }
            
-            nextPending = this.getNextPendingTasks(planFileIO);
+            nextPending = this.getNextPendingTasks(planFileIO, owner);
         }
         catch(IOException ex){
             Logger.getInstance().message("I/O error - " + ex.getMessage(), Logger.V_IMPORTANT);
@@ -201,6 +247,7 @@ public class Plan {
 
         // always release the lock on the plan and reset file
         finally {
+            this.dirCache = null;
             // close the to-do file and reset file
             try {
                 planFileIO.close();
@@ -244,6 +291,10 @@ public class Plan {
      * Tries to read the process description file and create the to-do file according to
      * it, using DAG and parallelizations (up to the specified number of {@Worker}s for all
      * instances of the {@link Process}.
+     * <p>
+     * If there is a valid {@link PlanSnapshot} for the current scenario file, its data are just copied to the
+     * plan and status files, without parsing the scenario. Otherwise, the snapshot is created.
+     * </p>
      *
      * TODO possibly check conformity of Task classes upon plan creation ?
      *
@@ -253,6 +304,39 @@ public class Plan {
      */
     private synchronized void createPlan(RandomAccessFile planFileIO) throws IOException, DataException {
 
+        PlanSnapshot snapshot = new PlanSnapshot(Process.getInstance().getInputFile(), this.fuseTasks);
+
+        this.runtimes = new Hashtable<String, RuntimeStats>();
+
+        if (snapshot.load()){
+            Logger.getInstance().message("Using the plan snapshot ...", Logger.V_DEBUG);
+            // the initial plan never contains any failed tasks
+            this.failedTasks = false;
+            this.writePlanData(snapshot.getPlanData(), snapshot.getStatusData(), planFileIO);
+        }
+        else {
+            Vector<TaskDescription> plan = this.parseScenario();
+            byte [] statusData = this.getStatusData(plan);
+            byte [] planData = this.getPlanData(plan, this.runtimes);
+
+            // write the plan into the plan file and keep it for the next time
+            this.writePlanData(planData, statusData, planFileIO);
+            snapshot.store(planData, statusData);
+        }
+
+        Logger.getInstance().message("Plan written ...", Logger.V_DEBUG);
+    }
+
+    /**
+     * This parses the scenario file and creates the initial plan from it (topologically sorted and
+     * with fused tasks, if applicable).
+     *
+     * @return the initial plan
+     * @throws IOException if the scenario file cannot be read
+     * @throws DataException if there are some illogical event dependencies
+     */
+    private synchronized Vector<TaskDescription> parseScenario() throws IOException, DataException {
+
         ScenarioParser parser = new ScenarioParser(Process.getInstance().getInputFile());
         Vector<TaskDescription> plan;
 
@@ -260,15 +344,43 @@ public class Plan {
 
         // parse the input file
         parser.parse();
-        
+
         // topologically sort the plan
         plan = parser.getTasks();
         this.sortPlan(plan);
+        this.fuseTasks(plan);
 
-        // write the plan into the plan file
-        this.writePlan(plan, planFileIO);
+        return plan;
+    }
 
-        Logger.getInstance().message("Plan written ...", Logger.V_DEBUG);
+    /**
+     * This returns the initial plan for the current scenario file, using the {@link PlanSnapshot} if it
+     * is valid, or parsing the scenario file and creating the snapshot otherwise. A snapshot that cannot be
+     * deserialized is deleted and created again.
+     *
+     * @return the initial plan
+     * @throws IOException if the scenario file cannot be read
+     * @throws DataException if there are some illogical event dependencies
+     */
+    private synchronized Vector<TaskDescription> getInitialPlan() throws IOException, DataException {
+
+        PlanSnapshot snapshot = new PlanSnapshot(Process.getInstance().getInputFile(), this.fuseTasks);
+
+        if (snapshot.load()){
+            Logger.getInstance().message("Using the plan snapshot ...", Logger.V_DEBUG);
+            try {
+                return snapshot.getPlan();
+            }
+            catch (Exception e){ // incompatible class versions etc.
+                Logger.getInstance().message("Cannot read the plan snapshot - " + e.getMessage(), Logger.V_WARNING);
+                snapshot.delete();
+            }
+        }
+
+        Vector<TaskDescription> plan = this.parseScenario();
+
+        snapshot.store(this.getPlanData(plan, null), this.getStatusData(plan));
+        return plan;
     }
 
 
@@ -276,18 +388,28 @@ public class Plan {
      * Reads the to-do file structure and retrieves at most {@link #RETRIEVE_TASKS} next pending {@link Task}s,
      * updating their progress status to {@link TaskStatus#IN_PROGRESS} in the plan file.
      *
+     * Tasks whose leases have expired are returned to the plan first (see {@link #recoverExpiredTasks(Vector)}).
+     *
      * @param planFileIO the to-do file, locked and opened for writing
+     * @param owner the identification of the {@link Worker} that retrieves the tasks
      * @return next pending tasks from the .todo file, or an empty vector
      * @throws IOException if there are I/O problems with the plan file access
      * @throws ClassNotFoundException if there are problems with the plan file contents
      * @throws TaskException if there are problems with the task classes' descriptions
      * @throws SchedulingException if there are tasks waiting or in progress, but no pending ones
      */
-    private synchronized Vector<TaskDescription> getNextPendingTasks(RandomAccessFile planFileIO)
+    private synchronized Vector<TaskDescription> getNextPendingTasks(RandomAccessFile planFileIO, String owner)
             throws IOException, ClassNotFoundException, TaskException, PlanException, SchedulingException {
 
         Vector<TaskDescription> plan = this.readPlan(planFileIO);
         Vector<TaskDescription> retrieved = new Vector<TaskDescription>(this.retrieveCount);
+        long now = System.currentTimeMillis();
+        long expiry = now + this.leaseTime;
+
+        if (this.recoverExpiredTasks(plan)){
+            // the recovered tasks must be stored even if we have to wait now
+            this.writePlan(plan, planFileIO);
+        }
 
         Logger.getInstance().message("Retrieving tasks ...", Logger.V_DEBUG);
 
@@ -297,18 +419,30 @@ public class Plan {
                 if (nextTask == null){
                     break;
                 }
+                nextTask.acquireLease(owner, expiry);
+                this.assignAttemptOutput(nextTask);
                 retrieved.add(nextTask);
             }
             catch (SchedulingException e) { // if we have to wait, return with less tasks than RETRIEVE_TASKS
                 if (i == 0){
-                    throw e;
+                    // nothing is pending -- try to help with a straggler task instead of waiting
+                    TaskDescription straggler = this.speculative ? this.findStraggler(plan, owner, now) : null;
+
+                    if (straggler == null){
+                        throw e;
+                    }
+                    Logger.getInstance().message("Running task " + straggler.getId() + " held by "
+                            + straggler.getOwner() + " speculatively.", Logger.V_INFO);
+                    straggler.startSpeculation(owner, now, expiry);
+                    this.assignAttemptOutput(straggler);
+                    retrieved.add(straggler);
                 }
                 break;
             }
         }
 
-        Logger.getInstance().message("Got " + retrieved.size() + ". Writing back the status of all "
-                + plan.size() + "...", Logger.V_DEBUG);        
+        Logger.getInstance().messagef("Got %d. Writing back the status of all %d...", Logger.V_DEBUG,
+                retrieved.size(), plan.size());
         // update the plan file
         this.writePlan(plan, planFileIO);
 
@@ -316,6 +450,201 @@ public class Plan {
     }
 
 
+    /**
+     * This returns all {@link TaskStatus#IN_PROGRESS} tasks whose leases have expired (i.e. their
+     * {@link Worker} has probably crashed) back to {@link TaskStatus#PENDING}. If a task's lease has
+     * expired more than {@link #maxRetries} times, it is marked as {@link TaskStatus#FAILED} instead.
+     *
+     * @param plan the opened and active process plan
+     * @return true if any tasks have been recovered
+     */
+    private synchronized boolean recoverExpiredTasks(Vector<TaskDescription> plan){
+
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+
+        for (TaskDescription task : plan){
+
+            if (task.isSpeculationExpired(now)){
+                task.endSpeculation();
+                changed = true;
+            }
+            if (!task.isLeaseExpired(now)){
+                continue;
+            }
+            String owner = task.getOwner();
+            changed = true;
+
+            if (task.getSpeculator() != null){ // the speculative duplicate becomes the only run
+                Logger.getInstance().message("Lease of task " + task.getId() + " held by " + owner
+                        + " expired, leaving it to " + task.getSpeculator() + ".", Logger.V_WARNING);
+                task.promoteSpeculator();
+                continue;
+            }
+
+            if (task.releaseExpiredLease() > this.maxRetries){
+                Logger.getInstance().message("Lease of task " + task.getId() + " held by " + owner
+                        + " expired too many times, marking it as failed.", Logger.V_IMPORTANT);
+                task.setStatus(TaskStatus.FAILED);
+            }
+            else {
+                Logger.getInstance().message("Lease of task " + task.getId() + " held by " + owner
+                        + " expired, returning it to the plan.", Logger.V_WARNING);
+                task.setStatus(TaskStatus.PENDING);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * This finds the running task that is the most suitable for speculative execution, i.e. the one which
+     * has been running much longer than the median running time of other tasks of the same algorithm.
+     * Only tasks with concrete outputs that are not already being run speculatively and that are owned by
+     * another {@link Worker} are considered.
+     *
+     * @param plan the opened and active process plan
+     * @param owner the identification of the {@link Worker} that would run the duplicate
+     * @param now the current time (in msecs since the epoch)
+     * @return the straggler task, or null if there is none
+     */
+    private synchronized TaskDescription findStraggler(Vector<TaskDescription> plan, String owner, long now){
+
+        TaskDescription best = null;
+        double bestRatio = SPECULATION_FACTOR;
+
+        for (TaskDescription task : plan){
+
+            if (task.getStatus() != TaskStatus.IN_PROGRESS || task.getOwner() == null
+                    || task.getOwner().equals(owner) || task.getSpeculator() != null || task.hasOutputPatterns()){
+                continue;
+            }
+            RuntimeStats stats = this.runtimes.get(task.getAlgorithm());
+            if (stats == null || stats.size() < SPECULATION_MIN_SAMPLES){
+                continue;
+            }
+            long median = stats.median();
+            long elapsed = task.getRunningTime(task.getOwner(), now);
+
+            if (elapsed - median < SPECULATION_MIN_TIME){
+                continue;
+            }
+            double ratio = elapsed / (double) Math.max(median, 1);
+            if (ratio > bestRatio){
+                best = task;
+                bestRatio = ratio;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * If speculative execution is turned on and the task has concrete outputs, this assigns private
+     * output locations to the current run of the task, so that several runs may not overwrite each
+     * other's outputs. The outputs are moved to their place by {@link #commitAttemptOutput(TaskDescription)}.
+     *
+     * @param task the task that is about to be run
+     */
+    private synchronized void assignAttemptOutput(TaskDescription task){
+
+        if (!this.speculative || task.hasOutputPatterns()){
+            return;
+        }
+
+        File dir = new File(this.attemptDir, task.getId().replaceAll("[^A-Za-z0-9_.-]", "_")
+                + "-" + task.newAttempt());
+        Vector<String> attemptOutput = new Vector<String>(task.getOutput().size());
+
+        dir.mkdirs();
+        for (int i = 0; i < task.getOutput().size(); ++i){
+            // keep the file name, so that the extensions remain the same
+            attemptOutput.add(new File(dir, i + "-" + new File(task.getOutput(i)).getName()).getPath());
+        }
+        task.setAttemptOutput(attemptOutput);
+    }
+
+    /**
+     * Moves the private outputs of a finished task run to their place. Outputs that have not been
+     * created by the task are skipped.
+     *
+     * @param task the finished task run
+     * @return true if all the outputs have been moved successfully
+     */
+    private synchronized boolean commitAttemptOutput(TaskDescription task){
+
+        Vector<String> attemptOutput = task.getAttemptOutput();
+        boolean ok = true;
+
+        if (attemptOutput == null){
+            return true;
+        }
+        for (int i = 0; i < attemptOutput.size(); ++i){
+
+            File source = new File(attemptOutput.get(i));
+            File target = new File(task.getOutput(i));
+
+            if (!source.exists()){
+                continue;
+            }
+            // renaming replaces the target atomically on POSIX systems and within one file system
+            if (!source.renameTo(target) && !this.replaceByCopy(source, target)){
+                Logger.getInstance().message("Cannot move " + source + " to " + target + ".", Logger.V_IMPORTANT);
+                ok = false;
+            }
+        }
+        this.discardAttemptOutput(task);
+        return ok;
+    }
+
+    /**
+     * Replaces the target file with a copy of the source file, if they cannot be simply renamed (e.g. since
+     * they are on different file systems). The source is first copied next to the target and then renamed,
+     * so that the original target is never removed before its replacement is complete.
+     *
+     * @param source the source file
+     * @param target the target file to be replaced
+     * @return true if the target has been replaced
+     */
+    private boolean replaceByCopy(File source, File target){
+
+        File temp = new File(target.getPath() + ".commit");
+
+        try {
+            FileUtils.copyFile(source, temp);
+        }
+        catch (IOException ex){
+            Logger.getInstance().message("Cannot copy " + source + " to " + temp + " - " + ex.getMessage(),
+                    Logger.V_WARNING);
+            temp.delete();
+            return false;
+        }
+        // the target may only be deleted (if renaming cannot replace it) when the complete copy exists
+        if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target))){
+            temp.delete();
+            return false;
+        }
+        source.delete();
+        return true;
+    }
+
+    /**
+     * Deletes all private outputs of a task run that are not used (since the run failed or another
+     * run has finished first).
+     *
+     * @param task the task run whose outputs should be discarded
+     */
+    private synchronized void discardAttemptOutput(TaskDescription task){
+
+        Vector<String> attemptOutput = task.getAttemptOutput();
+
+        if (attemptOutput == null){
+            return;
+        }
+        for (String file : attemptOutput){
+            new File(file).delete();
+        }
+        new File(attemptOutput.get(0)).getParentFile().delete();
+    }
+
     /**
      * This finds the next pending task and returns it, performing the necessary task expansions along the way.
      * @param plan the opened and active process plan
@@ -358,7 +687,7 @@ public class Plan {
             return null;
         }
         // expand the task (and possibly dependent tasks) accoring to "*"'s in input / output file names
-        TaskExpander te = new TaskExpander(pendingDesc);
+        TaskExpander te = new TaskExpander(pendingDesc, this.dirCache);
         te.expand();
         this.topologicalAdd(plan, pos, te.getTasksToAdd()); // these well may be empty
         plan.removeAll(te.getTasksToRemove());
@@ -510,7 +839,7 @@ public class Plan {
                 if (oldTasks.size() > 1 || !oldTasks.get(0).getId().equals(task.getId())
                         || (task.hasInputPatterns(true) && !oldTasks.get(0).hasInputPatterns(true))) {
 
-                    TaskExpander expander = new TaskExpander(task);
+                    TaskExpander expander = new TaskExpander(task, this.dirCache);
                     Collection<TaskDescription> newTasks;
 
                     expander.expand();
@@ -523,6 +852,7 @@ public class Plan {
                         int index;
                         if ((index = oldTasks.indexOf(newTask)) != -1) {
                             newTask.setStatus(oldTasks.get(index).getStatus());
+                            newTask.copyLease(oldTasks.get(index));
                         }
                     }
                     i += newTasks.size();
@@ -531,6 +861,7 @@ public class Plan {
                     // update an unexpanded task status, if it's identical to the one in the old plan
                     if (oldTasks.get(0).equals(task)) {
                         task.setStatus(oldTasks.get(0).getStatus());
+                        task.copyLease(oldTasks.get(0));
                     }
                     ++i;
                 }
@@ -544,8 +875,8 @@ public class Plan {
 
 
     /**
-     * Writes the current plan status into the plan file, using serialization. Sets the {@link #failedTasks}
-     * variable.
+     * Writes the current plan status into the plan file, using serialization, together with the
+     * {@link #runtimes} statistics. Sets the {@link #failedTasks} variable.
      * @param plan the current plan status
      * @param planFile the file to write to (an open output stream)
      */
@@ -553,30 +884,67 @@ public class Plan {
 
         this.failedTasks = false;
 
-        FileOutputStream statusOs = new FileOutputStream(this.statusFile, false);
-
         for (TaskDescription td : plan){
-            statusOs.write(td.toString().getBytes());
             if (td.getStatus() == TaskStatus.FAILED){
                 this.failedTasks = true;
             }
         }
-        statusOs.close();
+        this.writePlanData(this.getPlanData(plan, this.runtimes), this.getStatusData(plan), planFile);
+    }
+
+    /**
+     * Creates the status file contents for the given plan.
+     * @param plan the current plan status
+     * @return the status file contents
+     */
+    private synchronized byte [] getStatusData(Vector<TaskDescription> plan){
+
+        ByteArrayOutputStream statusOs = new ByteArrayOutputStream();
+
+        for (TaskDescription td : plan){
+            byte [] status = td.toString().getBytes();
+            statusOs.write(status, 0, status.length);
+        }
+        return statusOs.toByteArray();
+    }
+
+    /**
+     * Serializes the given plan, together with the given running time statistics, in the plan file format.
+     * @param plan the current plan status
+     * @param runtimes the running time statistics to be stored with the plan (may be null)
+     * @return the serialized plan
+     */
+    private synchronized byte [] getPlanData(Vector<TaskDescription> plan, Hashtable<String, RuntimeStats> runtimes)
+            throws IOException {
 
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream planOs = new ObjectOutputStream(bos);
-        byte [] planData;
 
         planOs.writeObject(plan);
+        planOs.writeObject(runtimes != null ? runtimes : new Hashtable<String, RuntimeStats>());
         planOs.flush();
         planOs.close();
 
-        planData = bos.toByteArray();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Writes the given serialized plan into the plan file and the given status into the status file.
+     * @param planData the serialized plan (see {@link #getPlanData(Vector)})
+     * @param statusData the status file contents (see {@link #getStatusData(Vector)})
+     * @param planFile the file to write to (an open output stream)
+     */
+    private synchronized void writePlanData(byte [] planData, byte [] statusData, RandomAccessFile planFile)
+            throws IOException {
+
+        FileOutputStream statusOs = new FileOutputStream(this.statusFile, false);
+
+        statusOs.write(statusData);
+        statusOs.close();
 
         planFile.seek(0);
         planFile.setLength(planData.length);
         planFile.write(planData);
-
     }
 
     
@@ -628,8 +996,26 @@ public class Plan {
         plan.addAll(sorted);
     }
 
+    /**
+     * If turned on, this replaces chains of row-wise tasks in the (sorted) plan by single fused tasks
+     * (see {@link TaskFuser}).
+     * @param plan the topologically sorted process plan
+     */
+    private synchronized void fuseTasks(Vector<TaskDescription> plan){
+
+        if (!this.fuseTasks){
+            return;
+        }
+        int fused = new TaskFuser(plan).fuse();
+
+        if (fused > 0){
+            Logger.getInstance().message("Fused " + fused + " tasks.", Logger.V_INFO);
+        }
+    }
+
     /**
      * Reads the current plan status from the plan input file, using serialization. Closes the input stream.
+     * Sets the {@link #runtimes} statistics stored along with the plan.
      *
      * @param planFile the file to read from
      * @return the current plan with correct task statuses
@@ -647,6 +1033,12 @@ public class Plan {
         bis = new ByteArrayInputStream(planFileContents);
         ois = new ObjectInputStream(bis);
         plan = (Vector<TaskDescription>) ois.readObject();
+        try {
+            this.runtimes = (Hashtable<String, RuntimeStats>) ois.readObject();
+        }
+        catch (EOFException ex){ // older plan files have no running time statistics
+            this.runtimes = new Hashtable<String, RuntimeStats>();
+        }
         ois.close();
 
         return plan;
@@ -656,8 +1048,10 @@ public class Plan {
      * Updates the statuses of the given tasks (and all the dependent tasks, accordingly).
      * @param tasks the task whose statuses are to be updated
      * @param status the new status
+     * @param owner the identification of the {@link Worker} that has been working on the tasks
      */
-    public synchronized void updateStatuses(List<TaskDescription> tasks, TaskStatus status) throws PlanException {
+    public synchronized void updateStatuses(List<TaskDescription> tasks, TaskStatus status, String owner)
+            throws PlanException {
 
         FileLock lock = null;
         RandomAccessFile planFileIO = null;
@@ -672,7 +1066,7 @@ public class Plan {
 
             // update the statuses
             for (TaskDescription task : tasks){
-                this.updateTaskStatus(plan, task.getId(), status);
+                this.updateTaskStatus(plan, task, status, owner);
             }
             
             // write the plan back
@@ -710,29 +1104,137 @@ public class Plan {
 
     }
 
+    /**
+     * Renews the leases of the given tasks for the given owner, so that they are not returned to the
+     * plan as long as the owner is working on them. Tasks that are no longer owned by the given
+     * owner (since their lease has already expired) are skipped and a warning is issued.
+     *
+     * @param tasks the tasks whose leases are to be renewed
+     * @param owner the identification of the {@link Worker} that owns the tasks
+     */
+    public synchronized void renewLeases(List<TaskDescription> tasks, String owner) throws PlanException {
+
+        FileLock lock = null;
+        RandomAccessFile planFileIO = null;
+
+        try {
+            // lock the plan file
+            planFileIO = new RandomAccessFile(this.planFile, "rw");
+            lock = planFileIO.getChannel().lock();
+
+            Vector<TaskDescription> plan = this.readPlan(planFileIO);
+            long expiry = System.currentTimeMillis() + this.leaseTime;
+            boolean changed = false;
+
+            for (TaskDescription task : tasks){
+
+                int pos = this.findLastUsedTask(plan, task.getId());
+
+                if (pos == -1 || !plan.get(pos).renewLease(owner, expiry, task.getRunStart())){
+                    Logger.getInstance().message("Cannot renew lease of task " + task.getId() + " for " + owner
+                            + ", it is no longer owned.", Logger.V_WARNING);
+                    continue;
+                }
+                changed = true;
+            }
+
+            if (changed){
+                this.writePlan(plan, planFileIO);
+            }
+        }
+        catch (ClassNotFoundException ex){
+            Logger.getInstance().message("Plan file error - " + ex.getMessage(), Logger.V_IMPORTANT);
+            throw new PlanException(PlanException.ERR_INVALID_PLAN);
+        }
+        catch (IOException ex){
+            Logger.getInstance().message("I/O error - " + ex.getMessage(), Logger.V_IMPORTANT);
+            throw new PlanException(PlanException.ERR_IO_ERROR);
+        }
+        finally {
+            // release lock
+            if (lock != null && lock.isValid()){
+                try {
+                    lock.release();
+                }
+                catch(IOException ex){
+                    Logger.getInstance().message(ex.getMessage(), Logger.V_IMPORTANT);
+                    throw new PlanException(PlanException.ERR_IO_ERROR);
+                }
+            }
+
+            // close the plan file
+            try {
+                planFileIO.close();
+            }
+            catch(IOException ex){
+                Logger.getInstance().message(ex.getMessage(), Logger.V_IMPORTANT);
+                throw new PlanException(PlanException.ERR_IO_ERROR);
+            }
+        }
+    }
+
     /**
      * This finds the given task and updates its status and the statuses of all depending tasks; if the
      * updated status is {@link TaskStatus#DONE}, it removes the task from the plan completely.
+     * <p>
+     * If the lease of the task has expired and the task has been taken over by another worker
+     * in the meantime, or if this is a failed speculative run, only the {@link TaskStatus#DONE} status
+     * is stored, other updates are ignored. If the task cannot be found, it has already been finished
+     * by another worker. Private outputs of the run are moved to their place if the task is done
+     * and deleted otherwise.
+     * </p>
      *
      * @param plan the process plan
-     * @param id the id of the task to be updated
+     * @param run the task to be updated, as it has been run by the worker
      * @param taskStatus the new task status
-     * @throws PlanException if the task of the given id cannot be found in the plan
+     * @param owner the identification of the {@link Worker} that has been working on the task
      */
-    private synchronized void updateTaskStatus(Vector<TaskDescription> plan, String id, TaskStatus taskStatus)
-            throws PlanException {
-        
+    private synchronized void updateTaskStatus(Vector<TaskDescription> plan, TaskDescription run,
+            TaskStatus taskStatus, String owner) {
+
+        String id = run.getId();
         int pos = this.findLastUsedTask(plan, id);
 
         if (pos == -1){
-            Logger.getInstance().message("Cannot find task " + id + " to update its status!", Logger.V_IMPORTANT);
-            throw new PlanException(PlanException.ERR_INVALID_PLAN);
+            Logger.getInstance().message("Cannot find task " + id + " to update its status, it has probably been "
+                    + "finished by another worker.", Logger.V_WARNING);
+            this.discardAttemptOutput(run);
+            return;
+        }
+        TaskDescription task = plan.get(pos);
+        String curOwner = task.getOwner();
+        boolean speculator = owner != null && owner.equals(task.getSpeculator());
+
+        if (taskStatus != TaskStatus.DONE && (speculator || (curOwner != null && !curOwner.equals(owner)))){
+            Logger.getInstance().message("Task " + id + " is run by " + curOwner + ", not setting its "
+                    + "status to " + taskStatus + ".", Logger.V_WARNING);
+            if (speculator){
+                task.endSpeculation();
+            }
+            this.discardAttemptOutput(run);
+            return;
+        }
+        if (taskStatus == TaskStatus.DONE){
+
+            long time = run.getRunTime(); // measured by the worker, without the time spent waiting in the batch
+            if (time >= 0){
+                if (this.runtimes.get(task.getAlgorithm()) == null){
+                    this.runtimes.put(task.getAlgorithm(), new RuntimeStats());
+                }
+                this.runtimes.get(task.getAlgorithm()).add(time);
+            }
+            if (!this.commitAttemptOutput(run)){
+                taskStatus = TaskStatus.FAILED;
+            }
+        }
+        else {
+            this.discardAttemptOutput(run);
         }
 
         // update the task
-        plan.get(pos).setStatus(taskStatus);
+        task.setStatus(taskStatus);
         if (taskStatus == TaskStatus.DONE){
-            plan.get(pos).looseAllDeps();
+            task.looseAllDeps();
             plan.remove(pos);
         }
     }
@@ -748,7 +1250,6 @@ public class Plan {
             throws IOException, ClassNotFoundException, DataException, TaskException, PlanException {
 
         Vector<TaskDescription> oldPlan = this.readPlan(planFileIO);
-        ScenarioParser parser = new ScenarioParser(Process.getInstance().getInputFile());
         Vector<TaskDescription> newPlan;
         String resetRegex = this.getResetPrefixes(resetFileIO);
         Hashtable<String, Vector<TaskDescription>> oldPlanByName;
@@ -760,12 +1261,8 @@ public class Plan {
             throw new PlanException(PlanException.INTERRUPT);
         }
 
-        // parse the new version of the input file
-        parser.parse();
-
-        // topologically sort the new plan
-        newPlan = parser.getTasks();
-        this.sortPlan(newPlan);
+        // get the plan for the new version of the input file (parsed, sorted and fused)
+        newPlan = this.getInitialPlan();
 
         // remove the tasks that need to be reset in any case
         this.removeTasksToReset(resetRegex, oldPlan);
@@ -855,6 +1352,11 @@ public class Plan {
                     Logger.V_IMPORTANT);
             throw new PlanException(PlanException.ERR_INVALID_PLAN);
         }
+        // a speculative duplicate of the task may have already appended the same tasks
+        if (!expansion.isEmpty() && this.findLastUsedTask(plan, expansion.get(0).getId()) != -1){
+            Logger.getInstance().messagef("Tasks appended to %s are already in the plan.", Logger.V_DEBUG, id);
+            return;
+        }
         TaskDescription old = plan.get(pos);
 
         // loosen the dependencies for the original task
@@ -879,20 +1381,20 @@ public class Plan {
         plan.addAll(plan.indexOf(old) + 1, expansion);
     }
 
+    /**
+     * This just checks if the scenario file is correct (i.e. it may be parsed and its tasks topologically
+     * sorted). A valid {@link PlanSnapshot} for the scenario file is taken as a proof of correctness,
+     * otherwise the snapshot is created, so that the next start of the process is faster.
+     */
     public synchronized void checkScenario(){
 
         try {
-            ScenarioParser parser = new ScenarioParser(Process.getInstance().getInputFile());
-            Vector<TaskDescription> plan;
+            PlanSnapshot snapshot = new PlanSnapshot(Process.getInstance().getInputFile(), this.fuseTasks);
 
-            Logger.getInstance().message("Parsing the scenario file ...", Logger.V_DEBUG);
-
-            // parse the input file
-            parser.parse();
-
-            // topologically sort the plan
-            plan = parser.getTasks();
-            this.sortPlan(plan);
+            if (!snapshot.load()){
+                Vector<TaskDescription> plan = this.parseScenario();
+                snapshot.store(this.getPlanData(plan, null), this.getStatusData(plan));
+            }
         }
         catch (DataException e){
             Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
@@ -946,6 +1448,14 @@ public class Plan {
         }
     }
 
+    /**
+     * Returns the time for which the retrieved tasks are leased to their {@link Worker}.
+     * @return the task lease time, in msecs
+     */
+    public long getLeaseTime(){
+        return this.leaseTime;
+    }
+
     /**
      * Returns true, if there currently are some tasks with a {@link TaskStatus#FAILED} in the plan file.
      * @return true, if there are some failed tasks in the plan file
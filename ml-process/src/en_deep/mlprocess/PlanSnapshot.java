@@ -0,0 +1,317 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * This stores the initial plan, as created from the scenario file (parsed, topologically sorted and fused),
+ * so that it does not need to be created again for the same scenario. The snapshot is keyed by a hash
+ * of the scenario file contents and of all the settings that influence the plan creation, including
+ * the version of the program code.
+ * <p>
+ * The snapshot holds the serialized plan in exactly the format of the plan file, together with the
+ * contents of the status file, so that a new plan file may be created by just copying the data, without
+ * any parsing or deserialization. The plan is only deserialized if it is needed (e.g. for resetting tasks).
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+class PlanSnapshot {
+
+    /* CONSTANTS */
+
+    /** The snapshot file format identification */
+    private static final int MAGIC = 0x504c414e;
+    /** The snapshot file format version */
+    private static final int VERSION = 1;
+
+    /** The classes that create the plan or are stored in it, whose versions are a part of the snapshot key */
+    private static final Class<?> [] CODE_CLASSES = {
+        Plan.class, ScenarioParser.class, TaskFuser.class, PlanSnapshot.class, TaskDescription.class,
+        TaskDescription.TaskStatus.class, RuntimeStats.class
+    };
+
+    /* DATA */
+
+    /** The scenario file name */
+    private String scenarioFile;
+    /** The snapshot file */
+    private File snapshotFile;
+    /** Were the tasks fused in the plan ? */
+    private boolean fused;
+    /** The hash of the scenario and settings (computed on first use) */
+    private byte [] key;
+
+    /** The serialized plan, in the plan file format (null if not loaded) */
+    private byte [] planData;
+    /** The status file contents for the plan (null if not loaded) */
+    private byte [] statusData;
+
+    /* METHODS */
+
+    /**
+     * This prepares the snapshot for the given scenario file, it does not read anything yet.
+     *
+     * @param scenarioFile the scenario file name
+     * @param fused are the tasks fused in the plan ?
+     */
+    PlanSnapshot(String scenarioFile, boolean fused){
+
+        this.scenarioFile = scenarioFile;
+        this.snapshotFile = new File(scenarioFile + Plan.SNAPSHOT_FILE_SUFFIX);
+        this.fused = fused;
+    }
+
+    /**
+     * This tries to load the snapshot file. The snapshot is loaded only if it has been created for the same
+     * scenario file contents and settings. Any errors are only logged.
+     *
+     * @return true if a valid snapshot has been loaded
+     */
+    boolean load(){
+
+        if (!this.snapshotFile.exists()){
+            return false;
+        }
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new FileInputStream(this.snapshotFile));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION){
+                return false;
+            }
+            byte [] storedKey = new byte [in.readInt()];
+            in.readFully(storedKey);
+            if (!Arrays.equals(storedKey, this.getKey())){
+                Logger.getInstance().message("The plan snapshot is out of date.", Logger.V_DEBUG);
+                return false;
+            }
+            byte [] status = new byte [in.readInt()];
+            in.readFully(status);
+            byte [] plan = new byte [in.readInt()];
+            in.readFully(plan);
+
+            this.statusData = status;
+            this.planData = plan;
+            return true;
+        }
+        catch (IOException e){
+            Logger.getInstance().message("Cannot read the plan snapshot - " + e.getMessage(), Logger.V_WARNING);
+            return false;
+        }
+        finally {
+            this.close(in);
+        }
+    }
+
+    /**
+     * This stores the given plan data into the snapshot file. The file is written under a temporary name
+     * first and then renamed, so that a partially written snapshot is never used. Any errors are only logged.
+     *
+     * @param planData the serialized plan, in the plan file format
+     * @param statusData the status file contents
+     */
+    void store(byte [] planData, byte [] statusData){
+
+        File tempFile = new File(this.snapshotFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+
+        this.planData = planData;
+        this.statusData = statusData;
+
+        try {
+            byte [] curKey = this.getKey();
+
+            out = new DataOutputStream(new FileOutputStream(tempFile));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(curKey.length);
+            out.write(curKey);
+            out.writeInt(statusData.length);
+            out.write(statusData);
+            out.writeInt(planData.length);
+            out.write(planData);
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(this.snapshotFile)){
+                this.snapshotFile.delete();
+                if (!tempFile.renameTo(this.snapshotFile)){
+                    throw new IOException("Cannot rename " + tempFile);
+                }
+            }
+            Logger.getInstance().message("Plan snapshot written ...", Logger.V_DEBUG);
+        }
+        catch (IOException e){
+            Logger.getInstance().message("Cannot write the plan snapshot - " + e.getMessage(), Logger.V_WARNING);
+            this.close(out);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes the snapshot file (used if its contents cannot be read). Errors are only logged.
+     */
+    void delete(){
+
+        this.planData = null;
+        this.statusData = null;
+        if (this.snapshotFile.exists() && !this.snapshotFile.delete()){
+            Logger.getInstance().message("Cannot delete the plan snapshot " + this.snapshotFile + ".",
+                    Logger.V_WARNING);
+        }
+    }
+
+    /**
+     * Returns the serialized plan, in the plan file format.
+     * @return the serialized plan, or null if no snapshot has been loaded or stored
+     */
+    byte [] getPlanData(){
+        return this.planData;
+    }
+
+    /**
+     * Returns the status file contents for the plan.
+     * @return the status file contents, or null if no snapshot has been loaded or stored
+     */
+    byte [] getStatusData(){
+        return this.statusData;
+    }
+
+    /**
+     * Deserializes the plan from the snapshot data. Each call returns a new copy of the plan.
+     *
+     * @return the plan stored in the snapshot
+     * @throws IOException if the snapshot data are incorrect
+     * @throws ClassNotFoundException if the snapshot data are incorrect
+     */
+    @SuppressWarnings("unchecked")
+    Vector<TaskDescription> getPlan() throws IOException, ClassNotFoundException {
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(this.planData));
+        Vector<TaskDescription> plan = (Vector<TaskDescription>) ois.readObject();
+
+        ois.close();
+        return plan;
+    }
+
+    /**
+     * Returns the hash of the scenario file contents and all the settings which influence the plan
+     * creation, computing it on first use.
+     *
+     * @return the snapshot key
+     * @throws IOException if the scenario file cannot be read
+     */
+    private byte [] getKey() throws IOException {
+
+        if (this.key != null){
+            return this.key;
+        }
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e){
+            throw new IOException("MD5 not available");
+        }
+
+        // the scenario file contents
+        FileInputStream in = new FileInputStream(this.scenarioFile);
+        byte [] buf = new byte [65536];
+        int len;
+
+        try {
+            while ((len = in.read(buf)) > 0){
+                md.update(buf, 0, len);
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        // the settings and the code version
+        StringBuilder settings = new StringBuilder();
+
+        settings.append('\n').append(this.fused);
+        settings.append('\n').append(Process.getInstance().getWorkDir());
+
+        // the code version: the class files may be recompiled in place, so their own times are used
+        for (Class<?> cls : CODE_CLASSES){
+
+            ObjectStreamClass serial = ObjectStreamClass.lookup(cls);
+            URL classFile = cls.getResource(cls.getName().substring(cls.getName().lastIndexOf('.') + 1) + ".class");
+
+            settings.append('\n').append(cls.getName());
+            if (serial != null){
+                settings.append(' ').append(serial.getSerialVersionUID());
+            }
+            if (classFile != null){
+                settings.append(' ').append(classFile);
+                settings.append(' ').append(classFile.openConnection().getLastModified());
+            }
+        }
+        md.update(settings.toString().getBytes("UTF-8"));
+
+        this.key = md.digest();
+        return this.key;
+    }
+
+    /**
+     * Closes the given stream, ignoring any errors.
+     * @param stream the stream to be closed (may be null)
+     */
+    private void close(java.io.Closeable stream){
+
+        if (stream != null){
+            try {
+                stream.close();
+            }
+            catch (IOException e){
+                // ignore
+            }
+        }
+    }
+}
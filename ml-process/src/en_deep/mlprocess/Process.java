@@ -61,6 +61,20 @@ import java.nio.charset.Charset;
  * <li><tt>--workdir (-d)</tt> specifies the working directory (if not the same as that of the plan file).</li>
  * <li><tt>--cleanup (-l)</tt> tries to delete temporary files created by {@link Plan} when the program ends.</li>
  * <li><tt>--charset (-s)</tt> overrides the default system charset setting.</li>
+ * <li><tt>--lease (-e)</tt> the time in seconds for which a {@link Worker} owns the retrieved tasks without
+ * renewing them (default: 600). Tasks of workers that have not renewed their lease (e.g. because
+ * their process has crashed) are returned to the plan as pending. The clocks of all machines that share
+ * the plan should be roughly synchronized.</li>
+ * <li><tt>--max_retries (-m)</tt> the number of times a task may be returned to the plan after its lease
+ * has expired, before it is marked as failed (default: 2).</li>
+ * <li><tt>--speculate (-x)</tt> if set, idle workers start duplicates of tasks that run much longer than
+ * the previously finished tasks of the same algorithm. Tasks with concrete outputs then write them to
+ * private locations, which are moved to their place by the run that finishes first.</li>
+ * <li><tt>--fuse (-u)</tt> if set, chains of tasks that process data row by row and whose intermediate files
+ * are not used elsewhere are run as one task, without writing the intermediate files (unless the fused task
+ * has the <tt>materialize</tt> parameter set).</li>
+ * <li><tt>--task_logs (-g)</tt> if set, the messages logged while running each task are also copied to
+ * a separate log file for the task, in the <tt>&lt;input file&gt;.logs</tt> directory.</li>
  * </ul>
  * <p>
  * The verbosity setting looks as follows:
@@ -98,6 +112,16 @@ public class Process {
     private static final String OPTL_CHARSET = "charset";
     /** The --cleanup option long name */
     private static final String OPTL_CLEANUP = "cleanup";
+    /** The --lease option long name */
+    private static final String OPTL_LEASE = "lease";
+    /** The --max_retries option long name */
+    private static final String OPTL_MAX_RETRIES = "max_retries";
+    /** The --speculate option long name */
+    private static final String OPTL_SPECULATE = "speculate";
+    /** The --fuse option long name */
+    private static final String OPTL_FUSE = "fuse";
+    /** The --task_logs option long name */
+    private static final String OPTL_TASK_LOGS = "task_logs";
 
     /** The --threads option short name */
     private static final char OPTS_THREADS = 't';
@@ -117,11 +141,24 @@ public class Process {
     private static final char OPTS_CHARSET = 's';
     /** The --cleanup option short name */
     private static final char OPTS_CLEANUP = 'l';
+    /** The --lease option short name */
+    private static final char OPTS_LEASE = 'e';
+    /** The --max_retries option short name */
+    private static final char OPTS_MAX_RETRIES = 'm';
+    /** The --speculate option short name */
+    private static final char OPTS_SPECULATE = 'x';
+    /** The --fuse option short name */
+    private static final char OPTS_FUSE = 'u';
+    /** The --task_logs option short name */
+    private static final char OPTS_TASK_LOGS = 'g';
 
     /** Program name as it's passed to getopts */
     private static final String PROGNAME = "ML-Process";
+    /** Suffix of the directory for per-task log files */
+    private static final String TASK_LOG_DIR_SUFFIX = ".logs";
+
     /** Optstring for getopts, must correspond to the OPTS_ constants */
-    private static final String OPTSTRING = "i:t:v:d:r:c:s:pl";
+    private static final String OPTSTRING = "i:t:v:d:r:c:s:e:m:plxug";
 
     /* DATA */
 
@@ -156,10 +193,12 @@ public class Process {
         opts.inputFile = null;
         opts.resetTasks = null;
         opts.charsetName = null;
+        opts.leaseTime = Plan.DEFAULT_LEASE_TIME;
+        opts.maxRetries = Plan.DEFAULT_MAX_RETRIES;
 
         try {
             // parsing the options
-            LongOpt[] possibleOpts = new LongOpt[9];
+            LongOpt[] possibleOpts = new LongOpt[14];
             possibleOpts[0] = new LongOpt(OPTL_THREADS, LongOpt.REQUIRED_ARGUMENT, null, OPTS_THREADS);
             possibleOpts[1] = new LongOpt(OPTL_INSTANCES, LongOpt.REQUIRED_ARGUMENT, null, OPTS_INSTANCES);
             possibleOpts[2] = new LongOpt(OPTL_VERBOSITY, LongOpt.REQUIRED_ARGUMENT, null, OPTS_VERBOSITY);
@@ -169,6 +208,11 @@ public class Process {
             possibleOpts[6] = new LongOpt(OPTL_PARSE_ONLY, LongOpt.NO_ARGUMENT, null, OPTS_PARSE_ONLY);
             possibleOpts[7] = new LongOpt(OPTL_CHARSET, LongOpt.REQUIRED_ARGUMENT, null, OPTS_CHARSET);
             possibleOpts[8] = new LongOpt(OPTL_CLEANUP, LongOpt.NO_ARGUMENT, null, OPTS_CLEANUP);
+            possibleOpts[9] = new LongOpt(OPTL_LEASE, LongOpt.REQUIRED_ARGUMENT, null, OPTS_LEASE);
+            possibleOpts[10] = new LongOpt(OPTL_MAX_RETRIES, LongOpt.REQUIRED_ARGUMENT, null, OPTS_MAX_RETRIES);
+            possibleOpts[11] = new LongOpt(OPTL_SPECULATE, LongOpt.NO_ARGUMENT, null, OPTS_SPECULATE);
+            possibleOpts[12] = new LongOpt(OPTL_FUSE, LongOpt.NO_ARGUMENT, null, OPTS_FUSE);
+            possibleOpts[13] = new LongOpt(OPTL_TASK_LOGS, LongOpt.NO_ARGUMENT, null, OPTS_TASK_LOGS);
 
             Getopt getter = new Getopt(PROGNAME, args, OPTSTRING, possibleOpts);
             int c;
@@ -203,6 +247,27 @@ public class Process {
                     case OPTS_CHARSET:
                         opts.charsetName = getter.getOptarg();
                         break;
+                    case OPTS_LEASE:
+                        opts.leaseTime = StringUtils.getNumericArgPar(OPTL_LEASE, getter.getOptarg());
+                        if (opts.leaseTime < 1){
+                            throw new ParamException(ParamException.ERR_INVARG, OPTL_LEASE);
+                        }
+                        break;
+                    case OPTS_MAX_RETRIES:
+                        opts.maxRetries = StringUtils.getNumericArgPar(OPTL_MAX_RETRIES, getter.getOptarg());
+                        if (opts.maxRetries < 0){
+                            throw new ParamException(ParamException.ERR_INVARG, OPTL_MAX_RETRIES);
+                        }
+                        break;
+                    case OPTS_SPECULATE:
+                        opts.speculate = true;
+                        break;
+                    case OPTS_FUSE:
+                        opts.fuse = true;
+                        break;
+                    case OPTS_TASK_LOGS:
+                        opts.taskLogs = true;
+                        break;
                     case ':':
                         throw new ParamException(ParamException.ERR_MISSING, "" + (char) getter.getOptopt());
                     case '?':
@@ -295,6 +360,13 @@ public class Process {
         }
 
         Logger.getInstance().message("Using " + this.opts.charsetName + " as default charset.", Logger.V_DEBUG);
+
+        if (this.opts.taskLogs){
+            File logDir = new File(this.getTaskLogDir());
+            if (!logDir.isDirectory() && !logDir.mkdirs()){
+                throw new IOException("Cannot create the task log directory " + logDir);
+            }
+        }
     }
 
     /**
@@ -335,6 +407,48 @@ public class Process {
         return this.opts.retrieveCount;
     }
 
+    /**
+     * Returns the time for which a {@link Worker} owns the retrieved tasks without renewing them.
+     * @return the task lease time, in milliseconds
+     */
+    public long getLeaseTime(){
+        return this.opts.leaseTime * 1000L;
+    }
+
+    /**
+     * Returns the number of times a task may be returned to the plan after its lease has expired,
+     * before it is marked as failed.
+     * @return the maximum number of lease expirations for one task
+     */
+    public int getMaxRetries(){
+        return this.opts.maxRetries;
+    }
+
+    /**
+     * Returns true if idle workers should run speculative duplicates of slow tasks.
+     * @return true if speculative execution is turned on
+     */
+    public boolean isSpeculative(){
+        return this.opts.speculate;
+    }
+
+    /**
+     * Returns true if chains of row-wise tasks should be fused into single tasks.
+     * @return true if task fusion is turned on
+     */
+    public boolean isFusing(){
+        return this.opts.fuse;
+    }
+
+    /**
+     * Returns the directory where the per-task log files should be written, or null if they should not be
+     * created.
+     * @return the task log directory, including the trailing separator, or null
+     */
+    public String getTaskLogDir(){
+        return this.opts.taskLogs ? this.getInputFile() + TASK_LOG_DIR_SUFFIX + File.separator : null;
+    }
+
     /**
      * This returns the name of the Charset that all the I/O routines should use on the text files
      * that may contain national characters.
@@ -445,5 +559,15 @@ public class Process {
         String charsetName;
         /** Should the {@link Plan} temporary files be deleted on exit ? */
         boolean cleanup;
+        /** Time in seconds for which a {@link Worker} owns its tasks without renewing them */
+        int leaseTime;
+        /** Number of times a task may be returned to the plan after its lease expired */
+        int maxRetries;
+        /** Should idle workers run speculative duplicates of slow tasks ? */
+        boolean speculate;
+        /** Should chains of row-wise tasks be fused ? */
+        boolean fuse;
+        /** Should the messages of each task be copied to a separate log file ? */
+        boolean taskLogs;
     }
 }
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Running times of the recently finished tasks of one algorithm, stored in the {@link Plan} file.
+ * These are used to find tasks that run much longer than their peers for speculative execution.
+ *
+ * @author Ondrej Dusek
+ */
+class RuntimeStats implements Serializable {
+
+    /* CONSTANTS */
+
+    /** The serial version of this class, fixed so that compiler differences do not break the plan files */
+    private static final long serialVersionUID = 7677514723154519059L;
+
+    /** Number of the most recent running times that are kept */
+    private static final int CAPACITY = 64;
+
+    /* DATA */
+
+    /** The running times (a circular buffer) */
+    private long [] times = new long [CAPACITY];
+    /** Total number of running times ever added */
+    private int added;
+
+    /* METHODS */
+
+    /**
+     * Adds a running time of a finished task.
+     * @param time the running time, in msecs
+     */
+    void add(long time){
+        this.times[this.added % CAPACITY] = time;
+        this.added++;
+    }
+
+    /**
+     * Returns the number of stored running times.
+     * @return the number of running times available
+     */
+    int size(){
+        return Math.min(this.added, CAPACITY);
+    }
+
+    /**
+     * Returns the median of the stored running times, or -1 if there are none.
+     * @return the median running time, in msecs
+     */
+    long median(){
+
+        int size = this.size();
+
+        if (size == 0){
+            return -1;
+        }
+        long [] sorted = Arrays.copyOf(this.times, size);
+        Arrays.sort(sorted);
+        return sorted[size / 2];
+    }
+}
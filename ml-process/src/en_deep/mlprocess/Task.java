@@ -80,7 +80,8 @@ public abstract class Task implements Serializable {
 
     /**
      * This creates a {@link Task} object of the specified class for the given
-     * {@link TaskDescription}.
+     * {@link TaskDescription}. If the description has private output locations for the current run
+     * (see {@link Plan}), these are passed to the task instead of the outputs.
      *
      * TODO possibly add default package for classes ?
      *
@@ -106,7 +107,7 @@ public abstract class Task implements Serializable {
         try {
             taskConstructor = taskClass.getConstructor(String.class, Hashtable.class, Vector.class, Vector.class);
             res = (Task) taskConstructor.newInstance(desc.getId(), desc.getParameters(),
-                    desc.getInput(),desc.getOutput());
+                    desc.getInput(), desc.getAttemptOutput() != null ? desc.getAttemptOutput() : desc.getOutput());
         }
         catch(InvocationTargetException ex){
 
@@ -51,6 +51,12 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
 
     /* CONSTANTS */
 
+    /**
+     * The serialization version, fixed to the value computed for the original version of this class,
+     * so that older plan files (without the task leases) may still be read
+     */
+    private static final long serialVersionUID = -3637800775193551433L;
+
     /**
      * The possible progress statuses of a {@link Task}.
      * <ul>
@@ -92,6 +98,29 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
     /** All the Task that are depending on this one */
     private TreeSet<TaskDescription> dependOnMe;
 
+    /** The {@link Worker} currently holding the task lease (or null if not {@link TaskStatus#IN_PROGRESS}) */
+    private String owner;
+    /** Time (in msecs since the epoch) when the current task lease expires */
+    private long leaseExpiry;
+    /** Number of times the lease of this task has expired without the task being finished */
+    private int leaseExpirations;
+    /** Time (in msecs since the epoch) when the current owner has actually started the task (0 if not yet known) */
+    private long runStart;
+    /** Time (in msecs since the epoch) when the run of the task has finished (only in the {@link Worker}'s copy) */
+    private transient long runEnd;
+
+    /** The {@link Worker} running a speculative duplicate of this task, or null */
+    private String speculator;
+    /** Time (in msecs since the epoch) when the speculative duplicate has been started */
+    private long speculatorStart;
+    /** Time (in msecs since the epoch) when the lease of the speculative duplicate expires */
+    private long speculatorExpiry;
+
+    /** Number of runs of this task that wrote their outputs to private locations */
+    private int attempts;
+    /** Private output locations of the current run, if it must not write to the final outputs (not stored in the plan) */
+    private transient Vector<String> attemptOutput;
+
 
     /* METHODS */
 
@@ -330,6 +359,15 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
         return this.output;
     }
 
+    /**
+     * Returns the output file with the given position in the output specifications.
+     * @param pos position of the desired file
+     * @return the pos-th file in the output specifications
+     */
+    String getOutput(int pos){
+        return this.output.get(pos);
+    }
+
 
     /**
      * Sets new task status, updating all the statuses of the dependent tasks (if the
@@ -339,6 +377,12 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
     public void setStatus(TaskStatus status) {
 
         this.status = status;
+        if (status != TaskStatus.IN_PROGRESS){
+            this.owner = null;
+            this.runStart = 0;
+            this.leaseExpiry = 0;
+            this.endSpeculation();
+        }
         
         // if we're done, update the depending tasks (if there are no other tasks
         // they've been waiting for, set their status to pending)
@@ -368,6 +412,223 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
     }
 
 
+    /**
+     * Gives the task lease to the given {@link Worker}, valid until the given time. The task is not
+     * considered running until the worker reports its start (see {@link #renewLease(String, long, long)}).
+     * 
+     * @param owner the identification of the {@link Worker} that owns the task
+     * @param expiry the time (in msecs since the epoch) when the lease expires
+     */
+    void acquireLease(String owner, long expiry){
+        this.owner = owner;
+        this.runStart = 0;
+        this.leaseExpiry = expiry;
+    }
+
+    /**
+     * Prolongs the task lease, if the task is still {@link TaskStatus#IN_PROGRESS} and owned
+     * by the given {@link Worker} (or the given worker is running its speculative duplicate).
+     * The owner also reports the time when it has actually started the task, if it has already done so.
+     *
+     * @param owner the identification of the {@link Worker} that should own the task
+     * @param expiry the new lease expiry time (in msecs since the epoch)
+     * @param runStart the time (in msecs since the epoch) when the worker started the task, or 0 if not yet
+     * @return true if the lease has been renewed, false if the task is no longer owned by the worker
+     */
+    boolean renewLease(String owner, long expiry, long runStart){
+
+        if (this.status != TaskStatus.IN_PROGRESS || owner == null){
+            return false;
+        }
+        if (owner.equals(this.owner)){
+            this.leaseExpiry = expiry;
+            if (runStart > 0){
+                this.runStart = runStart;
+            }
+            return true;
+        }
+        if (owner.equals(this.speculator)){
+            this.speculatorExpiry = expiry;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts a speculative duplicate of this (already running) task in the given {@link Worker}.
+     *
+     * @param speculator the identification of the {@link Worker} that runs the duplicate
+     * @param now the current time (in msecs since the epoch)
+     * @param expiry the time (in msecs since the epoch) when the lease of the duplicate expires
+     */
+    void startSpeculation(String speculator, long now, long expiry){
+        this.speculator = speculator;
+        this.speculatorStart = now;
+        this.speculatorExpiry = expiry;
+    }
+
+    /**
+     * Forgets about the speculative duplicate of this task (if there is any).
+     */
+    void endSpeculation(){
+        this.speculator = null;
+        this.speculatorStart = 0;
+        this.speculatorExpiry = 0;
+    }
+
+    /**
+     * Returns the identification of the {@link Worker} running a speculative duplicate of this task, or null.
+     * @return the current speculator
+     */
+    String getSpeculator(){
+        return this.speculator;
+    }
+
+    /**
+     * Returns true if there is a speculative duplicate of this task whose lease has expired at the given time.
+     * @param now the current time (in msecs since the epoch)
+     * @return true if the lease of the speculative duplicate has expired
+     */
+    boolean isSpeculationExpired(long now){
+        return this.speculator != null && this.speculatorExpiry < now;
+    }
+
+    /**
+     * Makes the speculative duplicate the only run of this task (used if the original owner's lease expires).
+     */
+    void promoteSpeculator(){
+        this.owner = this.speculator;
+        this.runStart = this.speculatorStart;
+        this.leaseExpiry = this.speculatorExpiry;
+        this.endSpeculation();
+    }
+
+    /**
+     * Returns for how long the given worker has been running this task, or -1 if it is not running it.
+     * If the owner has not reported the start of the task yet (i.e. it is still queued in the worker),
+     * this returns 0.
+     *
+     * @param worker the identification of the owner or the speculator
+     * @param now the current time (in msecs since the epoch)
+     * @return the running time, in msecs
+     */
+    long getRunningTime(String worker, long now){
+
+        if (worker == null || this.status != TaskStatus.IN_PROGRESS){
+            return -1;
+        }
+        if (worker.equals(this.owner)){
+            return this.runStart > 0 ? now - this.runStart : 0;
+        }
+        if (worker.equals(this.speculator)){
+            return now - this.speculatorStart;
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the start of the run of this task (called by the {@link Worker} on its copy of the task).
+     * @param now the current time (in msecs since the epoch)
+     */
+    void startRun(long now){
+        this.runStart = now;
+        this.runEnd = 0;
+    }
+
+    /**
+     * Marks the end of the run of this task (called by the {@link Worker} on its copy of the task).
+     * @param now the current time (in msecs since the epoch)
+     */
+    void finishRun(long now){
+        this.runEnd = now;
+    }
+
+    /**
+     * Returns the time when the current run of this task has started.
+     * @return the start time (in msecs since the epoch), or 0 if the task has not been started yet
+     */
+    long getRunStart(){
+        return this.runStart;
+    }
+
+    /**
+     * Returns the duration of the finished run of this task, as measured by the {@link Worker}.
+     * @return the running time in msecs, or -1 if the run has not been measured
+     */
+    long getRunTime(){
+        return this.runStart > 0 && this.runEnd >= this.runStart ? this.runEnd - this.runStart : -1;
+    }
+
+    /**
+     * Returns a new, unique number of a run of this task that writes its outputs to private locations.
+     * @return a new attempt number
+     */
+    int newAttempt(){
+        return ++this.attempts;
+    }
+
+    /**
+     * Sets the private output locations for the current run of this task. This is not stored in the plan.
+     * @param attemptOutput the private output file names, corresponding to {@link #getOutput()}, or null
+     */
+    void setAttemptOutput(Vector<String> attemptOutput){
+        this.attemptOutput = attemptOutput;
+    }
+
+    /**
+     * Returns the private output locations for the current run of this task, or null if the task
+     * should write directly to its outputs.
+     * @return the private output file names, or null
+     */
+    Vector<String> getAttemptOutput(){
+        return this.attemptOutput;
+    }
+
+    /**
+     * Returns true if the task is {@link TaskStatus#IN_PROGRESS} and its lease has expired at the given time.
+     * Tasks without any lease (i.e. those taken from older plan files) never expire.
+     *
+     * @param now the current time (in msecs since the epoch)
+     * @return true if the task lease has expired
+     */
+    boolean isLeaseExpired(long now){
+        return this.status == TaskStatus.IN_PROGRESS && this.owner != null && this.leaseExpiry < now;
+    }
+
+    /**
+     * Releases an expired lease, counting the expiration. The task status is not changed.
+     * @return the number of times the lease of this task has expired, including this time
+     */
+    int releaseExpiredLease(){
+        this.owner = null;
+        this.runStart = 0;
+        this.leaseExpiry = 0;
+        return ++this.leaseExpirations;
+    }
+
+    /**
+     * Returns the identification of the {@link Worker} currently owning this task, or null.
+     * @return the current task owner
+     */
+    String getOwner(){
+        return this.owner;
+    }
+
+    /**
+     * Takes over the lease of the given task (used if the same task is found in an old plan upon reset).
+     * @param other the task to take over the lease from
+     */
+    void copyLease(TaskDescription other){
+        this.owner = other.owner;
+        this.runStart = other.runStart;
+        this.leaseExpiry = other.leaseExpiry;
+        this.leaseExpirations = other.leaseExpirations;
+        this.speculator = other.speculator;
+        this.speculatorStart = other.speculatorStart;
+        this.speculatorExpiry = other.speculatorExpiry;
+        this.attempts = other.attempts;
+    }
+
     /**
      * Creates a copy of this task with input file patterns "*" (incl. "||"-variables) expanded for
      * the given string. All the other properties of the original task, including dependencies, are preserved.
@@ -543,7 +804,8 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
             }
         }
 
-        return this.id + ": " + this.status + "\n"
+        return this.id + ": " + this.status + (this.owner != null ? " (" + this.owner
+                + (this.speculator != null ? ", speculative: " + this.speculator : "") + ")" : "") + "\n"
                 + "\talgorithm: " + this.algorithm.toString()
                 + "\n\tparams: " + this.parameters.toString()
                 + "\n\tiDependOn: " + iDO.toString() + "\n\tdependOnMe: " + dOM.toString()
@@ -639,6 +901,10 @@ public class TaskDescription implements Serializable, Comparable<TaskDescription
             return;
         }
         this.status = TaskStatus.PENDING;
+        this.owner = null;
+        this.runStart = 0;
+        this.leaseExpiry = 0;
+        this.endSpeculation();
 
         if (this.dependOnMe == null){
             return;
@@ -32,6 +32,7 @@ import com.google.common.collect.HashMultimap;
 import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.utils.StringUtils;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
@@ -71,6 +72,9 @@ public class TaskExpander {
     /** Expansion pattern matches for all affected tasks */
     private HashMultimap<TaskDescription, TaskDescription> expansions;
 
+    /** Cached directory listings and file patterns */
+    private DirectoryCache dirCache;
+
 
     /* METHODS */
 
@@ -81,9 +85,21 @@ public class TaskExpander {
      * @param task the task to be expanded
      */
     public TaskExpander(TaskDescription task){
+        this(task, new DirectoryCache());
+    }
+
+    /**
+     * This creates a new {@link TaskExpander} object that uses the given directory listings cache,
+     * which may be shared by several expansions within one {@link Plan} operation.
+     *
+     * @param task the task to be expanded
+     * @param dirCache the directory listings cache
+     */
+    TaskExpander(TaskDescription task, DirectoryCache dirCache){
 
         this.task = task;
         this.expansions = HashMultimap.create();
+        this.dirCache = dirCache;
     }
 
 
@@ -186,23 +202,6 @@ public class TaskExpander {
         }
     }
 
-    /**
-     * Returns a list of all files in the given directory. Throws an exception if there are none.
-     * @param path the desired directory
-     * @return a list of all files in the given directory
-     * @throws TaskException if there are no files in the directory
-     */
-    private String[] getFilesInDir(String dir) throws TaskException {
-
-        String [] files = new File(dir).list();
-        // no files in the directory
-        if (files == null) {
-            throw new TaskException(TaskException.ERR_NO_FILES, this.task.getId(), "(" + dir + ")");
-        }
-        return files;
-    }
-
-
     /**
      * Replaces all patterns in output file names according to the expansion value of input
      * patterns, replaces patterns in dependent tasks accordingly. 
@@ -483,26 +482,26 @@ public class TaskExpander {
     private HashSet<String>[] findMatches(String pattern) throws TaskException {
 
         Pair<String, String> dirFile = this.getDirAndFilePattern(pattern);
-        String [] files = this.getFilesInDir(dirFile.first);
         int [] vars = StringUtils.findPatternVariables(dirFile.second);
         HashSet<String> [] matches = new HashSet[10];
 
         if (vars == null){
             return matches;
         }
-        for (String file : files){
 
-            String [] curMatch = StringUtils.matchesEx(file, dirFile.second);
-
-            if (curMatch != null){
-                for (int j = 0; j < vars.length; ++j){
+        ArrayList<String []> fileMatches = this.dirCache.findMatches(dirFile.first, dirFile.second);
+        // no files in the directory
+        if (fileMatches == null){
+            throw new TaskException(TaskException.ERR_NO_FILES, this.task.getId(), "(" + dirFile.first + ")");
+        }
+        for (String [] curMatch : fileMatches){
+            for (int j = 0; j < vars.length; ++j){
 
-                    // expanding mode variables
-                    if (matches[vars[j]] == null){
-                        matches[vars[j]] = new HashSet<String>();
-                    }
-                    matches[vars[j]].add(curMatch[j]);
+                // expanding mode variables
+                if (matches[vars[j]] == null){
+                    matches[vars[j]] = new HashSet<String>();
                 }
+                matches[vars[j]].add(curMatch[j]);
             }
         }
         for (int j = 0; j < vars.length; ++j){
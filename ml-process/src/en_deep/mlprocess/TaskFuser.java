@@ -0,0 +1,228 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess;
+
+import en_deep.mlprocess.manipulation.FusedManipulation;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * This finds linear chains of tasks in the plan that may be processed row by row and whose intermediate
+ * files are not used by any other task, and replaces each such chain with a single
+ * {@link FusedManipulation} task, so that the intermediate files are not written at all.
+ * <p>
+ * Tasks with patterns in inputs or outputs are never fused. If a fused task has the
+ * {@link FusedManipulation#MATERIALIZE} parameter set, its outputs are still written.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+class TaskFuser {
+
+    /* DATA */
+
+    /** The (topologically sorted) plan to be processed */
+    private Vector<TaskDescription> plan;
+
+    /** Cached results of fusability checks */
+    private HashMap<TaskDescription, Boolean> fusable = new HashMap<TaskDescription, Boolean>();
+
+    /* METHODS */
+
+    /**
+     * Creates a new {@link TaskFuser} for the given plan.
+     * @param plan the topologically sorted plan
+     */
+    TaskFuser(Vector<TaskDescription> plan){
+        this.plan = plan;
+    }
+
+    /**
+     * Replaces all the chains of fusable tasks in the plan with {@link FusedManipulation} tasks.
+     * @return the number of tasks that have been fused
+     */
+    int fuse(){
+
+        int fused = 0;
+
+        for (int pos = 0; pos < this.plan.size(); ++pos){
+
+            TaskDescription first = this.plan.get(pos);
+            Vector<TaskDescription> chain = this.findChain(first);
+
+            if (chain.size() > 1){
+                TaskDescription fusedTask = this.createFusedTask(chain);
+
+                Logger.getInstance().message("Fusing tasks " + fusedTask.getId() + ".", Logger.V_DEBUG);
+                this.replaceChain(pos, chain, fusedTask);
+                fused += chain.size();
+            }
+        }
+        return fused;
+    }
+
+    /**
+     * Finds the longest chain of fusable tasks starting at the given task. The chain continues only if the
+     * current task has just one dependent task, which depends on nothing else and whose inputs are exactly
+     * the outputs of the current task.
+     *
+     * @param first the first task of the chain
+     * @return the chain (containing at least the first task)
+     */
+    private Vector<TaskDescription> findChain(TaskDescription first){
+
+        Vector<TaskDescription> chain = new Vector<TaskDescription>();
+        TaskDescription cur = first;
+
+        if (!this.isFusable(first)){
+            return chain;
+        }
+        chain.add(first);
+
+        while (true){
+            Set<TaskDescription> deps = cur.getDependent();
+            if (deps == null || deps.size() != 1){
+                break;
+            }
+            TaskDescription next = deps.iterator().next();
+            Set<TaskDescription> prereqs = next.getPrerequisites();
+
+            if (prereqs == null || prereqs.size() != 1 || !next.getInput().equals(cur.getOutput())
+                    || !this.isFusable(next)){
+                break;
+            }
+            chain.add(next);
+            cur = next;
+        }
+        return chain;
+    }
+
+    /**
+     * Checks if the given task may be a part of a fused chain (see
+     * {@link FusedManipulation#isFusable(String, String, Hashtable, Vector, Vector)}).
+     *
+     * @param task the task to be checked
+     * @return true if the task may be fused with others
+     */
+    private boolean isFusable(TaskDescription task){
+
+        Boolean res = this.fusable.get(task);
+
+        if (res == null){
+            res = task.getStatus() != TaskDescription.TaskStatus.DONE
+                    && !task.hasInputPatterns() && !task.hasOutputPatterns()
+                    && FusedManipulation.isFusable(task.getId(), task.getAlgorithm(), task.getParameters(),
+                    task.getInput(), task.getOutput());
+            this.fusable.put(task, res);
+        }
+        return res;
+    }
+
+    /**
+     * Creates the {@link FusedManipulation} task that corresponds to the given chain of tasks.
+     * @param chain the chain of tasks to be fused
+     * @return the new task
+     */
+    private TaskDescription createFusedTask(Vector<TaskDescription> chain){
+
+        Hashtable<String, String> params = new Hashtable<String, String>();
+        StringBuilder id = new StringBuilder();
+
+        params.put(FusedManipulation.STAGES, Integer.toString(chain.size()));
+
+        for (int i = 0; i < chain.size(); ++i){
+
+            TaskDescription stage = chain.get(i);
+            String prefix = FusedManipulation.STAGE_PREFIX + i + ".";
+
+            for (Entry<String, String> param : stage.getParameters().entrySet()){
+                params.put(prefix + param.getKey(), param.getValue());
+            }
+            params.put(prefix + FusedManipulation.ALGORITHM, stage.getAlgorithm());
+            params.put(prefix + FusedManipulation.ORIG_ID, stage.getId());
+
+            // the last stage's outputs are written in any case
+            if (i < chain.size() - 1 && stage.getParameters().containsKey(FusedManipulation.MATERIALIZE)){
+
+                StringBuilder outputs = new StringBuilder();
+                for (String output : stage.getOutput()){
+                    if (outputs.length() > 0){
+                        outputs.append(File.pathSeparator);
+                    }
+                    outputs.append(output);
+                }
+                params.put(prefix + FusedManipulation.STAGE_OUTPUT, outputs.toString());
+            }
+
+            if (i > 0){
+                id.append('+');
+            }
+            id.append(stage.getId());
+        }
+
+        return new TaskDescription(id.toString(), FusedManipulation.class.getName(), params,
+                new Vector<String>(chain.firstElement().getInput()), new Vector<String>(chain.lastElement().getOutput()));
+    }
+
+    /**
+     * Replaces the given chain of tasks in the plan by the fused task, taking over all the dependencies
+     * and the topological order of the chain.
+     *
+     * @param pos the position of the first task of the chain in the plan
+     * @param chain the chain of tasks
+     * @param fusedTask the fused task
+     */
+    private void replaceChain(int pos, Vector<TaskDescription> chain, TaskDescription fusedTask){
+
+        Set<TaskDescription> prereqs = chain.firstElement().getPrerequisites();
+        Set<TaskDescription> deps = chain.lastElement().getDependent();
+
+        for (TaskDescription task : chain){
+            task.looseAllDeps();
+        }
+        if (prereqs != null){
+            for (TaskDescription prereq : prereqs){
+                fusedTask.setDependency(prereq);
+            }
+        }
+        if (deps != null){
+            for (TaskDescription dep : deps){
+                dep.setDependency(fusedTask);
+            }
+        }
+        fusedTask.setOrder(chain.firstElement().getOrder());
+
+        this.plan.removeAll(chain);
+        this.plan.add(pos, fusedTask);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess;
+
+import en_deep.mlprocess.TaskDescription.TaskStatus;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resource usage of one run of a {@link Task}, as measured by the {@link Worker} around {@link Task#perform()}.
+ * <p>
+ * The CPU time and the allocated bytes are measured for the worker thread only (if the JVM supports it, -1
+ * otherwise). The bytes read and written are counted for all files opened through
+ * {@link en_deep.mlprocess.utils.FileUtils} by the worker thread and the threads it creates. The garbage collection
+ * time and the peak heap size are process-wide, so they include the work of other tasks running at the same time.
+ * </p><p>
+ * The metrics are appended as single lines of tab-separated <tt>key=value</tt> pairs to the plan's
+ * {@link Plan#METRICS_FILE_SUFFIX metrics file}.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+public class TaskMetrics {
+
+    /* CONSTANTS */
+
+    /** Metrics line key: task id */
+    public static final String TASK = "task";
+    /** Metrics line key: task algorithm */
+    public static final String ALGORITHM = "algorithm";
+    /** Metrics line key: worker id */
+    public static final String WORKER = "worker";
+    /** Metrics line key: resulting task status */
+    public static final String STATUS = "status";
+    /** Metrics line key: start time (milliseconds since the epoch) */
+    public static final String START = "start";
+    /** Metrics line key: wall time in milliseconds */
+    public static final String WALL_MS = "wall_ms";
+    /** Metrics line key: CPU time in milliseconds */
+    public static final String CPU_MS = "cpu_ms";
+    /** Metrics line key: allocated bytes */
+    public static final String ALLOC_BYTES = "alloc_bytes";
+    /** Metrics line key: garbage collection time in milliseconds */
+    public static final String GC_MS = "gc_ms";
+    /** Metrics line key: bytes read */
+    public static final String READ_BYTES = "read_bytes";
+    /** Metrics line key: bytes written */
+    public static final String WRITTEN_BYTES = "written_bytes";
+    /** Metrics line key: peak heap size in bytes */
+    public static final String PEAK_HEAP_BYTES = "peak_heap_bytes";
+
+    /* DATA */
+
+    /** The metrics of the task run by the current thread (inherited by the threads it creates) */
+    private static final InheritableThreadLocal<TaskMetrics> current = new InheritableThreadLocal<TaskMetrics>();
+    /** The number of tasks being measured in this process (peak heap usage is only reset if there is none) */
+    private static final AtomicInteger active = new AtomicInteger();
+
+    /** The task id */
+    private final String taskId;
+    /** The task algorithm */
+    private final String algorithm;
+    /** The worker id */
+    private final String worker;
+    /** The resulting task status */
+    private TaskStatus status;
+
+    /** Start time (milliseconds since the epoch) */
+    private long start;
+    /** Wall time (nanoseconds while running, then milliseconds) */
+    private long wall;
+    /** CPU time (nanoseconds while running, then milliseconds) */
+    private long cpu;
+    /** Allocated bytes */
+    private long alloc;
+    /** Garbage collection time in milliseconds */
+    private long gc;
+    /** Peak heap usage */
+    private long peakHeap;
+    /** Bytes read */
+    private final AtomicLong read = new AtomicLong();
+    /** Bytes written */
+    private final AtomicLong written = new AtomicLong();
+
+    /* METHODS */
+
+    /**
+     * Creates new metrics for the given task.
+     */
+    private TaskMetrics(String taskId, String algorithm, String worker){
+        this.taskId = taskId;
+        this.algorithm = algorithm;
+        this.worker = worker;
+    }
+
+    /**
+     * Starts measuring the given task in the current thread.
+     *
+     * @param desc the task to be measured
+     * @param worker the id of the worker that runs the task
+     * @return the running metrics
+     */
+    static TaskMetrics start(TaskDescription desc, String worker){
+
+        TaskMetrics metrics = new TaskMetrics(desc.getId(), desc.getAlgorithm(), worker);
+
+        if (active.getAndIncrement() == 0){
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+                if (pool.getType() == MemoryType.HEAP){
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+        metrics.start = System.currentTimeMillis();
+        metrics.wall = System.nanoTime();
+        metrics.cpu = getCpuTime();
+        metrics.alloc = getAllocatedBytes();
+        metrics.gc = getGcTime();
+
+        current.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Stops measuring the task.
+     * @param status the resulting task status
+     */
+    void stop(TaskStatus status){
+
+        this.wall = (System.nanoTime() - this.wall) / 1000000L;
+        long cpuNow = getCpuTime();
+        this.cpu = cpuNow == -1 || this.cpu == -1 ? -1 : (cpuNow - this.cpu) / 1000000L;
+        long allocNow = getAllocatedBytes();
+        this.alloc = allocNow == -1 || this.alloc == -1 ? -1 : allocNow - this.alloc;
+        this.gc = getGcTime() - this.gc;
+        this.status = status;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null){
+                this.peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        active.decrementAndGet();
+        current.remove();
+    }
+
+    /**
+     * Returns the metrics of the task run by the current thread, or null if there is none.
+     * @return the current task metrics, or null
+     */
+    public static TaskMetrics current(){
+        return current.get();
+    }
+
+    /**
+     * Adds the given number to the bytes read by the task.
+     * @param bytes the number of bytes read
+     */
+    public void addBytesRead(long bytes){
+        this.read.addAndGet(bytes);
+    }
+
+    /**
+     * Adds the given number to the bytes written by the task.
+     * @param bytes the number of bytes written
+     */
+    public void addBytesWritten(long bytes){
+        this.written.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the CPU time of the current thread in nanoseconds, or -1 if not supported.
+     */
+    private static long getCpuTime(){
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread, or -1 if not supported.
+     */
+    private static long getAllocatedBytes(){
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()){
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the total garbage collection time of the process, in milliseconds.
+     */
+    private static long getGcTime(){
+
+        long total = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()){
+            total += Math.max(0, gcBean.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Appends the metrics as one line to the given file, locking it so that more processes may share it.
+     *
+     * @param file the metrics file
+     * @throws IOException if the file cannot be written
+     */
+    void writeTo(File file) throws IOException {
+
+        FileOutputStream os = new FileOutputStream(file, true);
+        FileLock lock = null;
+
+        try {
+            lock = os.getChannel().lock();
+            os.write((this.toString() + "\n").getBytes(Process.getInstance().getCharset()));
+        }
+        finally {
+            if (lock != null){
+                lock.release();
+            }
+            os.close();
+        }
+    }
+
+    /**
+     * Returns the metrics line: tab-separated <tt>key=value</tt> pairs.
+     * @return the metrics as a string
+     */
+    @Override
+    public String toString(){
+
+        return TASK + "=" + this.taskId + "\t" + ALGORITHM + "=" + this.algorithm + "\t" + WORKER + "=" + this.worker
+                + "\t" + STATUS + "=" + this.status + "\t" + START + "=" + this.start
+                + "\t" + WALL_MS + "=" + this.wall + "\t" + CPU_MS + "=" + this.cpu
+                + "\t" + ALLOC_BYTES + "=" + this.alloc + "\t" + GC_MS + "=" + this.gc
+                + "\t" + READ_BYTES + "=" + this.read.get() + "\t" + WRITTEN_BYTES + "=" + this.written.get()
+                + "\t" + PEAK_HEAP_BYTES + "=" + this.peakHeap;
+    }
+}
@@ -31,8 +31,16 @@ import en_deep.mlprocess.TaskDescription.TaskStatus;
 import en_deep.mlprocess.exception.PlanException;
 import en_deep.mlprocess.exception.SchedulingException;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
 import java.util.Vector;
 
 
@@ -41,6 +49,9 @@ import java.util.Vector;
  * executing them.
  *
  * If there are no more tasks to be done, the Worker exits.
+ *
+ * While working, the Worker periodically renews the leases of its unfinished tasks in the
+ * {@link Plan}, so that they are not taken over by other workers.
  * 
  * @author Ondrej Dusek
  */
@@ -54,6 +65,12 @@ public class Worker implements Runnable {
     /** Random time that is added to base suspend time */
     private static final int SUSPEND_RANDOM = 10000;
 
+    /** How many times the task leases are renewed within one lease time */
+    private static final int RENEWALS_PER_LEASE = 3;
+
+    /** The suffix of the per-task log files */
+    private static final String TASK_LOG_SUFFIX = ".log";
+
 
     /* DATA */
     
@@ -63,6 +80,9 @@ public class Worker implements Runnable {
     /** {@link Worker} thread identification string */
     private String id;
 
+    /** The tasks whose leases are to be renewed (those not yet finished), or null */
+    private volatile List<TaskDescription> leasedTasks;
+
 
     /* METHODS */
 
@@ -72,12 +92,18 @@ public class Worker implements Runnable {
      */
     public Worker(int number){
 
-        try {
-            this.id = number + "@" + InetAddress.getLocalHost().getHostName();
-        }
-        catch (UnknownHostException ex) {
-            this.id = number + "@unknown";
+        // the JVM name is usually "pid@hostname", which distinguishes processes on the same machine
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+
+        if (jvmName.indexOf('@') < 0){ // unknown format, use a random identifier with the host name
+            try {
+                jvmName = UUID.randomUUID() + "@" + InetAddress.getLocalHost().getHostName();
+            }
+            catch (UnknownHostException ex) {
+                jvmName = UUID.randomUUID() + "@unknown";
+            }
         }
+        this.id = number + "." + jvmName;
     }
 
 
@@ -90,6 +116,8 @@ public class Worker implements Runnable {
 
         Logger.getInstance().message("Worker thread " + this.id + " started.", Logger.V_INFO);
 
+        Timer leaseTimer = this.startLeaseRenewal();
+
         try {
             while (this.waitForNextTasks()){
 
@@ -102,30 +130,51 @@ public class Worker implements Runnable {
                     for (; current < this.currentTasks.size(); ++current){
 
                         time = System.currentTimeMillis();
+                        // the start time is reported to the plan with the next lease renewal
+                        this.currentTasks.get(current).startRun(time);
+                        this.leasedTasks = new Vector<TaskDescription>(
+                                this.currentTasks.subList(current, this.currentTasks.size()));
 
-                        task = Task.createTask(this.currentTasks.get(current));
-                        Logger.getInstance().message("Worker thread " + this.id + " working on task " + task.getId(),
-                                Logger.V_INFO);
-                        task.perform();
+                        TaskMetrics metrics = TaskMetrics.start(this.currentTasks.get(current), this.id);
+                        boolean success = false;
+
+                        // the metrics are recorded for any failure, including unexpected runtime exceptions
+                        try {
+                            task = Task.createTask(this.currentTasks.get(current));
+                            this.startTaskLog(task.getId());
+                            Logger.getInstance().messagef("Worker thread %s working on task %s", Logger.V_INFO,
+                                    this.id, task.getId());
+                            task.perform();
+                            this.currentTasks.get(current).finishRun(System.currentTimeMillis());
+                            success = true;
+                        }
+                        finally {
+                            this.recordMetrics(metrics, success ? TaskStatus.DONE : TaskStatus.FAILED);
+                        }
 
                         time = System.currentTimeMillis() - time;
-                        Logger.getInstance().message("task " + task.getId() + " finished in " + time/1000.0 + " secs.",
-                                Logger.V_INFO);
+                        Logger.getInstance().messagef("task %s finished in %.3f secs.", Logger.V_INFO, task.getId(),
+                                time / 1000.0);
+                        Logger.getInstance().endTaskLog();
                     }
 
-                    Plan.getInstance().updateStatuses(this.currentTasks, TaskStatus.DONE);
+                    this.leasedTasks = null;
+                    Plan.getInstance().updateStatuses(this.currentTasks, TaskStatus.DONE, this.id);
                 }
                 catch(TaskException ex){
+                    this.leasedTasks = null;
                     Logger.getInstance().message(ex.getMessage(), Logger.V_IMPORTANT);
+                    Logger.getInstance().endTaskLog();
                     // If there's an exception, set the done tasks to DONE, the bad task to FAILED and those not done back to PENDING
                     if (current > 0){
-                        Plan.getInstance().updateStatuses(this.currentTasks.subList(0, current), TaskStatus.DONE);
+                        Plan.getInstance().updateStatuses(this.currentTasks.subList(0, current), TaskStatus.DONE,
+                                this.id);
                     }
                     Plan.getInstance().updateStatuses(this.currentTasks.subList(current, current + 1),
-                            TaskStatus.FAILED);
+                            TaskStatus.FAILED, this.id);
                     if (current < this.currentTasks.size() - 1){
                         Plan.getInstance().updateStatuses(this.currentTasks.subList(current + 1, this.currentTasks.size()),
-                                TaskStatus.PENDING);
+                                TaskStatus.PENDING, this.id);
                     }
                     continue;
                 }
@@ -136,6 +185,10 @@ public class Worker implements Runnable {
             Logger.getInstance().message("Plan access in worker thread #" + this.id + ": " + ex.getMessage(),
                     Logger.V_IMPORTANT);
         }
+        finally {
+            leaseTimer.cancel();
+            Logger.getInstance().endTaskLog();
+        }
 
         Logger.getInstance().message("Worker thread #" + this.id + " finished - nothing else to do.", Logger.V_INFO);
     }
@@ -153,7 +206,7 @@ public class Worker implements Runnable {
 
         try {
             // try to get the next pending task to process
-            this.currentTasks = Plan.getInstance().getNextPendingTasks();
+            this.currentTasks = Plan.getInstance().getNextPendingTasks(this.id);
         }
         catch(SchedulingException ex){
             
@@ -173,4 +226,70 @@ public class Worker implements Runnable {
         return !currentTasks.isEmpty();
     }
 
+    /**
+     * Starts copying the messages of this thread to the log file of the given task, if the per-task
+     * logs are turned on.
+     * @param taskId the task id
+     */
+    private void startTaskLog(String taskId){
+
+        String logDir = Process.getInstance().getTaskLogDir();
+
+        if (logDir != null){
+            Logger.getInstance().startTaskLog(logDir + FileUtils.fileNameEncode(taskId) + TASK_LOG_SUFFIX);
+        }
+    }
+
+    /**
+     * Stops measuring the current task and appends its metrics to the plan's metrics file. Errors are
+     * only logged, since they do not affect the task results.
+     *
+     * @param metrics the metrics of the current task
+     * @param status the resulting task status
+     */
+    private void recordMetrics(TaskMetrics metrics, TaskStatus status){
+
+        metrics.stop(status);
+        try {
+            metrics.writeTo(new File(Process.getInstance().getInputFile() + Plan.METRICS_FILE_SUFFIX));
+        }
+        catch (IOException ex){
+            Logger.getInstance().message("Cannot write task metrics in worker thread #" + this.id + ": "
+                    + ex.getMessage(), Logger.V_WARNING);
+        }
+    }
+
+    /**
+     * Starts a background timer that periodically renews the leases of all the tasks in {@link #leasedTasks}
+     * in the {@link Plan}. Errors are only logged, since the tasks may still be finished correctly.
+     *
+     * @return the running timer, to be cancelled when the worker finishes
+     */
+    private Timer startLeaseRenewal(){
+
+        Timer timer = new Timer("lease-" + this.id, true);
+        long period = Math.max(1, Plan.getInstance().getLeaseTime() / RENEWALS_PER_LEASE);
+
+        timer.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+
+                List<TaskDescription> tasks = leasedTasks;
+                if (tasks == null){
+                    return;
+                }
+                try {
+                    Plan.getInstance().renewLeases(tasks, id);
+                }
+                catch (PlanException ex){
+                    Logger.getInstance().message("Cannot renew task leases in worker thread #" + id + ": "
+                            + ex.getMessage(), Logger.V_WARNING);
+                }
+            }
+        }, period, period);
+
+        return timer;
+    }
+
 }
@@ -0,0 +1,506 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.computation;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.Task;
+import en_deep.mlprocess.computation.wekaclassifier.Model.BinarizationTypes;
+import en_deep.mlprocess.evaluation.AbstractEvaluation;
+import en_deep.mlprocess.evaluation.EvalClassification;
+import en_deep.mlprocess.evaluation.Stats;
+import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
+import en_deep.mlprocess.utils.StringUtils;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * This runs a k-fold cross-validation of a WEKA classifier on one data set within a single task. The data
+ * are loaded only once and the folds are given by index arrays over the loaded data; the individual folds are
+ * trained and evaluated in parallel. The results are the same evaluation statistics as produced by
+ * {@link EvalClassification}, summed over all folds.
+ *
+ * @author Ondrej Dusek
+ */
+public class CrossValidation extends Task {
+
+    /* CONSTANTS */
+
+    /** Name of the 'folds' parameter */
+    private static final String FOLDS = "folds";
+    /** Name of the 'seed' parameter */
+    private static final String SEED = "seed";
+    /** Name of the 'threads' parameter */
+    private static final String THREADS = "threads";
+    /** Name of the 'group_attr' parameter */
+    private static final String GROUP_ATTR = "group_attr";
+    /** Name of the 'binarize' parameter */
+    private static final String BINARIZE = "binarize";
+    /** Name of the 'ignore_attr' parameter */
+    private static final String IGNORE_ATTRIBS = WekaClassifier.IGNORE_ATTRIBS;
+    /** Name of the 'class_arg' parameter */
+    private static final String CLASS_ARG = GeneralClassifier.CLASS_ARG;
+    /** Name of the 'weka_class' parameter */
+    private static final String WEKA_CLASS = WekaClassifier.WEKA_CLASS;
+
+    /** Default number of folds */
+    private static final int DEFAULT_FOLDS = 10;
+    /** The value of the class attribute considered as empty */
+    private static final String EMPTY = AbstractEvaluation.EMPTY;
+    /** Missing value marking for gold and test values (different from a missing {@link #EMPTY} value) */
+    private static final int MISSING = AbstractEvaluation.MISSING;
+
+    /* DATA */
+
+    /** The number of folds */
+    private int folds;
+    /** The random seed for the fold assignment */
+    private long seed;
+    /** The number of folds processed in parallel */
+    private int threads;
+    /** The name of the attribute whose values must not be split among folds, or null */
+    private String groupAttr;
+    /** The binarization setting */
+    private BinarizationTypes binarize = BinarizationTypes.NONE;
+    /** The name of the WEKA classifier class */
+    private String wekaClass;
+    /** The name of the class attribute */
+    private String classArg;
+    /** The names of the attributes to be ignored, or null */
+    private String [] ignoredAttribs;
+
+    /* METHODS */
+
+    /**
+     * This creates a new {@link CrossValidation} task, checking the parameters, inputs and outputs.
+     * <p>
+     * There must be exactly one input -- the data set -- and one or two outputs. The first output receives
+     * the statistics summed over all folds, in the same format as output by {@link EvalClassification}, the
+     * second (optional) output receives the statistics for the individual folds.
+     * </p>
+     * <p>
+     * There are two compulsory parameters:
+     * </p>
+     * <ul>
+     * <li><tt>weka_class</tt> -- the WEKA classifier to be used</li>
+     * <li><tt>class_arg</tt> -- the name of the class attribute</li>
+     * </ul>
+     * <p>
+     * The following parameters are optional:
+     * </p>
+     * <ul>
+     * <li><tt>folds</tt> -- the number of folds (default: 10)</li>
+     * <li><tt>seed</tt> -- the random seed for the assignment of instances to folds (default: 1)</li>
+     * <li><tt>threads</tt> -- the number of folds trained and evaluated in parallel (default: 1). Each running fold
+     * needs its own copy of the training data.</li>
+     * <li><tt>group_attr</tt> -- the name of an attribute (usually <tt>sent-id</tt>) whose values are never split
+     * among folds. The groups are distributed so that the folds have similar sizes; otherwise, the folds are
+     * stratified by the class values.</li>
+     * <li><tt>binarize</tt> -- possible values: <tt>none, standard, set_aware</tt>, same as in
+     * {@link WekaClassifier}</li>
+     * <li><tt>ignore_attr</tt> -- space-separated names of attributes that are not used for classification</li>
+     * </ul>
+     * <p>
+     * All other (one-character) parameters are passed to the WEKA classifier, as in {@link WekaClassifier}.
+     * </p>
+     */
+    public CrossValidation(String id, Hashtable<String, String> parameters,
+            Vector<String> input, Vector<String> output) throws TaskException {
+
+        super(id, parameters, input, output);
+
+        if (this.input.size() != 1){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id);
+        }
+        if (this.output.size() < 1 || this.output.size() > 2){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id);
+        }
+        if (!this.hasParameter(WEKA_CLASS) || !this.hasParameter(CLASS_ARG)){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Parameters weka_class and class_arg "
+                    + "must be set.");
+        }
+        this.wekaClass = this.parameters.remove(WEKA_CLASS);
+        this.classArg = this.parameters.remove(CLASS_ARG);
+
+        this.folds = this.hasParameter(FOLDS) ? this.getIntParameterVal(FOLDS) : DEFAULT_FOLDS;
+        this.seed = this.hasParameter(SEED) ? this.getIntParameterVal(SEED) : 1;
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS) : 1;
+        if (this.folds < 2){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "There must be at least 2 folds.");
+        }
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
+        this.parameters.remove(FOLDS);
+        this.parameters.remove(SEED);
+        this.parameters.remove(THREADS);
+
+        this.groupAttr = this.parameters.remove(GROUP_ATTR);
+        if (this.hasParameter(IGNORE_ATTRIBS)){
+            this.ignoredAttribs = this.parameters.remove(IGNORE_ATTRIBS).split("\\s+");
+        }
+        if (this.hasParameter(BINARIZE)){
+            try {
+                this.binarize = BinarizationTypes.valueOf(this.parameters.remove(BINARIZE).toUpperCase());
+            }
+            catch (IllegalArgumentException e){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Binarize must be "
+                        + "one of: none, standard, set_aware");
+            }
+        }
+        // check that the classifier can be created with the given parameters
+        this.createClassifier();
+    }
+
+    @Override
+    public void perform() throws TaskException {
+
+        ExecutorService pool = null;
+
+        try {
+            Logger.getInstance().messagef("%s: reading %s...", Logger.V_DEBUG, this.id, this.input.get(0));
+            Instances data = FileUtils.readArff(this.input.get(0));
+
+            if (data.attribute(this.classArg) == null){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Class attribute " + this.classArg
+                        + " not found.");
+            }
+            // assign the folds (before any attributes are removed)
+            final int [] foldOf = this.groupAttr != null ? this.assignGroupFolds(data) : this.assignStratifiedFolds(data);
+            final int emptyIdx = data.attribute(this.classArg).indexOfValue(EMPTY);
+            final Instances prepared = this.prepareData(data);
+            data = null;
+
+            // train and evaluate the folds in parallel
+            Vector<Future<Stats []>> results = new Vector<Future<Stats []>>(this.folds);
+            pool = Executors.newFixedThreadPool(Math.min(this.threads, this.folds));
+
+            for (int fold = 0; fold < this.folds; ++fold){
+
+                final int curFold = fold;
+
+                results.add(pool.submit(new Callable<Stats []>() {
+                    public Stats [] call() throws Exception {
+                        return runFold(prepared, foldOf, curFold, emptyIdx);
+                    }
+                }));
+            }
+
+            // collect the results in the original order
+            Stats labeled = new Stats(), unlabeled = new Stats();
+            PrintStream foldOut = this.output.size() > 1 ? new PrintStream(this.output.get(1)) : null;
+
+            for (int fold = 0; fold < this.folds; ++fold){
+
+                Stats [] foldStats = this.getResult(results.get(fold));
+
+                labeled.add(foldStats[0]);
+                unlabeled.add(foldStats[1]);
+                Logger.getInstance().messagef("%s: fold %d: %s / %s", Logger.V_DEBUG, this.id, fold, foldStats[0],
+                        foldStats[1]);
+                if (foldOut != null){
+                    foldOut.println("fold:" + fold);
+                    EvalClassification.printStats(foldStats[0], foldStats[1], foldOut);
+                    foldOut.println();
+                }
+            }
+            if (foldOut != null){
+                foldOut.close();
+            }
+
+            PrintStream out = new PrintStream(this.output.get(0));
+            EvalClassification.printStats(labeled, unlabeled, out);
+            out.close();
+        }
+        catch (TaskException e){
+            throw e;
+        }
+        catch (Exception e){
+            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+        }
+        finally {
+            if (pool != null){
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * This waits for the given fold to finish and returns its result, unwrapping any exceptions
+     * thrown in the computation.
+     *
+     * @param future the fold result to wait for
+     * @return the labeled and unlabeled statistics of the fold
+     */
+    private Stats [] getResult(Future<Stats []> future) throws Exception {
+
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a new instance of the WEKA classifier with the given parameters.
+     *
+     * @return a new classifier, ready to be trained
+     * @throws TaskException if the classifier cannot be created
+     */
+    private AbstractClassifier createClassifier() throws TaskException {
+
+        AbstractClassifier classif;
+
+        try {
+            classif = (AbstractClassifier) Class.forName(this.wekaClass).getConstructor().newInstance();
+        }
+        catch (Exception e) {
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id,
+                    "WEKA class not found or not valid: " + this.wekaClass);
+        }
+        try {
+            classif.setOptions(StringUtils.getWekaOptions(this.parameters));
+        }
+        catch (Exception e){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Could not set classifier parameters.");
+        }
+        return classif;
+    }
+
+    /**
+     * Assigns the instances to folds, so that each fold has approximately the same distribution of class values.
+     * The instances of each class value (and the instances with missing class) are shuffled and dealt to the folds
+     * one by one.
+     *
+     * @param data the data set
+     * @return the fold number for each instance
+     */
+    private int [] assignStratifiedFolds(Instances data) {
+
+        Attribute classAttr = data.attribute(this.classArg);
+        Random rand = new Random(this.seed);
+        int [] foldOf = new int [data.numInstances()];
+        int classesNo = classAttr.isNominal() ? classAttr.numValues() + 1 : 1;
+        ArrayList<ArrayList<Integer>> byClass = new ArrayList<ArrayList<Integer>>(classesNo);
+        int next = 0;
+
+        for (int i = 0; i < classesNo; ++i){
+            byClass.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < data.numInstances(); ++i){
+            Instance inst = data.instance(i);
+            if (!classAttr.isNominal() || inst.isMissing(classAttr)){
+                byClass.get(classesNo - 1).add(i);
+            }
+            else {
+                byClass.get((int) inst.value(classAttr)).add(i);
+            }
+        }
+        // deal the shuffled instances of each class to folds, continuing where the previous class ended
+        for (ArrayList<Integer> members : byClass){
+            Collections.shuffle(members, rand);
+            for (int inst : members){
+                foldOf[inst] = next;
+                next = (next + 1) % this.folds;
+            }
+        }
+        return foldOf;
+    }
+
+    /**
+     * Assigns the instances to folds, so that all instances with the same value of the {@link #groupAttr} attribute
+     * are in the same fold. The groups are taken in a random order and each one is assigned to the fold with the
+     * lowest number of instances so far.
+     *
+     * @param data the data set
+     * @return the fold number for each instance
+     */
+    private int [] assignGroupFolds(Instances data) throws TaskException {
+
+        Attribute group = data.attribute(this.groupAttr);
+
+        if (group == null){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Group attribute " + this.groupAttr
+                    + " not found.");
+        }
+
+        // collect the instances for each group
+        Hashtable<Double, ArrayList<Integer>> groups = new Hashtable<Double, ArrayList<Integer>>();
+        ArrayList<Double> keys = new ArrayList<Double>();
+
+        for (int i = 0; i < data.numInstances(); ++i){
+
+            Double key = data.instance(i).value(group);
+            ArrayList<Integer> members = groups.get(key);
+
+            if (members == null){
+                members = new ArrayList<Integer>();
+                groups.put(key, members);
+                keys.add(key);
+            }
+            members.add(i);
+        }
+        if (keys.size() < this.folds){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Not enough groups for "
+                    + this.folds + " folds.");
+        }
+
+        // assign the groups in random order to the smallest folds
+        int [] foldOf = new int [data.numInstances()];
+        int [] foldSizes = new int [this.folds];
+
+        Collections.shuffle(keys, new Random(this.seed));
+        for (Double key : keys){
+
+            int smallest = 0;
+            for (int f = 1; f < this.folds; ++f){
+                if (foldSizes[f] < foldSizes[smallest]){
+                    smallest = f;
+                }
+            }
+            for (int inst : groups.get(key)){
+                foldOf[inst] = smallest;
+            }
+            foldSizes[smallest] += groups.get(key).size();
+        }
+        return foldOf;
+    }
+
+    /**
+     * Prepares the data for classification -- sets the class attribute, removes the ignored attributes
+     * and binarizes the data if needed. The order of the instances is kept.
+     *
+     * @param data the loaded data
+     * @return the data ready for classification
+     */
+    private Instances prepareData(Instances data) throws Exception {
+
+        data.setClass(data.attribute(this.classArg));
+
+        if (this.ignoredAttribs != null || this.groupAttr != null){
+
+            Vector<Integer> retained = new Vector<Integer>();
+            Hashtable<String, Boolean> removed = new Hashtable<String, Boolean>();
+
+            if (this.ignoredAttribs != null){
+                for (String name : this.ignoredAttribs){
+                    removed.put(name, true);
+                }
+            }
+            if (this.groupAttr != null){ // the group ids are never useful for classification
+                removed.put(this.groupAttr, true);
+            }
+            removed.remove(this.classArg);
+
+            for (int i = 0; i < data.numAttributes(); ++i){
+                if (!removed.containsKey(data.attribute(i).name())){
+                    retained.add(i);
+                }
+            }
+            int [] retainedIdxs = new int [retained.size()];
+            for (int i = 0; i < retainedIdxs.length; ++i){
+                retainedIdxs[i] = retained.get(i);
+            }
+            data = FileUtils.filterAttributes(data, retainedIdxs);
+            data.setClass(data.attribute(this.classArg));
+        }
+        if (this.binarize != BinarizationTypes.NONE){
+            Logger.getInstance().messagef("%s: binarizing... (%s)", Logger.V_DEBUG, this.id, data.relationName());
+            data = WekaClassifier.sparseNominalToBinary(this.id, data, this.binarize);
+        }
+        return data;
+    }
+
+    /**
+     * Trains the classifier on all but the given fold and evaluates it on the given fold.
+     *
+     * @param data the whole data set
+     * @param foldOf the fold numbers for all instances
+     * @param fold the fold to be evaluated
+     * @param emptyIdx the index of the empty class value, or -1
+     * @return the labeled and unlabeled statistics for the fold
+     */
+    private Stats [] runFold(Instances data, int [] foldOf, int fold, int emptyIdx) throws Exception {
+
+        Instances train = new Instances(data, data.numInstances());
+        Instances test = new Instances(data, 0);
+        Stats labeled = new Stats(), unlabeled = new Stats();
+        AbstractClassifier classif = this.createClassifier();
+
+        // the held-out instances are copied, too, since the folds are classified concurrently
+        for (int i = 0; i < foldOf.length; ++i){
+            if (foldOf[i] != fold){
+                train.add(data.instance(i));
+            }
+            else {
+                test.add(data.instance(i));
+            }
+        }
+        train.compactify();
+        test.compactify();
+
+        Logger.getInstance().messagef("%s: training fold %d (%d instances)...", Logger.V_DEBUG, this.id, fold,
+                train.numInstances());
+        classif.buildClassifier(train);
+        train = null;
+
+        for (int i = 0; i < test.numInstances(); ++i){
+
+            Instance inst = test.instance(i);
+            double result = classif.classifyInstance(inst);
+            int goldVal = inst.classIsMissing() ? MISSING : (int) inst.classValue();
+            int testVal = Double.isNaN(result) ? MISSING : (int) result;
+
+            // missing values never match each other in the labeled statistics, as in EvalClassification
+            labeled.add(goldVal == MISSING ? Double.NaN : goldVal, testVal == MISSING ? Double.NaN : testVal,
+                    emptyIdx, true);
+            unlabeled.add(goldVal, testVal, emptyIdx, false);
+        }
+        return new Stats [] { labeled, unlabeled };
+    }
+}
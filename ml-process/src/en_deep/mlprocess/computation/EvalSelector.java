@@ -129,20 +129,8 @@ public abstract class EvalSelector extends Task {
         for (int i = 0; i < evalFiles.length; ++i) {
 
             int index = testingOrder != null ? testingOrder[i] : i;
-            Double val;
+            double val = this.readMeasure(evalFiles[index]);
 
-            try {
-                val = FileUtils.readValue(evalFiles[index], this.measure);
-            }
-            catch (NumberFormatException e){
-                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "File : "
-                            + evalFiles[index] + " : measure " + this.measure + " not numeric.");
-            }
-
-            if (val == null){
-                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "File : " + evalFiles[index] +
-                        " : measure " +  this.measure + " not found.");
-            }
             if (val > bestVal){
                 bestIdxs.clear();
                 bestIdxs.add(index);
@@ -156,6 +144,33 @@ public abstract class EvalSelector extends Task {
         return new Pair<Vector<Integer>, Double>(bestIdxs, bestVal);
     }
 
+    /**
+     * Reads the value of the {@link #measure} from the given file with evaluation statistics as output by
+     * {@link en_deep.mlprocess.evaluation.EvalClassification}.
+     *
+     * @param evalFile the statistics file
+     * @return the value of the measure
+     * @throws TaskException if the measure is not found in the file or is not numeric
+     */
+    protected double readMeasure(String evalFile) throws IOException, TaskException {
+
+        Double val;
+
+        try {
+            val = FileUtils.readValue(evalFile, this.measure);
+        }
+        catch (NumberFormatException e){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "File : "
+                        + evalFile + " : measure " + this.measure + " not numeric.");
+        }
+
+        if (val == null){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "File : " + evalFile +
+                    " : measure " +  this.measure + " not found.");
+        }
+        return val;
+    }
+
     /**
      * This writes the statistics for the best result into the given output file.
      * @param outFile the output file name
@@ -170,7 +185,7 @@ public abstract class EvalSelector extends Task {
      */
     protected enum TempfileTypes {
 
-        CLASSIF, STATS, ROUND_STATS, BEST_CLASSIF, BEST_STATS
+        CLASSIF, STATS, ROUND_STATS, BEST_CLASSIF, BEST_STATS, SAMPLE
     }
 
 
@@ -191,7 +206,7 @@ public abstract class EvalSelector extends Task {
      *
      * @param type the type of the file
      * @param round the round for which the file is ment (-1 if not used)
-     * @param order the number of the file (not used for ROUND_STATS, BEST_STATS and BEST_CLASSIF)
+     * @param order the number of the file (not used for ROUND_STATS, BEST_STATS, BEST_CLASSIF and SAMPLE)
      * @return the file name
      */
     protected String getTempfileName(TempfileTypes type, int round, int order) {
@@ -210,6 +225,8 @@ public abstract class EvalSelector extends Task {
                 return this.tempFilePattern.replace("*", this.expandedId + lbr + "best)") + STATS_EXT;
             case BEST_CLASSIF:
                 return this.tempFilePattern.replace("*", this.expandedId + lbr + "best)") + classExt;
+            case SAMPLE:
+                return this.tempFilePattern.replace("*", this.expandedId + lbr + "sample)") + classExt;
             default:
                 return "";
         }
@@ -4,6 +4,7 @@
  */
 package en_deep.mlprocess.computation;
 
+import en_deep.mlprocess.computation.wekaclassifier.DirectLibLINEAR;
 import en_deep.mlprocess.computation.wekaclassifier.Model;
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.Task;
@@ -89,7 +90,13 @@ public class ModelDumper extends Task {
         }
 
         // retrieve the model weights
-        de.bwaldvogel.liblinear.Model internal = (de.bwaldvogel.liblinear.Model) ((LibLINEAR) model.classif).getModel();
+        de.bwaldvogel.liblinear.Model internal;
+        if (model.classif instanceof DirectLibLINEAR){
+            internal = ((DirectLibLINEAR) model.classif).getModel();
+        }
+        else {
+            internal = (de.bwaldvogel.liblinear.Model) ((LibLINEAR) model.classif).getModel();
+        }
         double [] weights = internal.getFeatureWeights();
         StringBuilder sb = new StringBuilder();
         
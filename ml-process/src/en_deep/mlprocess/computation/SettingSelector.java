@@ -27,12 +27,21 @@
 
 package en_deep.mlprocess.computation;
 
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.TaskDescription;
+import en_deep.mlprocess.TaskDescription.TaskStatus;
+import en_deep.mlprocess.evaluation.EvalClassification;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
+import en_deep.mlprocess.utils.StringUtils;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.Random;
 import java.util.Vector;
+import weka.core.Instances;
 
 /**
  * This class tries to run the given WEKA classifier on the same data with several
@@ -42,6 +51,35 @@ import java.util.Vector;
  */
 public class SettingSelector extends WekaSettingTrials {
 
+    /* CONSTANTS */
+
+    /** The name of the 'halving_start' parameter */
+    private static final String HALVING_START = "halving_start";
+    /** The name of the 'halving_rate' parameter */
+    private static final String HALVING_RATE = "halving_rate";
+    /** The name of the 'halving_seed' parameter */
+    private static final String HALVING_SEED = "halving_seed";
+    /** The name of the reserved 'halving_round' parameter */
+    private static final String HALVING_ROUND = "halving_round";
+    /** The name of the reserved 'halving_settings' parameter */
+    private static final String HALVING_SETTINGS = "halving_settings";
+
+    /** Default value of the 'halving_rate' parameter */
+    private static final int DEFAULT_HALVING_RATE = 3;
+
+    /* DATA */
+
+    /** The portion of training data used in the first round of successive halving (0 if not used) */
+    private double halvingStart;
+    /** The factor by which the number of settings is reduced and the training data grown in each round */
+    private int halvingRate = DEFAULT_HALVING_RATE;
+    /** The random seed for training data samples */
+    private long halvingSeed = 1;
+    /** The current round of successive halving */
+    private int halvingRound;
+    /** The numbers of the settings that are evaluated in the inputs of this task (null if all settings) */
+    private int [] settingNos;
+
     /* METHODS */
 
     /**
@@ -66,6 +104,19 @@ public class SettingSelector extends WekaSettingTrials {
      * <li><tt>delete_tempfiles</tt> -- deletes all the tempfiles afterwards</li>
      * </ul>
      * <p>
+     * The settings may be selected by successive halving: all settings are first trained on a small random
+     * sample of the training data, only the best portion of them is kept and trained on a bigger sample
+     * in the next round, until the remaining settings are trained on the full training data. This is controlled
+     * by the following parameters:
+     * </p>
+     * <ul>
+     * <li><tt>halving_start</tt> -- the portion of the training data used in the first round (between
+     * 0 and 1, switches on successive halving)</li>
+     * <li><tt>halving_rate</tt> -- in each round, only 1/<tt>halving_rate</tt> of the settings are kept and
+     * the training data sample grows <tt>halving_rate</tt> times (default: 3)</li>
+     * <li><tt>halving_seed</tt> -- the random seed for the training data samples (default: 1)</li>
+     * </ul>
+     * <p>
      * There must be exactly two inputs (first of which is the training data and second the
      * testing data) and three outputs (one is for the classification output, one for
      * the best classification statistics and one for the best parameter set).
@@ -75,6 +126,10 @@ public class SettingSelector extends WekaSettingTrials {
      * <ul>
      * <li><tt>select_from_evaluations</tt> -- starts the selection from finished evaluations, if it's set
      * </ul>
+     * <p>
+     * Successive halving also uses the reserved parameters <tt>halving_round</tt> (the number of the current
+     * round) and <tt>halving_settings</tt> (the numbers of the settings whose results are in the inputs).
+     * </p>
      *
      * @param id
      * @param parameters
@@ -86,12 +141,236 @@ public class SettingSelector extends WekaSettingTrials {
 
         super(id, parameters, input, output);
 
+        this.checkHalvingParameters();
+
         // check the number of inputs and outputs
-        if ((!this.evalMode && this.input.size() != 2) || (this.input.size() < 2) || (this.input.size() % 2 != 0)){
+        if ((!this.evalMode && this.halvingRound == 0 && this.input.size() != 2) || (this.input.size() < 2)
+                || (this.input.size() % 2 != 0)){
             throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id);
         }
     }
 
+    /**
+     * This checks and saves the successive halving parameters, removing them from the parameters set,
+     * so that only the classifier parameters remain there.
+     */
+    private void checkHalvingParameters() throws TaskException {
+
+        if (this.hasParameter(HALVING_START)){
+            this.halvingStart = this.getDoubleParameterVal(HALVING_START);
+            this.parameters.remove(HALVING_START);
+            if (this.halvingStart <= 0.0 || this.halvingStart >= 1.0){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The halving_start parameter "
+                        + "must be between 0 and 1.");
+            }
+        }
+        if (this.hasParameter(HALVING_RATE)){
+            this.halvingRate = this.getIntParameterVal(HALVING_RATE);
+            this.parameters.remove(HALVING_RATE);
+            if (this.halvingRate < 2){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The halving_rate parameter "
+                        + "must be at least 2.");
+            }
+        }
+        if (this.hasParameter(HALVING_SEED)){
+            this.halvingSeed = this.getIntParameterVal(HALVING_SEED);
+            this.parameters.remove(HALVING_SEED);
+        }
+        if (this.hasParameter(HALVING_ROUND)){
+            this.halvingRound = this.getIntParameterVal(HALVING_ROUND);
+            this.parameters.remove(HALVING_ROUND);
+        }
+        if (this.hasParameter(HALVING_SETTINGS)){
+            try {
+                this.settingNos = StringUtils.readListOfInts(this.parameters.remove(HALVING_SETTINGS));
+            }
+            catch (NumberFormatException e){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The halving_settings parameter "
+                        + "must be a list of numbers.");
+            }
+        }
+    }
+
+    /**
+     * Strips the successive halving rounds' suffixes from the expanded id, so that all the rounds use
+     * the same tempfile names.
+     */
+    @Override
+    protected void setExpandedId() {
+
+        super.setExpandedId();
+        this.expandedId = this.expandedId.replaceFirst("(^|_)halving[0-9]+$", "");
+    }
+
+    /**
+     * This creates the tasks for all the settings, or for the next round of successive halving, if
+     * it is switched on.
+     */
+    @Override
+    protected Vector<TaskDescription> createTasks() throws Exception {
+
+        if (this.halvingStart <= 0.0){
+            return super.createTasks();
+        }
+
+        Hashtable<String, String> [] paramSets = this.prepareParamSets();
+        String idBase = this.halvingRound == 0 ? this.id : this.id.substring(0, this.id.lastIndexOf('#'));
+        int [] survivors;
+
+        // select the settings for this round
+        if (this.halvingRound == 0){
+            survivors = new int [paramSets.length];
+            for (int i = 0; i < survivors.length; ++i){
+                survivors[i] = i;
+            }
+        }
+        else {
+            survivors = this.selectSurvivors();
+            if (this.deleteTempfiles){
+                this.deleteTempfiles();
+            }
+        }
+
+        // prepare the training data for this round -- the full data in the last round
+        double portion = this.halvingStart * Math.pow(this.halvingRate, this.halvingRound);
+        boolean lastRound = portion >= 1.0 || survivors.length == 1;
+        String trainFile = this.input.get(this.input.size() - 2);
+        String testFile = this.input.get(this.input.size() - 1);
+
+        if (!lastRound){
+            trainFile = this.writeSample(trainFile, portion);
+        }
+        Logger.getInstance().message(this.id + ": successive halving round " + this.halvingRound + ", "
+                + survivors.length + " setting(s), " + (lastRound ? "full" : portion + " of the") + " training data.",
+                Logger.V_INFO);
+
+        // create the classifier and evaluation tasks
+        Vector<TaskDescription> newTasks = new Vector<TaskDescription>();
+        Vector<String> nextInput = new Vector<String>();
+
+        for (int settingNo : survivors){
+
+            Vector<String> classifInput = new Vector<String>(2), classifOutput = new Vector<String>(1),
+                    evalInput = new Vector<String>(2), evalOutput = new Vector<String>(1);
+            Hashtable<String, String> evalParams = new Hashtable<String, String>();
+
+            classifInput.add(trainFile);
+            classifInput.add(testFile);
+            classifOutput.add(this.getTempfileName(TempfileTypes.CLASSIF, this.halvingRound, settingNo));
+
+            evalParams.put(CLASS_ARG, this.classArg);
+            evalInput.add(testFile);
+            evalInput.add(classifOutput.get(0));
+            evalOutput.add(this.getTempfileName(TempfileTypes.STATS, this.halvingRound, settingNo));
+
+            nextInput.add(evalOutput.get(0));
+            nextInput.add(classifOutput.get(0));
+
+            TaskDescription classifTask = new TaskDescription(idBase + "#classif" + this.halvingRound + "-" + settingNo,
+                    WekaClassifier.class.getName(), paramSets[settingNo], classifInput, classifOutput);
+            TaskDescription evalTask = new TaskDescription(idBase + "#eval" + this.halvingRound + "-" + settingNo,
+                    EvalClassification.class.getName(), evalParams, evalInput, evalOutput);
+
+            classifTask.setStatus(TaskStatus.WAITING);
+            evalTask.setDependency(classifTask);
+            newTasks.add(classifTask);
+            newTasks.add(evalTask);
+        }
+
+        // create the next round task, or the final selection
+        Hashtable<String, String> nextParams;
+        TaskDescription nextTask;
+
+        if (lastRound){
+            nextParams = this.getEvalParams();
+            nextParams.put(HALVING_SETTINGS, StringUtils.join(survivors, " "));
+            nextTask = new TaskDescription(idBase + "#select", this.getClass().getName(), nextParams,
+                    nextInput, new Vector<String>(this.output));
+        }
+        else {
+            nextParams = new Hashtable<String, String>(this.parameters);
+            nextParams.put(CLASS_ARG, this.classArg);
+            nextParams.put(WEKA_CLASS, this.wekaClass);
+            nextParams.put(MEASURE, this.measure);
+            nextParams.put(TEMPFILE, this.tempFilePattern);
+            nextParams.put(DELETE_TEMPFILES, Boolean.toString(this.deleteTempfiles));
+            nextParams.put(HALVING_START, Double.toString(this.halvingStart));
+            nextParams.put(HALVING_RATE, Integer.toString(this.halvingRate));
+            nextParams.put(HALVING_SEED, Long.toString(this.halvingSeed));
+            nextParams.put(HALVING_ROUND, Integer.toString(this.halvingRound + 1));
+            nextParams.put(HALVING_SETTINGS, StringUtils.join(survivors, " "));
+
+            nextInput.add(this.input.get(this.input.size() - 2));
+            nextInput.add(testFile);
+            nextTask = new TaskDescription(idBase + "#halving" + (this.halvingRound + 1), this.getClass().getName(),
+                    nextParams, nextInput, new Vector<String>(this.output));
+        }
+        for (TaskDescription t : newTasks){
+            nextTask.setDependency(t);
+        }
+        newTasks.add(nextTask);
+
+        return newTasks;
+    }
+
+    /**
+     * Selects the best 1/{@link #halvingRate} of the settings evaluated in the previous round of successive
+     * halving, according to the statistics files in the inputs.
+     *
+     * @return the numbers of the selected settings, in ascending order
+     */
+    private int [] selectSurvivors() throws IOException, TaskException {
+
+        int num = (this.input.size() - 2) / 2;
+        final double [] vals = new double [num];
+        Integer [] order = new Integer [num];
+
+        if (this.settingNos == null || this.settingNos.length != num){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The halving_settings parameter "
+                    + "does not match the inputs.");
+        }
+        for (int i = 0; i < num; ++i){
+            vals[i] = this.readMeasure(this.input.get(i * 2));
+            order[i] = i;
+        }
+        // sort by the measure, descending; keep the setting order for equal values
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(vals[o2], vals[o1]);
+            }
+        });
+
+        int [] survivors = new int [(num + this.halvingRate - 1) / this.halvingRate];
+        for (int i = 0; i < survivors.length; ++i){
+            survivors[i] = this.settingNos[order[i]];
+        }
+        Arrays.sort(survivors);
+
+        Logger.getInstance().message(this.id + ": best " + this.measure + " in round " + (this.halvingRound - 1)
+                + ": " + vals[order[0]] + ", keeping settings " + StringUtils.join(survivors, ","), Logger.V_INFO);
+        return survivors;
+    }
+
+    /**
+     * Writes a random sample of the given training data for the current round of successive halving. The samples
+     * use the same random order in all rounds, so that each sample contains all the previous ones.
+     *
+     * @param trainFile the full training data
+     * @param portion the portion of the training data to be used
+     * @return the name of the file with the sample
+     */
+    private String writeSample(String trainFile, double portion) throws Exception {
+
+        Instances data = FileUtils.readArff(trainFile);
+        int size = Math.max(1, (int) Math.ceil(portion * data.numInstances()));
+        String sampleFile = this.getTempfileName(TempfileTypes.SAMPLE, this.halvingRound, 0);
+
+        data.randomize(new Random(this.halvingSeed));
+        FileUtils.writeArff(sampleFile, new Instances(data, 0, Math.min(size, data.numInstances())));
+
+        return sampleFile;
+    }
+
 
     /**
      * This prepares the parameter sets for the individual classifier tasks.
@@ -125,6 +404,23 @@ public class SettingSelector extends WekaSettingTrials {
     }
 
 
+    /**
+     * Deletes the tempfiles of the previous round of successive halving (or all tempfiles in the inputs
+     * in the final selection).
+     */
+    @Override
+    protected void deleteTempfiles() {
+
+        if (this.evalMode){
+            super.deleteTempfiles();
+            return;
+        }
+        for (int i = 0; i < this.input.size() - 2; ++i){
+            FileUtils.deleteFile(this.input.get(i));
+        }
+        FileUtils.deleteFile(this.getTempfileName(TempfileTypes.SAMPLE, this.halvingRound - 1, 0));
+    }
+
     @Override
     protected Hashtable<String, String> getEvalParams() {
 
@@ -152,7 +448,7 @@ public class SettingSelector extends WekaSettingTrials {
                 else {
                     out.print(",");
                 }
-                out.print(vals[settingNo]);
+                out.print(vals[this.settingNos != null ? this.settingNos[settingNo] : settingNo]);
             }
             out.println();
         }
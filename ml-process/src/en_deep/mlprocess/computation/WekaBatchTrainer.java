@@ -0,0 +1,438 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package en_deep.mlprocess.computation;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.Task;
+import en_deep.mlprocess.computation.wekaclassifier.Model;
+import en_deep.mlprocess.computation.wekaclassifier.Model.BinarizationTypes;
+import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.simple.ClassificationSettings;
+import en_deep.mlprocess.utils.FileUtils;
+import en_deep.mlprocess.utils.StringUtils;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Instances;
+
+/**
+ * This trains a WEKA classifier model for each of many training files within a single task, using
+ * a pool of threads. It is meant to replace many small {@link WekaClassifier} tasks (e.g. one per predicate),
+ * whose scheduling overhead exceeds the training time.
+ * <p>
+ * The largest training files are trained first, so that the threads are loaded evenly. The models are saved
+ * either to individual files, which may be used with the <tt>load_model</tt> setting of {@link WekaClassifier},
+ * or all together to a single file in the same format as produced by
+ * {@link en_deep.mlprocess.simple.PackModels PackModels}.
+ * </p>
+ * @author Ondrej Dusek
+ */
+public class WekaBatchTrainer extends Task {
+
+    /* CONSTANTS */
+
+    /** Name of the 'pattern' parameter */
+    private static final String PATTERN = "pattern";
+    /** Name of the 'threads' parameter */
+    private static final String THREADS = "threads";
+    /** Name of the 'pack' parameter */
+    private static final String PACK = "pack";
+    /** Name of the 'headers' parameter */
+    private static final String HEADERS = "headers";
+    /** Name of the 'model_sel_attr' parameter */
+    private static final String MODEL_SEL_ATTR = "model_sel_attr";
+    /** Name of the 'binarize' parameter */
+    private static final String BINARIZE = "binarize";
+    /** Name of the 'ignore_attr' parameter */
+    private static final String IGNORE_ATTRIBS = WekaClassifier.IGNORE_ATTRIBS;
+    /** Name of the 'class_arg' parameter */
+    private static final String CLASS_ARG = GeneralClassifier.CLASS_ARG;
+    /** Name of the 'weka_class' parameter */
+    private static final String WEKA_CLASS = WekaClassifier.WEKA_CLASS;
+
+    /* DATA */
+
+    /** The model names, corresponding to the inputs */
+    private Vector<String> modelNames;
+    /** The number of models trained in parallel */
+    private int threads;
+    /** Save all models to one packed file ? */
+    private boolean pack;
+    /** The file with data headers for the packed models, or null */
+    private String headersFile;
+    /** The model selection attribute for the packed models, or null */
+    private String modelSelAttr;
+    /** The binarization setting */
+    private BinarizationTypes binarize = BinarizationTypes.NONE;
+    /** The name of the WEKA classifier class */
+    private String wekaClass;
+    /** The name of the class attribute */
+    private String classArg;
+    /** The names of the attributes to be ignored, or null */
+    private String [] ignoredAttribs;
+
+    /* METHODS */
+
+    /**
+     * This creates a new {@link WekaBatchTrainer} task, checking the parameters, inputs and outputs.
+     * <p>
+     * The inputs are the training data files, usually given by a "**" pattern. The name of each model is
+     * the expansion of the <tt>pattern</tt> parameter for the corresponding input. If the models are not packed,
+     * there must be exactly one output with a "**" pattern, which is replaced by the model name to obtain the
+     * individual model files. If the models are packed, there must be exactly one output file, with no patterns.
+     * </p>
+     * <p>
+     * There are three compulsory parameters:
+     * </p>
+     * <ul>
+     * <li><tt>weka_class</tt> -- the WEKA classifier to be used</li>
+     * <li><tt>class_arg</tt> -- the name of the class attribute</li>
+     * <li><tt>pattern</tt> -- the pattern for the input files, with one "*" standing for the model name</li>
+     * </ul>
+     * <p>
+     * The following parameters are optional:
+     * </p>
+     * <ul>
+     * <li><tt>threads</tt> -- the number of models trained in parallel (default: the number of processors).
+     * Each running thread holds one training data set in memory.</li>
+     * <li><tt>binarize</tt> -- possible values: <tt>none, standard, set_aware</tt>, same as in
+     * {@link WekaClassifier}</li>
+     * <li><tt>ignore_attr</tt> -- space-separated names of attributes that are not used for classification</li>
+     * <li><tt>pack</tt> -- if set, all the models are saved to one file in the format produced by
+     * {@link en_deep.mlprocess.simple.PackModels PackModels}</li>
+     * <li><tt>model_sel_attr</tt> -- the model selection attribute saved with the packed models (required for
+     * packing more than one model)</li>
+     * <li><tt>headers</tt> -- if set, the last input is the file with the data headers saved with the packed
+     * models. Otherwise, the header of the first training file is used.</li>
+     * </ul>
+     * <p>
+     * All other (one-character) parameters are passed to the WEKA classifier, as in {@link WekaClassifier}.
+     * </p>
+     */
+    public WekaBatchTrainer(String id, Hashtable<String, String> parameters,
+            Vector<String> input, Vector<String> output) throws TaskException {
+
+        super(id, parameters, input, output);
+
+        if (!this.hasParameter(WEKA_CLASS) || !this.hasParameter(CLASS_ARG) || !this.hasParameter(PATTERN)){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Parameters weka_class, class_arg "
+                    + "and pattern must be set.");
+        }
+        this.wekaClass = this.parameters.remove(WEKA_CLASS);
+        this.classArg = this.parameters.remove(CLASS_ARG);
+
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS)
+                : Runtime.getRuntime().availableProcessors();
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
+        this.parameters.remove(THREADS);
+
+        this.pack = this.getBooleanParameterVal(PACK);
+        this.parameters.remove(PACK);
+        this.modelSelAttr = this.parameters.remove(MODEL_SEL_ATTR);
+        if (this.getBooleanParameterVal(HEADERS)){
+            if (!this.pack){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Headers may be given only "
+                        + "for packed models.");
+            }
+            this.headersFile = this.input.remove(this.input.size() - 1);
+        }
+        this.parameters.remove(HEADERS);
+
+        if (this.hasParameter(IGNORE_ATTRIBS)){
+            this.ignoredAttribs = this.parameters.remove(IGNORE_ATTRIBS).split("\\s+");
+        }
+        if (this.hasParameter(BINARIZE)){
+            try {
+                this.binarize = BinarizationTypes.valueOf(this.parameters.remove(BINARIZE).toUpperCase());
+            }
+            catch (IllegalArgumentException e){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Binarize must be "
+                        + "one of: none, standard, set_aware");
+            }
+        }
+
+        // find the model names
+        String pattern = StringUtils.getPath(this.parameters.remove(PATTERN));
+        this.modelNames = new Vector<String>(this.input.size());
+
+        for (String in : this.input){
+            String name = StringUtils.matches(in, pattern);
+            if (name == null){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Input " + in
+                        + " does not match the pattern " + pattern);
+            }
+            this.modelNames.add(name);
+        }
+
+        // check the outputs
+        if (this.input.isEmpty()){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id);
+        }
+        if (this.output.size() != 1){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id);
+        }
+        if (this.pack){
+            this.eliminatePatterns(this.output);
+            if (this.input.size() > 1 && this.modelSelAttr == null){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Model_sel_attr must be set "
+                        + "to pack more than one model.");
+            }
+        }
+        else if (!StringUtils.hasPatternVariables(this.output.get(0), true)){
+            throw new TaskException(TaskException.ERR_OUTPUT_PATTERNS, this.id, "The output must contain "
+                    + "a '**' pattern.");
+        }
+
+        // check that the classifier can be created with the given parameters
+        this.createClassifier();
+    }
+
+    @Override
+    public void perform() throws TaskException {
+
+        ExecutorService pool = null;
+
+        try {
+            final Hashtable<String, Model> models = new Hashtable<String, Model>();
+            Vector<Future<Object>> results = new Vector<Future<Object>>(this.input.size());
+
+            pool = Executors.newFixedThreadPool(Math.min(this.threads, this.input.size()));
+
+            // train the largest files first, so that the threads finish at about the same time
+            for (final int fileNo : this.getTrainingOrder()){
+                results.add(pool.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        trainModel(fileNo, models);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results){
+                this.waitFor(result);
+            }
+
+            if (this.pack){
+                this.packModels(models);
+            }
+        }
+        catch (TaskException e){
+            throw e;
+        }
+        catch (Exception e){
+            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+        }
+        finally {
+            if (pool != null){
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Returns the numbers of the input files, sorted by the file sizes in descending order.
+     * @return the input files order for training
+     */
+    private Integer [] getTrainingOrder() {
+
+        Integer [] order = new Integer [this.input.size()];
+        final long [] sizes = new long [this.input.size()];
+
+        for (int i = 0; i < order.length; ++i){
+            order[i] = i;
+            sizes[i] = new File(this.input.get(i)).length();
+        }
+        Arrays.sort(order, Collections.reverseOrder(new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return sizes[o1] < sizes[o2] ? -1 : (sizes[o1] > sizes[o2] ? 1 : 0);
+            }
+        }));
+        return order;
+    }
+
+    /**
+     * This waits for the given computation to finish, unwrapping any exceptions thrown in it.
+     *
+     * @param future the computation to wait for
+     */
+    private void waitFor(Future<?> future) throws Exception {
+
+        try {
+            future.get();
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Trains one model on the given input file. The model is saved to its output file, or stored
+     * for packing if the models are packed.
+     *
+     * @param fileNo the number of the input file
+     * @param models storage for the trained models (used only if the models are packed)
+     */
+    private void trainModel(int fileNo, Hashtable<String, Model> models) throws Exception {
+
+        String trainFile = this.input.get(fileNo);
+        String name = this.modelNames.get(fileNo);
+        Model model = new Model();
+
+        Logger.getInstance().messagef("%s: reading %s...", Logger.V_DEBUG, this.id, trainFile);
+        Instances train = FileUtils.readArff(trainFile);
+
+        if (train.attribute(this.classArg) == null){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Class attribute " + this.classArg
+                    + " not found in " + trainFile + ".");
+        }
+        train.setClass(train.attribute(this.classArg));
+        model.classAttrib = train.classIndex();
+
+        // remove the ignored attributes
+        model.selectedAttributes = this.getSelectedAttributes(train);
+        model.initAttribsMask(train.numAttributes());
+        if (model.selectedAttributes.length < train.numAttributes()){
+            train = FileUtils.filterAttributes(train, model.selectedAttributes);
+            train.setClass(train.attribute(this.classArg));
+        }
+
+        if (this.binarize != BinarizationTypes.NONE){
+            Logger.getInstance().messagef("%s: binarizing... (%s)", Logger.V_DEBUG, this.id, train.relationName());
+            train = WekaClassifier.sparseNominalToBinary(this.id, train, this.binarize);
+        }
+        model.binarize = this.binarize;
+
+        Logger.getInstance().messagef("%s: training on %s...", Logger.V_DEBUG, this.id, trainFile);
+        model.classif = this.createClassifier();
+        model.classif.buildClassifier(train);
+        train = null;
+
+        if (this.pack){
+            models.put(FileUtils.fileNameDecode(name), model);
+        }
+        else {
+            model.save(this.id, StringUtils.replace(this.output.get(0), name));
+        }
+    }
+
+    /**
+     * Returns the indexes of all attributes of the given data set, except the ignored ones.
+     *
+     * @param data the data set (with its class attribute set)
+     * @return the indexes of the retained attributes, in ascending order
+     */
+    private int [] getSelectedAttributes(Instances data) {
+
+        Vector<Integer> retained = new Vector<Integer>();
+        Hashtable<String, Boolean> removed = new Hashtable<String, Boolean>();
+
+        if (this.ignoredAttribs != null){
+            for (String attrName : this.ignoredAttribs){
+                removed.put(attrName, true);
+            }
+        }
+        removed.remove(this.classArg);
+
+        for (int i = 0; i < data.numAttributes(); ++i){
+            if (!removed.containsKey(data.attribute(i).name())){
+                retained.add(i);
+            }
+        }
+        int [] retainedIdxs = new int [retained.size()];
+        for (int i = 0; i < retainedIdxs.length; ++i){
+            retainedIdxs[i] = retained.get(i);
+        }
+        return retainedIdxs;
+    }
+
+    /**
+     * Saves all the trained models into one file, together with the classification settings, in the same
+     * format as produced by {@link en_deep.mlprocess.simple.PackModels PackModels}.
+     *
+     * @param models the trained models
+     */
+    private void packModels(Hashtable<String, Model> models) throws Exception {
+
+        ClassificationSettings cls = new ClassificationSettings();
+
+        cls.classArg = this.classArg;
+        cls.modelSelAttr = this.modelSelAttr;
+        cls.dataHeaders = FileUtils.readArffStructure(this.headersFile != null ? this.headersFile : this.input.get(0));
+
+        if (this.modelSelAttr != null){
+            cls.models.putAll(models);
+        }
+        else { // single model
+            cls.models.put(WekaClassifier.DEFAULT_MODEL, models.values().iterator().next());
+        }
+        cls.save(this.output.get(0));
+    }
+
+    /**
+     * Creates a new instance of the WEKA classifier with the given parameters.
+     *
+     * @return a new classifier, ready to be trained
+     * @throws TaskException if the classifier cannot be created
+     */
+    private AbstractClassifier createClassifier() throws TaskException {
+
+        AbstractClassifier classif;
+
+        try {
+            classif = (AbstractClassifier) Class.forName(this.wekaClass).getConstructor().newInstance();
+        }
+        catch (Exception e) {
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id,
+                    "WEKA class not found or not valid: " + this.wekaClass);
+        }
+        try {
+            classif.setOptions(StringUtils.getWekaOptions(this.parameters));
+        }
+        catch (Exception e){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Could not set classifier parameters.");
+        }
+        return classif;
+    }
+}
@@ -31,6 +31,7 @@ import en_deep.mlprocess.computation.wekaclassifier.Model;
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.utils.Pair;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.computation.wekaclassifier.DirectLibLINEAR;
 import en_deep.mlprocess.computation.wekaclassifier.LinearSequence;
 import en_deep.mlprocess.computation.wekaclassifier.Model.BinarizationTypes;
 import en_deep.mlprocess.computation.wekaclassifier.Sequence;
@@ -41,6 +42,7 @@ import en_deep.mlprocess.simple.Simple;
 import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.MathUtils;
 import en_deep.mlprocess.utils.StringUtils;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
@@ -51,14 +53,22 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import weka.classifiers.AbstractClassifier;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SparseInstance;
+import weka.core.converters.ArffLoader;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.NominalToBinary;
+import weka.filters.unsupervised.attribute.Reorder;
 import weka.filters.unsupervised.instance.RemoveWithValues;
 
 /**
@@ -108,6 +118,13 @@ public class WekaClassifier extends GeneralClassifier {
 
     /** {@link TreeReader} parameter name */
     private static final String TREE_READER = "tree_reader";
+    /** The name of the 'threads' parameter */
+    private static final String THREADS = "threads";
+    /** The name of the 'shared_model' parameter */
+    private static final String SHARED_MODEL = "shared_model";
+
+    /** Number of instances classified at once by one thread in the parallel mode */
+    private static final int BLOCK_SIZE = 512;
 
     /** Key for the default model in the hash table */
     public static final String DEFAULT_MODEL = "";
@@ -133,6 +150,10 @@ public class WekaClassifier extends GeneralClassifier {
     private String modelSelectionAttribute;
     /** Discard everything but the classes on the output ? */
     private boolean classesOnly;
+    /** Number of threads used for classification */
+    private int threads = 1;
+    /** Share the models among the threads (or use a deserialized copy in each thread) ? */
+    private boolean sharedModel;
 
     /* METHODS */
  
@@ -150,7 +171,8 @@ public class WekaClassifier extends GeneralClassifier {
      * There is one compulsory parameter:
      * </p>
      * <ul>
-     * <li><tt>weka_class</tt> -- the desired WEKA classifier to be used</li>
+     * <li><tt>weka_class</tt> -- the desired WEKA classifier to be used. If {@link DirectLibLINEAR} is used,
+     * the training data are read and converted one instance at a time.</li>
      * </ul>
      * <p>
      * The following parameters are optional:
@@ -186,6 +208,11 @@ public class WekaClassifier extends GeneralClassifier {
      * trees. See {@link TreeReader#TreeReader(String, Instances, String)} for the required parameter values.</li>
      * </ul>
      * <li><tt>classes_only</tt> -- if set, everything but the classes will be discarded on the output.</li>
+     * <li><tt>threads</tt> -- number of threads used for classification (default: 1). Multiple evaluation
+     * files are classified in parallel; a single file is divided into blocks of instances which are classified
+     * in parallel (unless <tt>tree_reader</tt> is set). The results are the same as with one thread.</li>
+     * <li><tt>shared_model</tt> -- if set, all threads use the same model, which must be thread-safe. Otherwise,
+     * each thread uses its own deserialized copy of the model.</li>
      * <p>
      * Parameters <tt>select_args</tt> and <tt>args_file</tt>, also <tt>out_attribs</tt> and <tt>save_model</tt>
      * are mutually exclusive.
@@ -219,6 +246,17 @@ public class WekaClassifier extends GeneralClassifier {
         // output settings
         this.probabilities = this.parameters.remove(PROB_DIST) != null;
         this.classesOnly = this.parameters.remove(CLASSES_ONLY) != null;
+        this.sharedModel = this.parameters.remove(SHARED_MODEL) != null;
+
+        // parallel classification settings
+        if (this.hasParameter(THREADS)){
+            this.threads = this.getIntParameterVal(THREADS);
+            this.parameters.remove(THREADS);
+        }
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
         
         // binarization settings
         this.binarize = BinarizationTypes.NONE;
@@ -376,9 +414,14 @@ public class WekaClassifier extends GeneralClassifier {
             this.trainModel(trainFile);
         }
 
-        // classify each data file
-        for (int fileNo = 0; fileNo < evalFiles.size(); ++fileNo){
-            this.classifyFile(evalFiles.get(fileNo), outFiles.get(fileNo));
+        // classify each data file, possibly in parallel
+        if (this.threads > 1 && evalFiles.size() > 1){
+            this.classifyFilesParallel(evalFiles, outFiles);
+        }
+        else {
+            for (int fileNo = 0; fileNo < evalFiles.size(); ++fileNo){
+                this.classifyFile(evalFiles.get(fileNo), outFiles.get(fileNo), new ClassifierSet(false), this.threads);
+            }
         }
 
         if (this.modelOutputFile != null){
@@ -390,25 +433,88 @@ public class WekaClassifier extends GeneralClassifier {
         this.modelFiles = null;
     }
 
+    /**
+     * Classify the given evaluation files in parallel, using {@link #threads} threads. Each thread uses
+     * its own {@link ClassifierSet} and takes the next file to be classified once it has finished
+     * the previous one.
+     *
+     * @param evalFiles the evaluation data file names
+     * @param outFiles the output file names
+     * @throws Exception
+     */
+    private void classifyFilesParallel(final List<String> evalFiles, final List<String> outFiles) throws Exception {
+
+        final AtomicInteger nextFile = new AtomicInteger();
+        int numThreads = Math.min(this.threads, evalFiles.size());
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+
+        try {
+            Vector<Future<Object>> results = new Vector<Future<Object>>(numThreads);
+
+            for (int i = 0; i < numThreads; ++i){
+                results.add(pool.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+
+                        ClassifierSet classifiers = new ClassifierSet(true);
+
+                        for (int fileNo = nextFile.getAndIncrement(); fileNo < evalFiles.size();
+                                fileNo = nextFile.getAndIncrement()){
+                            classifyFile(evalFiles.get(fileNo), outFiles.get(fileNo), classifiers, 1);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results){
+                this.waitFor(result);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * This waits for the given parallel computation to finish, unwrapping any exceptions thrown in it.
+     *
+     * @param future the computation to wait for
+     * @throws Exception if the computation has thrown one
+     */
+    private void waitFor(Future<?> future) throws Exception {
+
+        try {
+            future.get();
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Classify data in one ARFF file (must be compatible with the model).
      *
      * @param evalFile the data file to be classified
      * @param outFile the output file
+     * @param classifiers the classifiers to be used by the current thread
+     * @param threads the number of threads to classify the file with
      * @throws TaskException
      * @throws Exception
      */
-    private void classifyFile(String evalFile, String outFile) throws TaskException, Exception {
+    private void classifyFile(String evalFile, String outFile, ClassifierSet classifiers, int threads)
+            throws TaskException, Exception {
 
         // read the evaluation data and find out the target class
-        Logger.getInstance().message(this.id + ": reading " + evalFile + "...", Logger.V_DEBUG);
+        Logger.getInstance().messagef("%s: reading %s...", Logger.V_DEBUG, this.id, evalFile);
         Instances eval = FileUtils.readArff(evalFile);
 
-        Logger.getInstance().message(this.id + ": evaluating " + eval.relationName() + "...", Logger.V_DEBUG);
+        Logger.getInstance().messagef("%s: evaluating %s...", Logger.V_DEBUG, this.id, eval.relationName());
 
-        eval = this.classifyInstances(eval);
+        eval = this.classifyInstances(eval, classifiers, threads);
 
-        Logger.getInstance().message(this.id + ": saving results to " + outFile + ".", Logger.V_DEBUG);
+        Logger.getInstance().messagef("%s: saving results to %s.", Logger.V_DEBUG, this.id, outFile);
         FileUtils.writeArff(outFile, eval);
     }
     
@@ -422,54 +528,184 @@ public class WekaClassifier extends GeneralClassifier {
      * @throws Exception 
      */
     public Instances classifyInstances(Instances eval) throws TaskException, Exception {
+        return this.classifyInstances(eval, new ClassifierSet(false), 1);
+    }
 
-        Hashtable<String, Instances> modelInputs = new Hashtable<String, Instances>();
+    /**
+     * Classify data from the given {@link Instances} object, possibly dividing the instances into blocks
+     * that are classified in parallel (only if there is no {@link TreeReader} that makes the classification
+     * of an instance depend on the previous ones).
+     *
+     * @param eval the data to be classified
+     * @param classifiers the classifiers to be used by the current thread
+     * @param threads the number of threads to be used
+     * @return the classified data set (exact format depends on the settings)
+     * @throws TaskException
+     * @throws Exception
+     */
+    private Instances classifyInstances(Instances eval, ClassifierSet classifiers, int threads)
+            throws TaskException, Exception {
 
         // use the classifier and store the results
         double[][] distributions = this.probabilities ? new double[eval.numInstances()][] : null;
+
+        if (threads > 1 && !this.hasParameter(TREE_READER) && eval.numInstances() > BLOCK_SIZE){
+            this.classifyBlocks(eval, distributions, threads);
+        }
+        else {
+            this.classifySequence(eval, distributions, classifiers);
+        }
+        
+        if (this.classesOnly){
+            eval = extractClassAttribute(eval);
+        }
+
+        // store the probability distributions, if supposed to
+        if (this.probabilities) {
+            this.addDistributions(eval, distributions);
+        }
+
+        return eval;
+    }
+
+
+    /**
+     * Classify all instances of the given data set one-by-one in the order given by a {@link Sequence},
+     * using the given classifiers.
+     *
+     * @param eval the data to be classified
+     * @param distributions the place to store the probability distributions, or null if not needed
+     * @param classifiers the classifiers to be used
+     */
+    private void classifySequence(Instances eval, double [][] distributions, ClassifierSet classifiers)
+            throws TaskException, Exception {
+
+        Hashtable<String, Instances> modelInputs = new Hashtable<String, Instances>();
         Sequence seq = this.hasParameter(TREE_READER)
                 ? new TreeReader(this.id, eval, this.getParameterVal(TREE_READER)) : new LinearSequence(eval);
 
         for (int i = seq.getNextInstance(); i >= 0; i = seq.getNextInstance()) {
 
             String key = this.selectModel(eval, i);
-            Model model = this.models.get(key);
-            
-            if (model == null){
-                throw new TaskException(TaskException.ERR_IO_ERROR, this.id, "Cannot find model for '" + key + "'");
-            }
-            if (model.classif == null){
-                model.load();
-            }
+            Model model = this.getModel(key);
+
             if (modelInputs.get(key) == null){
                 modelInputs.put(key, this.prepareModelInputs(eval, key));
             }
             Instance modelInput = this.rewriteNeighborhood(modelInputs.get(key).get(i), model, seq.getCurNeighborhood());
+            AbstractClassifier classif = classifiers.get(key);
 
             if (!this.probabilities) {
                 // just set the most likely class
-                double val = model.classif.classifyInstance(modelInput);
+                double val = classif.classifyInstance(modelInput);
                 seq.setCurrentClass(val);
             }
             else {
                 // save the probability distribution aside
-                distributions[i] = model.classif.distributionForInstance(modelInput);
+                distributions[i] = classif.distributionForInstance(modelInput);
                 seq.setCurrentClass(MathUtils.findMax(distributions[i]));
             }
         }
-        
-        if (this.classesOnly){
-            eval = extractClassAttribute(eval);
-        }
+    }
 
-        // store the probability distributions, if supposed to
-        if (this.probabilities) {
-            this.addDistributions(eval, distributions);
+    /**
+     * Classify all instances of the given data set in parallel, in blocks of {@link #BLOCK_SIZE} consecutive
+     * instances. The models and their inputs are prepared beforehand in the same order as in
+     * {@link #classifySequence(Instances, double[][], ClassifierSet)}, so that the results are the same.
+     * Each thread uses its own {@link ClassifierSet} and takes the next block once it has finished
+     * the previous one.
+     *
+     * @param eval the data to be classified
+     * @param distributions the place to store the probability distributions, or null if not needed
+     * @param threads the number of threads to be used
+     */
+    private void classifyBlocks(final Instances eval, final double [][] distributions, int threads)
+            throws TaskException, Exception {
+
+        final Hashtable<String, Instances> modelInputs = new Hashtable<String, Instances>();
+        final String [] keys = new String [eval.numInstances()];
+        final int [] classIdxs = new int [eval.numInstances()];
+
+        // select the models and prepare their inputs
+        for (int i = 0; i < eval.numInstances(); ++i){
+
+            keys[i] = this.selectModel(eval, i);
+            this.getModel(keys[i]);
+
+            if (modelInputs.get(keys[i]) == null){
+                modelInputs.put(keys[i], this.prepareModelInputs(eval, keys[i]));
+            }
+            classIdxs[i] = eval.classIndex();
         }
 
-        return eval;
+        // classify the blocks
+        final AtomicInteger nextBlock = new AtomicInteger();
+        final int numBlocks = (eval.numInstances() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int numThreads = Math.min(threads, numBlocks);
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+
+        try {
+            Vector<Future<Object>> results = new Vector<Future<Object>>(numThreads);
+
+            for (int t = 0; t < numThreads; ++t){
+                results.add(pool.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+
+                        ClassifierSet classifiers = new ClassifierSet(true);
+
+                        for (int block = nextBlock.getAndIncrement(); block < numBlocks;
+                                block = nextBlock.getAndIncrement()){
+
+                            int hi = Math.min((block + 1) * BLOCK_SIZE, eval.numInstances());
+
+                            for (int i = block * BLOCK_SIZE; i < hi; ++i){
+
+                                Instance modelInput = modelInputs.get(keys[i]).get(i);
+                                AbstractClassifier classif = classifiers.get(keys[i]);
+                                double val;
+
+                                if (!probabilities){
+                                    val = classif.classifyInstance(modelInput);
+                                }
+                                else {
+                                    distributions[i] = classif.distributionForInstance(modelInput);
+                                    val = MathUtils.findMax(distributions[i]);
+                                }
+                                eval.get(i).setValue(classIdxs[i], val);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results){
+                this.waitFor(result);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
     }
 
+    /**
+     * Returns the model for the given key, loading it if it has not yet been loaded.
+     *
+     * @param key the model key
+     * @return the corresponding model
+     * @throws TaskException if there is no model for the given key
+     */
+    private synchronized Model getModel(String key) throws TaskException, Exception {
+
+        Model model = this.models.get(key);
+
+        if (model == null){
+            throw new TaskException(TaskException.ERR_IO_ERROR, this.id, "Cannot find model for '" + key + "'");
+        }
+        if (model.classif == null){
+            model.load();
+        }
+        return model;
+    }
 
     /**
      * This selects only the given attributes if there is a {@link #SELECT_ARGS}/{@link #ARGS_FILE} setting and
@@ -632,15 +868,7 @@ public class WekaClassifier extends GeneralClassifier {
             throw new TaskException(TaskException.ERR_INVALID_DATA, taskId, "Cannot handle string attributes.");
         }
         
-        Filter ntb = null;
-        switch (type){
-            case STANDARD:
-                ntb = new NominalToBinary();
-                break;
-            case SET_AWARE:
-                ntb = new SetAwareNominalToBinary();
-                ((SetAwareNominalToBinary) ntb).setSetOnlyPrefix(SET_ATTR_PREFIX);
-        }
+        Filter ntb = WekaClassifier.getBinarizationFilter(type);
 
         ntb.setInputFormat(train);
         Instances out = ntb.getOutputFormat();
@@ -654,6 +882,26 @@ public class WekaClassifier extends GeneralClassifier {
         return out;
     }
 
+    /**
+     * Creates the filter used for the given binarization type.
+     *
+     * @param type type of binarization to be used (other than {@link BinarizationTypes#NONE})
+     * @return a new filter instance, with no input format set
+     */
+    private static Filter getBinarizationFilter(BinarizationTypes type) {
+
+        Filter ntb = null;
+        switch (type){
+            case STANDARD:
+                ntb = new NominalToBinary();
+                break;
+            case SET_AWARE:
+                ntb = new SetAwareNominalToBinary();
+                ((SetAwareNominalToBinary) ntb).setSetOnlyPrefix(SET_ATTR_PREFIX);
+        }
+        return ntb;
+    }
+
     /**
      * This not only checks the number of inputs and outputs, but also handles output '**' patterns,
      * if there are any, and multiple input models, if applicable.
@@ -747,8 +995,14 @@ public class WekaClassifier extends GeneralClassifier {
         // initialize the classifier and set its parameters
         this.initClassifier();
 
+        // direct LibLINEAR training reads the data one-by-one
+        if (this.models.get(DEFAULT_MODEL).classif instanceof DirectLibLINEAR){
+            this.trainModelDirect(trainFile);
+            return;
+        }
+
         // read the training data
-        Logger.getInstance().message(this.id + ": reading " + trainFile + "...", Logger.V_DEBUG);
+        Logger.getInstance().messagef("%s: reading %s...", Logger.V_DEBUG, this.id, trainFile);
         Instances train = FileUtils.readArff(trainFile);
         this.findClassFeature(train);
         this.models.get(DEFAULT_MODEL).classAttrib = train.classIndex();
@@ -760,16 +1014,83 @@ public class WekaClassifier extends GeneralClassifier {
         this.models.get(DEFAULT_MODEL).initAttribsMask(maxAttrib);
 
         if (this.binarize != BinarizationTypes.NONE){ // binarize the training file, if needed
-            Logger.getInstance().message(this.id + ": binarizing... (" + train.relationName() + ")", Logger.V_DEBUG);
+            Logger.getInstance().messagef("%s: binarizing... (%s)", Logger.V_DEBUG, this.id, train.relationName());
             train = WekaClassifier.sparseNominalToBinary(this.id, train, this.binarize);
         }
         this.models.get(DEFAULT_MODEL).binarize = this.binarize;
 
-        Logger.getInstance().message(this.id + ": training on " + trainFile + "...", Logger.V_DEBUG);
+        Logger.getInstance().messagef("%s: training on %s...", Logger.V_DEBUG, this.id, trainFile);
         // train the classifier
         this.models.get(DEFAULT_MODEL).classif.buildClassifier(train);
     }
 
+    /**
+     * This trains a {@link DirectLibLINEAR} model on the given training file, reading the instances
+     * one-by-one. The attribute preselection and binarization are applied to each instance separately,
+     * so that the whole training data set is never held in memory as {@link Instances}.
+     *
+     * @param trainFile the name of the training data file
+     */
+    private void trainModelDirect(String trainFile) throws Exception {
+
+        Model model = this.models.get(DEFAULT_MODEL);
+        DirectLibLINEAR classif = (DirectLibLINEAR) model.classif;
+
+        // read just the training data header
+        Instances header = FileUtils.readArffStructure(trainFile);
+        this.findClassFeature(header);
+        model.classAttrib = header.classIndex();
+
+        // pre-select the attributes (on the header only)
+        Logger.getInstance().message(this.id + ": preselecting attributes...", Logger.V_DEBUG);
+        Instances format = this.attributesPreselection(header);
+        model.initAttribsMask(header.numAttributes());
+
+        Reorder reorder = new Reorder();
+        reorder.setAttributeIndicesArray(model.selectedAttributes);
+        reorder.setInputFormat(header);
+
+        Filter ntb = null;
+        if (this.binarize != BinarizationTypes.NONE){
+            if (format.checkForAttributeType(Attribute.STRING)){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Cannot handle string attributes.");
+            }
+            ntb = WekaClassifier.getBinarizationFilter(this.binarize);
+            ntb.setInputFormat(format);
+            format = ntb.getOutputFormat();
+        }
+        model.binarize = this.binarize;
+
+        // feed the classifier with the instances
+        Logger.getInstance().messagef("%s: reading %s...", Logger.V_DEBUG, this.id, trainFile);
+        BufferedReader in = FileUtils.openArffData(trainFile);
+
+        try {
+            ArffLoader.ArffReader rows = new ArffLoader.ArffReader(in, header, 0, 0);
+            Instance inst;
+
+            classif.startTraining(format);
+
+            while ((inst = rows.readInstance(header)) != null){
+
+                reorder.input(inst);
+                inst = reorder.output();
+
+                if (ntb != null){
+                    ntb.input(new SparseInstance(inst));
+                    inst = ntb.output();
+                }
+                classif.addTrainingInstance(inst);
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        Logger.getInstance().messagef("%s: training on %s...", Logger.V_DEBUG, this.id, trainFile);
+        classif.finishTraining();
+    }
+
     /**
      * Prepare the actual input to the individual classification models (for single or multiple models)
      * by setting the target class, binarizing and removing unneeded attributes.
@@ -790,7 +1111,7 @@ public class WekaClassifier extends GeneralClassifier {
 
         // binarize, if supposed to
         if (model.binarize != BinarizationTypes.NONE){
-            Logger.getInstance().message(this.id + ": binarizing... (" + modelInput.relationName() + ")", Logger.V_DEBUG);
+            Logger.getInstance().messagef("%s: binarizing... (%s)", Logger.V_DEBUG, this.id, modelInput.relationName());
             modelInput = WekaClassifier.sparseNominalToBinary(this.id, modelInput, model.binarize);
         }
 
@@ -891,4 +1212,48 @@ public class WekaClassifier extends GeneralClassifier {
         }
         return classes;
     }
+
+    /* INNER CLASSES */
+
+    /**
+     * The classifiers of all the models as used by one thread -- either the shared ones, or private
+     * deserialized copies (see {@link Model#copyClassifier()}) which are created on first use.
+     */
+    private class ClassifierSet {
+
+        /** The private copies of the classifiers, or null if the shared ones are used */
+        private Hashtable<String, AbstractClassifier> copies;
+
+        /**
+         * Creates a new set of classifiers.
+         * @param parallel true if the classifiers will be used in parallel with other threads (private copies
+         *  are then created, unless {@link WekaClassifier#sharedModel} is set)
+         */
+        ClassifierSet(boolean parallel){
+            if (parallel && !sharedModel){
+                this.copies = new Hashtable<String, AbstractClassifier>();
+            }
+        }
+
+        /**
+         * Returns the classifier for the model with the given key.
+         *
+         * @param key the model key
+         * @return the classifier to be used by the current thread
+         */
+        AbstractClassifier get(String key) throws Exception {
+
+            Model model = getModel(key);
+
+            if (this.copies == null){
+                return model.classif;
+            }
+            AbstractClassifier copy = this.copies.get(key);
+            if (copy == null){
+                copy = model.copyClassifier();
+                this.copies.put(key, copy);
+            }
+            return copy;
+        }
+    }
 }
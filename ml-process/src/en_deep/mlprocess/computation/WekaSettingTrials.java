@@ -153,7 +153,7 @@ public abstract class WekaSettingTrials extends EvalSelector {
      *
      * @return the list of all needed tasks
      */
-    protected Vector<TaskDescription> createTasks() throws TaskException {
+    protected Vector<TaskDescription> createTasks() throws Exception {
 
         Vector<TaskDescription> newTasks = new Vector<TaskDescription>();
         Vector<String> lastTaskInput = new Vector<String>();
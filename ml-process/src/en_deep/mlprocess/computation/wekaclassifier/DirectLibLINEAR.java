@@ -0,0 +1,288 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.computation.wekaclassifier;
+
+import de.bwaldvogel.liblinear.Feature;
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Parameter;
+import de.bwaldvogel.liblinear.Problem;
+import de.bwaldvogel.liblinear.SolverType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Vector;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * A LibLINEAR classifier that builds the LibLINEAR training problem directly from (sparse) WEKA instances,
+ * without the filtering and the intermediate copies of the data made by the WEKA LibLINEAR wrapper.
+ * <p>
+ * The training instances may be fed one-by-one using {@link #startTraining(Instances)},
+ * {@link #addTrainingInstance(Instance)} and {@link #finishTraining()}, so that the training data never
+ * need to be held in memory as {@link Instances}. The usual {@link #buildClassifier(Instances)} is supported, too.
+ * </p><p>
+ * Nominal attributes are not binarized and missing values are treated as zeroes, i.e. the data should already
+ * be binarized or hashed. The attribute with index <i>i</i> corresponds to the LibLINEAR feature <i>i+1</i>
+ * (the class attribute is skipped), so that the feature weights are ordered the same way as with the
+ * WEKA wrapper.
+ * </p>
+ * @author Ondrej Dusek
+ */
+public class DirectLibLINEAR extends AbstractClassifier {
+
+    /* CONSTANTS */
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 1L;
+
+    /** Initial capacity of the training problem arrays */
+    private static final int INIT_CAPACITY = 1024;
+
+    /* DATA */
+
+    /** The LibLINEAR solver type (the same IDs as in LibLINEAR, classification solvers only) */
+    private int solverType = 1;
+    /** The cost parameter C */
+    private double cost = 1.0;
+    /** The stopping criterion */
+    private double eps = 0.01;
+    /** The bias feature value (no bias feature if negative) */
+    private double bias = 1.0;
+    /** Output probability estimates (logistic regression solvers only) ? */
+    private boolean probabilityEstimates;
+
+    /** The trained LibLINEAR model */
+    private de.bwaldvogel.liblinear.Model model;
+    /** Number of attributes in the training data (the LibLINEAR features are numbered from 1 to this) */
+    private int numAttributes;
+
+    /** The training feature vectors, during training */
+    private transient ArrayList<Feature[]> trainX;
+    /** The training labels, during training */
+    private transient double [] trainY;
+    /** The class attribute index of the training data, during training */
+    private transient int trainClassIndex;
+
+    /* METHODS */
+
+    /**
+     * Parses the classifier options. Valid options are:
+     * <ul>
+     * <li><tt>-S</tt> -- the LibLINEAR solver type, 0-7 (default: 1, L2-regularized L2-loss SVC, dual)</li>
+     * <li><tt>-C</tt> -- the cost parameter (default: 1.0)</li>
+     * <li><tt>-E</tt> -- the stopping criterion (default: 0.01)</li>
+     * <li><tt>-B</tt> -- the bias feature value, &lt; 0 for no bias (default: 1.0)</li>
+     * <li><tt>-P</tt> -- output probability estimates (logistic regression solvers only)</li>
+     * </ul>
+     * These are the same as for the WEKA LibLINEAR wrapper.
+     *
+     * @param options the options to be parsed
+     * @throws Exception if an option value is invalid
+     */
+    @Override
+    public void setOptions(String [] options) throws Exception {
+
+        String val = Utils.getOption('S', options);
+        if (val.length() > 0){
+            this.solverType = Integer.parseInt(val);
+            if (this.solverType < 0 || this.solverType > 7){
+                throw new IllegalArgumentException("Unsupported LibLINEAR solver type: " + val);
+            }
+        }
+        val = Utils.getOption('C', options);
+        if (val.length() > 0){
+            this.cost = Double.parseDouble(val);
+        }
+        val = Utils.getOption('E', options);
+        if (val.length() > 0){
+            this.eps = Double.parseDouble(val);
+        }
+        val = Utils.getOption('B', options);
+        if (val.length() > 0){
+            this.bias = Double.parseDouble(val);
+        }
+        this.probabilityEstimates = Utils.getFlag('P', options);
+
+        super.setOptions(options);
+    }
+
+    @Override
+    public String [] getOptions() {
+
+        Vector<String> options = new Vector<String>();
+
+        options.add("-S");
+        options.add(Integer.toString(this.solverType));
+        options.add("-C");
+        options.add(Double.toString(this.cost));
+        options.add("-E");
+        options.add(Double.toString(this.eps));
+        options.add("-B");
+        options.add(Double.toString(this.bias));
+        if (this.probabilityEstimates){
+            options.add("-P");
+        }
+        options.addAll(Arrays.asList(super.getOptions()));
+
+        return options.toArray(new String [options.size()]);
+    }
+
+    /**
+     * Returns the trained LibLINEAR model.
+     * @return the LibLINEAR model, or null if the classifier has not been trained yet
+     */
+    public de.bwaldvogel.liblinear.Model getModel() {
+        return this.model;
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+
+        this.startTraining(data);
+        for (int i = 0; i < data.numInstances(); ++i){
+            this.addTrainingInstance(data.instance(i));
+        }
+        this.finishTraining();
+    }
+
+    /**
+     * Prepares the classifier for incremental collection of training data.
+     *
+     * @param format the training data format (only the attributes and the class index are used)
+     */
+    public void startTraining(Instances format) {
+
+        if (format.classIndex() < 0 || !format.classAttribute().isNominal()){
+            throw new IllegalArgumentException("The class attribute must be set and nominal.");
+        }
+        this.numAttributes = format.numAttributes();
+        this.trainClassIndex = format.classIndex();
+        this.trainX = new ArrayList<Feature[]>(INIT_CAPACITY);
+        this.trainY = new double [INIT_CAPACITY];
+        this.model = null;
+    }
+
+    /**
+     * Adds one training instance. Instances with missing class values are skipped.
+     *
+     * @param inst the training instance, in the format given to {@link #startTraining(Instances)}
+     */
+    public void addTrainingInstance(Instance inst) {
+
+        if (inst.isMissing(this.trainClassIndex)){
+            return;
+        }
+        int pos = this.trainX.size();
+
+        if (pos == this.trainY.length){
+            this.trainY = Arrays.copyOf(this.trainY, 2 * pos);
+        }
+        this.trainY[pos] = inst.value(this.trainClassIndex);
+        this.trainX.add(this.getFeatures(inst, this.trainClassIndex));
+    }
+
+    /**
+     * Trains the LibLINEAR model on all the instances added since the last call to
+     * {@link #startTraining(Instances)} and releases the training data.
+     */
+    public void finishTraining() {
+
+        Problem problem = new Problem();
+
+        problem.l = this.trainX.size();
+        problem.n = this.bias >= 0 ? this.numAttributes + 1 : this.numAttributes;
+        problem.x = this.trainX.toArray(new Feature [problem.l][]);
+        problem.y = this.trainY.length == problem.l ? this.trainY : Arrays.copyOf(this.trainY, problem.l);
+        problem.bias = this.bias;
+
+        this.trainX = null;
+        this.trainY = null;
+
+        Linear.disableDebugOutput();
+        this.model = Linear.train(problem, new Parameter(SolverType.values()[this.solverType], this.cost, this.eps));
+    }
+
+    @Override
+    public double [] distributionForInstance(Instance inst) throws Exception {
+
+        if (this.model == null){
+            throw new IllegalStateException("The classifier has not been trained.");
+        }
+
+        double [] dist = new double [inst.numClasses()];
+        Feature [] x = this.getFeatures(inst, inst.classIndex());
+
+        if (this.probabilityEstimates && this.model.isProbabilityModel()){
+
+            double [] probs = new double [this.model.getNrClass()];
+            int [] labels = this.model.getLabels();
+
+            Linear.predictProbability(this.model, x, probs);
+            for (int i = 0; i < probs.length; ++i){
+                dist[labels[i]] = probs[i];
+            }
+        }
+        else {
+            dist[(int) Linear.predict(this.model, x)] = 1.0;
+        }
+        return dist;
+    }
+
+    /**
+     * Converts an instance into a LibLINEAR feature vector, skipping the class attribute, zero and
+     * missing values. Adds the bias feature, if applicable. Does not use any shared state, so that the
+     * trained classifier may be used by more threads at the same time.
+     *
+     * @param inst the instance to be converted
+     * @param classIndex the index of the class attribute
+     * @return the corresponding LibLINEAR feature vector
+     */
+    private Feature [] getFeatures(Instance inst, int classIndex) {
+
+        ArrayList<Feature> features = new ArrayList<Feature>(inst.numValues() + 1);
+
+        for (int i = 0; i < inst.numValues(); ++i){
+
+            int idx = inst.index(i);
+            double val = inst.valueSparse(i);
+
+            if (idx == classIndex || idx >= this.numAttributes || val == 0.0 || Utils.isMissingValue(val)){
+                continue;
+            }
+            features.add(new FeatureNode(idx + 1, val));
+        }
+        if (this.bias >= 0){
+            features.add(new FeatureNode(this.numAttributes + 1, this.bias));
+        }
+        return features.toArray(new Feature [features.size()]);
+    }
+}
@@ -8,6 +8,7 @@ import en_deep.mlprocess.Logger;
 import java.io.*;
 import java.util.Arrays;
 import weka.classifiers.AbstractClassifier;
+import weka.core.SerializedObject;
 
 /**
  * This comprises all the required fields for a classification model.
@@ -35,6 +36,8 @@ public class Model {
     private String taskId;
     /** The specified model file used for loading */
     private String modelFile;
+    /** The serialized classifier, used for creating copies (initialized on first use) */
+    private SerializedObject serializedClassif;
 
     /** Default empty constructor */
     public Model() {
@@ -64,6 +67,27 @@ public class Model {
         }
     }
 
+    /**
+     * Returns a deep copy of the trained classifier, for classifiers that cannot be safely used
+     * by more threads at the same time. The classifier is serialized only once, all copies are
+     * deserialized from the same data.
+     *
+     * @return a new copy of {@link #classif}
+     * @throws Exception if the classifier cannot be serialized or deserialized
+     */
+    public AbstractClassifier copyClassifier() throws Exception {
+
+        SerializedObject serialized;
+
+        synchronized (this){
+            if (this.serializedClassif == null){
+                this.serializedClassif = new SerializedObject(this.classif);
+            }
+            serialized = this.serializedClassif;
+        }
+        return (AbstractClassifier) serialized.getObject();
+    }
+
     /**
      * This saves the trained classifier model to a file.
      *
@@ -114,6 +138,7 @@ public class Model {
     public void load(ObjectInputStream oin) throws IOException, ClassNotFoundException {
 
         this.classif = (AbstractClassifier) oin.readObject();
+        this.serializedClassif = null;
         this.selectedAttributes = (int[]) oin.readObject();
         this.classAttrib = (Integer) oin.readObject();
         try {
@@ -51,14 +51,17 @@ public abstract class AbstractEvaluation extends Task {
     /** The name of the "class_arg" parameter */
     protected static final String CLASS_ARG = GeneralClassifier.CLASS_ARG;
     /** The value that's used as "empty" */
-    protected static String EMPTY = "_";
+    public static final String EMPTY = "_";
+    /** Missing value marking for gold and test values (different from a missing {@link #EMPTY} value) */
+    public static final int MISSING = -2;
 
     /* DATA */
 
     /* METHODS */
 
     /**
-     * This just checks for the {@link #CLASS_ARG} parameter and that there are pairs of inputs and outputs.
+     * This just checks for the {@link #CLASS_ARG} parameter and that there are pairs (or other groups,
+     * see {@link #getInputGroupSize()}) of inputs and outputs.
      */
     protected AbstractEvaluation(String id, Hashtable<String, String> parameters,
             Vector<String> input, Vector<String> output) throws TaskException {
@@ -68,11 +71,24 @@ public abstract class AbstractEvaluation extends Task {
         if (this.parameters.get(CLASS_ARG) == null){
             throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Parameter class_arg is missing.");
         }
-        if (this.input.size() % 2 != 0){
-            throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id, "There must be pairs of inputs.");
+        if (this.input.size() % this.getInputGroupSize() != 0){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id, "There must be "
+                    + (this.getInputGroupSize() == 2 ? "pairs" : "groups of " + this.getInputGroupSize())
+                    + " of inputs.");
         }
     }
 
+    /**
+     * This returns the number of input files that belong together (i.e. pairs of gold x test data by default).
+     * The derived classes may override this; it is called from the constructor, so it may only depend on the
+     * task {@link #parameters}.
+     *
+     * @return the number of input files that belong together
+     */
+    protected int getInputGroupSize(){
+        return 2;
+    }
+
     /**
      * This returns all the labels for the given attribute, in the correct order.
      * @param attr the attribute to be processed
@@ -164,24 +180,8 @@ public abstract class AbstractEvaluation extends Task {
 
         Stats stats = new Stats();
 
-        stats.n = gold.length;
-
         for (int i = 0; i < gold.length; ++i){
-            if (gold[i] == emptyVal && test[i] == emptyVal){
-                ++stats.tn;
-            }
-            else if (gold[i] == emptyVal && test[i] != emptyVal){
-                ++stats.fp;
-            }
-            else if (gold[i] != emptyVal && test[i] == emptyVal){
-                ++stats.fn;
-            }
-            else if (!labeled || gold[i] == test[i]){
-                ++stats.tp;
-            }
-            else { // same as CoNLL evaluation: wrong label on a right place is a false positive AND negative
-                ++stats.fp; ++stats.fn;
-            }
+            stats.add(gold[i], test[i], emptyVal, labeled);
         }
 
         // first - precision, second - recall
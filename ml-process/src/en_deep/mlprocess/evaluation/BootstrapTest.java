@@ -28,10 +28,7 @@
 package en_deep.mlprocess.evaluation;
 
 import en_deep.mlprocess.Logger;
-import en_deep.mlprocess.utils.Pair;
 import en_deep.mlprocess.exception.TaskException;
-import en_deep.mlprocess.utils.MathUtils;
-import en_deep.mlprocess.utils.StringUtils;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -39,10 +36,20 @@ import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Random;
 import java.util.Vector;
-import weka.core.Instances;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * This is a simple implementation of a bootstrap results confidence intervals estimation.
+ * This is a simple implementation of a bootstrap results confidence intervals estimation. It may also
+ * run a paired bootstrap test of two systems against the same gold standard.
+ * <p>
+ * The gold and test data are converted to per-instance outcome codes (true/false positive/negative) upon
+ * loading, so that resampling only accumulates outcome counts. The samples are drawn by several threads,
+ * each with its own random number generator.
+ * </p>
  * @author Ondrej Dusek
  */
 public class BootstrapTest extends AbstractEvaluation {
@@ -55,20 +62,44 @@ public class BootstrapTest extends AbstractEvaluation {
     private static final String SIZE = "size";
     /** The size_pc parameter name */
     private static final String SIZE_PC = "size_pc";
+    /** The paired parameter name */
+    private static final String PAIRED = "paired";
+    /** The threads parameter name */
+    private static final String THREADS = "threads";
+    /** The seed parameter name */
+    private static final String SEED = "seed";
+
+    /** Outcome code: true negative */
+    private static final int TN = 0;
+    /** Outcome code: false positive */
+    private static final int FP = 1;
+    /** Outcome code: false negative */
+    private static final int FN = 2;
+    /** Outcome code: true positive */
+    private static final int TP = 3;
+    /** Outcome code: wrong label (both false positive and false negative) */
+    private static final int WRONG = 4;
+    /** Number of different outcome codes */
+    private static final int NUM_CODES = 5;
+
+    /** The names of all the measures, in the order of output */
+    private static final String [] MEASURES = { "accuracy", "precision", "recall", "f1" };
 
     /* DATA */
 
-    /** The golden class values */
-    private double [] gold;
-    /** The evaluation class values */
-    private double [] test;
+    /** The per-instance outcome codes (combined codes of both systems in the paired mode) */
+    private byte [] outcomes;
     /** Number of samples to create */
     private int samplesNo;
     /** The sample size */
     private int sampleSize;
     /** The percentage of sample:data size */
     private double samplePerc;
-    /** Random number generator */
+    /** Run the paired test of two systems ? */
+    private boolean paired;
+    /** Number of threads to draw the samples */
+    private int threads;
+    /** Random number generator (used to seed the generators of the individual threads) */
     private Random rnd;
 
     /* METHODS */
@@ -83,7 +114,16 @@ public class BootstrapTest extends AbstractEvaluation {
      * <li><tt>size</tt> -- sample size</li>
      * <li><tt>size_pc</tt> -- sample size (percentage)</tt>
      * </ul>
-     * The parameters <tt>size</tt> and <tt>size_pc</tt> are mutually exclusive.
+     * The parameters <tt>size</tt> and <tt>size_pc</tt> are mutually exclusive. There are also some
+     * voluntary parameters:
+     * <ul>
+     * <li><tt>paired</tt> -- if set, a paired bootstrap test of two systems is performed. The inputs must then
+     * be triples: 1st third is the gold data, the 2nd third is the output of the first system and the last
+     * third the output of the second system. The output contains the quantiles of differences in all the
+     * measures and the p-values of the observed differences.</li>
+     * <li><tt>threads</tt> -- number of threads to draw the samples (default: 1)</li>
+     * <li><tt>seed</tt> -- random seed (for reproducible results)</li>
+     * </ul>
      */
     public BootstrapTest(String id, Hashtable<String, String> parameters,
             Vector<String> input, Vector<String> output) throws TaskException {
@@ -108,12 +148,27 @@ public class BootstrapTest extends AbstractEvaluation {
             this.sampleSize = (int) this.getIntParameterVal(SIZE);
         }
         this.samplesNo = (int) this.getIntParameterVal(SAMPLES);
+        this.paired = this.getBooleanParameterVal(PAIRED);
+
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS) : 1;
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
 
         // initialize the random number generator
-        this.rnd = new Random();
+        if (this.hasParameter(SEED)){
+            this.rnd = new Random(this.getIntParameterVal(SEED));
+        }
+        else {
+            this.rnd = new Random();
+        }
     }
 
-
+    @Override
+    protected int getInputGroupSize() {
+        return this.getBooleanParameterVal(PAIRED) ? 3 : 2;
+    }
 
     @Override
     public void perform() throws TaskException {
@@ -121,10 +176,11 @@ public class BootstrapTest extends AbstractEvaluation {
         try {
             this.readAllData();
             if (this.sampleSize == -1){
-                this.sampleSize = (int) ((this.samplePerc * this.gold.length) / 100.0);
+                this.sampleSize = (int) ((this.samplePerc * this.outcomes.length) / 100.0);
             }
-            Logger.getInstance().message(this.id + " loaded data. Performing bootstrap with "
-                    + this.samplesNo + " sets of " + this.sampleSize + " samples...", Logger.V_DEBUG);
+            Logger.getInstance().message(this.id + " loaded data. Performing " + (this.paired ? "paired " : "")
+                    + "bootstrap with " + this.samplesNo + " sets of " + this.sampleSize + " samples...",
+                    Logger.V_DEBUG);
             this.bootstrap(this.output.get(0));
         }
         catch (TaskException e){
@@ -137,90 +193,228 @@ public class BootstrapTest extends AbstractEvaluation {
     }
 
     /**
-     * Read all pairs of data and store them in the {@link #gold} and {@link #test} members. All empty
-     * values are set to 0 (substituting 0 for the empty value).
+     * Read all groups of data and store the outcome codes in the {@link #outcomes} member. In the paired
+     * mode, the codes of the two systems are combined into one.
      */
     private void readAllData() throws Exception {
 
-        ArrayList<double []> golds = new ArrayList<double[]>();
-        ArrayList<double []> tests = new ArrayList<double[]>();
+        int groupSize = this.getInputGroupSize();
+        int groups = this.input.size() / groupSize;
+        ArrayList<byte []> codes = new ArrayList<byte[]>();
         int totalLen = 0;
 
-        // accumulate all the data
-        for (int i = 0; i < this.input.size() / 2; ++i){
-            Pair<Instances, Instances> curData = this.readData(this.input.get(i), this.input.get(input.size()/2 + i));
-            int emptyVal = StringUtils.find(this.getLabels(curData.first.classAttribute()), EMPTY);
-            double [] goldVals = curData.first.attributeToDoubleArray(curData.first.classIndex());
-            double [] testVals = curData.second.attributeToDoubleArray(curData.second.classIndex());
+        // accumulate all the data (reading just the class values)
+        for (int i = 0; i < groups; ++i){
+
+            byte [] cur = this.readOutcomes(this.input.get(i), this.input.get(groups + i));
+
+            if (this.paired){
+                byte [] other = this.readOutcomes(this.input.get(i), this.input.get(2 * groups + i));
 
-            MathUtils.swapValues(goldVals, 0, emptyVal); // if there's no empty value, 0 will be subst. for -1
-            MathUtils.swapValues(testVals, 0, emptyVal);
-            golds.add(goldVals);
-            tests.add(testVals);
-            totalLen += goldVals.length;
+                if (other.length != cur.length){
+                    throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "The numbers of instances "
+                            + "in " + this.input.get(groups + i) + " and " + this.input.get(2 * groups + i)
+                            + " mismatch.");
+                }
+                for (int j = 0; j < cur.length; ++j){
+                    cur[j] = (byte) (cur[j] * NUM_CODES + other[j]);
+                }
+            }
+            codes.add(cur);
+            totalLen += cur.length;
         }
 
-        this.gold = new double [totalLen];
-        this.test = new double [totalLen];
+        this.outcomes = new byte [totalLen];
         int curPos = 0;
 
-        for (int i = 0; i < golds.size(); ++i){
-            System.arraycopy(golds.get(i), 0, this.gold, curPos, golds.get(i).length);
-            System.arraycopy(tests.get(i), 0, this.test, curPos, tests.get(i).length);
-            curPos += golds.get(i).length;
-        }       
+        for (byte [] cur : codes){
+            System.arraycopy(cur, 0, this.outcomes, curPos, cur.length);
+            curPos += cur.length;
+        }
     }
 
     /**
-     * This performs the bootstrapping and saves the results into the given file.
-     * @param outFile the name of the output file
+     * This reads one gold and test file pair and returns the outcome codes for all the instances.
+     *
+     * @param goldFile the gold standard data file
+     * @param testFile the test data file
+     * @return the outcome codes for all the instances
      */
-    private void bootstrap(String outFile) throws IOException {
+    private byte [] readOutcomes(String goldFile, String testFile) throws Exception {
 
-        double [] f1 = new double [this.samplesNo];
-        double [] acc = new double [this.samplesNo];
-        double [] pre = new double [this.samplesNo];
-        double [] rec = new double [this.samplesNo];
+        GoldTestReader data = new GoldTestReader(this.id, this.parameters.get(CLASS_ARG), EMPTY, goldFile, testFile);
+        int [][] vals = data.readAll();
+        int emptyVal = data.getEmptyIndex();
+        byte [] codes = new byte [vals[0].length];
 
-        double [] sampleGold = new double [this.sampleSize];
-        double [] sampleTest = new double [this.sampleSize];
+        for (int i = 0; i < codes.length; ++i){
 
-        for (int i = 0; i < this.samplesNo; ++i){
+            int gold = vals[0][i], test = vals[1][i];
 
-            this.sample(sampleGold, sampleTest);
+            if (gold == emptyVal && test == emptyVal){
+                codes[i] = TN;
+            }
+            else if (gold == emptyVal){
+                codes[i] = FP;
+            }
+            else if (test == emptyVal){
+                codes[i] = FN;
+            }
+            else if (gold == test && gold != GoldTestReader.MISSING){ // missing values never match
+                codes[i] = TP;
+            }
+            else {
+                codes[i] = WRONG;
+            }
+        }
+        return codes;
+    }
 
-            Stats stats = this.getStats(sampleGold, sampleTest, 0, true);
+    /**
+     * This performs the bootstrapping and saves the results into the given file.
+     * @param outFile the name of the output file
+     */
+    private void bootstrap(String outFile) throws Exception {
 
-            f1[i] = stats.getF1();
-            acc[i] = stats.getAcc();
-            pre[i] = stats.getPrec();
-            rec[i] = stats.getRecall();
+        // results[system][measure][sample]
+        final double [][][] results = new double [this.paired ? 2 : 1][MEASURES.length][this.samplesNo];
+        int threadsNo = Math.max(1, Math.min(this.threads, this.samplesNo));
+        ExecutorService pool = Executors.newFixedThreadPool(threadsNo);
+        Vector<Future<Object>> done = new Vector<Future<Object>>(threadsNo);
+
+        // draw the samples in parallel, each thread fills in its part of the results
+        try {
+            int from = 0;
+            for (int i = 0; i < threadsNo; ++i){
+
+                final int lo = from, hi = from + this.samplesNo / threadsNo + (i < this.samplesNo % threadsNo ? 1 : 0);
+                final Random threadRnd = new Random(this.rnd.nextLong());
+
+                done.add(pool.submit(new Callable<Object>() {
+                    public Object call() {
+                        drawSamples(lo, hi, threadRnd, results);
+                        return null;
+                    }
+                }));
+                from = hi;
+            }
+            for (Future<Object> f : done){
+                try {
+                    f.get();
+                }
+                catch (ExecutionException e){
+                    if (e.getCause() instanceof Exception){
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
         }
 
         PrintStream out = new PrintStream(outFile);
 
-        this.printQuantiles(acc, "accuracy", out);
-        this.printQuantiles(pre, "precision", out);
-        this.printQuantiles(rec, "recall", out);
-        this.printQuantiles(f1, "f1", out);
+        if (!this.paired){
+            for (int m = 0; m < MEASURES.length; ++m){
+                this.printQuantiles(results[0][m], MEASURES[m], out);
+            }
+        }
+        else {
+            int [] counts = new int [NUM_CODES * NUM_CODES];
+            for (int i = 0; i < this.outcomes.length; ++i){
+                counts[this.outcomes[i]]++;
+            }
+            Stats [] observed = this.getStats(counts);
+
+            for (int m = 0; m < MEASURES.length; ++m){
+
+                double diff = observed[0].getMeasure(MEASURES[m]) - observed[1].getMeasure(MEASURES[m]);
+                double [] diffs = new double [this.samplesNo];
+
+                for (int i = 0; i < this.samplesNo; ++i){
+                    diffs[i] = results[0][m][i] - results[1][m][i];
+                }
+                this.printPaired(diffs, diff, MEASURES[m], out);
+            }
+        }
         out.close();
     }
 
     /**
-     * This saves one bootstrapping sample into the given array.
-     * @param sampleGold place to save the gold sample values
-     * @param sampleTest place to save the test sample values
+     * This draws the given range of samples and stores the values of all the measures for them.
+     *
+     * @param lo the first sample number
+     * @param hi the last sample number (exclusive)
+     * @param threadRnd the random number generator to use
+     * @param results place to store the results (system x measure x sample)
      */
-    private void sample(double [] sampleGold, double [] sampleTest) {
+    private void drawSamples(int lo, int hi, Random threadRnd, double [][][] results) {
+
+        int [] counts = new int [this.paired ? NUM_CODES * NUM_CODES : NUM_CODES];
 
-        for (int i = 0; i < this.sampleSize; ++i){
-            int idx = this.rnd.nextInt(this.gold.length);
+        for (int i = lo; i < hi; ++i){
+
+            Arrays.fill(counts, 0);
+            for (int j = 0; j < this.sampleSize; ++j){
+                counts[this.outcomes[threadRnd.nextInt(this.outcomes.length)]]++;
+            }
+            Stats [] stats = this.getStats(counts);
 
-            sampleGold[i] = this.gold[idx];
-            sampleTest[i] = this.test[idx];
+            for (int sys = 0; sys < stats.length; ++sys){
+                results[sys][0][i] = stats[sys].getAcc();
+                results[sys][1][i] = stats[sys].getPrec();
+                results[sys][2][i] = stats[sys].getRecall();
+                results[sys][3][i] = stats[sys].getF1();
+            }
         }
     }
 
+    /**
+     * This computes the labeled statistics from the given outcome code counts (for both systems in the paired
+     * mode, where the counts are indexed by the combined outcome codes).
+     *
+     * @param counts the numbers of occurrences of the individual outcome codes
+     * @return the statistics, one for each system
+     */
+    private Stats [] getStats(int [] counts) {
+
+        Stats [] stats = new Stats [this.paired ? 2 : 1];
+
+        if (!this.paired){
+            stats[0] = this.countsToStats(counts);
+        }
+        else {
+            int [] first = new int [NUM_CODES], second = new int [NUM_CODES];
+
+            for (int i = 0; i < counts.length; ++i){
+                first[i / NUM_CODES] += counts[i];
+                second[i % NUM_CODES] += counts[i];
+            }
+            stats[0] = this.countsToStats(first);
+            stats[1] = this.countsToStats(second);
+        }
+        return stats;
+    }
+
+    /**
+     * This converts the outcome code counts to {@link Stats}.
+     * @param counts the number of occurrences of each outcome code
+     * @return the corresponding statistics
+     */
+    private Stats countsToStats(int [] counts) {
+
+        Stats stats = new Stats();
+
+        stats.tn = counts[TN];
+        stats.fp = counts[FP] + counts[WRONG];
+        stats.fn = counts[FN] + counts[WRONG];
+        stats.tp = counts[TP];
+        stats.n = counts[TN] + counts[FP] + counts[FN] + counts[TP] + counts[WRONG];
+        return stats;
+    }
+
     /**
      * This prints the 5%, 50% and 95% quantile of metrics values with the given label into the given
      * (open) output stream.
@@ -241,5 +435,29 @@ public class BootstrapTest extends AbstractEvaluation {
         out.println();
     }
 
+    /**
+     * This prints the results of the paired test for one measure: the observed difference, the quantiles
+     * of the differences in samples and the p-value, i.e. the proportion of samples where the difference
+     * did not have the same sign as the observed difference.
+     *
+     * @param diffs the differences (1st - 2nd system) in the individual samples
+     * @param observed the observed difference on the whole data
+     * @param label the name of the measure
+     * @param out the output stream
+     */
+    private void printPaired(double [] diffs, double observed, String label, PrintStream out) throws IOException {
+
+        int worse = 0;
+
+        for (int i = 0; i < diffs.length; ++i){
+            if ((observed >= 0 && diffs[i] <= 0) || (observed < 0 && diffs[i] >= 0)){
+                worse++;
+            }
+        }
+
+        out.println(label + " difference:" + observed);
+        this.printQuantiles(diffs, label + " sample differences", out);
+        out.println(label + " p-value:" + (worse / (double) diffs.length));
+    }
 
 }
@@ -28,18 +28,26 @@
 package en_deep.mlprocess.evaluation;
 
 import en_deep.mlprocess.Logger;
-import en_deep.mlprocess.utils.Pair;
 import en_deep.mlprocess.exception.TaskException;
-import en_deep.mlprocess.utils.StringUtils;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Hashtable;
+import java.util.TreeMap;
 import java.util.Vector;
-import weka.core.Instances;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This computes accuracy, precision, recall and F1 (labeled and unlabeled) for the
  * given attribute in gold standard and test data.
+ * <p>
+ * The data files are never loaded into memory as a whole -- only the class attribute columns
+ * of the gold standard and test data are read in lock-step, and the statistics are accumulated
+ * on the fly. Several file pairs may be evaluated in parallel.
+ * </p>
  *
  * @author Ondrej Dusek
  */
@@ -49,14 +57,20 @@ public class EvalClassification extends AbstractEvaluation {
     
     /** The name of the 'diffs' parameter */
     private static final String DIFFS = "diffs";
+    /** The name of the 'confusion' parameter */
+    private static final String CONFUSION = "confusion";
+    /** The name of the 'threads' parameter */
+    private static final String THREADS = "threads";
     
 
     /* DATA */
 
     /** Output also prediction logs with errors marked ? */
     private boolean produceDiffs;
-    /** An open file for log output */
-    private PrintStream diffFile;
+    /** Output also the confusion matrix ? */
+    private boolean produceConfusion;
+    /** Number of file pairs to be evaluated in parallel */
+    private int threads;
 
     /* METHODS */
 
@@ -70,10 +84,14 @@ public class EvalClassification extends AbstractEvaluation {
      * <ul>
      * <li><tt>class_arg</tt> -- the name of the class attribute that is to be checked.</li>
      * </ul>
-     * And one voluntary parameter:
+     * And some voluntary parameters:
      * <ul>
      * <li><tt>diffs</tt> -- if set, the number of outputs should be 2 and the second output is
      * for pairs of golden x predicted with errors marked.</li>
+     * <li><tt>confusion</tt> -- if set, one more output is required (after the diffs output, if applicable),
+     * where the confusion matrix summed over all file pairs is written (as a list of golden label, predicted label
+     * and count triples).</li>
+     * <li><tt>threads</tt> -- the number of file pairs to be evaluated in parallel (default: 1).</li>
      * </ul>
      *
      *
@@ -88,43 +106,76 @@ public class EvalClassification extends AbstractEvaluation {
         super(id, parameters, input, output);
 
         this.produceDiffs = this.getBooleanParameterVal(DIFFS);
+        this.produceConfusion = this.getBooleanParameterVal(CONFUSION);
 
-        if (!this.produceDiffs){
-            if (this.output.size() != 1){
-                throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "There must be 1 output.");
-            }
+        int outputs = 1 + (this.produceDiffs ? 1 : 0) + (this.produceConfusion ? 1 : 0);
+        if (this.output.size() != outputs){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "There must be " + outputs
+                    + " output(s).");
         }
-        else if (this.output.size() != 2){
-            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "There must be 2 outputs.");
+
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS) : 1;
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
         }
     }
 
     @Override
     public void perform() throws TaskException {
 
+        ExecutorService pool = null;
+
         try {
             Stats labeled = new Stats(), unlabeled = new Stats();
+            TreeMap<String, TreeMap<String, Integer>> confusion = new TreeMap<String, TreeMap<String, Integer>>();
+            PrintStream diffFile = null;
+            Vector<Future<EvalResult>> results = new Vector<Future<EvalResult>>(this.input.size() / 2);
+
+            // evaluate all file pairs, possibly in parallel
+            pool = Executors.newFixedThreadPool(Math.min(this.threads, Math.max(1, this.input.size() / 2)));
+            for (int i = 0; i < this.input.size() / 2; i++) {
+
+                final String goldFile = this.input.get(i);
+                final String testFile = this.input.get(this.input.size() / 2 + i);
+
+                results.add(pool.submit(new Callable<EvalResult>() {
+                    public EvalResult call() throws Exception {
+                        return eval(goldFile, testFile);
+                    }
+                }));
+            }
 
             if (this.produceDiffs){
-                this.diffFile = new PrintStream(this.output.get(1));
+                diffFile = new PrintStream(this.output.get(1));
             }
 
-            for (int i = 0; i < this.input.size() / 2; i++) {
+            // collect the results in the original order
+            for (int i = 0; i < results.size(); i++) {
 
-                Pair<Stats,Stats> results = this.eval(this.input.get(i), this.input.get(this.input.size() / 2 + i));
-                labeled.add(results.first);
-                unlabeled.add(results.second);
+                EvalResult result = this.getResult(results.get(i));
 
-                Logger.getInstance().message("Evaluated " + this.input.get(i) + " against "
-                        + this.input.get(this.input.size()/ 2 + i) + " : " + results.first.toString() + " / "
-                        + results.second.toString(), Logger.V_DEBUG);
+                labeled.add(result.labeled);
+                unlabeled.add(result.unlabeled);
+                if (this.produceConfusion){
+                    this.addConfusion(confusion, result);
+                }
+                if (this.produceDiffs){
+                    diffFile.print(result.diffs);
+                }
 
+                Logger.getInstance().message("Evaluated " + this.input.get(i) + " against "
+                        + this.input.get(this.input.size()/ 2 + i) + " : " + result.labeled.toString() + " / "
+                        + result.unlabeled.toString(), Logger.V_DEBUG);
             }
 
             if (this.produceDiffs){
-                this.diffFile.close();
+                diffFile.close();
             }
             this.printStats(labeled, unlabeled, this.output.get(0));
+            if (this.produceConfusion){
+                this.printConfusion(confusion, this.output.get(this.output.size() - 1));
+            }
         }
         catch (TaskException e){
             throw e;
@@ -133,39 +184,126 @@ public class EvalClassification extends AbstractEvaluation {
             Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
             throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
         }
+        finally {
+            if (pool != null){
+                pool.shutdownNow();
+            }
+        }
     }
 
     /**
-     * The actual evaluation of one file. This reads all input data and runs all the tests.
+     * This waits for the given evaluation to finish and returns its result, unwrapping any exceptions
+     * thrown in the evaluation.
+     *
+     * @param future the evaluation result to wait for
+     * @return the evaluation result
+     */
+    private EvalResult getResult(Future<EvalResult> future) throws Exception {
+
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The actual evaluation of one file pair. This reads the class values of both files in lock-step and
+     * accumulates the statistics and the confusion matrix.
      *
      * @param goldFile the gold standard input file
      * @param testFile the test input file
-     * @returns the evaluation statistics, first is labeled, second is unlabeled
+     * @returns the evaluation statistics and confusion matrix (and diffs, if needed)
      */
-    private Pair<Stats,Stats> eval(String goldFile, String testFile) throws Exception {
+    private EvalResult eval(String goldFile, String testFile) throws Exception {
         
+        GoldTestReader data = new GoldTestReader(this.id, this.parameters.get(CLASS_ARG), EMPTY, goldFile, testFile);
+        EvalResult result = new EvalResult();
+        String [] labels = data.getLabels();
+        int emptyIdx = data.getEmptyIndex();
+        StringBuilder log = this.produceDiffs ? new StringBuilder() : null;
 
-        // test everything
-        Pair<Instances,Instances> data = this.readData(goldFile, testFile);
-        
-        double [] goldenValues = data.first.attributeToDoubleArray(data.first.classIndex());
-        double [] testValues = data.second.attributeToDoubleArray(data.second.classIndex());
-        String [] labels = this.getLabels(data.first.classAttribute());
-        int emptyIdx = StringUtils.find(labels, EMPTY);
+        result.labels = labels;
+        result.confusion = new int [labels.length][labels.length];
 
-        Stats labeled = this.getStats(goldenValues, testValues, emptyIdx, true);
-        Stats unlabeled = this.getStats(goldenValues, testValues, emptyIdx, false);
+        try {
+            while (data.next()){
+
+                int gold = data.getGold(), test = data.getTest();
+
+                // missing values never match each other (as NaN values in the statistics)
+                result.labeled.add(gold == GoldTestReader.MISSING ? Double.NaN : gold,
+                        test == GoldTestReader.MISSING ? Double.NaN : test, emptyIdx, true);
+                result.unlabeled.add(gold, test, emptyIdx, false);
+                if (gold >= 0 && test >= 0){
+                    result.confusion[gold][test]++;
+                }
+                if (this.produceDiffs){
+                    this.printLog(log, gold, test, labels);
+                }
+            }
+        }
+        finally {
+            data.close();
+        }
 
         if (this.produceDiffs){
-            this.printLog(goldFile + " x " + testFile + " (acc:" + labeled.getAcc() + " -- " 
-                    + labeled.tp + "/" + goldenValues.length + "):", 
-                goldenValues, testValues, labels);
+            result.diffs = goldFile + " x " + testFile + " (acc:" + result.labeled.getAcc() + " -- "
+                    + result.labeled.tp + "/" + data.getNumRead() + "):\n" + log.toString() + "\n";
         }
+        return result;
+    }
 
-        return new Pair<Stats, Stats>(labeled, unlabeled);
+    /**
+     * This adds the confusion matrix of one file pair to the overall confusion matrix (which is
+     * indexed by label names, since different files may have different labels).
+     *
+     * @param confusion the overall confusion matrix
+     * @param result the evaluation result for one file pair
+     */
+    private void addConfusion(TreeMap<String, TreeMap<String, Integer>> confusion, EvalResult result){
+
+        for (int i = 0; i < result.labels.length; ++i){
+
+            TreeMap<String, Integer> row = confusion.get(result.labels[i]);
+
+            for (int j = 0; j < result.labels.length; ++j){
+                if (result.confusion[i][j] == 0){
+                    continue;
+                }
+                if (row == null){
+                    row = new TreeMap<String, Integer>();
+                    confusion.put(result.labels[i], row);
+                }
+                Integer val = row.get(result.labels[j]);
+                row.put(result.labels[j], (val == null ? 0 : val) + result.confusion[i][j]);
+            }
+        }
     }
 
+    /**
+     * This prints the confusion matrix to a file, one golden label - predicted label - count triple per line.
+     *
+     * @param confusion the confusion matrix
+     * @param fileName the output file name
+     * @throws IOException
+     */
+    private void printConfusion(TreeMap<String, TreeMap<String, Integer>> confusion, String fileName)
+            throws IOException {
+
+        PrintStream out = new PrintStream(fileName);
 
+        for (String gold : confusion.keySet()){
+            for (String test : confusion.get(gold).keySet()){
+                out.println(gold + "\t" + test + "\t" + confusion.get(gold).get(test));
+            }
+        }
+        out.close();
+    }
 
     /**
      * This prints the evaluation statistics to a file.
@@ -177,6 +315,19 @@ public class EvalClassification extends AbstractEvaluation {
     private void printStats(Stats labeled, Stats unlabeled, String fileName) throws IOException {
 
         PrintStream out = new PrintStream(fileName);
+        printStats(labeled, unlabeled, out);
+        out.close();
+    }
+
+    /**
+     * This prints the evaluation statistics to an open stream, in the format that is expected by
+     * {@link en_deep.mlprocess.utils.FileUtils#readValue(String, String)}.
+     *
+     * @param labeled the labeled statistics
+     * @param unlabeled the unlabeled statistics
+     * @param out the output stream
+     */
+    public static void printStats(Stats labeled, Stats unlabeled, PrintStream out) {
 
         out.println(labeled.toString());
         out.println(unlabeled.toString());
@@ -187,33 +338,43 @@ public class EvalClassification extends AbstractEvaluation {
         out.println("unlabeled precision:" + unlabeled.getPrec());
         out.println("unlabeled recall:" + unlabeled.getRecall());
         out.println("unlabeled f1:" + unlabeled.getF1());
-
-        out.close();
     }
 
 
     /**
-     * This prints the prediction log for the given instances (pairs of golden x predicted class values) + error markings
-     * into the open {@link #diffFile}.
-     * @param caption log caption
-     * @param gold the golden values
-     * @param test the predicted values
+     * This prints one line of the prediction log (golden x predicted class value + error marking)
+     * into the given buffer.
+     * @param log the buffer to print to
+     * @param gold the golden value
+     * @param test the predicted value
      * @param labels the value labels for both data
      */
-    private void printLog(String caption, double [] gold, double [] test, String [] labels) {
+    private void printLog(StringBuilder log, int gold, int test, String [] labels) {
 
-        this.diffFile.println(caption);
-
-        for (int i = 0; i < gold.length; i++) {
-            if (gold[i] != test[i]){
-                this.diffFile.print("X\t");
-            }
-            else {
-                this.diffFile.print("\t");
-            }
-            this.diffFile.println(labels[(int) gold[i]] + "\t" + labels[(int) test[i]]);
+        if (gold != test){
+            log.append("X\t");
+        }
+        else {
+            log.append("\t");
         }
-        this.diffFile.println();
+        log.append(gold >= 0 ? labels[gold] : "?").append("\t").append(test >= 0 ? labels[test] : "?").append("\n");
+    }
+
+    /**
+     * The evaluation results for one gold x test file pair.
+     */
+    private static class EvalResult {
+
+        /** Labeled statistics */
+        Stats labeled = new Stats();
+        /** Unlabeled statistics */
+        Stats unlabeled = new Stats();
+        /** The class labels */
+        String [] labels;
+        /** The confusion matrix (golden x predicted) */
+        int [][] confusion;
+        /** The prediction log, if needed */
+        String diffs;
     }
 
 }
@@ -0,0 +1,241 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package en_deep.mlprocess.evaluation;
+
+import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.ArffColumnReader;
+import java.io.IOException;
+import weka.core.Attribute;
+
+/**
+ * This reads the class attribute values of a gold standard and a test data file in lock-step,
+ * without loading any of the files into memory. The test data class values are mapped to the
+ * label order of the gold standard data, so that the class attributes may have their labels
+ * in different order (but the sets of labels must be the same).
+ *
+ * @author Ondrej Dusek
+ */
+class GoldTestReader {
+
+    /* CONSTANTS */
+
+    /** The value returned for missing class values */
+    static final int MISSING = AbstractEvaluation.MISSING;
+
+    /* DATA */
+
+    /** The gold standard data */
+    private ArffColumnReader gold;
+    /** The test data */
+    private ArffColumnReader test;
+    /** The gold standard file name */
+    private String goldFile;
+    /** The test file name */
+    private String testFile;
+    /** The ID of the task that uses this reader (for exceptions) */
+    private String taskId;
+
+    /** The class labels, in the gold standard order */
+    private String [] labels;
+    /** The mapping of test label indexes to gold label indexes */
+    private int [] testToGold;
+    /** Index of the empty value in {@link #labels}, or -1 */
+    private int emptyIdx;
+
+    /** The current gold value */
+    private int goldVal;
+    /** The current test value */
+    private int testVal;
+    /** The number of instances read so far */
+    private int read;
+
+    /* METHODS */
+
+    /**
+     * This opens both files and checks the class attributes. If the class attribute is not present
+     * or not nominal in both files, or the label sets differ, an exception is raised.
+     *
+     * @param taskId the ID of the calling task (for exceptions)
+     * @param className the name of the class attribute
+     * @param emptyLabel the label that is considered to be the "empty" value
+     * @param goldFile the gold standard data file name
+     * @param testFile the test data file name
+     * @throws TaskException if the class attributes are not compatible
+     * @throws IOException if the files cannot be opened
+     */
+    GoldTestReader(String taskId, String className, String emptyLabel, String goldFile, String testFile)
+            throws TaskException, IOException {
+
+        this.taskId = taskId;
+        this.goldFile = goldFile;
+        this.testFile = testFile;
+        this.gold = new ArffColumnReader(goldFile);
+        this.test = new ArffColumnReader(testFile);
+
+        Attribute attrGold = this.gold.getHeader().attribute(className);
+        Attribute attrTest = this.test.getHeader().attribute(className);
+
+        if (attrGold == null || attrTest == null || !attrGold.isNominal() || !attrTest.isNominal()
+                || attrGold.numValues() != attrTest.numValues()){
+            this.close();
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.taskId,
+                    "Attribute for evaluation not found or not nominal, or the class attributes are not the same ("
+                    + goldFile + " / " + testFile + ").");
+        }
+
+        this.labels = new String [attrGold.numValues()];
+        this.testToGold = new int [attrTest.numValues()];
+        for (int i = 0; i < this.labels.length; ++i){
+            this.labels[i] = attrGold.value(i);
+        }
+        for (int i = 0; i < this.testToGold.length; ++i){
+            if ((this.testToGold[i] = attrGold.indexOfValue(attrTest.value(i))) == -1){
+                this.close();
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.taskId,
+                        "The class attributes in " + goldFile + " and " + testFile + " are not the same.");
+            }
+        }
+        this.emptyIdx = attrGold.indexOfValue(emptyLabel);
+
+        this.gold.setColumns(attrGold.index());
+        this.test.setColumns(attrTest.index());
+    }
+
+    /**
+     * This moves to the next instance in both files.
+     *
+     * @return true if there is a next instance, false if both files have ended
+     * @throws TaskException if the numbers of instances in both files differ
+     * @throws IOException if an I/O error occurs
+     */
+    boolean next() throws TaskException, IOException {
+
+        boolean goldNext = this.gold.next();
+        boolean testNext = this.test.next();
+
+        if (goldNext != testNext){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.taskId,
+                    "The numbers of instances in gold and evaluation data mismatch ("
+                    + this.goldFile + " / " + this.testFile + ").");
+        }
+        if (!goldNext){
+            return false;
+        }
+
+        double val = this.gold.getValue(0);
+        this.goldVal = Double.isNaN(val) ? MISSING : (int) val;
+        val = this.test.getValue(0);
+        this.testVal = Double.isNaN(val) ? MISSING : this.testToGold[(int) val];
+        this.read++;
+        return true;
+    }
+
+    /**
+     * Returns the gold class value of the current instance (as an index to {@link #getLabels()}).
+     * @return the current gold value, or {@link #MISSING}
+     */
+    int getGold(){
+        return this.goldVal;
+    }
+
+    /**
+     * Returns the test class value of the current instance (as an index to {@link #getLabels()}).
+     * @return the current test value, or {@link #MISSING}
+     */
+    int getTest(){
+        return this.testVal;
+    }
+
+    /**
+     * Returns the number of instances read so far.
+     * @return the number of instances read
+     */
+    int getNumRead(){
+        return this.read;
+    }
+
+    /**
+     * Returns the class labels, in the order of the gold standard file.
+     * @return the class labels
+     */
+    String [] getLabels(){
+        return this.labels;
+    }
+
+    /**
+     * Returns the index of the empty value label.
+     * @return the index of the empty value in {@link #getLabels()}, or -1 if not present
+     */
+    int getEmptyIndex(){
+        return this.emptyIdx;
+    }
+
+    /**
+     * This reads all the remaining instances and returns their gold and test values, respectively.
+     * Closes the files afterwards.
+     *
+     * @return the gold values (first) and test values (second)
+     * @throws TaskException if the numbers of instances in both files differ
+     * @throws IOException if an I/O error occurs
+     */
+    int [][] readAll() throws TaskException, IOException {
+
+        int [] goldVals = new int [1024];
+        int [] testVals = new int [1024];
+        int len = 0;
+
+        while (this.next()){
+            if (len == goldVals.length){
+                int [] tmp = new int [len * 2];
+                System.arraycopy(goldVals, 0, tmp, 0, len);
+                goldVals = tmp;
+                tmp = new int [len * 2];
+                System.arraycopy(testVals, 0, tmp, 0, len);
+                testVals = tmp;
+            }
+            goldVals[len] = this.goldVal;
+            testVals[len] = this.testVal;
+            len++;
+        }
+        this.close();
+
+        int [][] ret = new int [2][len];
+        System.arraycopy(goldVals, 0, ret[0], 0, len);
+        System.arraycopy(testVals, 0, ret[1], 0, len);
+        return ret;
+    }
+
+    /**
+     * Closes both files.
+     * @throws IOException
+     */
+    void close() throws IOException {
+        this.gold.close();
+        this.test.close();
+    }
+}
@@ -74,7 +74,7 @@ public class Stats {
      * Adds the values of the other statistics to this one.
      * @param other the other values to be added
      */
-    void add(Stats other) {
+    public void add(Stats other) {
 
         this.n += other.n;
         this.fn += other.fn;
@@ -83,6 +83,36 @@ public class Stats {
         this.tn += other.tn;
     }
 
+    /**
+     * Adds one instance to the statistics, given its gold and test values. Works for labeled and unlabeled
+     * version (unlabeled checks against the empty value only, labeled checks for wrong values, too).
+     *
+     * @param gold the gold standard value
+     * @param test the test data value
+     * @param emptyVal the value that is treated as "empty"
+     * @param labeled should we consider labels ?
+     */
+    public void add(double gold, double test, double emptyVal, boolean labeled) {
+
+        ++this.n;
+
+        if (gold == emptyVal && test == emptyVal){
+            ++this.tn;
+        }
+        else if (gold == emptyVal && test != emptyVal){
+            ++this.fp;
+        }
+        else if (gold != emptyVal && test == emptyVal){
+            ++this.fn;
+        }
+        else if (!labeled || gold == test){
+            ++this.tp;
+        }
+        else { // same as CoNLL evaluation: wrong label on a right place is a false positive AND negative
+            ++this.fp; ++this.fn;
+        }
+    }
+
     /**
      * Returns the accuracy computed from the stored values.
      * @return the accuracy.
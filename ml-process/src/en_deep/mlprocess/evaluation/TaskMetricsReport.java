@@ -0,0 +1,260 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.evaluation;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.Task;
+import en_deep.mlprocess.TaskDescription.TaskStatus;
+import en_deep.mlprocess.TaskMetrics;
+import en_deep.mlprocess.exception.TaskException;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * This aggregates the task metrics recorded by the workers (see {@link TaskMetrics}) by the task algorithm
+ * and by the task id prefix, so that the most demanding kinds of tasks may be found.
+ *
+ * @author Ondrej Dusek
+ */
+public class TaskMetricsReport extends Task {
+
+    /* CONSTANTS */
+
+    /** The 'prefix_separator' parameter name */
+    private static final String PREFIX_SEPARATOR = "prefix_separator";
+
+    /** The default id prefix separator (the one used in expanded task ids) */
+    private static final String DEFAULT_PREFIX_SEPARATOR = "#";
+
+    /** The summed metrics */
+    private static final String [] SUMMED = { TaskMetrics.WALL_MS, TaskMetrics.CPU_MS, TaskMetrics.ALLOC_BYTES,
+        TaskMetrics.GC_MS, TaskMetrics.READ_BYTES, TaskMetrics.WRITTEN_BYTES };
+
+    /* DATA */
+
+    /** The id prefix separator */
+    private String prefixSeparator;
+
+    /* METHODS */
+
+    /**
+     * This creates a new {@link TaskMetricsReport}, checking the inputs and outputs. The inputs are one or more
+     * metrics files, the output is one text file with the report. There is one voluntary parameter:
+     * <ul>
+     * <li><tt>prefix_separator</tt> -- the task id prefix is the part of the id before this string (default: "#",
+     * i.e. all expansions of the same task have the same prefix)</li>
+     * </ul>
+     */
+    public TaskMetricsReport(String id, Hashtable<String, String> parameters, Vector<String> input,
+            Vector<String> output) throws TaskException {
+
+        super(id, parameters, input, output);
+
+        this.prefixSeparator = this.hasParameter(PREFIX_SEPARATOR) ? this.getParameterVal(PREFIX_SEPARATOR)
+                : DEFAULT_PREFIX_SEPARATOR;
+
+        if (this.input.isEmpty()){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id, "Must have some input.");
+        }
+        if (this.output.size() != 1){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "There must be just one output.");
+        }
+        this.eliminatePatterns(this.input);
+    }
+
+    @Override
+    public void perform() throws TaskException {
+
+        try {
+            Hashtable<String, Group> byAlgorithm = new Hashtable<String, Group>();
+            Hashtable<String, Group> byPrefix = new Hashtable<String, Group>();
+
+            for (String file : this.input){
+                this.readMetrics(file, byAlgorithm, byPrefix);
+            }
+
+            PrintStream out = new PrintStream(this.output.get(0));
+
+            out.println("# by algorithm");
+            this.printGroups(byAlgorithm, out);
+            out.println();
+            out.println("# by id prefix");
+            this.printGroups(byPrefix, out);
+            out.close();
+        }
+        catch (TaskException e){
+            throw e;
+        }
+        catch (Exception e){
+            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+        }
+    }
+
+    /**
+     * This reads all the metrics lines from the given file and adds them to the groups.
+     *
+     * @param file the metrics file name
+     * @param byAlgorithm groups by the task algorithm
+     * @param byPrefix groups by the task id prefix
+     */
+    private void readMetrics(String file, Hashtable<String, Group> byAlgorithm, Hashtable<String, Group> byPrefix)
+            throws Exception {
+
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        String line;
+
+        while ((line = in.readLine()) != null){
+
+            if (line.trim().length() == 0){
+                continue;
+            }
+            Hashtable<String, String> vals = new Hashtable<String, String>();
+
+            for (String pair : line.split("\t")){
+                int eq = pair.indexOf('=');
+                if (eq > 0){
+                    vals.put(pair.substring(0, eq), pair.substring(eq + 1));
+                }
+            }
+            if (!vals.containsKey(TaskMetrics.TASK) || !vals.containsKey(TaskMetrics.ALGORITHM)){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Invalid metrics line in "
+                        + file + ": " + line);
+            }
+
+            String taskId = vals.get(TaskMetrics.TASK);
+            String prefix = taskId.contains(this.prefixSeparator)
+                    ? taskId.substring(0, taskId.indexOf(this.prefixSeparator)) : taskId;
+
+            this.getGroup(byAlgorithm, vals.get(TaskMetrics.ALGORITHM)).add(vals);
+            this.getGroup(byPrefix, prefix).add(vals);
+        }
+        in.close();
+    }
+
+    /**
+     * Returns the group of the given name, creates it if necessary.
+     */
+    private Group getGroup(Hashtable<String, Group> groups, String name){
+
+        Group group = groups.get(name);
+
+        if (group == null){
+            group = new Group(name);
+            groups.put(name, group);
+        }
+        return group;
+    }
+
+    /**
+     * Prints the given groups, sorted by the total wall time.
+     *
+     * @param groups the groups to be printed
+     * @param out the output stream
+     */
+    private void printGroups(Hashtable<String, Group> groups, PrintStream out){
+
+        Vector<Group> sorted = new Vector<Group>(groups.values());
+
+        Collections.sort(sorted, new Comparator<Group>() {
+            public int compare(Group o1, Group o2) {
+                return o1.sums[0] > o2.sums[0] ? -1 : (o1.sums[0] < o2.sums[0] ? 1 : o1.name.compareTo(o2.name));
+            }
+        });
+
+        out.print("name\truns\tfailed\tmean_" + TaskMetrics.WALL_MS + "\tmax_" + TaskMetrics.WALL_MS);
+        for (int i = 0; i < SUMMED.length; ++i){
+            out.print("\t" + SUMMED[i]);
+        }
+        out.println("\tmax_" + TaskMetrics.PEAK_HEAP_BYTES);
+
+        for (Group group : sorted){
+            out.print(group.name + "\t" + group.runs + "\t" + group.failed + "\t" + (group.sums[0] / group.runs)
+                    + "\t" + group.maxWall);
+            for (int i = 0; i < SUMMED.length; ++i){
+                out.print("\t" + group.sums[i]);
+            }
+            out.println("\t" + group.maxPeakHeap);
+        }
+    }
+
+    /**
+     * Aggregated metrics of one group of task runs.
+     */
+    private static class Group {
+
+        /** The group name */
+        final String name;
+        /** Number of runs */
+        int runs;
+        /** Number of failed runs */
+        int failed;
+        /** Sums of the {@link #SUMMED} metrics */
+        final long [] sums = new long [SUMMED.length];
+        /** Maximum wall time */
+        long maxWall;
+        /** Maximum peak heap size */
+        long maxPeakHeap;
+
+        /** Creates a new empty group */
+        Group(String name){
+            this.name = name;
+        }
+
+        /**
+         * Adds the metrics of one task run (unknown values, i.e. -1, are ignored).
+         */
+        void add(Hashtable<String, String> vals){
+
+            this.runs++;
+            if (!TaskStatus.DONE.toString().equals(vals.get(TaskMetrics.STATUS))){
+                this.failed++;
+            }
+            for (int i = 0; i < SUMMED.length; ++i){
+                this.sums[i] += Math.max(0, getLong(vals, SUMMED[i]));
+            }
+            this.maxWall = Math.max(this.maxWall, getLong(vals, TaskMetrics.WALL_MS));
+            this.maxPeakHeap = Math.max(this.maxPeakHeap, getLong(vals, TaskMetrics.PEAK_HEAP_BYTES));
+        }
+
+        /**
+         * Returns the given value as a number, or -1 if it is not present.
+         */
+        private static long getLong(Hashtable<String, String> vals, String key){
+
+            String val = vals.get(key);
+            return val == null ? -1 : Long.parseLong(val);
+        }
+    }
+}
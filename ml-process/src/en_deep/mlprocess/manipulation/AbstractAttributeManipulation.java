@@ -33,11 +33,20 @@ import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.utils.FileUtils;
 import java.util.Hashtable;
 import java.util.Vector;
+import weka.core.DenseInstance;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.SparseInstance;
 
 /**
  * This unifies the functions for all the classes that just manipulate attributes on one file
  * at a time.
+ * <p>
+ * Subclasses that only change the header and each instance separately may support the streaming
+ * mode by extending {@link StreamableAttributeManipulation}, so that the data are read and written row by row
+ * and never held in the memory as a whole. Files with string or relational attributes are always processed
+ * in the batch mode.
+ * </p>
  * @author Ondrej Dusek
  */
 public abstract class AbstractAttributeManipulation extends Task {
@@ -50,6 +59,9 @@ public abstract class AbstractAttributeManipulation extends Task {
 
     /* DATA */
 
+    /** Index of the file currently being processed */
+    private int currentFile;
+
     /* METHODS */
 
     /**
@@ -79,6 +91,11 @@ public abstract class AbstractAttributeManipulation extends Task {
 
         try {
             for (int i = 0; i < this.input.size(); ++i){
+
+                this.currentFile = i;
+                if (this.tryStream(this.input.get(i), this.output.get(i))){
+                    continue;
+                }
                 Instances data = FileUtils.readArff(this.input.get(i));
                 this.manipulateAttributes(data);
                 FileUtils.writeArff(this.output.get(i), data);
@@ -93,6 +110,61 @@ public abstract class AbstractAttributeManipulation extends Task {
         }
     }
 
+    /**
+     * This tries to process the given file in the streaming mode, i.e. row by row. The default implementation
+     * does not support streaming and always returns false, so that the file is processed in the memory using
+     * {@link #manipulateAttributes(Instances)}.
+     *
+     * @param inFile the input file name
+     * @param outFile the output file name
+     * @return true if the file has been processed, false if it must be processed in the memory
+     */
+    protected boolean tryStream(String inFile, String outFile) throws Exception {
+        return false;
+    }
+
+    /**
+     * This checks if the given data set may be processed in the streaming mode, i.e. it contains no
+     * string or relational attributes, whose values are stored in the header.
+     * 
+     * @param header the data set header
+     * @return true if the data set may be processed row by row
+     */
+    protected static boolean canStream(Instances header){
+
+        for (int i = 0; i < header.numAttributes(); ++i){
+            if (header.attribute(i).isString() || header.attribute(i).isRelationValued()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the input file that is currently being processed (in the {@link #input} and
+     * {@link #output} lists).
+     * @return the current file index
+     */
+    protected int getCurrentFile(){
+        return this.currentFile;
+    }
+
+    /**
+     * This creates a new instance of the same type (sparse or dense) and with the same weight as the
+     * given one, with the given values.
+     *
+     * @param template the instance whose type and weight should be used
+     * @param values the values of the new instance
+     * @return the new instance (not yet assigned to a data set)
+     */
+    protected static Instance createInstance(Instance template, double [] values){
+
+        if (template instanceof SparseInstance){
+            return new SparseInstance(template.weight(), values);
+        }
+        return new DenseInstance(template.weight(), values);
+    }
+
     /**
      * This should manipulate the attributes in one ARFF file.
      * @param data the data set to be processed.
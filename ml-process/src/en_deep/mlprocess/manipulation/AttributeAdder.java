@@ -31,10 +31,15 @@ import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.Task;
 import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.utils.FileUtils;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Vector;
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.converters.ArffLoader;
 
 /**
  * This allows re-adding an attribute to an instances set that was previously deleted because of attribute selection.
@@ -90,13 +95,22 @@ public class AttributeAdder extends Task {
 
     /**
      * This adds all the attributes given in the {@link #ATTRIBS} parameter from the second input file
-     * to the first input file and saves the result to the output file.
+     * to the first input file and saves the result to the output file. The files are processed row by
+     * row, unless they contain string attributes.
      * @param whereFile where should the attributes be added to
      * @param whatFile where should the values be taken from
      * @param outFile the output file
      */
     private void addAttribs(String whereFile, String whatFile, String outFile) throws Exception {
 
+        Instances baseHeader = FileUtils.readArffStructure(whereFile);
+        Instances addHeader = FileUtils.readArffStructure(whatFile);
+
+        if (AbstractAttributeManipulation.canStream(baseHeader) && AbstractAttributeManipulation.canStream(addHeader)){
+            this.streamAttribs(whereFile, baseHeader, whatFile, addHeader, outFile);
+            return;
+        }
+
         Instances base = FileUtils.readArff(whereFile);
         Instances add = FileUtils.readArff(whatFile);
         String [] attribs = this.getParameterVal(ATTRIBS).split("\\s+");
@@ -130,4 +144,92 @@ public class AttributeAdder extends Task {
         FileUtils.writeArff(outFile, base);
     }
 
+    /**
+     * This adds the attributes in the same way as {@link #addAttribs(String, String, String)}, but
+     * reads and writes the files row by row.
+     *
+     * @param whereFile where should the attributes be added to
+     * @param baseHeader the header of the file where the attributes should be added to
+     * @param whatFile where should the values be taken from
+     * @param addHeader the header of the file where the values should be taken from
+     * @param outFile the output file
+     */
+    private void streamAttribs(String whereFile, Instances baseHeader, String whatFile, Instances addHeader,
+            String outFile) throws Exception {
+
+        Instances outHeader = new Instances(baseHeader, 0);
+        String [] attribs = this.getParameterVal(ATTRIBS).split("\\s+");
+        // sources of all output attributes: base (false) or added (true) file and the attribute index there
+        ArrayList<Boolean> fromAdded = new ArrayList<Boolean>();
+        ArrayList<Integer> srcIdxs = new ArrayList<Integer>();
+
+        for (int i = 0; i < baseHeader.numAttributes(); ++i){
+            fromAdded.add(false);
+            srcIdxs.add(i);
+        }
+        for (int attrNo = 0; attrNo < attribs.length; attrNo ++) {
+
+            Attribute orig = addHeader.attribute(attribs[attrNo]);
+            if (orig == null){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Attribute " + attribs[attrNo]
+                        + " not found in " + whatFile  + ".");
+            }
+            int idx = outHeader.numAttributes();
+            if (outHeader.attribute(attribs[attrNo]) != null){
+                idx = outHeader.attribute(attribs[attrNo]).index();
+                outHeader.deleteAttributeAt(idx);
+                fromAdded.remove(idx);
+                srcIdxs.remove(idx);
+                Logger.getInstance().message(this.id + ": Attribute overwritten -- " + attribs[attrNo],
+                        Logger.V_WARNING);
+            }
+            outHeader.insertAttributeAt(orig, idx);
+            fromAdded.add(idx, true);
+            srcIdxs.add(idx, orig.index());
+        }
+
+        boolean [] srcAdded = new boolean [srcIdxs.size()];
+        int [] src = new int [srcIdxs.size()];
+        for (int i = 0; i < src.length; ++i){
+            srcAdded[i] = fromAdded.get(i);
+            src[i] = srcIdxs.get(i);
+        }
+
+        BufferedReader baseIn = FileUtils.openArffData(whereFile);
+        BufferedReader addIn = FileUtils.openArffData(whatFile);
+        BufferedWriter out = FileUtils.openArffWriter(outFile, outHeader);
+
+        try {
+            ArffLoader.ArffReader baseRows = new ArffLoader.ArffReader(baseIn, baseHeader, 0, 0);
+            ArffLoader.ArffReader addRows = new ArffLoader.ArffReader(addIn, addHeader, 0, 0);
+            Instance baseInst = baseRows.readInstance(baseHeader);
+            Instance addInst = addRows.readInstance(addHeader);
+
+            while (baseInst != null && addInst != null){
+
+                double [] vals = new double [src.length];
+
+                for (int i = 0; i < vals.length; ++i){
+                    vals[i] = srcAdded[i] ? addInst.value(src[i]) : baseInst.value(src[i]);
+                }
+                Instance result = AbstractAttributeManipulation.createInstance(baseInst, vals);
+                result.setDataset(outHeader);
+                out.write(result.toString());
+                out.newLine();
+
+                baseInst = baseRows.readInstance(baseHeader);
+                addInst = addRows.readInstance(addHeader);
+            }
+            if (baseInst != null || addInst != null){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Number of instances"
+                        + " differ in " + whereFile + " and " + whatFile + ".");
+            }
+        }
+        finally {
+            out.close();
+            baseIn.close();
+            addIn.close();
+        }
+    }
+
 }
@@ -44,7 +44,7 @@ import weka.core.Instances;
  * This divides an attribute in two, filling the missing values with an empty one.
  * @author Ondrej Dusek
  */
-public class AttributeDivider extends AbstractAttributeManipulation {
+public class AttributeDivider extends StreamableAttributeManipulation {
     
     /* CONSTANTS */
 
@@ -64,6 +64,13 @@ public class AttributeDivider extends AbstractAttributeManipulation {
     /** Prefixes of values that should be moved to the new attribute */
     private String [] moveValues;
 
+    /** Index of the divided attribute in the current file */
+    private int attrIndex;
+    /** Values of the first new attribute, for all old attribute values */
+    private double [] keptVals;
+    /** Values of the second new attribute, for all old attribute values */
+    private double [] movedVals;
+
     /* METHODS */
 
     /**
@@ -97,6 +104,61 @@ public class AttributeDivider extends AbstractAttributeManipulation {
      */
     protected void manipulateAttributes(Instances data) throws TaskException{
 
+        this.checkAttributes(data);
+
+        double [] numericVals = data.attributeToDoubleArray(data.attribute(this.attribName).index());
+        this.divideAttribute(data);
+
+        // move the values to the new attributes
+        for (int i = 0; i < numericVals.length; ++i){
+            Instance inst = data.get(i);
+
+            inst.setValue(this.attrIndex, this.keptVals[(int) numericVals[i]]);
+            inst.setValue(this.attrIndex + 1, this.movedVals[(int) numericVals[i]]);
+        }
+    }
+
+    /**
+     * Divide the attribute in the header of the given file.
+     * @param header the file header
+     * @return the header with the divided attribute
+     */
+    @Override
+    protected Instances manipulateHeader(Instances header) throws TaskException {
+
+        this.checkAttributes(header);
+        this.divideAttribute(header);
+        return header;
+    }
+
+    /**
+     * Move the value of the divided attribute to one of the new attributes for one instance.
+     * @param inst the instance to be processed
+     * @return the new instance, with both the new attributes
+     */
+    @Override
+    protected Instance manipulateInstance(Instance inst) throws TaskException {
+
+        double [] vals = new double [inst.numAttributes() + 1];
+        int oldVal = (int) inst.value(this.attrIndex);
+
+        for (int i = 0; i < this.attrIndex; ++i){
+            vals[i] = inst.value(i);
+        }
+        vals[this.attrIndex] = this.keptVals[oldVal];
+        vals[this.attrIndex + 1] = this.movedVals[oldVal];
+        for (int i = this.attrIndex + 1; i < inst.numAttributes(); ++i){
+            vals[i + 1] = inst.value(i);
+        }
+        return createInstance(inst, vals);
+    }
+
+    /**
+     * Check that the attribute to be divided exists and the new one does not exist in the given data set.
+     * @param data the data set to be checked
+     */
+    private void checkAttributes(Instances data) throws TaskException {
+
         if (data.attribute(this.attribName) == null){
             throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "The attribute "
                     + this.attribName + " has not been found in " + data.relationName());
@@ -105,6 +167,16 @@ public class AttributeDivider extends AbstractAttributeManipulation {
             throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "The attribute "
                     + this.newName + " already exists in " + data.relationName());
         }
+    }
+
+    /**
+     * Replace the attribute to be divided with the two new attributes in the given data set (all their
+     * values are left unset) and find out where the old values should be moved ({@link #attrIndex},
+     * {@link #keptVals}, {@link #movedVals}).
+     *
+     * @param data the data set to be processed
+     */
+    private void divideAttribute(Instances data) {
 
         // find out which values should be moved
         Attribute attr = data.attribute(this.attribName);
@@ -137,23 +209,23 @@ public class AttributeDivider extends AbstractAttributeManipulation {
         Attribute keptAttr = new Attribute(attr.name(), Arrays.asList(keptArr));
         Attribute movedAttr = new Attribute(this.newName, Arrays.asList(movedArr));
 
-        int attrIndex = attr.index();
-        double [] numericVals = data.attributeToDoubleArray(attrIndex);
-        data.deleteAttributeAt(attrIndex);
-        data.insertAttributeAt(keptAttr, attrIndex);
-        data.insertAttributeAt(movedAttr, attrIndex+1);
+        this.attrIndex = attr.index();
+        data.deleteAttributeAt(this.attrIndex);
+        data.insertAttributeAt(keptAttr, this.attrIndex);
+        data.insertAttributeAt(movedAttr, this.attrIndex+1);
 
-        // move the values to the new attributes
-        for (int i = 0; i < numericVals.length; ++i){
-            Instance inst = data.get(i);
+        // map the old values to the new attributes
+        this.keptVals = new double [stringVals.length];
+        this.movedVals = new double [stringVals.length];
 
-            if (moved.contains(stringVals[(int) numericVals[i]])){
-                inst.setValue(attrIndex, EMPTY);
-                inst.setValue(attrIndex+1, stringVals[(int) numericVals[i]]);
+        for (int i = 0; i < stringVals.length; ++i){
+            if (moved.contains(stringVals[i])){
+                this.keptVals[i] = keptAttr.indexOfValue(EMPTY);
+                this.movedVals[i] = movedAttr.indexOfValue(stringVals[i]);
             }
             else {
-                inst.setValue(attrIndex, stringVals[(int) numericVals[i]]);
-                inst.setValue(attrIndex+1, EMPTY);
+                this.keptVals[i] = keptAttr.indexOfValue(stringVals[i]);
+                this.movedVals[i] = movedAttr.indexOfValue(EMPTY);
             }
         }
     }
@@ -30,6 +30,7 @@ package en_deep.mlprocess.manipulation;
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.utils.Pair;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.ColumnStatistics;
 import en_deep.mlprocess.utils.StringUtils;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -65,6 +66,8 @@ public class AttributeFilter extends MergedHeadersOutput {
     private static final String ATTRIBUTES = "attributes";
     /** The "add_other_val" parameter name */
     private static final String ADD_OTHER_VAL = "add_other_val";
+    /** The "threads" parameter name */
+    private static final String THREADS = "threads";
 
     /** The string that is appended to all filtered attribute names */
     private static final String ATTR_NAME_SUFF = "_filt";
@@ -87,6 +90,10 @@ public class AttributeFilter extends MergedHeadersOutput {
     private double minPercentage = Double.NaN;
     /** The names of the attributePrefixes to be filtered */
     private String [] attributePrefixes;
+    /** The number of threads used to collect the statistics */
+    private int threads;
+    /** The values statistics of all the attributes to be filtered */
+    private ColumnStatistics stats;
 
 
     /* METHODS */
@@ -127,6 +134,7 @@ public class AttributeFilter extends MergedHeadersOutput {
      * and the last outputs(s) are considered to be output files where the processing info about this filtering
      * is saved for later use.</tt></li>
      * <li><tt>add_other_val</tt> -- adds {@link #OTHER_VALUE} to the list of acceptable values for all attributes</li>
+     * <li><tt>threads</tt> -- the number of threads used to collect the values statistics (default: 1)</li>
      * </ul>
      * <p>
      * TODO: more meaningful add_other_val -- first see if the filtering has had some effect, then add other value
@@ -156,6 +164,11 @@ public class AttributeFilter extends MergedHeadersOutput {
 
         this.delOrig = this.getBooleanParameterVal(DEL_ORIG);
         this.addOtherVal = this.getBooleanParameterVal(ADD_OTHER_VAL);
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS) : 1;
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
 
         if (!this.hasInfoIn() && (this.attributePrefixes == null
                 || (this.mostCommon == -1 && this.minOccurrences == -1 && this.minPercentage == Double.NaN))){
@@ -253,7 +266,7 @@ public class AttributeFilter extends MergedHeadersOutput {
             Vector<String> vals = this.getAttributeValues(data[0], attrName);
             // collect statistics about the given attribute and create its filtered version
             int minOccur = this.getMinOccurrences(data);
-            int[] stats = this.collectStatistics(data, attrName);
+            int[] stats = this.stats.getNominalCounts(attrName);
             Vector<String> allowedVals = this.filterValues(stats, minOccur, vals);
 
             allowedVals.add(OTHER_VALUE);
@@ -340,27 +353,32 @@ public class AttributeFilter extends MergedHeadersOutput {
 
 
     /**
-     * This collects the statistics about how often the individual values of an attribute appear.
+     * This collects the statistics about how often the individual values of all the attributes that are
+     * to be filtered appear, in one pass over all the data.
+     *
      * @param data the data to be examined
-     * @param attrPrefix the attribute to collect the statistics about
-     * @return the occurrence counts for all values of the given attribute in the given data
+     * @return the occurrence counts for all values of the attributes matching one of the prefixes
      */
-    private int [] collectStatistics(Instances[] data, String attrName) {
+    private ColumnStatistics collectStatistics(Instances[] data) throws Exception {
 
-        int [] stats = new int [data[0].attribute(attrName).numValues()];
+        Vector<Integer> attribs = new Vector<Integer>();
 
-        for (int i = 0; i < data.length; ++i){
-            
-            double [] values = data[i].attributeToDoubleArray(data[i].attribute(attrName).index());
+        for (int i = 0; i < data[0].numAttributes(); ++i){
 
-            for (int j = 0; j < values.length; ++j){
-                stats[(int)values[j]]++;
+            Attribute attr = data[0].attribute(i);
+
+            for (int j = 0; attr.isNominal() && j < this.attributePrefixes.length; ++j){
+                if (attr.name().startsWith(this.attributePrefixes[j])){
+                    attribs.add(i);
+                    break;
+                }
             }
         }
-
-        return stats;
-
-        
+        int [] idxs = new int [attribs.size()];
+        for (int i = 0; i < idxs.length; ++i){
+            idxs[i] = attribs.get(i);
+        }
+        return new ColumnStatistics(data, idxs, ColumnStatistics.DEFAULT_EXACT_LIMIT, this.threads);
     }
 
     /**
@@ -565,9 +583,12 @@ public class AttributeFilter extends MergedHeadersOutput {
         if (info == null){
             HashMap<String, String> filtered = new HashMap<String, String>();
 
+            this.stats = this.collectStatistics(data);
+
             for (int j = 0; j < this.attributePrefixes.length; ++j) {
                 filtered.putAll(this.filterAttributePrefix(data, this.attributePrefixes[j]));
             }
+            this.stats = null;
             if (this.addOtherVal){
                 this.addOtherValue(data);
             }
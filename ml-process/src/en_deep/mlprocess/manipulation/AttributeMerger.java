@@ -41,7 +41,7 @@ import weka.core.Instances;
  * non-empty value, that of the first one is kept.
  * @author Ondrej Dusek
  */
-public class AttributeMerger extends AbstractAttributeManipulation {
+public class AttributeMerger extends StreamableAttributeManipulation {
     
     /* CONSTANTS */
 
@@ -57,6 +57,22 @@ public class AttributeMerger extends AbstractAttributeManipulation {
     /** The name of the second attribute to be merged */
     private String addedAttrib;
 
+    /** Index of the merged attribute in the current file */
+    private int attrIdx;
+    /** Values of the merged attribute, for all values of the first attribute */
+    private double [] firstMap;
+    /** Values of the merged attribute, for all values of the second attribute */
+    private double [] secondMap;
+    /** Which values of the first attribute are empty */
+    private boolean [] firstEmpty;
+
+    /** Index of the first attribute in the current input file (streaming mode) */
+    private int firstIdx;
+    /** Index of the second attribute in the current input file (streaming mode) */
+    private int secondIdx;
+    /** Indexes of the input attributes for all output attributes, -1 for the merged one (streaming mode) */
+    private int [] sourceIdxs;
+
     /* METHODS */
 
     /**
@@ -88,10 +104,94 @@ public class AttributeMerger extends AbstractAttributeManipulation {
     @Override
     protected void manipulateAttributes(Instances data) throws TaskException {
 
+        this.checkAttributes(data);
+
+        double [] firstVals = data.attributeToDoubleArray(data.attribute(this.attribute).index());
+        double [] secondVals = data.attributeToDoubleArray(data.attribute(this.addedAttrib).index());
+        this.mergeAttributes(data);
+
+        for (int i = 0; i < firstVals.length; ++i){
+            Instance inst = data.get(i);
+            inst.setValue(this.attrIdx, this.getMergedValue(firstVals[i], secondVals[i]));
+        }
+    }
+
+    /**
+     * This merges the pre-set two attributes in the header of the given file.
+     * @param header the file header
+     * @return the header with the merged attribute
+     */
+    @Override
+    protected Instances manipulateHeader(Instances header) throws TaskException {
+
+        this.checkAttributes(header);
+
+        int firstIdx = header.attribute(this.attribute).index();
+        int secondIdx = header.attribute(this.addedAttrib).index();
+        int numAttribs = header.numAttributes();
+
+        this.mergeAttributes(header);
+
+        // find out where the values of the new instances come from
+        this.sourceIdxs = new int [numAttribs - 1];
+        for (int i = 0, j = 0; i < this.sourceIdxs.length; ++i){
+
+            if (i == this.attrIdx){
+                this.sourceIdxs[i] = -1;
+                continue;
+            }
+            while (j == firstIdx || j == secondIdx){
+                ++j;
+            }
+            this.sourceIdxs[i] = j++;
+        }
+        this.firstIdx = firstIdx;
+        this.secondIdx = secondIdx;
+        return header;
+    }
+
+    /**
+     * This merges the pre-set two attributes in one instance.
+     * @param inst the instance to be processed
+     * @return the new instance, with the merged attribute
+     */
+    @Override
+    protected Instance manipulateInstance(Instance inst) throws TaskException {
+
+        double [] vals = new double [this.sourceIdxs.length];
+
+        for (int i = 0; i < vals.length; ++i){
+            if (this.sourceIdxs[i] < 0){
+                vals[i] = this.getMergedValue(inst.value(this.firstIdx), inst.value(this.secondIdx));
+            }
+            else {
+                vals[i] = inst.value(this.sourceIdxs[i]);
+            }
+        }
+        return createInstance(inst, vals);
+    }
+
+    /**
+     * This checks that both the attributes to be merged are present in the given data set.
+     * @param data the data set to be checked
+     */
+    private void checkAttributes(Instances data) throws TaskException {
+
         if (data.attribute(this.attribute) == null || data.attribute(this.addedAttrib) == null){
             throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Needed attributes "
                       + " have not been found in " + data.relationName());
         }
+    }
+
+    /**
+     * This replaces the two attributes to be merged by the merged attribute in the given data set (all
+     * its values are left unset) and finds out how to map the old values ({@link #attrIdx}, {@link #firstMap},
+     * {@link #secondMap}, {@link #firstEmpty}).
+     * 
+     * @param data the data set to be processed
+     */
+    private void mergeAttributes(Instances data) {
+
         Attribute first = data.attribute(this.attribute);
         Attribute second = data.attribute(this.addedAttrib);
         HashSet<String> vals = new HashSet<String>();
@@ -108,22 +208,35 @@ public class AttributeMerger extends AbstractAttributeManipulation {
         Arrays.sort(valArr = vals.toArray(new String [0]));
         Attribute merged = new Attribute(this.attribute, Arrays.asList(valArr));
 
-        double [] firstVals = data.attributeToDoubleArray(first.index());
-        double [] secondVals = data.attributeToDoubleArray(second.index());
-        int attrIdx = Math.min(first.index(), second.index());
-        data.deleteAttributeAt(first.index());
-        data.deleteAttributeAt(second.index()-1);
-        data.insertAttributeAt(merged, attrIdx);
+        this.attrIdx = Math.min(first.index(), second.index());
+        data.deleteAttributeAt(Math.max(first.index(), second.index()));
+        data.deleteAttributeAt(this.attrIdx);
+        data.insertAttributeAt(merged, this.attrIdx);
 
-        for (int i = 0; i < firstVals.length; ++i){
-            Instance inst = data.get(i);
-            if (firstPossible[(int) firstVals[i]].equals(EMPTY)){
-                inst.setValue(attrIdx, secondPossible[(int) secondVals[i]]);
-            }
-            else {
-                inst.setValue(attrIdx, firstPossible[(int) firstVals[i]]);
-            }
+        this.firstMap = new double [firstPossible.length];
+        this.firstEmpty = new boolean [firstPossible.length];
+        for (int i = 0; i < firstPossible.length; ++i){
+            this.firstMap[i] = merged.indexOfValue(firstPossible[i]);
+            this.firstEmpty[i] = firstPossible[i].equals(EMPTY);
+        }
+        this.secondMap = new double [secondPossible.length];
+        for (int i = 0; i < secondPossible.length; ++i){
+            this.secondMap[i] = merged.indexOfValue(secondPossible[i]);
         }
     }
 
+    /**
+     * Given the values of the two old attributes, this returns the value of the merged attribute.
+     * 
+     * @param firstVal the value of the first attribute
+     * @param secondVal the value of the second attribute
+     * @return the value of the merged attribute
+     */
+    private double getMergedValue(double firstVal, double secondVal){
+
+        if (this.firstEmpty[(int) firstVal]){
+            return this.secondMap[(int) secondVal];
+        }
+        return this.firstMap[(int) firstVal];
+    }
 }
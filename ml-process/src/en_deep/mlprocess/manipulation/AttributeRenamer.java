@@ -30,18 +30,18 @@ package en_deep.mlprocess.manipulation;
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.Task;
 import en_deep.mlprocess.exception.TaskException;
-import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.StringUtils;
 import java.util.Hashtable;
 import java.util.Vector;
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
 
 /**
  * This {@link Task} allows renaming selected attributes.
  * @author Ondrej Dusek
  */
-public class AttributeRenamer extends Task {
+public class AttributeRenamer extends StreamableAttributeManipulation {
 
     /* CONSTANTS */
     
@@ -64,7 +64,8 @@ public class AttributeRenamer extends Task {
 
     /**
      * This creates the new {@link AttributeRenamer} {@link Task}, checking for inputs
-     * and outputs (non-empty, no patterns, same number) and the following parameters:
+     * and outputs (non-empty, no patterns, same number -- see {@link AbstractAttributeManipulation})
+     * and the following parameters:
      * <ul>
      * <li><tt>attribs</tt> -- names of the attributes to be renamed (space-separated)</li>
      * <li><tt>numbers</tt> -- numbers of the attributes to be renamed (space-separated, 1-based)</li>
@@ -85,46 +86,37 @@ public class AttributeRenamer extends Task {
                     + NUMBERS + " parameters must be set.");
         }
 
-        this.eliminatePatterns(this.input);
-        this.eliminatePatterns(this.output);
+        this.parseAttributeNames();
+    }
 
-        if (this.input.isEmpty()){
-            throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id, "Must have some inputs.");
-        }
-        if (this.output.size() != this.input.size()){
-            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "Numbers of inputs and outputs must "
-                    + "be the same.");
-        }
+    @Override
+    protected void manipulateAttributes(Instances data) throws TaskException {
+        this.renameAttribs(data);
+    }
 
-        this.parseAttributeNames();
+    @Override
+    protected Instances manipulateHeader(Instances header) throws TaskException {
+        this.renameAttribs(header);
+        return header;
     }
 
+    /**
+     * The values are not affected by renaming.
+     * @param inst the instance to be processed
+     * @return the same instance
+     */
     @Override
-    public void perform() throws TaskException {
-        try {
-            for (int i = 0; i < this.input.size(); ++i){
-                this.renameAttribs(this.input.get(i), this.output.get(i));
-            }
-        }
-        catch (TaskException e){
-            throw e;
-        }
-        catch (Exception e) {
-            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
-            throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
-        }
+    protected Instance manipulateInstance(Instance inst) throws TaskException {
+        return inst;
     }
 
     /**
      * This renames all the attributes given in the {@link #ATTRIBS} parameter to their new
-     * names given in the {@link #NEW_NAMES} parameter and saves the result to the output file.
+     * names given in the {@link #NEW_NAMES} parameter.
      *
-     * @param inFile where should the attributes be added to
-     * @param outFile the output file
+     * @param data the data set (or just its header) where the attributes should be renamed
      */
-    private void renameAttribs(String inFile, String outFile) throws Exception {
-
-        Instances data = FileUtils.readArff(inFile);
+    private void renameAttribs(Instances data) {
 
         if (this.toRenameNames != null){
             
@@ -137,7 +129,7 @@ public class AttributeRenamer extends Task {
                 if (attr == null){
                     this.toRenameIdxs[i] = -1;
                     Logger.getInstance().message("Attribute " + this.toRenameNames[i] + 
-                            " not found in data file " + inFile, Logger.V_WARNING);
+                            " not found in data set " + data.relationName(), Logger.V_WARNING);
                 }
                 else {
                     this.toRenameIdxs[i] = attr.index();                    
@@ -151,13 +143,11 @@ public class AttributeRenamer extends Task {
             
             if (this.toRenameIdxs[i] < 0 || this.toRenameIdxs[i] >= data.numAttributes()){
                 Logger.getInstance().message("Did not perform the " + i + "th rename -- attribute index out of range"
-                        + " in data file " + inFile, Logger.V_WARNING);
+                        + " in data set " + data.relationName(), Logger.V_WARNING);
                 continue;
             }
             data.renameAttribute(this.toRenameIdxs[i], this.newNames[i]);
         }
-
-        FileUtils.writeArff(outFile, data);
     }
 
     /**
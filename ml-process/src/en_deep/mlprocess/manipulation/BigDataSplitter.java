@@ -34,18 +34,21 @@ import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.StringUtils;
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Hashtable;
-import java.util.Random;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Vector;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.converters.ArffLoader;
-import weka.core.converters.ArffSaver;
-import weka.core.converters.Saver;
 
 /**
  * This will split a big ARFF file into chunks based on the number of input instances and then optionally convert all string
@@ -68,6 +71,19 @@ public class BigDataSplitter extends Task {
     private static final String STRING_TO_NOM = "string_to_nom";
     /** The 'keep_string' parameter name */
     private static final String KEEP_STRING = "keep_string";
+    /** The 'threads' parameter name */
+    private static final String THREADS = "threads";
+
+    /** Size of the I/O buffers */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Number of byte ranges per thread the data are divided into for parallel chunking */
+    private static final int RANGES_PER_THREAD = 4;
+    /** Maximum number of output files kept open at a time by {@link #splitByAttribute(int)} */
+    private static final int MAX_OPEN_FILES = 500;
+    /** Number of characters collected for one output file by {@link #splitByAttribute(int)} before writing them */
+    private static final int OUTPUT_BATCH_SIZE = 1 << 13;
+    /** The line separator used in the output files */
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     /* DATA */
 
@@ -85,6 +101,8 @@ public class BigDataSplitter extends Task {
     private boolean stringToNom;
     /** List of string attributes that should be preserved in the nominal conversion */
     private String [] keepString;
+    /** Number of chunks to be produced in parallel */
+    private int threads;
 
     /* METHODS */
 
@@ -106,6 +124,9 @@ public class BigDataSplitter extends Task {
      * <ul>
      * <li><tt>string_to_nom</tt> -- if set, all string attributes will be converted to nominal ones</li>
      * <li><tt>keep_string</tt> -- exceptions for string-to-nominal conversion (list of attribute names</li>
+     * <li><tt>threads</tt> -- number of chunks to be produced in parallel (default: 1). The data are divided
+     * into byte ranges which are read concurrently, therefore this only applies to uncompressed inputs when
+     * splitting by the number of instances.</li>
      * </ul>
      * The number of input files must be equal to the number of output patterns.
      *
@@ -135,6 +156,11 @@ public class BigDataSplitter extends Task {
         if (this.stringToNom && this.hasParameter(KEEP_STRING)){
             this.keepString = this.getParameterVal(KEEP_STRING).split("\\s+");
         }
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS) : 1;
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
 
         if (this.input.size() != this.output.size()){
             throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "Number of output patterns must"
@@ -161,6 +187,9 @@ public class BigDataSplitter extends Task {
                 if (this.splitAttribute != null){
                     this.splitByAttribute(fileNo);
                 }
+                else if (this.threads > 1 && this.canSplitInParallel(fileNo)){
+                    this.splitToChunksParallel(fileNo);
+                }
                 else {
                     if (this.chunkLength == -1 || this.getBooleanParameterVal(EQUAL_CHUNKS)){
                         this.determineChunkLength(fileNo);
@@ -196,7 +225,7 @@ public class BigDataSplitter extends Task {
      */
     private void splitToChunks(int fileNo) throws Exception {
 
-        BufferedReader inRead = this.openAndSkipHeader(this.input.get(fileNo));
+        BufferedReader inRead = FileUtils.openArffData(this.input.get(fileNo));
 
         boolean eof = false;
         int curChunkNo = 0;
@@ -230,25 +259,6 @@ public class BigDataSplitter extends Task {
         inRead = null;
     }
 
-    /**
-     * This opens an ARFF file and skips its header.
-     * @param fileName the file name
-     * @return the open file input stream, after the initial @data line.
-     */
-    private BufferedReader openAndSkipHeader(String fileName) throws IOException, FileNotFoundException {
-
-        FileInputStream in = new FileInputStream(fileName);
-        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(in) : in;
-        BufferedReader inRead = new BufferedReader(new InputStreamReader(plainIn, Process.getInstance().getCharset()));
-
-        String line = inRead.readLine();
-
-        while (line != null && !line.matches("^@[dD][aA][tT][aA]\\s*")) {
-            line = inRead.readLine();
-        }
-        return inRead;
-    }
-
     /**
      * Given the input file and the desired number of chunks or the desired chunk length (with 
      * equal_chunks setting), this finds out the length of the file and therefore the number of
@@ -257,7 +267,7 @@ public class BigDataSplitter extends Task {
      */
     private void determineChunkLength(int fileNo) throws IOException {
 
-        BufferedReader inRead = openAndSkipHeader(this.input.get(fileNo));
+        BufferedReader inRead = FileUtils.openArffData(this.input.get(fileNo));
         String line = inRead.readLine();
         int numInst = 0;
 
@@ -272,6 +282,17 @@ public class BigDataSplitter extends Task {
         inRead.close();
         inRead = null;
 
+        this.setChunkLength(numInst);
+    }
+
+    /**
+     * Given the number of instances in the input file, this sets the chunk length and the number of greater
+     * chunks, according to the desired number of chunks or the desired chunk length (with equal_chunks setting).
+     *
+     * @param numInst the number of instances in the input file
+     */
+    private void setChunkLength(int numInst){
+
         if (this.chunkLength == -1){
             this.chunkLength = numInst / this.chunksNo;
             this.greaterChunks = numInst % this.chunksNo;
@@ -288,47 +309,391 @@ public class BigDataSplitter extends Task {
     }
 
     /**
-     * State of one output ARFF writer.
+     * This checks if the given input file may be split into chunks in parallel, i.e. if it is not compressed
+     * and its line ends may be found byte-wise.
+     *
+     * @param fileNo number of the input file to be processed
+     * @return true if the file can be split in parallel
      */
-    private enum WriterState {
-        NONE,
-        OPEN,
-        CLOSED
+    private boolean canSplitInParallel(int fileNo) throws IOException {
+
+        if (this.input.get(fileNo).endsWith(".gz") || "\n".getBytes(Process.getInstance().getCharset()).length != 1){
+            Logger.getInstance().message(this.id + ": cannot split " + this.input.get(fileNo) + " in parallel, "
+                    + "using one thread.", Logger.V_WARNING);
+            return false;
+        }
+        return true;
     }
-    
+
     /**
-     * Information about one ARFF writer used by {@link #splitByAttribute(int)}.
+     * This splits the input file into chunks in parallel. The data section is divided into byte ranges
+     * aligned to line boundaries, whose instances are counted concurrently. The chunks are then read
+     * from their starting positions and written out concurrently, too. The chunks are the same as if
+     * produced by {@link #splitToChunks(int)}.
+     *
+     * @param fileNo number of the input file to be processed
+     * @throws Exception
      */
-    private class WriterInfo {
+    private void splitToChunksParallel(final int fileNo) throws Exception {
+
+        RandomAccessFile file = new RandomAccessFile(this.input.get(fileNo), "r");
+        final FileChannel channel = file.getChannel();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+
+        try {
+            // divide the data section into line-aligned byte ranges
+            long dataStart = findDataStart(channel), size = channel.size();
+            int rangesNo = this.threads * RANGES_PER_THREAD;
+            final long [] bounds = new long [rangesNo + 1];
+
+            bounds[0] = dataStart;
+            bounds[rangesNo] = size;
+            for (int i = 1; i < rangesNo; ++i){
+                bounds[i] = Math.max(bounds[i-1], findLineStart(channel, dataStart + (size - dataStart) * i / rangesNo));
+            }
+
+            // count the instances in all ranges
+            Vector<Future<Long>> counts = new Vector<Future<Long>>(rangesNo);
+            for (int i = 0; i < rangesNo; ++i){
+
+                final int rangeNo = i;
+                counts.add(pool.submit(new Callable<Long>() {
+                    public Long call() throws IOException {
+                        return scanInstances(channel, bounds[rangeNo], bounds[rangeNo + 1], -1);
+                    }
+                }));
+            }
+            int [] rangeInst = new int [rangesNo];
+            int numInst = 0;
+            for (int i = 0; i < rangesNo; ++i){
+                rangeInst[i] = (int) getResult(counts.get(i)).longValue();
+                numInst += rangeInst[i];
+            }
+            if (this.chunkLength == -1 || this.getBooleanParameterVal(EQUAL_CHUNKS)){
+                this.setChunkLength(numInst);
+            }
+
+            // produce the chunks
+            Vector<Future<Object>> done = new Vector<Future<Object>>();
+            int firstInst = 0, rangeNo = 0, rangeFirstInst = 0;
+
+            for (int chunkNo = 0; firstInst < numInst; ++chunkNo){
+
+                final int length = Math.min(numInst - firstInst,
+                        chunkNo < this.greaterChunks ? this.chunkLength + 1 : this.chunkLength);
+                // find the range where the chunk starts
+                while (rangeFirstInst + rangeInst[rangeNo] <= firstInst){
+                    rangeFirstInst += rangeInst[rangeNo];
+                    rangeNo++;
+                }
+                final long rangeStart = bounds[rangeNo], rangeEnd = bounds[rangeNo + 1];
+                final int skip = firstInst - rangeFirstInst, curChunkNo = chunkNo;
+
+                done.add(pool.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        writeChunk(fileNo, channel, scanInstances(channel, rangeStart, rangeEnd, skip), length,
+                                curChunkNo);
+                        return null;
+                    }
+                }));
+                firstInst += length;
+            }
+            for (Future<Object> f : done){
+                getResult(f);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+            channel.close();
+            file.close();
+        }
+    }
+
+    /**
+     * This reads one chunk of instances from the given position of the input file, converts string attributes
+     * to nominal, if required, and writes it out.
+     *
+     * @param fileNo number of the input file to be processed
+     * @param channel the input file
+     * @param start the position of the first instance of the chunk
+     * @param length the number of instances in the chunk
+     * @param chunkNo the number of the chunk
+     */
+    private void writeChunk(int fileNo, FileChannel channel, long start, int length, int chunkNo) throws Exception {
+
+        // each chunk needs its own attributes, since reading string values changes them
+        Instances curChunk = new Instances(FileUtils.readArffStructure(this.input.get(fileNo)), length);
+        BufferedReader inRead = new BufferedReader(new InputStreamReader(
+                new ChannelInputStream(channel, start), Process.getInstance().getCharset()), BUFFER_SIZE);
+        ArffLoader.ArffReader instRead = new ArffLoader.ArffReader(inRead, curChunk, 0, length);
+
+        for (int i = 0; i < length; ++i){
+            Instance inst = instRead.readInstance(curChunk);
+            if (inst == null){
+                throw new TaskException(TaskException.ERR_IO_ERROR, this.id, "Unexpected end of data in chunk "
+                        + chunkNo + " of " + this.input.get(fileNo));
+            }
+            curChunk.add(inst);
+        }
+        inRead.close();
+
+        if (this.stringToNom){
+            curChunk = FileUtils.stringToNominal(curChunk, this.keepString);
+        }
+        FileUtils.writeArff(StringUtils.replace(this.output.get(fileNo), Integer.toString(chunkNo)), curChunk);
+
+        Logger.getInstance().message(this.id + ": chunk " + chunkNo + " written ... ", Logger.V_DEBUG);
+    }
+
+    /**
+     * Returns the result of a task running in parallel, rethrowing its exception, if any.
+     */
+    private static <T> T getResult(Future<T> f) throws Exception {
+
+        try {
+            return f.get();
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the position of the data section (right after the @data line) in an uncompressed ARFF file.
+     *
+     * @param channel the ARFF file
+     * @return the starting position of the data
+     */
+    private static long findDataStart(FileChannel channel) throws IOException {
+
+        ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = 0;
+
+        // read the file byte-wise, since the position of the line ends in bytes is needed
+        while (channel.read(buf, pos) > 0){
+            buf.flip();
+            while (buf.hasRemaining()){
+                byte b = buf.get();
+                pos++;
+                if (b == '\n'){
+                    String line = new String(lineBytes.toByteArray(), Process.getInstance().getCharset());
+                    if (line.trim().matches("^@[dD][aA][tT][aA]")){
+                        return pos;
+                    }
+                    lineBytes.reset();
+                }
+                else {
+                    lineBytes.write(b);
+                }
+            }
+            buf.clear();
+        }
+        return pos;
+    }
+
+    /**
+     * Finds the start of the first line that begins at the given position or after it.
+     *
+     * @param channel the input file
+     * @param pos the position where to start looking (must be after the start of the data section)
+     * @return the starting position of the next line, or the file size if there is none
+     */
+    private static long findLineStart(FileChannel channel, long pos) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        pos--; // the line may start exactly at the given position
+
+        while (channel.read(buf, pos) > 0){
+            buf.flip();
+            while (buf.hasRemaining()){
+                pos++;
+                if (buf.get() == '\n'){
+                    return pos;
+                }
+            }
+            buf.clear();
+        }
+        return channel.size();
+    }
+
+    /**
+     * This scans the lines of the given byte range of the data section. It counts the lines that contain
+     * instances, i.e. are not empty or comments. If skip is not negative, it stops after the given number
+     * of instances.
+     *
+     * @param channel the input file
+     * @param start the start of the byte range (a line start)
+     * @param end the end of the byte range (a line start)
+     * @param skip the number of instances to skip, or -1
+     * @return the number of instances in the range if skip is negative, the position after the skipped
+     *  instances otherwise
+     */
+    private static long scanInstances(FileChannel channel, long start, long end, int skip) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = start;
+        int count = 0;
+        boolean empty = true, instance = false;
+
+        if (skip == 0){
+            return start;
+        }
+        while (pos < end){
+
+            buf.clear();
+            buf.limit((int) Math.min(BUFFER_SIZE, end - pos));
+            if (channel.read(buf, pos) <= 0){
+                break;
+            }
+            buf.flip();
+
+            while (buf.hasRemaining()){
+                byte b = buf.get();
+                pos++;
+
+                if (b == '\n'){
+                    if (instance && ++count == skip){
+                        return pos;
+                    }
+                    empty = true;
+                    instance = false;
+                }
+                else if (empty && b != ' ' && b != '\t' && b != '\r'){
+                    empty = false;
+                    instance = b != '%';
+                }
+            }
+        }
+        if (instance){ // last line without a line end
+            count++;
+        }
+        return skip < 0 ? count : pos;
+    }
+
+    /**
+     * An input stream that reads from the given position of a file channel using positional reads, so that
+     * the channel may be shared by several threads.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        /** The file to read from */
+        private final FileChannel channel;
+        /** The current position */
+        private long pos;
+
+        /**
+         * Creates a new stream, starting at the given position.
+         */
+        ChannelInputStream(FileChannel channel, long start){
+            this.channel = channel;
+            this.pos = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            byte [] b = new byte [1];
+            return this.read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) throws IOException {
+
+            if (len == 0){
+                return 0;
+            }
+            int read = this.channel.read(ByteBuffer.wrap(b, off, len), this.pos);
+            if (read <= 0){
+                return -1;
+            }
+            this.pos += read;
+            return read;
+        }
+    }
+
+    /**
+     * Output for one value of the splitting attribute, used by {@link #splitByAttribute(int)}. The instances
+     * are collected in a batch which is written out at once when full, so that the output file needs to be
+     * open only for a short time.
+     */
+    private static class ValueOutput {
 
-        /** The ARFF writer itself */
-        ArffSaver writer;
-        /** The current state of the ARFF writer */
-        WriterState state;
         /** The output file name */
-        String fileName;
-        
-        /** Open/append the output file stream */
-        void openStream() throws IOException {
-            FileOutputStream fos = new FileOutputStream(this.fileName, this.state == WriterState.CLOSED ? true : false);
-            OutputStream os = this.fileName.endsWith(".gz") ? new GZIPOutputStream(fos) : fos;
-            writer.setDestination(os);
-            this.state = WriterState.OPEN;
+        final String fileName;
+        /** Has the output file been created already ? */
+        boolean created;
+        /** The instances that have not yet been written */
+        final StringBuilder batch = new StringBuilder();
+
+        /** Creates a new output for the given file */
+        ValueOutput(String fileName){
+            this.fileName = fileName;
         }
-        
-        /** Close the file stream, but keep writer information */
-        void closeStream() throws IOException {
-            this.state = WriterState.CLOSED;
-            this.writer.getWriter().close();
-            this.writer.resetWriter();            
+    }
+
+    /**
+     * A pool of open output files for {@link #splitByAttribute(int)}. If there are too many open files, the
+     * least recently used one is closed.
+     */
+    private static class WriterPool {
+
+        /** The open files, in access order */
+        private final LinkedHashMap<String, BufferedWriter> open =
+                new LinkedHashMap<String, BufferedWriter>(MAX_OPEN_FILES * 4 / 3 + 1, 0.75f, true);
+        /** The output files header */
+        private final Instances header;
+
+        /** Creates a new pool for files with the given header */
+        WriterPool(Instances header){
+            this.header = header;
+        }
+
+        /**
+         * Writes out the batch of instances of the given output, opening its file if needed.
+         */
+        void write(ValueOutput out) throws IOException {
+
+            if (out.batch.length() == 0){
+                return;
+            }
+
+            BufferedWriter writer = this.open.get(out.fileName);
+
+            if (writer == null){
+                if (this.open.size() >= MAX_OPEN_FILES){
+                    Iterator<BufferedWriter> lru = this.open.values().iterator();
+                    lru.next().close();
+                    lru.remove();
+                }
+                writer = out.created ? FileUtils.openArffAppender(out.fileName)
+                        : FileUtils.openArffWriter(out.fileName, this.header);
+                out.created = true;
+                this.open.put(out.fileName, writer);
+            }
+            writer.append(out.batch);
+            out.batch.setLength(0);
+        }
+
+        /**
+         * Closes all the open files.
+         */
+        void closeAll() throws IOException {
+
+            for (BufferedWriter writer : this.open.values()){
+                writer.close();
+            }
+            this.open.clear();
         }
     }
-    
-    private static int MAX_OPEN_FILES = 500;
 
     /**
      * Split the given file into several files according to the values of the
-     * given attribute (<tt>by_attribute</tt> setting).
+     * given attribute (<tt>by_attribute</tt> setting). The instances are collected
+     * in batches for each value and the output files are kept in a {@link WriterPool}.
      * 
      * @param fileNo the input file number in the {@link #input} list.
      * @throws TaskException
@@ -346,79 +711,41 @@ public class BigDataSplitter extends Task {
                     + this.splitAttribute + " not found or not nominal/string in file " + this.input.get(fileNo));
         }
 
-        BufferedReader inRead = openAndSkipHeader(this.input.get(fileNo));
-        // pool of open writers (for all values encountered so far)
-        Hashtable<String, WriterInfo> out = new Hashtable<String, WriterInfo>();
+        BufferedReader inRead = FileUtils.openArffData(this.input.get(fileNo));
+        // outputs for all values encountered so far
+        Hashtable<String, ValueOutput> out = new Hashtable<String, ValueOutput>();
+        WriterPool writers = new WriterPool(this.header);
 
-        boolean eof = false;
         ArffLoader.ArffReader instRead = new ArffLoader.ArffReader(inRead, this.header, 0, 0);
         Instance inst;
 
-        Random random = new Random();
-        // keep a pool of writers with open files (whose size must not exceed the limit)
-        ArrayList<String> openWriters = new ArrayList<String>(MAX_OPEN_FILES);
-        
-        while (!eof){
+        try {
+            while ((inst = instRead.readInstance(this.header)) != null){
 
-            if ((inst = instRead.readInstance(this.header)) == null){
-                eof = true;
-                break;
-            }
+                String val = inst.stringValue(splitAttrib);
+                ValueOutput valOut = out.get(val);
 
-            String val = inst.stringValue(splitAttrib);
-            WriterInfo writerInfo = out.get(val);
-            
-            // the value has not yet been encountered
-            if (writerInfo == null){
-                
-                // close some other writer if the pool is full 
-                // (this is sub-optimal, we are choosing at random even though LRU would be much better, but what the hell)
-                if (openWriters.size() >= MAX_OPEN_FILES){
-                    int toCloseNum = random.nextInt(openWriters.size());
-                    WriterInfo toClose = out.get(openWriters.get(toCloseNum));
-                    toClose.closeStream();
-                    openWriters.set(toCloseNum, val);
+                // the value has not yet been encountered
+                if (valOut == null){
+                    valOut = new ValueOutput(StringUtils.replace(this.output.get(fileNo), FileUtils.fileNameEncode(val)));
+                    out.put(val, valOut);
                 }
-                // if not, we just add the newly created writer to the pool
-                else {
-                    openWriters.add(val);
+
+                valOut.batch.append(inst.toString()).append(LINE_SEPARATOR);
+                if (valOut.batch.length() >= OUTPUT_BATCH_SIZE){
+                    writers.write(valOut);
                 }
-                
-                // create the new writer
-                writerInfo = new WriterInfo();
-                writerInfo.writer = new ArffSaver();                
-                out.put(val, writerInfo);                
-
-                writerInfo.fileName = StringUtils.replace(this.output.get(fileNo), FileUtils.fileNameEncode(val));
-                writerInfo.openStream();
-                writerInfo.writer.setStructure(this.header);
-                writerInfo.writer.setRetrieval(Saver.INCREMENTAL);
             }
-            // we have closed this writer
-            else if (writerInfo.state == WriterState.CLOSED){
-
-                // close some other writer (as the pool must be full)
-                int toCloseNum = random.nextInt(openWriters.size());
-                WriterInfo toClose = out.get(openWriters.get(toCloseNum));
-                toClose.closeStream();
-                
-                // open our writer
-                openWriters.set(toCloseNum, val);
-                writerInfo.openStream();
-            }
-
-            writerInfo.writer.writeIncremental(inst);
-        }
 
-        // close all open writers
-        for (WriterInfo writer : out.values()){
-            if (writer.state == WriterState.OPEN){
-                writer.closeStream();
+            // write out the rest
+            for (ValueOutput valOut : out.values()){
+                writers.write(valOut);
             }
         }
-
-        inRead.close();
-        inRead = null;
+        finally {
+            writers.closeAll();
+            inRead.close();
+        }
     }
 
 }
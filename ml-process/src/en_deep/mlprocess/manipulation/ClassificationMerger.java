@@ -34,19 +34,37 @@ import en_deep.mlprocess.computation.GeneralClassifier;
 import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.MathUtils;
+import en_deep.mlprocess.utils.StringUtils;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
 
 /**
  * This tries to merge the classification of several classifiers and create a better classification out of it.
  * It works on the principle of voting -- the class which gets the most votes wins. If there's a tie, the classifier
  * with best rankings is chosen.
+ * <p>
+ * Only the predicted classes (or class probability distributions) are read from the classification files, row
+ * by row, into primitive arrays. The voting itself may run in several threads, over blocks of instances.
+ * </p>
  * @author Ondrej Dusek
  */
 public class ClassificationMerger extends Task {
@@ -57,17 +75,45 @@ public class ClassificationMerger extends Task {
     private static final String MEASURE = EvalSelector.MEASURE;
     /** The class_arg parameter name */
     private static final String CLASS_ARG = GeneralClassifier.CLASS_ARG;
+    /** The weighted parameter name */
+    private static final String WEIGHTED = "weighted";
+    /** The passthrough parameter name */
+    private static final String PASSTHROUGH = "passthrough";
+    /** The threads parameter name */
+    private static final String THREADS = "threads";
+
+    /** Number of instances in one block for parallel voting */
+    private static final int BLOCK_SIZE = 4096;
+    /** Initial capacity of the predictions arrays */
+    private static final int INIT_CAPACITY = 1024;
 
     /* DATA */
 
     /** The name of the class attribute */
     private String classArgName;
-    /* The order of classifier rankings */
-    private int [] classifierOrder;
-    /** The data of the input files */
-    private Instances [] data;
-    /** The indexes of the class attribute in the individual classifications */
-    private int [] classArgIndexes;
+    /** Names of attributes copied from the first classification to the output, or null for all */
+    private HashSet<String> passthrough;
+    /** The number of threads used for voting */
+    private int threads = 1;
+
+    /** The vote weights of the individual classifiers */
+    private double [] weights;
+    /** The classifiers, ordered from the best-ranked one */
+    private int [] rankOrder;
+
+    /** All the class labels found in the classifications */
+    private ArrayList<String> labels;
+    /** The indexes of labels in {@link #labels} */
+    private Hashtable<String, Integer> labelIds;
+
+    /** Number of instances in the classifications */
+    private int numInstances;
+    /** The predicted labels (indexes to {@link #labels}, -1 for missing values), null for distribution outputs */
+    private int [][] predictions;
+    /** The predicted class distributions (all instances in one array), null for class outputs */
+    private float [][] distributions;
+    /** The labels (indexes to {@link #labels}) of the distribution columns, null for class outputs */
+    private int [][] distribLabels;
 
     /* METHODS */
 
@@ -81,6 +127,20 @@ public class ClassificationMerger extends Task {
      * The first half of inputs is assumed to be classifications of the same file, the second half the
      * rankings of the classifiers that produced the classifications, in the same order.
      * The output is just one file -- the final classification.
+     * <p>
+     * The classifications may contain either the class attribute, or the class probability distributions
+     * (see the <tt>prob_dist</tt> parameter of {@link en_deep.mlprocess.computation.WekaClassifier}) -- the
+     * probabilities are then summed instead of the votes.
+     * </p><p>
+     * The following parameters are optional:
+     * </p>
+     * <ul>
+     * <li><tt>weighted</tt> -- if set, the votes (or probabilities) are weighted by the value of the
+     * <tt>measure</tt> for each classifier</li>
+     * <li><tt>passthrough</tt> -- space-separated names of attributes which are copied from the first
+     * classification to the output, together with the class attribute. All attributes are copied by default.</li>
+     * <li><tt>threads</tt> -- number of threads used for voting (default: 1)</li>
+     * </ul>
      */
     public ClassificationMerger(String id, Hashtable<String, String> parameters,
             Vector<String> input, Vector<String> output) throws TaskException {
@@ -91,6 +151,17 @@ public class ClassificationMerger extends Task {
             throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Missing parameters.");
         }
         this.classArgName = this.getParameterVal(CLASS_ARG);
+
+        if (this.hasParameter(PASSTHROUGH)){
+            this.passthrough = new HashSet<String>(Arrays.asList(this.getParameterVal(PASSTHROUGH).split("\\s+")));
+        }
+        if (this.hasParameter(THREADS)){
+            this.threads = this.getIntParameterVal(THREADS);
+            if (this.threads < 1){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                        + "positive.");
+            }
+        }
         
         if (this.input.isEmpty() || this.input.size() % 2 != 0){
             throw new TaskException(TaskException.ERR_WRONG_NUM_INPUTS, this.id);
@@ -106,9 +177,14 @@ public class ClassificationMerger extends Task {
     public void perform() throws TaskException {
         
         try {
+            List<String> classifications = this.input.subList(0, this.input.size()/2);
+
             this.getClassifierRankings(this.input.subList(this.input.size()/2, this.input.size()));
-            this.loadData(this.input.subList(0, this.input.size()/2));
-            this.processData(this.output.get(0));
+            this.loadData(classifications);
+
+            int [] merged = this.vote();
+
+            this.writeOutput(classifications.get(0), merged, this.output.get(0));
         }
         catch (TaskException e){
             throw e;
@@ -117,10 +193,15 @@ public class ClassificationMerger extends Task {
             Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
             throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
         }
+        finally {
+            this.predictions = null;
+            this.distributions = null;
+        }
     }
 
     /**
      * This reads all the classifier ranking files and orders the classifiers by their performance.
+     * If the votes are weighted, the measure values are used as the weights.
      * @param rankings the rankings list
      */
     private void getClassifierRankings(List<String> rankings) throws IOException, TaskException {
@@ -146,107 +227,456 @@ public class ClassificationMerger extends Task {
             }
             pos++;
         }
-        this.classifierOrder = MathUtils.getOrder(ranks);
+
+        this.weights = new double [ranks.length];
+        if (this.getBooleanParameterVal(WEIGHTED)){
+            System.arraycopy(ranks, 0, this.weights, 0, ranks.length);
+        }
+        else {
+            Arrays.fill(this.weights, 1.0);
+        }
+        this.rankOrder = MathUtils.getOrder(ranks); // this sorts the ranks
     }
 
     /**
-     * This loads the headers all data files and checks if they contain the class
-     * argument and on which position (this is saved to {@link #classArgIndexes}. It also checks the number
-     * of instances in the data.
+     * This reads the predicted classes or class distributions from all the classification files and checks
+     * the numbers of instances.
      *
-     * @todo store only the class attribute to save memory !!!
-     * @param classifications
+     * @param classifications the classification files
      */
     private void loadData(List<String> classifications) throws Exception {
 
-        Iterator<String> it = classifications.iterator();
-        int pos = 0;
-        this.data = new Instances [classifications.size()];
-        this.classArgIndexes = new int [classifications.size()];
+        int num = classifications.size();
 
-        while (it.hasNext()){
-            String file = it.next();
+        this.labels = new ArrayList<String>();
+        this.labelIds = new Hashtable<String, Integer>();
+        this.predictions = new int [num][];
+        this.distributions = new float [num][];
+        this.distribLabels = new int [num][];
+
+        for (int i = 0; i < num; ++i){
+
+            String file = classifications.get(i);
+            Logger.getInstance().messagef("%s: reading %s...", Logger.V_DEBUG, this.id, file);
+
+            int count = this.loadClassification(i, file);
+
+            if (i == 0){
+                this.numInstances = count;
+            }
+            else if (count != this.numInstances){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Numbers of instances differ.");
+            }
+        }
+    }
+
+    /**
+     * This reads the predictions of one classifier, row by row, storing just the class or class
+     * distribution values.
+     *
+     * @param sysNo the number of the classifier
+     * @param file the classification file
+     * @return the number of instances in the file
+     */
+    private int loadClassification(int sysNo, String file) throws Exception {
+
+        Instances header = FileUtils.readArffStructure(file);
+        Attribute classAttr = header.attribute(this.classArgName);
+        int [] attrNos;
+        Hashtable<String, Integer> valueIds = null;
+
+        if (classAttr != null){ // class values
+            if (!classAttr.isNominal()){
+                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Class attribute must be nominal in "
+                        + file + ".");
+            }
+            attrNos = new int [] {classAttr.index()};
+            valueIds = new Hashtable<String, Integer>();
+
+            for (int i = 0; i < classAttr.numValues(); ++i){
+                Integer labelId = this.getLabelId(classAttr.value(i));
 
-            this.data[pos] = FileUtils.readArff(file);
-            if (this.data[pos].attribute(this.classArgName) == null){
+                valueIds.put(classAttr.value(i), labelId);
+                valueIds.put(Utils.quote(classAttr.value(i)), labelId);
+                valueIds.put("\"" + StringUtils.escape(classAttr.value(i)) + "\"", labelId);
+            }
+            this.predictions[sysNo] = new int [INIT_CAPACITY];
+        }
+        else { // class distributions
+            attrNos = this.findDistribColumns(header);
+            if (attrNos.length == 0){
                 throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Class attribute not found in "
                         + file + ".");
             }
-            this.classArgIndexes[pos] = this.data[pos].attribute(this.classArgName).index();
+            this.distribLabels[sysNo] = new int [attrNos.length];
+            for (int i = 0; i < attrNos.length; ++i){
+                String label = header.attribute(attrNos[i]).name().substring(this.classArgName.length() + 1);
+                this.distribLabels[sysNo][i] = this.getLabelId(label);
+            }
+            this.distributions[sysNo] = new float [INIT_CAPACITY * attrNos.length];
+        }
 
-            if (pos > 0 && this.data[pos].numInstances() != this.data[0].numInstances()){
-                throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Numbers of instances differ.");
+        BufferedReader in = FileUtils.openArffData(file);
+        String [] values = new String [attrNos.length];
+        int count = 0;
+        String line;
+
+        try {
+            while ((line = in.readLine()) != null){
+
+                if (line.trim().length() == 0 || line.startsWith("%")){
+                    continue;
+                }
+                StringUtils.getArffValues(line, attrNos, values);
+
+                if (valueIds != null){
+                    if (count == this.predictions[sysNo].length){
+                        this.predictions[sysNo] = Arrays.copyOf(this.predictions[sysNo], 2 * count);
+                    }
+                    this.predictions[sysNo][count] = this.getPredictedLabel(values[0], valueIds, classAttr, file);
+                }
+                else {
+                    float [] dist = this.distributions[sysNo];
+                    int base = count * attrNos.length;
+
+                    if (base == dist.length){
+                        dist = this.distributions[sysNo] = Arrays.copyOf(dist, 2 * base);
+                    }
+                    for (int i = 0; i < attrNos.length; ++i){
+                        dist[base + i] = values[i].equals("?") ? 0.0f : Float.parseFloat(values[i]);
+                    }
+                }
+                count++;
             }
+        }
+        finally {
+            in.close();
+        }
+        return count;
+    }
 
-            pos++;
+    /**
+     * Finds the class distribution columns, i.e. numeric attributes whose names consist of the class attribute
+     * name, an underscore and a class value.
+     *
+     * @param header the classification file header
+     * @return the indexes of the class distribution attributes, in ascending order
+     */
+    private int [] findDistribColumns(Instances header) {
+
+        ArrayList<Integer> cols = new ArrayList<Integer>();
+        String prefix = this.classArgName + "_";
+
+        for (int i = 0; i < header.numAttributes(); ++i){
+            if (header.attribute(i).isNumeric() && header.attribute(i).name().startsWith(prefix)){
+                cols.add(i);
+            }
         }
+        int [] ret = new int [cols.size()];
+        for (int i = 0; i < ret.length; ++i){
+            ret[i] = cols.get(i);
+        }
+        return ret;
     }
 
     /**
-     * This creates the output file, using the predictions loaded in {@link #data}.
-     * @param fileName the output file name
+     * Returns the index of the given class label in {@link #labels}, adding the label if necessary.
+     * @param label the class label
+     * @return the index of the label
+     */
+    private Integer getLabelId(String label){
+
+        Integer labelId = this.labelIds.get(label);
+
+        if (labelId == null){
+            labelId = this.labels.size();
+            this.labels.add(label);
+            this.labelIds.put(label, labelId);
+        }
+        return labelId;
+    }
+
+    /**
+     * Converts the textual representation of a predicted class value into the label index.
+     *
+     * @param value the class value, as found in the ARFF data line
+     * @param valueIds the label indexes for all textual representations of the class values
+     * @param classAttr the class attribute
+     * @param file the classification file (for error messages)
+     * @return the label index, or -1 for missing values
+     */
+    private int getPredictedLabel(String value, Hashtable<String, Integer> valueIds, Attribute classAttr,
+            String file) throws TaskException {
+
+        if (value.equals("?")){
+            return -1;
+        }
+        Integer labelId = valueIds.get(value);
+        if (labelId == null && value.length() > 1 && (value.charAt(0) == '\'' || value.charAt(0) == '"')){
+            String unquoted = StringUtils.unquote(value);
+            labelId = unquoted != null ? valueIds.get(unquoted) : null;
+        }
+        if (labelId == null && value.equals("0") && classAttr.numValues() > 0){ // omitted in a sparse line
+            labelId = valueIds.get(classAttr.value(0));
+        }
+        if (labelId == null){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Invalid class value " + value + " in "
+                    + file + ".");
+        }
+        return labelId;
+    }
+
+    /**
+     * This performs the voting for all instances, possibly in parallel over blocks of instances.
+     * @return the winning labels (indexes to {@link #labels}) for all instances, -1 for missing values
      */
-    private void processData(String fileName) throws Exception {
+    private int [] vote() throws Exception {
 
-        Instances out = new Instances(data[0]);
-        HashMap<String, Integer> curVals = new HashMap<String, Integer>(data.length);
-        ArrayList<String> bestLabels = new ArrayList<String>(data.length);
-        int bestVote;
+        final int [] merged = new int [this.numInstances];
+        final int numBlocks = (this.numInstances + BLOCK_SIZE - 1) / BLOCK_SIZE;
 
-        for (int i = 0; i < out.numInstances(); ++i){
+        if (this.threads == 1 || numBlocks <= 1){
+            this.voteBlock(0, this.numInstances, merged);
+            return merged;
+        }
+
+        final AtomicInteger nextBlock = new AtomicInteger();
+        int numThreads = Math.min(this.threads, numBlocks);
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+
+        try {
+            Vector<Future<Object>> results = new Vector<Future<Object>>(numThreads);
+
+            for (int i = 0; i < numThreads; ++i){
+                results.add(pool.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+
+                        for (int block = nextBlock.getAndIncrement(); block < numBlocks;
+                                block = nextBlock.getAndIncrement()){
+                            voteBlock(block * BLOCK_SIZE, Math.min((block + 1) * BLOCK_SIZE, numInstances), merged);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results){
+                try {
+                    result.get();
+                }
+                catch (ExecutionException e){
+                    if (e.getCause() instanceof Exception){
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return merged;
+    }
+
+    /**
+     * This performs the voting for the given range of instances. The votes (or probabilities) of all classifiers
+     * for each label are summed, the label with the highest sum wins. If there's a tie, the label predicted by the
+     * best-ranked classifier among the tied ones is selected.
+     *
+     * @param from the first instance
+     * @param to the instance after the last one
+     * @param merged storage for the winning labels
+     */
+    private void voteBlock(int from, int to, int [] merged) {
+
+        double [] scores = new double [this.labels.size()];
 
-            curVals.clear();
-            for (int j = 0; j < data.length; ++j){ // collect predictions
-                String val = data[j].get(i).stringValue(this.classArgIndexes[j]);
-                if (curVals.containsKey(val)){
-                    curVals.put(val, curVals.get(val) + 1);
+        for (int inst = from; inst < to; ++inst){
+
+            Arrays.fill(scores, 0.0);
+
+            // collect the votes
+            for (int sys = 0; sys < this.weights.length; ++sys){
+                if (this.predictions[sys] != null){
+                    int label = this.predictions[sys][inst];
+                    if (label >= 0){
+                        scores[label] += this.weights[sys];
+                    }
                 }
                 else {
-                    curVals.put(val, 1);
+                    int [] distLabels = this.distribLabels[sys];
+                    float [] dist = this.distributions[sys];
+                    int base = inst * distLabels.length;
+
+                    for (int i = 0; i < distLabels.length; ++i){
+                        scores[distLabels[i]] += this.weights[sys] * dist[base + i];
+                    }
                 }
             }
 
             // find the most wanted
-            bestVote = 0;
-            for (String label: curVals.keySet()){
-                if (curVals.get(label) > bestVote){
-                    bestVote = curVals.get(label);
-                    bestLabels.clear();
-                    bestLabels.add(label);
+            int best = -1, numBest = 0;
+            for (int label = 0; label < scores.length; ++label){
+                if (scores[label] > 0.0 && (best == -1 || scores[label] > scores[best])){
+                    best = label;
+                    numBest = 1;
                 }
-                else if (curVals.get(label) == bestVote){
-                    bestLabels.add(label);
+                else if (best != -1 && scores[label] == scores[best]){
+                    numBest++;
                 }
             }
 
             // there are more labels that got the same number of votes -> select the one provided by the
             // most successful classifier
-            if (bestLabels.size() > 1){
+            if (numBest > 1){
+                for (int i = 0; i < this.rankOrder.length; ++i){
+                    int label = this.getPrediction(this.rankOrder[i], inst);
+                    if (label >= 0 && scores[label] == scores[best]){
+                        best = label;
+                        break;
+                    }
+                }
+            }
+            merged[inst] = best;
+        }
+    }
 
-                int bestClassifRank = Integer.MAX_VALUE;
-                String bestLabel = null;
+    /**
+     * Returns the label predicted by the given classifier for the given instance (the most probable one
+     * for class distributions).
+     *
+     * @param sys the classifier number
+     * @param inst the instance number
+     * @return the predicted label, or -1 if there is none
+     */
+    private int getPrediction(int sys, int inst){
 
-                for (int j = 0; j < data.length; ++j){ // collect predictions
-                    String val = data[j].get(i).stringValue(this.classArgIndexes[j]);
-                    if (bestLabels.contains(val) && this.classifierOrder[j] < bestClassifRank){
-                        bestClassifRank = this.classifierOrder[j];
-                        bestLabel = val;
-                    }
+        if (this.predictions[sys] != null){
+            return this.predictions[sys][inst];
+        }
+
+        int [] distLabels = this.distribLabels[sys];
+        float [] dist = this.distributions[sys];
+        int base = inst * distLabels.length;
+        int best = -1;
+
+        for (int i = 0; i < distLabels.length; ++i){
+            if (dist[base + i] > 0.0f && (best == -1 || dist[base + i] > dist[base + best])){
+                best = i;
+            }
+        }
+        return best >= 0 ? distLabels[best] : -1;
+    }
+
+    /**
+     * This creates the output file -- the first classification with the class attribute values replaced by the
+     * voting results (and with class distributions replaced by the class attribute, if applicable). Only the
+     * {@link #passthrough} attributes are kept, if they are set. The file is processed row by row unless it
+     * contains string attributes.
+     *
+     * @param template the first classification file, whose attributes are copied to the output
+     * @param merged the voting results
+     * @param fileName the output file name
+     */
+    private void writeOutput(String template, int [] merged, String fileName) throws Exception {
+
+        Instances header = FileUtils.readArffStructure(template);
+        Instances outHeader = new Instances(header, 0);
+        HashSet<Integer> classCols = new HashSet<Integer>();
+        int classPos = -1;
+
+        if (header.attribute(this.classArgName) != null){
+            classCols.add(header.attribute(this.classArgName).index());
+        }
+        else {
+            for (int col : this.findDistribColumns(header)){
+                classCols.add(col);
+            }
+        }
+
+        // remove the class and all unwanted attributes, then add the new class attribute
+        outHeader.setClassIndex(-1);
+        for (int i = header.numAttributes() - 1; i >= 0; --i){
+
+            boolean isClass = classCols.contains(i);
+
+            if (isClass || (this.passthrough != null && !this.passthrough.contains(header.attribute(i).name()))){
+                outHeader.deleteAttributeAt(outHeader.attribute(header.attribute(i).name()).index());
+            }
+            if (isClass){
+                classPos = i;
+            }
+        }
+        int origClassPos = classPos;
+        for (int i = 0; i < origClassPos; ++i){ // find the new position of the class attribute
+            if (outHeader.attribute(header.attribute(i).name()) == null){
+                classPos--;
+            }
+        }
+        outHeader.insertAttributeAt(new Attribute(this.classArgName, this.labels), classPos);
+
+        int [] src = new int [outHeader.numAttributes()];
+        for (int i = 0; i < src.length; ++i){
+            src[i] = i == classPos ? -1 : header.attribute(outHeader.attribute(i).name()).index();
+        }
+
+        if (AbstractAttributeManipulation.canStream(header)){
+
+            BufferedReader in = FileUtils.openArffData(template);
+            BufferedWriter out = FileUtils.openArffWriter(fileName, outHeader);
+
+            try {
+                ArffLoader.ArffReader rows = new ArffLoader.ArffReader(in, header, 0, 0);
+
+                for (int i = 0; i < this.numInstances; ++i){
+                    Instance result = this.createOutputInstance(rows.readInstance(header), outHeader, src, merged[i]);
+                    result.setDataset(outHeader);
+                    out.write(result.toString());
+                    out.newLine();
                 }
-                out.get(i).setValue(this.classArgIndexes[0], bestLabel);
             }
-            // only one best label, set it
-            else {
-                // TODO possibly add label, if not present (would need a filter)
-                out.get(i).setValue(this.classArgIndexes[0], bestLabels.get(0));
+            finally {
+                in.close();
+                out.close();
             }
         }
-        for (int i = 0; i < data.length; ++i){
-            data[i] = null;
+        else {
+            Instances data = FileUtils.readArff(template);
+            Instances outData = new Instances(outHeader, this.numInstances);
+
+            for (int i = 0; i < this.numInstances; ++i){
+                outData.add(this.createOutputInstance(data.instance(i), outData, src, merged[i]));
+            }
+            data = null;
+            FileUtils.writeArff(fileName, outData);
         }
-        System.gc();
-        FileUtils.writeArff(fileName, out);
     }
 
+    /**
+     * Creates one output instance, copying the values from the template instance and setting the
+     * class value.
+     *
+     * @param inst the template instance (from the first classification)
+     * @param outData the output data set (string values are added to its attributes)
+     * @param src the source attribute indexes for all output attributes (-1 for the class attribute)
+     * @param label the class value (index to {@link #labels}, or -1 for missing value)
+     * @return the output instance
+     */
+    private Instance createOutputInstance(Instance inst, Instances outData, int [] src, int label) {
+
+        double [] vals = new double [src.length];
+
+        for (int i = 0; i < src.length; ++i){
+            if (src[i] == -1){
+                vals[i] = label >= 0 ? label : Utils.missingValue();
+            }
+            else if (outData.attribute(i).isString() && !inst.isMissing(src[i])){
+                vals[i] = outData.attribute(i).addStringValue(inst.stringValue(src[i]));
+            }
+            else {
+                vals[i] = inst.value(src[i]);
+            }
+        }
+        return AbstractAttributeManipulation.createInstance(inst, vals);
+    }
 
 }
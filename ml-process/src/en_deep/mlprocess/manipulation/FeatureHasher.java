@@ -0,0 +1,329 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.manipulation;
+
+import en_deep.mlprocess.manipulation.genfeat.Feature;
+import en_deep.mlprocess.utils.MathUtils;
+import java.util.Arrays;
+
+/**
+ * This maps ARFF data lines into a fixed-width sparse numeric space using the hashing trick. Each (attribute name,
+ * value) pair of a nominal or string attribute is hashed using MurmurHash3 to one of the output dimensions,
+ * which gets the value of 1 (or -1 for signed hashing); numeric attributes are hashed just by their name and keep
+ * their value. Colliding features are summed up.
+ * <p>
+ * A given number of leading attributes (e.g. sentence and word ids) is not hashed and passed to the output
+ * unchanged. The input lines are never split into strings, the hashes are computed directly over the characters
+ * of the line.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+public class FeatureHasher {
+
+    /* CONSTANTS */
+
+    /** Prefix for the names of the output hashed attributes */
+    private static final String ATTR_PREFIX = "h";
+
+    /** The ARFF attribute header start */
+    private static final String ATTRIBUTE = "@ATTRIBUTE";
+
+    /* DATA */
+
+    /** Number of the output hashed dimensions */
+    private final int dims;
+    /** Use signed hashing ? */
+    private final boolean signed;
+    /** Split string values to sets (separated by {@link Feature#SEP}) ? */
+    private final boolean splitSets;
+
+    /** Number of attributes passed through without hashing */
+    private final int passThrough;
+    /** Header lines of the attributes passed through */
+    private final String [] passThroughHeaders;
+    /** Hashes of the input attribute names, used as seeds for value hashes */
+    private final int [] nameHashes;
+    /** Which of the input attributes are numeric */
+    private final boolean [] numeric;
+
+    /** Accumulated values for the current line, for all dimensions */
+    private final double [] values;
+    /** Marks of the dimensions touched in the current line */
+    private final boolean [] isTouched;
+    /** Dimensions touched in the current line */
+    private int [] touched;
+    /** Number of dimensions touched in the current line */
+    private int numTouched;
+
+    /* METHODS */
+
+    /**
+     * This creates a new hasher for the data with the given ARFF header.
+     *
+     * @param header the ARFF attribute declarations of the input lines, one per line (all the other lines are ignored)
+     * @param passThrough the number of leading attributes to be passed through unchanged
+     * @param dims the number of output hashed dimensions
+     * @param signed use signed hashing (half of the features will get -1 instead of 1) ?
+     * @param splitSets split the values of string and nominal attributes into sets, separated by {@link Feature#SEP}?
+     * @param seed the hash seed
+     */
+    public FeatureHasher(String header, int passThrough, int dims, boolean signed, boolean splitSets, int seed){
+
+        String [] lines = header.split("[\\r\\n]+");
+        int numAttribs = 0;
+
+        for (String line : lines){
+            if (isAttributeLine(line)){
+                numAttribs++;
+            }
+        }
+
+        this.dims = dims;
+        this.signed = signed;
+        this.splitSets = splitSets;
+        this.passThrough = passThrough;
+        this.passThroughHeaders = new String [passThrough];
+        this.nameHashes = new int [numAttribs];
+        this.numeric = new boolean [numAttribs];
+
+        int attrNo = 0;
+
+        for (String line : lines){
+
+            if (!isAttributeLine(line)){
+                continue;
+            }
+            String [] parts = line.trim().split("\\s+", 3);
+            String type = parts.length > 2 ? parts[2].trim().toUpperCase() : "";
+
+            if (attrNo < passThrough){
+                this.passThroughHeaders[attrNo] = line.trim();
+            }
+            this.nameHashes[attrNo] = MathUtils.murmurHash3(parts[1], 0, parts[1].length(), seed);
+            this.numeric[attrNo] = type.equals("NUMERIC") || type.equals("INTEGER") || type.equals("REAL");
+            attrNo++;
+        }
+
+        this.values = new double [dims];
+        this.isTouched = new boolean [dims];
+        this.touched = new int [64];
+    }
+
+    /**
+     * Returns true if the given line is an ARFF attribute declaration.
+     */
+    private static boolean isAttributeLine(String line){
+        return line.trim().regionMatches(true, 0, ATTRIBUTE, 0, ATTRIBUTE.length());
+    }
+
+    /**
+     * Returns the number of the output attributes -- passed-through and hashed.
+     * @return the number of output attributes
+     */
+    public int numOutputAttributes(){
+        return this.passThrough + this.dims;
+    }
+
+    /**
+     * Returns the ARFF header for the output attributes -- the passed-through attributes, followed by the hashed
+     * dimensions. The header does not end with a new-line.
+     *
+     * @return the ARFF attribute declarations of the output attributes
+     */
+    public String getHeader(){
+
+        StringBuilder sb = new StringBuilder();
+        String lf = System.getProperty("line.separator");
+
+        for (int i = 0; i < this.passThrough; ++i){
+            sb.append(this.passThroughHeaders[i]).append(lf);
+        }
+        for (int i = 0; i < this.dims; ++i){
+            sb.append(ATTRIBUTE).append(' ').append(ATTR_PREFIX).append(i).append(" NUMERIC");
+            if (i < this.dims - 1){
+                sb.append(lf);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hashes the given ARFF data line and appends it to the output as a list of sparse ARFF values (i.e.
+     * "index value" pairs, separated by commas, without the enclosing braces). The passed-through values
+     * are always written, including the missing ones ("index ?").
+     *
+     * @param line the input ARFF data line (comma-separated values, strings may be quoted)
+     * @param offset the index of the first output attribute
+     * @param out the output buffer
+     */
+    public void appendSparse(CharSequence line, int offset, StringBuilder out){
+
+        int attrNo = 0;
+        int pos = 0;
+        int len = line.length();
+        boolean first = true;
+
+        this.numTouched = 0;
+
+        while (pos <= len && attrNo < this.nameHashes.length){
+
+            // find the value boundaries
+            int start = pos, end;
+            boolean quoted = pos < len && line.charAt(pos) == '"';
+
+            if (quoted){
+                start = ++pos;
+                while (pos < len && line.charAt(pos) != '"'){
+                    pos += line.charAt(pos) == '\\' ? 2 : 1;
+                }
+                end = Math.min(pos, len);
+                pos++; // skip the closing quote
+                while (pos < len && line.charAt(pos) != ','){
+                    pos++;
+                }
+            }
+            else {
+                while (pos < len && line.charAt(pos) != ','){
+                    pos++;
+                }
+                end = pos;
+            }
+
+            boolean missing = !quoted && end - start == 1 && line.charAt(start) == '?';
+
+            if (attrNo < this.passThrough){ // output passed-through values as they are
+                // missing values must be written explicitly, since omitted sparse values mean 0
+                if (!first){
+                    out.append(',');
+                }
+                out.append(offset + attrNo).append(' ');
+                out.append(line, quoted ? start - 1 : start, quoted ? Math.min(end + 1, len) : end);
+                first = false;
+            }
+            else if (!missing){
+                this.hashValue(attrNo, line, start, end);
+            }
+
+            attrNo++;
+            pos++; // skip the comma
+        }
+
+        // output the hashed values, sorted by index
+        Arrays.sort(this.touched, 0, this.numTouched);
+
+        for (int i = 0; i < this.numTouched; ++i){
+
+            int dim = this.touched[i];
+            double val = this.values[dim];
+
+            this.values[dim] = 0.0;
+            this.isTouched[dim] = false;
+            if (val == 0.0){ // signed collisions may cancel out
+                continue;
+            }
+            if (!first){
+                out.append(',');
+            }
+            out.append(offset + this.passThrough + dim).append(' ');
+            if (val == (int) val){
+                out.append((int) val);
+            }
+            else {
+                out.append(val);
+            }
+            first = false;
+        }
+    }
+
+    /**
+     * Hashes one value of the given attribute and adds it to the accumulated values.
+     *
+     * @param attrNo the attribute number
+     * @param line the input line
+     * @param start the start of the value in the line
+     * @param end the end of the value in the line
+     */
+    private void hashValue(int attrNo, CharSequence line, int start, int end){
+
+        if (this.numeric[attrNo]){
+            double val;
+            try {
+                val = Double.parseDouble(line.subSequence(start, end).toString());
+            }
+            catch (NumberFormatException e){
+                return;
+            }
+            this.addHash(this.nameHashes[attrNo], val);
+            return;
+        }
+
+        if (!this.splitSets){
+            this.addHash(MathUtils.murmurHash3(line, start, end, this.nameHashes[attrNo]), 1.0);
+            return;
+        }
+
+        // set values -- hash each member separately
+        int memberStart = start;
+        char sep = Feature.SEP.charAt(0);
+
+        for (int pos = start; pos <= end; ++pos){
+            if (pos == end || line.charAt(pos) == sep){
+                if (pos > memberStart){
+                    this.addHash(MathUtils.murmurHash3(line, memberStart, pos, this.nameHashes[attrNo]), 1.0);
+                }
+                memberStart = pos + 1;
+            }
+        }
+    }
+
+    /**
+     * Adds the given value to the dimension given by the hash. The lower 31 bits of the hash select the dimension,
+     * the highest bit gives the sign for signed hashing.
+     *
+     * @param hash the hash value
+     * @param val the value to be added
+     */
+    private void addHash(int hash, double val){
+
+        int dim = (hash & 0x7fffffff) % this.dims;
+
+        if (this.signed && hash < 0){
+            val = -val;
+        }
+        if (!this.isTouched[dim]){
+            if (this.numTouched == this.touched.length){
+                this.touched = Arrays.copyOf(this.touched, this.touched.length * 2);
+            }
+            this.touched[this.numTouched++] = dim;
+            this.isTouched[dim] = true;
+        }
+        this.values[dim] += val;
+    }
+}
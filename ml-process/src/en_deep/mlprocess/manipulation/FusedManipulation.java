@@ -0,0 +1,297 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.manipulation;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.Task;
+import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+import java.util.Vector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * This runs a chain of {@link StreamableAttributeManipulation} tasks (stages) in one pass over
+ * the data, without writing the intermediate files. The tasks are created by the {@link en_deep.mlprocess.Plan}
+ * if chain fusion is turned on, not directly in the scenario file.
+ * <p>
+ * The parameters are:
+ * </p>
+ * <ul>
+ * <li><tt>stages</tt> -- the number of fused tasks</li>
+ * <li><tt>stage<i>N</i>.algorithm</tt> -- the class of the <i>N</i>-th fused task (zero-based)</li>
+ * <li><tt>stage<i>N</i>.id</tt> -- the original id of the <i>N</i>-th fused task</li>
+ * <li><tt>stage<i>N</i>.output</tt> -- the original outputs of the <i>N</i>-th fused task, separated by the
+ * system path separator; only set if these should still be written (for debugging)</li>
+ * <li><tt>stage<i>N</i>.<i>param</i></tt> -- the parameters of the <i>N</i>-th fused task</li>
+ * </ul>
+ *
+ * @author Ondrej Dusek
+ */
+public class FusedManipulation extends StreamableAttributeManipulation {
+
+    /* CONSTANTS */
+
+    /** The 'stages' parameter name */
+    public static final String STAGES = "stages";
+    /** Prefix of all the parameters of one stage */
+    public static final String STAGE_PREFIX = "stage";
+    /** Stage parameter suffix: the algorithm */
+    public static final String ALGORITHM = "algorithm";
+    /** Stage parameter suffix: the original id */
+    public static final String ORIG_ID = "id";
+    /** Stage parameter suffix: the materialized outputs */
+    public static final String STAGE_OUTPUT = "output";
+
+    /** Name of the task parameter which requests that the outputs of a fused task are still written */
+    public static final String MATERIALIZE = "materialize";
+
+    /* DATA */
+
+    /** The fused tasks */
+    private StreamableAttributeManipulation [] stages;
+    /** The materialized outputs of the individual stages (null if not needed) */
+    private String [][] stageOutputs;
+
+    /** Output headers of the individual stages for the current file */
+    private Instances [] stageHeaders;
+    /** Writers for materialized outputs of the individual stages for the current file */
+    private BufferedWriter [] stageWriters;
+
+    /* METHODS */
+
+    /**
+     * This creates all the fused tasks, using the same inputs and outputs as the whole chain.
+     * The parameters are described in the class description.
+     */
+    public FusedManipulation(String id, Hashtable<String, String> parameters,
+            Vector<String> input, Vector<String> output) throws TaskException {
+
+        super(id, parameters, input, output);
+
+        this.requireParameter(STAGES);
+        int numStages = this.getIntParameterVal(STAGES);
+
+        if (numStages < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "There must be some stages.");
+        }
+        this.stages = new StreamableAttributeManipulation [numStages];
+        this.stageOutputs = new String [numStages][];
+
+        for (int i = 0; i < numStages; ++i){
+
+            String prefix = STAGE_PREFIX + i + ".";
+            Hashtable<String, String> stageParams = new Hashtable<String, String>();
+
+            for (Entry<String, String> param : this.parameters.entrySet()){
+                if (param.getKey().startsWith(prefix)){
+                    stageParams.put(param.getKey().substring(prefix.length()), param.getValue());
+                }
+            }
+            String algorithm = stageParams.remove(ALGORITHM);
+            String stageId = stageParams.remove(ORIG_ID);
+            String stageOutput = stageParams.remove(STAGE_OUTPUT);
+
+            if (algorithm == null || stageId == null){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Missing algorithm or id "
+                        + "for stage " + i + ".");
+            }
+            Task stage = createStage(stageId, algorithm, stageParams, this.input, this.output);
+
+            if (!(stage instanceof StreamableAttributeManipulation)){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Stage " + stageId
+                        + " cannot be processed row by row.");
+            }
+            this.stages[i] = (StreamableAttributeManipulation) stage;
+
+            if (stageOutput != null){
+                this.stageOutputs[i] = stageOutput.split(File.pathSeparator);
+                if (this.stageOutputs[i].length != this.input.size()){
+                    throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Wrong number of "
+                            + "outputs for stage " + stageId + ".");
+                }
+            }
+        }
+    }
+
+    /**
+     * This checks if the given task description may be used as a stage of a fused chain, i.e. the
+     * task is a {@link StreamableAttributeManipulation}.
+     *
+     * @param id the task id
+     * @param algorithm the task algorithm class name
+     * @param parameters the task parameters
+     * @param input the task inputs
+     * @param output the task outputs
+     * @return true if the task may be fused with others
+     */
+    public static boolean isFusable(String id, String algorithm, Hashtable<String, String> parameters,
+            Vector<String> input, Vector<String> output){
+
+        try {
+            if (!StreamableAttributeManipulation.class.isAssignableFrom(Class.forName(algorithm))){
+                return false;
+            }
+            // the task must be created correctly (the inputs and outputs are copied, since they may be changed
+            // by the task constructor)
+            createStage(id, algorithm, new Hashtable<String, String>(parameters), new Vector<String>(input),
+                    new Vector<String>(output));
+            return true;
+        }
+        catch (Exception e){
+            return false;
+        }
+    }
+
+    /**
+     * This creates one fused task.
+     */
+    private static Task createStage(String id, String algorithm, Hashtable<String, String> parameters,
+            Vector<String> input, Vector<String> output) throws TaskException {
+
+        try {
+            Constructor<?> constructor = Class.forName(algorithm).getConstructor(String.class, Hashtable.class,
+                    Vector.class, Vector.class);
+            return (Task) constructor.newInstance(id, parameters, input, output);
+        }
+        catch (InvocationTargetException e){
+            if (e.getCause() instanceof TaskException){
+                throw (TaskException) e.getCause();
+            }
+            Logger.getInstance().logStackTrace(e.getCause(), Logger.V_DEBUG);
+            throw new TaskException(TaskException.ERR_TASK_INIT_ERR, id, e.getMessage());
+        }
+        catch (Exception e){
+            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            throw new TaskException(TaskException.ERR_TASK_CLASS_INCORRECT, id, e.getMessage());
+        }
+    }
+
+    /**
+     * This applies all the stages on the whole data set (if it cannot be processed in the streaming mode).
+     * @param data the data set to be processed
+     */
+    @Override
+    protected void manipulateAttributes(Instances data) throws TaskException {
+
+        for (int i = 0; i < this.stages.length; ++i){
+
+            this.stages[i].manipulateAttributes(data);
+
+            if (this.stageOutputs[i] != null){
+                try {
+                    FileUtils.writeArff(this.stageOutputs[i][this.getCurrentFile()], data);
+                }
+                catch (Exception e){
+                    Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+                    throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * This applies all the stages on the file header and opens the materialized outputs, if needed.
+     * @param header the input file header
+     * @return the header of the last stage's output
+     */
+    @Override
+    protected Instances manipulateHeader(Instances header) throws TaskException {
+
+        this.stageHeaders = new Instances [this.stages.length];
+        this.stageWriters = new BufferedWriter [this.stages.length];
+
+        for (int i = 0; i < this.stages.length; ++i){
+
+            // each stage may change the header it gets, so the input header and the previous ones must be copied
+            header = this.stages[i].manipulateHeader(new Instances(header, 0));
+            this.stageHeaders[i] = header;
+
+            if (this.stageOutputs[i] != null){
+                try {
+                    this.stageWriters[i] = FileUtils.openArffWriter(this.stageOutputs[i][this.getCurrentFile()],
+                            header);
+                }
+                catch (Exception e){
+                    Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+                    throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+                }
+            }
+        }
+        return header;
+    }
+
+    /**
+     * This passes the instance through all the stages, writing the materialized outputs, if needed.
+     * @param inst the input instance
+     * @return the output of the last stage
+     */
+    @Override
+    protected Instance manipulateInstance(Instance inst) throws TaskException {
+
+        for (int i = 0; i < this.stages.length; ++i){
+
+            inst = this.stages[i].manipulateInstance(inst);
+
+            if (this.stageWriters[i] != null){
+                inst.setDataset(this.stageHeaders[i]);
+                try {
+                    this.stageWriters[i].write(inst.toString());
+                    this.stageWriters[i].newLine();
+                }
+                catch (Exception e){
+                    Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+                    throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+                }
+            }
+        }
+        return inst;
+    }
+
+    /**
+     * This closes the materialized outputs of the stages for the current file.
+     */
+    @Override
+    protected void finishStreaming() throws Exception {
+
+        for (int i = 0; i < this.stages.length; ++i){
+            if (this.stageWriters[i] != null){
+                this.stageWriters[i].close();
+                this.stageWriters[i] = null;
+            }
+            this.stages[i].finishStreaming();
+        }
+    }
+}
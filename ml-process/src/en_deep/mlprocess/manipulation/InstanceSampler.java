@@ -0,0 +1,390 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.manipulation;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.Task;
+import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
+import en_deep.mlprocess.utils.StringUtils;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * This selects a random sample of instances from each input ARFF file. The data are read row by row
+ * and never held in memory as a whole: percentage samples are selected using independent random
+ * choices for each instance (Bernoulli sampling), fixed-size samples using reservoir sampling
+ * (with the skip-ahead Algorithm L), so that only the sample itself is kept in memory.
+ * <p>
+ * The instances are not parsed unless they need to be grouped or stratified. The sampled instances
+ * keep their original order in the output.
+ * </p>
+ * @author Ondrej Dusek
+ */
+public class InstanceSampler extends Task {
+
+    /* CONSTANTS */
+
+    /** The sample_size parameter name */
+    private static final String SAMPLE_SIZE = "sample_size";
+    /** The percentage parameter name */
+    private static final String PERCENTAGE = "percentage";
+    /** The seed parameter name */
+    private static final String SEED = "seed";
+    /** The group_attr parameter name */
+    private static final String GROUP_ATTR = "group_attr";
+    /** The strata_attr parameter name */
+    private static final String STRATA_ATTR = "strata_attr";
+
+    /* DATA */
+
+    /** The size of the sample (for each stratum), or 0 for percentage samples */
+    private int sampleSize;
+    /** The probability of selecting each instance (or group), for percentage samples */
+    private double probability;
+    /** The random seed */
+    private long seed;
+    /** Name of the attribute that groups consecutive instances, or null */
+    private String groupAttr;
+    /** Name of the stratification attribute, or null */
+    private String strataAttr;
+
+    /* METHODS */
+
+    /**
+     * This creates a new {@link InstanceSampler}, checking the parameters. There must be the same number of
+     * inputs and outputs, with no patterns; a sample is selected from each input file and written
+     * to the corresponding output.
+     * <p>
+     * Exactly one of the following parameters must be set:
+     * </p>
+     * <ul>
+     * <li><tt>sample_size</tt> -- the number of instances (or groups) to be selected</li>
+     * <li><tt>percentage</tt> -- the expected percentage of instances (or groups) to be selected</li>
+     * </ul>
+     * <p>
+     * The following parameters are optional:
+     * </p>
+     * <ul>
+     * <li><tt>seed</tt> -- the random seed (default: 1). The same seed always yields the same sample.</li>
+     * <li><tt>group_attr</tt> -- name of an attribute (e.g. <tt>sent-id</tt>) -- consecutive instances with the same
+     * value of this attribute are selected or left out together, as one unit</li>
+     * <li><tt>strata_attr</tt> -- name of an attribute (e.g. the class attribute) -- <tt>sample_size</tt> units are
+     * selected for each value of this attribute (if the unit is a group, the value of its first instance counts).
+     * Percentage samples are stratified by nature, so this may only be used with <tt>sample_size</tt>.</li>
+     * </ul>
+     */
+    public InstanceSampler(String id, Hashtable<String, String> parameters, Vector<String> input,
+            Vector<String> output) throws TaskException {
+
+        super(id, parameters, input, output);
+
+        if (this.hasParameter(SAMPLE_SIZE) == this.hasParameter(PERCENTAGE)){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Exactly one of sample_size and "
+                    + "percentage must be set.");
+        }
+        if (this.hasParameter(SAMPLE_SIZE)){
+            this.sampleSize = this.getIntParameterVal(SAMPLE_SIZE);
+            if (this.sampleSize <= 0){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Sample size must be positive.");
+            }
+        }
+        else {
+            this.probability = this.getDoubleParameterVal(PERCENTAGE) / 100.0;
+            if (this.probability <= 0.0 || this.probability > 1.0){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Percentage must be in (0,100].");
+            }
+        }
+        this.seed = this.hasParameter(SEED) ? this.getIntParameterVal(SEED) : 1;
+        this.groupAttr = this.getParameterVal(GROUP_ATTR);
+        this.strataAttr = this.getParameterVal(STRATA_ATTR);
+
+        if (this.strataAttr != null && this.sampleSize == 0){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "Strata_attr may only be used "
+                    + "with sample_size.");
+        }
+
+        if (this.input.size() != this.output.size()){
+            throw new TaskException(TaskException.ERR_WRONG_NUM_OUTPUTS, this.id, "Numbers of inputs and outputs "
+                    + "must be the same.");
+        }
+        this.eliminatePatterns(this.input);
+        this.eliminatePatterns(this.output);
+    }
+
+    @Override
+    public void perform() throws TaskException {
+
+        try {
+            for (int i = 0; i < this.input.size(); ++i){
+                Logger.getInstance().messagef("%s: sampling %s...", Logger.V_DEBUG, this.id, this.input.get(i));
+                this.sample(this.input.get(i), this.output.get(i));
+            }
+        }
+        catch (TaskException e){
+            throw e;
+        }
+        catch (Exception e){
+            Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
+        }
+    }
+
+    /**
+     * Selects the sample from one input file and writes it to the output file.
+     *
+     * @param inFile the input file name
+     * @param outFile the output file name
+     */
+    private void sample(String inFile, String outFile) throws Exception {
+
+        Instances header = FileUtils.readArffStructure(inFile);
+        int groupIdx = this.findAttribute(header, this.groupAttr, inFile);
+        int strataIdx = this.findAttribute(header, this.strataAttr, inFile);
+        Random rand = new Random(this.seed);
+        Hashtable<String, Reservoir> reservoirs = new Hashtable<String, Reservoir>();
+
+        BufferedReader in = FileUtils.openArffData(inFile);
+        BufferedWriter out = FileUtils.openArffWriter(outFile, header);
+
+        try {
+            StringBuilder unit = new StringBuilder();
+            String unitGroup = null, unitStratum = "";
+            long unitNo = 0;
+            String line;
+
+            while ((line = in.readLine()) != null){
+
+                if (line.trim().length() == 0 || line.startsWith("%")){
+                    continue;
+                }
+                String group = groupIdx >= 0 ? StringUtils.getArffValue(line, groupIdx) : null;
+
+                // finish the previous unit, if this instance doesn't belong to it
+                if (unit.length() > 0 && (group == null || !group.equals(unitGroup))){
+                    this.offer(unit.toString(), unitNo++, unitStratum, reservoirs, rand, out);
+                    unit.setLength(0);
+                }
+                if (unit.length() == 0){
+                    unitGroup = group;
+                    unitStratum = strataIdx >= 0 ? StringUtils.getArffValue(line, strataIdx) : "";
+                }
+                else {
+                    unit.append('\n');
+                }
+                unit.append(line);
+            }
+            if (unit.length() > 0){
+                this.offer(unit.toString(), unitNo, unitStratum, reservoirs, rand, out);
+            }
+
+            // write out the reservoir samples, in the original order
+            if (this.sampleSize > 0){
+                this.writeReservoirs(reservoirs, out);
+            }
+        }
+        finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Finds the index of the given attribute in the data header.
+     *
+     * @param header the data header
+     * @param name the attribute name, or null
+     * @param inFile the input file name (for error messages)
+     * @return the attribute index, or -1 if the name is null
+     * @throws TaskException if the attribute is not found
+     */
+    private int findAttribute(Instances header, String name, String inFile) throws TaskException {
+
+        if (name == null){
+            return -1;
+        }
+        Attribute attr = header.attribute(name);
+        if (attr == null){
+            throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Attribute " + name + " not found in "
+                    + inFile + ".");
+        }
+        return attr.index();
+    }
+
+    /**
+     * Offers one sampling unit (an instance or a group of instances) for selection. In the percentage mode,
+     * the unit is either written directly to the output, or discarded. In the fixed-size mode, it is offered
+     * to the reservoir for its stratum.
+     *
+     * @param unit the unit (one or more ARFF data lines)
+     * @param unitNo the order of the unit in the input data
+     * @param stratum the stratum of the unit (empty string if there is no stratification)
+     * @param reservoirs the reservoirs for all strata
+     * @param rand the random number generator
+     * @param out the output file
+     */
+    private void offer(String unit, long unitNo, String stratum, Hashtable<String, Reservoir> reservoirs,
+            Random rand, BufferedWriter out) throws Exception {
+
+        if (this.sampleSize == 0){
+            if (rand.nextDouble() < this.probability){
+                out.write(unit);
+                out.newLine();
+            }
+            return;
+        }
+
+        Reservoir reservoir = reservoirs.get(stratum);
+        if (reservoir == null){
+            reservoir = new Reservoir(this.sampleSize, rand);
+            reservoirs.put(stratum, reservoir);
+        }
+        reservoir.offer(unit, unitNo);
+    }
+
+    /**
+     * Writes the contents of all the reservoirs to the output, sorted by their original order.
+     *
+     * @param reservoirs the reservoirs for all strata
+     * @param out the output file
+     */
+    private void writeReservoirs(Hashtable<String, Reservoir> reservoirs, BufferedWriter out) throws Exception {
+
+        ArrayList<SampledUnit> selected = new ArrayList<SampledUnit>();
+
+        for (Reservoir reservoir : reservoirs.values()){
+            for (int i = 0; i < reservoir.filled; ++i){
+                selected.add(reservoir.units[i]);
+            }
+        }
+        Collections.sort(selected);
+
+        for (SampledUnit unit : selected){
+            out.write(unit.data);
+            out.newLine();
+        }
+    }
+
+    /**
+     * One selected sampling unit, together with its position in the input data.
+     */
+    private static class SampledUnit implements Comparable<SampledUnit> {
+
+        /** The ARFF data line(s) */
+        final String data;
+        /** The position of the unit in the input data */
+        final long order;
+
+        SampledUnit(String data, long order){
+            this.data = data;
+            this.order = order;
+        }
+
+        public int compareTo(SampledUnit o) {
+            return this.order < o.order ? -1 : (this.order > o.order ? 1 : 0);
+        }
+    }
+
+    /**
+     * A fixed-size random sample, selected using reservoir sampling with skip-ahead (Algorithm L): after
+     * the reservoir has been filled, the number of units to be skipped before the next replacement is drawn
+     * at once, so that only a few random numbers are needed for the whole data.
+     */
+    private static class Reservoir {
+
+        /** The selected units */
+        final SampledUnit [] units;
+        /** The number of units currently in the reservoir */
+        int filled;
+        /** The number of units offered so far */
+        long seen;
+        /** The number of the next unit to be placed into the full reservoir */
+        long next;
+        /** The current value of the Algorithm L weight */
+        double weight;
+        /** The random number generator */
+        final Random rand;
+
+        Reservoir(int size, Random rand){
+            this.units = new SampledUnit [size];
+            this.rand = rand;
+        }
+
+        /**
+         * Offers one unit for selection.
+         *
+         * @param data the unit data
+         * @param order the position of the unit in the input data
+         */
+        void offer(String data, long order){
+
+            if (this.filled < this.units.length){
+
+                this.units[this.filled++] = new SampledUnit(data, order);
+                this.seen++;
+                if (this.filled == this.units.length){
+                    this.weight = Math.exp(Math.log(this.random()) / this.units.length);
+                    this.next = this.seen + this.skip();
+                }
+                return;
+            }
+            if (this.seen == this.next){
+                this.units[this.rand.nextInt(this.units.length)] = new SampledUnit(data, order);
+                this.weight *= Math.exp(Math.log(this.random()) / this.units.length);
+                this.next = this.seen + 1 + this.skip();
+            }
+            this.seen++;
+        }
+
+        /**
+         * Draws the number of units to be skipped before the next replacement.
+         * @return the number of units to be skipped
+         */
+        private long skip(){
+
+            double skip = Math.floor(Math.log(this.random()) / Math.log(1.0 - this.weight));
+            return skip < Long.MAX_VALUE / 2 ? (long) skip : Long.MAX_VALUE / 2;
+        }
+
+        /**
+         * Returns a random number from (0,1].
+         * @return a random number
+         */
+        private double random(){
+            return 1.0 - this.rand.nextDouble();
+        }
+    }
+}
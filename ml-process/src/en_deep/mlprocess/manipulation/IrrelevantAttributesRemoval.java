@@ -29,6 +29,7 @@ package en_deep.mlprocess.manipulation;
 
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.ColumnStatistics;
 import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.StringUtils;
 import java.util.Arrays;
@@ -59,6 +60,10 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
     private static final String REMOVE = "remove";
     /** The name of the "ranking" parameter */
     private static final String RANKING = "ranking";
+    /** The name of the "threads" parameter */
+    private static final String THREADS = "threads";
+    /** The name of the "approx_repeats" parameter */
+    private static final String APPROX_REPEATS = "approx_repeats";
 
 
     /**
@@ -103,6 +108,10 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
 
     /** Attribute rankings -- the number of attributes to be used */
     private int rankMaxAttribs;
+    /** The number of threads used to collect the attribute statistics */
+    private int threads;
+    /** Use only the estimates of distinct values for {@link Condition#NON_IDENTICAL} attributes with many values ? */
+    private boolean approxRepeats;
 
     /* METHODS */
 
@@ -124,6 +133,11 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
      * and the last input(s) are considered to contain a list of attribute rankings. The number specified in the parameter
      * value is the number of attributes that are to be preserved (additional to those listed in <tt>preserve</tt>).
      * All other causes for removal but {@link Condition#PRESELECTED} are ignored in this mode.
+     * <li><tt>threads</tt> -- the number of threads used to collect the attribute values statistics (default: 1)</li>
+     * <li><tt>approx_repeats</tt> -- if set, attributes with too many distinct values to be counted exactly
+     * are checked for identical values using only the estimated number of distinct values. The result is
+     * approximate, e.g. an attribute with 99% distinct values may be removed. Without this, such attributes
+     * are checked exactly by an additional pass over their values.</li>
      * </ul>
      * <p>
      * <tt>info_file</tt> and <tt>ranking</tt> are mutually exclusive.
@@ -171,6 +185,13 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
         // check the parameters
         this.preserveAttribs = this.saveToHashSet(this.parameters.get(PRESERVE));
         this.removeAttribs = this.saveToHashSet(this.parameters.get(REMOVE));
+
+        this.threads = this.hasParameter(THREADS) ? this.getIntParameterVal(THREADS) : 1;
+        if (this.threads < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of threads must be "
+                    + "positive.");
+        }
+        this.approxRepeats = this.getBooleanParameterVal(APPROX_REPEATS);
     }
 
 
@@ -209,9 +230,11 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
         Condition [] conds = this.rankMaxAttribs == 0 ? USUAL_CONDS : RANKING_CONDS;
 
         Vector<String> removedAttributes = new Vector<String>();
+        // collect the values statistics for all attributes in one pass (not needed for ranking)
+        ColumnStatistics stats = this.rankMaxAttribs == 0 ? this.collectStatistics(data[0], data) : null;
 
         for (int i = 0; i < conds.length; ++i){
-            Vector<String> selected = this.selectForRemoval(data, conds[i]);
+            Vector<String> selected = this.selectForRemoval(data, conds[i], stats);
             this.removeAttributes(data, selected, conds[i]);
             removedAttributes.addAll(selected);
         }
@@ -223,8 +246,10 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
      * This removes attributes that fail to fulfill the given type of condition from all the data sets.
      * @param data the data to be filtered 
      * @param condition the {@link Condition} that the attributes must fulfill
+     * @param stats the attribute values statistics (needed for {@link Condition#UNARY} and
+     *  {@link Condition#NON_IDENTICAL})
      */
-    private Vector<String> selectForRemoval(Instances[] data, Condition condition) {
+    private Vector<String> selectForRemoval(Instances[] data, Condition condition, ColumnStatistics stats) {
 
         Enumeration<Attribute> attribs = data[0].enumerateAttributes();
         Vector<String> forRemoval = new Vector<String>();
@@ -235,13 +260,13 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
             if (!this.preserveAttribs.contains(attr.name())) {
                 switch (condition){
                     case NON_IDENTICAL:
-                        if (!this.checkIdenticalValues(data, attr.name())){
+                        if (!this.checkIdenticalValues(data, stats, attr.name())){
                             forRemoval.add(attr.name());
                         }
                         break;
 
                     case UNARY:
-                        if (!this.checkDifferentValues(data, attr.name())){
+                        if (!this.checkDifferentValues(stats, attr.name())){
                             forRemoval.add(attr.name());
                         }
                         break;
@@ -305,49 +330,61 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
     }
 
     /**
-     * This checks that there are two or more identical values in attribute data (for all given data sets).
+     * This collects the values statistics for all the attributes that are not to be preserved, in all the
+     * data sets at once.
+     *
+     * @param header the data format
      * @param data the data sets to check
-     * @param name the attribute name to check
-     * @return true if there are two identical values of the given attribute in the data
+     * @return the values statistics
      */
-    private boolean checkIdenticalValues(Instances[] data, String name) {
+    private ColumnStatistics collectStatistics(Instances header, Instances [] data) throws Exception {
 
-        HashSet<Double> foundValues = new HashSet<Double>();
-
-        for (int i = 0; i < data.length; ++i){
+        Vector<Integer> attribs = new Vector<Integer>();
 
-            double [] values = data[i].attributeToDoubleArray(data[i].attribute(name).index());
-
-            for (int j = 0; j < values.length; ++j){
-                if (foundValues.contains(values[j])){ // value already encountered
-                    return true;
-                }
-                foundValues.add(values[j]);
+        for (int i = 0; i < header.numAttributes(); ++i){
+            if (!this.preserveAttribs.contains(header.attribute(i).name())){
+                attribs.add(i);
             }
         }
-        return false;
+        int [] idxs = new int [attribs.size()];
+        for (int i = 0; i < idxs.length; ++i){
+            idxs[i] = attribs.get(i);
+        }
+        return new ColumnStatistics(data, idxs, ColumnStatistics.DEFAULT_EXACT_LIMIT, this.threads);
     }
 
     /**
-     * This checks that there are at least two different values in the attribute data (for all given data sets)
+     * This checks that there are two or more identical values in attribute data (for all given data sets).
+     * Missing values are considered identical to each other. If the statistics cannot tell this for sure,
+     * the values are checked again directly in the data (unless {@link #approxRepeats} is set).
      *
      * @param data the data sets to check
+     * @param stats the values statistics for all the data sets
      * @param name the attribute name to check
-     * @return true if there are two different values of the given attribute in the data
+     * @return true if there are two identical values of the given attribute in the data
      */
-    private boolean checkDifferentValues(Instances[] data, String name) {
+    private boolean checkIdenticalValues(Instances [] data, ColumnStatistics stats, String name) {
 
-        double firstValue = Double.NaN;
+        if (stats.getMissingCount(name) > 1){
+            return true;
+        }
+        if (stats.isRepeatKnown(name)){
+            return stats.hasRepeatedValues(name);
+        }
+        if (this.approxRepeats){
+            return stats.estimateRepeatedValues(name);
+        }
+
+        HashSet<Double> vals = new HashSet<Double>();
 
         for (int i = 0; i < data.length; ++i){
 
-            double [] values = data[i].attributeToDoubleArray(data[i].attribute(name).index());
+            int attrIndex = data[i].attribute(name).index();
 
-            if (i == 0){
-                firstValue = values[0];
-            }
-            for (int j = 0; j < values.length; ++j){
-                if (values[j] != firstValue){
+            for (int j = 0; j < data[i].numInstances(); ++j){
+
+                double val = data[i].instance(j).value(attrIndex);
+                if (!Double.isNaN(val) && !vals.add(val)){
                     return true;
                 }
             }
@@ -355,6 +392,19 @@ public class IrrelevantAttributesRemoval extends MergedHeadersOutput {
         return false;
     }
 
+    /**
+     * This checks that there are at least two different values in the attribute data (for all given data sets).
+     * A missing value is considered different from all values, including other missing values, so attributes
+     * with any missing values (even all missing) are always kept.
+     *
+     * @param stats the values statistics for all the data sets
+     * @param name the attribute name to check
+     * @return true if there are two different values of the given attribute in the data
+     */
+    private boolean checkDifferentValues(ColumnStatistics stats, String name) {
+        return stats.getMissingCount(name) > 0 || stats.getDistinctCount(name) > 1;
+    }
+
 
     /**
      * Save the space-separated values of an attribute to a hash-set.
@@ -32,7 +32,9 @@ import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.StringUtils;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
 
@@ -47,11 +49,15 @@ public class RandomSampleSelector extends GroupInputsTask {
 
     /** The sample_size parameter name */
     private static final String SAMPLE_SIZE = "sample_size";
+    /** The seed parameter name */
+    private static final String SEED = "seed";
 
     /* DATA */
 
     /** The size of the random sample that should be selected */
     private int sampleSize;
+    /** The random seed, or null for a random sample each time */
+    private Long seed;
 
     /* METHODS */
 
@@ -63,6 +69,10 @@ public class RandomSampleSelector extends GroupInputsTask {
      * <ul>
      * <li><tt>sample_size</tt> -- number of files to be selected (for one output)</li>
      * </ul>
+     * <p>
+     * If the <tt>seed</tt> parameter is set, the same files are selected each time. To select a random
+     * sample of instances from large ARFF files, use {@link InstanceSampler}.
+     * </p>
      * There are additional parameters -- '*'-patterns to one of which the inputs must match and according
      * to which the input files are separated. Corresponding samples are selected for each pattern.
      * The number of patterns must be the same as the number of the outputs. These parameters' names must
@@ -90,27 +100,31 @@ public class RandomSampleSelector extends GroupInputsTask {
             }
         }
 
+        if (this.hasParameter(SEED)){
+            this.seed = (long) this.getIntParameterVal(SEED);
+        }
+
         this.extractPatterns(1);
     }
 
     @Override
     public void perform() throws TaskException {
 
-        Random rand = new Random();
+        Random rand = this.seed != null ? new Random(this.seed) : new Random();
         Hashtable<String, String> [] tables = this.sortInputs();
         Vector<String> possibleKeys = this.selectViableExpansions(tables);
 
+        Collections.sort(possibleKeys); // make the selection depend on the seed only
+
         if (possibleKeys.size() < this.sampleSize){
             throw new TaskException(TaskException.ERR_INVALID_DATA, this.id, "Not enough matching files to select from.");
         }
 
-        Vector<String> selectedKeys = new Vector<String>();
-
+        // partial Fisher-Yates shuffle: the first sampleSize keys form the sample
         for (int i = 0; i < this.sampleSize; ++i){
-
-            int sel = rand.nextInt(possibleKeys.size());
-            selectedKeys.add(possibleKeys.remove(sel));
+            Collections.swap(possibleKeys, i, i + rand.nextInt(possibleKeys.size() - i));
         }
+        List<String> selectedKeys = possibleKeys.subList(0, this.sampleSize);
 
         for (String key : selectedKeys){
             for (int i = 0; i < tables.length; ++i){
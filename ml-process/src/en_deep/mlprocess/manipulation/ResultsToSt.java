@@ -28,21 +28,31 @@
 package en_deep.mlprocess.manipulation;
 
 import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.Process;
 import en_deep.mlprocess.Task;
 import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.manipulation.DataReader.WordInfo;
 import en_deep.mlprocess.utils.FileUtils;
-import en_deep.mlprocess.utils.MathUtils;
+import en_deep.mlprocess.utils.PositionReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.converters.ArffLoader;
 
 /**
  * This adds the results from the classification files back to the ST file, possibly rewriting some fields.
+ * The prediction files are read lazily, as the predictions are needed, and only a limited number of them
+ * is kept open at the same time.
  * @author Ondrej Dusek
  */
 public class ResultsToSt extends StManipulation {
@@ -51,6 +61,14 @@ public class ResultsToSt extends StManipulation {
 
     /** The 'mode' parameter name */
     private static final String MODE = "mode";
+    /** The 'max_open' parameter name */
+    private static final String MAX_OPEN = "max_open";
+
+    /** Default maximum number of prediction files open at the same time */
+    private static final int DEFAULT_MAX_OPEN = 100;
+
+    /** Output buffer size */
+    private static final int BUFFER_SIZE = 1 << 16;
 
     /** This represents the possible work modes of this tasks */
     private enum Mode {
@@ -86,6 +104,9 @@ public class ResultsToSt extends StManipulation {
     /** This contains predictions for all arguments, if {@link #mode} is ARG */
     private Hashtable<String, ArgumentPrediction> argumentPredictions;
 
+    /** The pool of currently open prediction files */
+    private final CursorPool cursors;
+
     /* METHODS */
 
     /**
@@ -96,6 +117,11 @@ public class ResultsToSt extends StManipulation {
      * by noun and verb tag regexp patterns (each on separate line) and a list of semantic roles (one line, space-separated).</li>
      * <li><tt>predicted</tt> -- if set to non-false, work with predicted lemma, POS and only </li>
      * </ul>
+     * There is one optional parameter:
+     * <ul>
+     * <li><tt>max_open</tt> -- the maximum number of prediction files open at the same time (default: 100).
+     * If more files are needed, the least recently used one is closed and reopened later at the same position.</li>
+     * </ul>
      * This checks inputs and outputs -- the first input must be the original ST file, the output must be only one
      * ST output file. The rest of inputs must be the classified predicates / arguments from the original ST file.
      *
@@ -124,6 +150,13 @@ public class ResultsToSt extends StManipulation {
                 this.argumentPredictions = new Hashtable<String, ArgumentPrediction>();
                 break;
         }
+
+        int maxOpen = this.hasParameter(MAX_OPEN) ? this.getIntParameterVal(MAX_OPEN) : DEFAULT_MAX_OPEN;
+        if (maxOpen < 1){
+            throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The number of open files must be "
+                    + "positive.");
+        }
+        this.cursors = new CursorPool(maxOpen);
     }
 
 
@@ -143,16 +176,19 @@ public class ResultsToSt extends StManipulation {
     @Override
     public void perform() throws TaskException {
         
+        BufferedWriter out = null;
+
         try {
             // initialize
             String stIn = this.input.remove(0);
-            PrintStream out = new PrintStream(this.output.get(0));
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.output.get(0)),
+                    Process.getInstance().getCharset()), BUFFER_SIZE);
             this.reader.setInputFile(stIn);
             
-            // first, load all the predicted values
+            // first, prepare cursors for all the predicted values (just the headers are read)
             for (String file: this.input){
-                Logger.getInstance().message("Loading predictions from " + file + "...", Logger.V_DEBUG);
-                this.loadPrediction(file);                
+                Logger.getInstance().message("Opening predictions from " + file + "...", Logger.V_DEBUG);
+                this.initPrediction(file);
             }
 
             // then, stream-process the ST file
@@ -167,8 +203,8 @@ public class ResultsToSt extends StManipulation {
                         this.rewriteArguments();
                         break;
                 }
-                out.print(((StReader) this.reader).getSentenceST());
-                out.print("\n"); // force unix-LF as in original format
+                out.write(((StReader) this.reader).getSentenceST());
+                out.write("\n"); // force unix-LF as in original format
 
                 if (ctr > 0 && ctr % 1000 == 0){
                     Logger.getInstance().message("Processing sentence " + ctr + "...", Logger.V_DEBUG);
@@ -176,6 +212,7 @@ public class ResultsToSt extends StManipulation {
                 ctr++;
             }
             out.close();
+            out = null;
         }
         catch (TaskException e){
             throw e;
@@ -184,26 +221,39 @@ public class ResultsToSt extends StManipulation {
             Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
             throw new TaskException(TaskException.ERR_IO_ERROR, this.id, e.getMessage());
         }
-        
+        finally {
+            try {
+                if (out != null){
+                    out.close();
+                }
+                this.cursors.closeAll();
+            }
+            catch (IOException e){
+                Logger.getInstance().logStackTrace(e, Logger.V_DEBUG);
+            }
+        }
     }
 
 
     /**
-     * This loads all the predicted values (according to {@link #mode}) from the given file.
+     * This reads the header of the given prediction file and prepares a cursor over its predicted values
+     * (according to {@link #mode}). The values themselves are read later, as they are needed.
      * @param file the name of the file to be read
      */
-    private void loadPrediction(String file) throws Exception {
+    private void initPrediction(String file) throws Exception {
 
-        Instances data = FileUtils.readArff(file);
-        String predicateName = data.relationName();
+        Instances header = FileUtils.readArffStructure(file);
+        String predicateName = header.relationName();
 
         switch (this.mode){
             case PRED:
-                this.predicatePredictions.put(predicateName, new PredicatePrediction(data));
+                this.predicatePredictions.put(predicateName,
+                        new PredicatePrediction(new PredictionCursor(file, header, this.cursors)));
                 break;
 
             case ARG:
-                this.argumentPredictions.put(predicateName, new ArgumentPrediction(data));
+                this.argumentPredictions.put(predicateName,
+                        new ArgumentPrediction(new PredictionCursor(file, header, this.cursors)));
                 break;
         }
     }
@@ -212,7 +262,7 @@ public class ResultsToSt extends StManipulation {
      * This rewrites all the predicates in the current sentence with their predicted values that
      * are loaded in {@link #predicatePredictions}.
      */
-    private void rewritePredicates() {
+    private void rewritePredicates() throws IOException {
 
         // we know this works, and otherwise it would be too complicated to use the modifying methods that are generally
         // not present in DataReader
@@ -233,7 +283,7 @@ public class ResultsToSt extends StManipulation {
      * This rewrites all the predicate arguments in the current sentence with their predicted values loaded
      * in {@link #argumentPredictions}.
      */
-    private void rewriteArguments() {
+    private void rewriteArguments() throws IOException {
 
         // see rewritePredicates for explanation
         StReader stData = (StReader) this.reader;
@@ -271,7 +321,166 @@ public class ResultsToSt extends StManipulation {
     /* INNER CLASSES */
 
     /**
-     * This stores all the predictions for one of the predicates (in the order they appear in the ST file.
+     * A pool of open prediction files. If there are too many open files, the least recently used one is closed;
+     * it is reopened at the same position if needed again.
+     */
+    private static class CursorPool {
+
+        /** The open cursors, in access order */
+        private final LinkedHashMap<PredictionCursor, Boolean> open;
+        /** The maximum number of open cursors */
+        private final int maxOpen;
+
+        /** Creates a new pool with the given maximum number of open files */
+        CursorPool(int maxOpen){
+            this.maxOpen = maxOpen;
+            this.open = new LinkedHashMap<PredictionCursor, Boolean>(maxOpen * 4 / 3 + 1, 0.75f, true);
+        }
+
+        /**
+         * Marks the given cursor as used, opening its file (and closing the least recently used one) if needed.
+         */
+        void use(PredictionCursor cursor) throws IOException {
+
+            if (this.open.get(cursor) != null){
+                return;
+            }
+            if (this.open.size() >= this.maxOpen){
+                Iterator<PredictionCursor> lru = this.open.keySet().iterator();
+                lru.next().close();
+                lru.remove();
+            }
+            cursor.open();
+            this.open.put(cursor, true);
+        }
+
+        /**
+         * Closes all the open files.
+         */
+        void closeAll() throws IOException {
+
+            for (PredictionCursor cursor : this.open.keySet()){
+                cursor.close();
+            }
+            this.open.clear();
+        }
+    }
+
+    /**
+     * This reads the instances of one prediction file incrementally. The file is opened on the first use,
+     * and it may be closed by the {@link CursorPool} and reopened at the same position later.
+     */
+    private static class PredictionCursor {
+
+        /* DATA */
+
+        /** The prediction file name */
+        private final String file;
+        /** The prediction file header */
+        final Instances header;
+        /** The pool of open files */
+        private final CursorPool pool;
+
+        /** The number of instances already read from the file */
+        private int consumed = 0;
+        /** Can the file be reopened at a stored position (or must the instances be read again) ? */
+        private final boolean seekable;
+        /** The position in the file after the last instance read (for seekable files) */
+        private long position = 0;
+        /** The instance read ahead by {@link #peek()}, or null */
+        private Instance peeked;
+        /** True if the end of file has been reached */
+        private boolean finished = false;
+
+        /** The open file, or null if not open */
+        private Reader in;
+        /** The WEKA reader over {@link #in} */
+        private ArffLoader.ArffReader rows;
+
+        /* METHODS */
+
+        /**
+         * This creates a new cursor, without opening the file.
+         * @param file the prediction file name
+         * @param header the prediction file header
+         * @param pool the pool of open files
+         */
+        PredictionCursor(String file, Instances header, CursorPool pool){
+            this.file = file;
+            this.header = header;
+            this.pool = pool;
+            this.seekable = FileUtils.isArffSeekable(file);
+        }
+
+        /**
+         * Opens the file at the stored position, or skips all the instances already read if the file
+         * is not seekable (i.e. compressed).
+         */
+        void open() throws IOException {
+
+            if (this.seekable){
+                this.in = FileUtils.openArffData(this.file, this.position);
+                this.rows = new ArffLoader.ArffReader(this.in, this.header, 0, 0);
+                return;
+            }
+
+            this.in = FileUtils.openArffData(this.file);
+            this.rows = new ArffLoader.ArffReader(this.in, this.header, 0, 0);
+
+            for (int i = 0; i < this.consumed; ++i){
+                this.rows.readInstance(this.header);
+            }
+        }
+
+        /**
+         * Closes the file, keeping the current position.
+         */
+        void close() throws IOException {
+
+            if (this.seekable){
+                // the ARFF reader never reads past the end of the last instance's line
+                this.position = ((PositionReader) this.in).getPosition();
+            }
+            this.in.close();
+            this.in = null;
+            this.rows = null;
+        }
+
+        /**
+         * Returns the next instance in the file without moving past it, or null at the end of the file.
+         * @return the next instance, or null
+         */
+        Instance peek() throws IOException {
+
+            if (this.peeked == null && !this.finished){
+
+                this.pool.use(this);
+                this.peeked = this.rows.readInstance(this.header);
+
+                if (this.peeked == null){
+                    this.finished = true;
+                }
+                else {
+                    this.consumed++;
+                }
+            }
+            return this.peeked;
+        }
+
+        /**
+         * Returns the next instance in the file and moves past it, or null at the end of the file.
+         * @return the next instance, or null
+         */
+        Instance next() throws IOException {
+
+            Instance ret = this.peek();
+            this.peeked = null;
+            return ret;
+        }
+    }
+
+    /**
+     * This provides all the predictions for one of the predicates (in the order they appear in the ST file.
      */
     private static class PredicatePrediction {
 
@@ -282,34 +491,30 @@ public class ResultsToSt extends StManipulation {
 
         /* DATA */
         
-        /** The current instance index */
-        private int current = 0;
+        /** The prediction file cursor */
+        private final PredictionCursor cursor;
+        /** The predicate attribute index */
+        private final int attrIdx;
         /** List of all possible predicate sense labels */
-        private String [] senseLabels;
-        /** List of all the predicate senses (indexes to {@link #senseLabels}) */
-        private int [] senses;
+        private final String [] senseLabels;
 
         /* METHODS */
 
         /**
-         * This loads all the values of the prediction and sets the current predicate index to 0.
-         * @param data
+         * This reads all the possible values of the prediction, the values themselves are read later.
+         * @param cursor the prediction file cursor
          */
-        public PredicatePrediction(Instances data) {
+        public PredicatePrediction(PredictionCursor cursor) {
 
-            // copy the possible values
-            senseLabels = new String [data.attribute(ATTR_NAME).numValues()];
-            for (int i = 0; i < senseLabels.length; ++i){
-                senseLabels[i] = data.attribute(ATTR_NAME).value(i);
-            }
+            Attribute attr = cursor.header.attribute(ATTR_NAME);
 
-            this.senses = new int [data.numInstances()];
+            this.cursor = cursor;
+            this.attrIdx = attr.index();
 
-            // copy the data
-            double [] instVals = data.attributeToDoubleArray(data.attribute(ATTR_NAME).index());
-            this.senses = new int [instVals.length];
-            for (int i = 0; i < instVals.length; ++i){
-                this.senses[i] = (int) instVals[i];
+            // copy the possible values
+            this.senseLabels = new String [attr.numValues()];
+            for (int i = 0; i < this.senseLabels.length; ++i){
+                this.senseLabels[i] = attr.value(i);
             }
         }
 
@@ -317,16 +522,20 @@ public class ResultsToSt extends StManipulation {
          * This returns the next predicted predicate sense value.
          * @return the next predicate
          */
-        public String getNext(){
+        public String getNext() throws IOException {
 
-            String ret = this.senseLabels[this.senses[this.current]];
-            this.current++;
-            return ret;
+            Instance inst = this.cursor.next();
+
+            if (inst == null){
+                throw new IOException("Not enough predictions in the prediction file for " 
+                        + this.cursor.header.relationName());
+            }
+            return this.senseLabels[(int) inst.value(this.attrIdx)];
         }
     }
 
     /**
-     * This stores all argument predictions for one predicate.
+     * This provides all argument predictions for one predicate, reading them one sentence at a time.
      */
     private static class ArgumentPrediction {
 
@@ -343,61 +552,84 @@ public class ResultsToSt extends StManipulation {
 
         /* DATA */
 
-        /** The current instance index */
-        private int curSentBase = 0;
-        /** The current sentence index */
-        private int curSent = 0;
-        /** The current sentence id */
-        private int curSentId = -1;
-        /** List of all the predictions */
-        private int [] values;
-        /** List of word ids for each of the values */
-        private int [] [] wordIds;
+        /** The prediction file cursor */
+        private final PredictionCursor cursor;
+        /** The semrel attribute index */
+        private final int semRelIdx;
+        /** The word-id attribute index */
+        private final int wordIdIdx;
+        /** The sent-id attribute index */
+        private final int sentIdIdx;
         /** The string values of semrel to be returned */
-        private String [] semVals;
+        private final String [] semVals;
+
+        /** The current sentence id (in the ST file) */
+        private int curSentId = -1;
+        /** The word ids in the current sentence */
+        private int [] wordIds = new int [0];
+        /** The predictions for the current sentence */
+        private int [] values = new int [0];
 
         /* METHODS */
 
         /**
-         * This loads all the argument predictions for the given predicate, along with the possible values
-         * of the semrel attribute.
+         * This reads the possible values of the semrel attribute, the predictions themselves are read later.
          * 
-         * @param data the data that contain the predictions
+         * @param cursor the prediction file cursor
          */
-        public ArgumentPrediction(Instances data) {
+        public ArgumentPrediction(PredictionCursor cursor) {
+
+            Attribute semRel = cursor.header.attribute(ATTR_NAME);
 
-            Attribute semRel = data.attribute(ATTR_NAME);
-            Attribute wordId = data.attribute(WORD_ID);
-            Attribute sentId = data.attribute(SENT_ID);
+            this.cursor = cursor;
+            this.semRelIdx = semRel.index();
+            this.wordIdIdx = cursor.header.attribute(WORD_ID).index();
+            this.sentIdIdx = cursor.header.attribute(SENT_ID).index();
 
             // initialize the list of possible values
             this.semVals = new String [semRel.numValues()];
             for (int i = 0; i < this.semVals.length; ++i){
                 this.semVals[i] = semRel.value(i);
             }
+        }
+
+        /**
+         * This reads the predictions for the next sentence in the prediction file, i.e.\ all the following
+         * instances with the same sent-id.
+         */
+        private void readNextSentence() throws IOException {
 
-            // read all the predictions
-            this.values = MathUtils.toInts(data.attributeToDoubleArray(semRel.index()));
+            Instance first = this.cursor.next();
+            int len = 0;
 
-            // divide the word ids by sentence
-            int [] sentIds = MathUtils.toInts(data.attributeToDoubleArray(sentId.index()));
-            int [] wordIdsPlain = MathUtils.toInts(data.attributeToDoubleArray(wordId.index()));
-            int sentNum = 1;
-            for (int i = 1; i < sentIds.length; i++) { // count sentences
-                if (sentIds[i] != sentIds[i-1]){
-                    sentNum++;
-                }
+            if (first == null){
+                this.wordIds = new int [0];
+                this.values = new int [0];
+                return;
             }
-            this.wordIds = new int [sentNum] [];
-            int sentBase = 0, sentIdx = 0;
-            for (int i = 1; i < sentIds.length; i++){ // fill the word ids for each sentence
-                if (sentIds[i] != sentIds[i-1]){
-                    this.wordIds[sentIdx] = Arrays.copyOfRange(wordIdsPlain, sentBase, i);
-                    sentIdx++;
-                    sentBase = i;
+
+            int sentId = (int) first.value(this.sentIdIdx);
+            Instance inst = first;
+
+            do {
+                if (len == this.wordIds.length){
+                    this.wordIds = Arrays.copyOf(this.wordIds, Math.max(16, len * 2));
+                    this.values = Arrays.copyOf(this.values, this.wordIds.length);
+                }
+                this.wordIds[len] = (int) inst.value(this.wordIdIdx);
+                this.values[len] = (int) inst.value(this.semRelIdx);
+                len++;
+
+                inst = this.cursor.peek();
+                if (inst == null || (int) inst.value(this.sentIdIdx) != sentId){
+                    break;
                 }
+                this.cursor.next();
             }
-            this.wordIds[this.wordIds.length-1] = Arrays.copyOfRange(wordIdsPlain, sentBase, wordIdsPlain.length);
+            while (true);
+
+            this.wordIds = Arrays.copyOf(this.wordIds, len);
+            this.values = Arrays.copyOf(this.values, len);
         }
 
         /**
@@ -408,22 +640,18 @@ public class ResultsToSt extends StManipulation {
          * @param wordId the id of the current word
          * @return the argument prediction for the given word in the current sentence
          */
-        public String get(int sentId, int wordId){
+        public String get(int sentId, int wordId) throws IOException {
 
             if (sentId != this.curSentId){
-
-                if (this.curSentId != -1){
-                    this.curSentBase += this.wordIds[this.curSent].length;
-                    this.curSent++;
-                }
+                this.readNextSentence();
                 this.curSentId = sentId;
             }            
-            int pos = Arrays.binarySearch(wordIds[this.curSent], wordId);
+            int pos = Arrays.binarySearch(this.wordIds, wordId);
             if (pos < 0){
                 return EMPTY;
             }
             else {
-                return this.semVals[this.values[this.curSentBase + pos]];
+                return this.semVals[this.values[pos]];
             }
         }
     }
@@ -8,8 +8,10 @@ package en_deep.mlprocess.manipulation;
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.manipulation.genfeat.Feature;
+import en_deep.mlprocess.manipulation.genfeat.FeatureOutput;
 import en_deep.mlprocess.utils.StringUtils;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -37,6 +39,13 @@ public abstract class StLikeConvertor extends StManipulation {
     /** Features to be generated */
     protected Vector<Feature> genFeats;
 
+    /** Scopes of the individual generated features */
+    private Feature.Scope [] genFeatScopes;
+    /** Cached values of word-, predicate- and sentence-scoped features for the current sentence */
+    private String [] [] genFeatCache;
+    /** Reusable output buffer for generated features' values */
+    private final FeatureOutput genFeatOutput = new FeatureOutput();
+
     /* METHODS */
 
 
@@ -79,10 +88,7 @@ public abstract class StLikeConvertor extends StManipulation {
         String[] featList;
 
         this.genFeats = new Vector<Feature>();
-        if (!this.hasParameter(GENERATE)) {
-            return;
-        }
-        featList = this.getParameterVal(GENERATE).split(",");
+        featList = this.hasParameter(GENERATE) ? this.getParameterVal(GENERATE).split(",") : new String [0];
         for (String featName : featList) {
             Feature feat = Feature.createFeature(featName.trim(), this.reader);
             if (feat == null) {
@@ -92,6 +98,128 @@ public abstract class StLikeConvertor extends StManipulation {
                 this.genFeats.add(feat);
             }
         }
+        this.genFeatScopes = new Feature.Scope [this.genFeats.size()];
+        for (int i = 0; i < this.genFeatScopes.length; ++i){
+            this.genFeatScopes[i] = this.genFeats.get(i).getScope();
+        }
+        this.genFeatCache = new String [this.genFeats.size()] [];
+    }
+
+    /**
+     * Returns the ARFF attribute declarations of all the output attributes -- the input fields and the
+     * generated features (without the "file" attribute and the semantic class).
+     *
+     * @return the ARFF attribute declarations, one per line
+     */
+    protected String getAttributeHeaders() {
+
+        StringBuilder sb = new StringBuilder(this.reader.getArffHeaders());
+
+        for (Feature f : this.genFeats) {
+            sb.append('\n').append(f.getHeader());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Clears the cached values of generated features and lets the features clear their own caches
+     * (see {@link Feature#startSentence()}). Must be called after each sentence is loaded and before any call
+     * to {@link #printGenFeats(int, int, PrintStream)}.
+     */
+    protected void clearGenFeatCache() {
+
+        int len = this.reader.getSentenceLength();
+
+        for (Feature f : this.genFeats){
+            f.startSentence();
+        }
+
+        for (int i = 0; i < this.genFeatCache.length; ++i){
+
+            if (this.genFeatScopes[i] == Feature.Scope.PAIR){
+                continue;
+            }
+            int size = this.genFeatScopes[i] == Feature.Scope.SENTENCE ? 1 : len;
+
+            if (this.genFeatCache[i] == null || this.genFeatCache[i].length < size){
+                this.genFeatCache[i] = new String [Math.max(size, 16)];
+            }
+            else {
+                Arrays.fill(this.genFeatCache[i], null);
+            }
+        }
+    }
+
+    /**
+     * Prints the values of all generated features for the given word and predicate to the given output, each
+     * preceded by a comma. The values are collected in a reusable buffer and printed at once.
+     *
+     * @param wordNo the number of the word to which the values apply
+     * @param predNo the number of the predicate to which the values are related
+     * @param out the output stream
+     */
+    protected void printGenFeats(int wordNo, int predNo, PrintStream out) {
+
+        this.genFeatOutput.clear();
+        this.appendGenFeats(wordNo, predNo, this.genFeatOutput);
+        out.print(this.genFeatOutput);
+    }
+
+    /**
+     * Appends the values of all generated features for the given word and predicate to the given output buffer,
+     * each preceded by a comma.
+     *
+     * @param wordNo the number of the word to which the values apply
+     * @param predNo the number of the predicate to which the values are related
+     * @param out the output buffer
+     */
+    protected void appendGenFeats(int wordNo, int predNo, FeatureOutput out) {
+
+        for (int i = 0; i < this.genFeats.size(); ++i){
+            out.sep();
+            this.generateFeature(i, wordNo, predNo, out);
+        }
+    }
+
+    /**
+     * Appends the value of the given generated feature for the given word and predicate to the given output.
+     * Values of features whose scope is not {@link Feature.Scope#PAIR} are computed only once in each sentence
+     * and reused.
+     *
+     * @param featNo the number of the feature (in {@link #genFeats})
+     * @param wordNo the number of the word to which the value applies
+     * @param predNo the number of the predicate to which the value is related
+     * @param out the output to append the value to
+     */
+    private void generateFeature(int featNo, int wordNo, int predNo, FeatureOutput out) {
+
+        int slot;
+
+        switch (this.genFeatScopes[featNo]){
+            case WORD:
+                slot = wordNo;
+                break;
+            case PREDICATE:
+                slot = predNo;
+                break;
+            case SENTENCE:
+                slot = 0;
+                break;
+            default:
+                this.genFeats.get(featNo).generate(wordNo, predNo, out);
+                return;
+        }
+
+        String [] cache = this.genFeatCache[featNo];
+
+        if (cache[slot] == null){
+            int start = out.length();
+            this.genFeats.get(featNo).generate(wordNo, predNo, out);
+            cache[slot] = out.substring(start);
+        }
+        else {
+            out.raw(cache[slot]);
+        }
     }
 
     /**
@@ -101,17 +229,38 @@ public abstract class StLikeConvertor extends StManipulation {
      * @param fileAttr write the "file" attribute header (for one-file mode with multiple predicates)
      */
     protected void writeHeader(PrintStream out, String relationName, boolean fileAttr, boolean semClass) {
+        this.writeHeader(out, relationName, fileAttr, semClass, null);
+    }
+
+    /**
+     * This writes one ARFF file header into the given output stream. If a {@link FeatureHasher} is given,
+     * its output attributes are written instead of the input fields and generated features.
+     *
+     * @param out the output stream to write to
+     * @param relationName the new ARFF relation name
+     * @param fileAttr write the "file" attribute header (for one-file mode with multiple predicates)
+     * @param semClass write the semantic class header ?
+     * @param hasher the feature hasher used for the output, or null
+     */
+    protected void writeHeader(PrintStream out, String relationName, boolean fileAttr, boolean semClass,
+            FeatureHasher hasher) {
+
         out.println(StToArff.RELATION + " \"" + StringUtils.escape(relationName) + "\"");
 
         // print the "file" parameter, if in one-file mode
         if (fileAttr) {
             out.println(FILE_ATTR_HEADER);
         }
-        out.println(this.reader.getArffHeaders());
+        if (hasher != null){
+            out.println(hasher.getHeader());
+        }
+        else {
+            out.println(this.reader.getArffHeaders());
 
-        // print generated features' headers
-        for (Feature f : this.genFeats) {
-            out.println(f.getHeader());
+            // print generated features' headers
+            for (Feature f : this.genFeats) {
+                out.println(f.getHeader());
+            }
         }
         // print semrel headers (if supposed to)
         if (semClass) {
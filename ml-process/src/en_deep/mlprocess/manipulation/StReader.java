@@ -31,6 +31,7 @@ import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.Process;
 import en_deep.mlprocess.Task;
 import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.manipulation.featmodif.CachingFeatureModifier;
 import en_deep.mlprocess.manipulation.featmodif.FeatureModifier;
 import en_deep.mlprocess.utils.MathUtils;
 import en_deep.mlprocess.utils.StringUtils;
@@ -619,7 +620,7 @@ public class StReader extends DataReader {
      */
     protected void initPOSFeats() throws IOException {
         if (this.posFeatHandlerName != null) {
-            this.posFeatHandler = FeatureModifier.createHandler(this.posFeatHandlerName);
+            this.posFeatHandler = CachingFeatureModifier.createCachingHandler(this.posFeatHandlerName);
             if (this.posFeatHandler == null) {
                 throw new IOException("POS feature handling " + "class `" + this.posFeatHandlerName + "' creation failed.");
             }
@@ -32,7 +32,7 @@ import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.utils.Pair;
 import en_deep.mlprocess.exception.TaskException;
 import en_deep.mlprocess.manipulation.DataReader.WordInfo;
-import en_deep.mlprocess.manipulation.genfeat.Feature;
+import en_deep.mlprocess.manipulation.genfeat.FeatureOutput;
 import en_deep.mlprocess.utils.FileUtils;
 import en_deep.mlprocess.utils.StringUtils;
 import java.io.ByteArrayInputStream;
@@ -73,6 +73,17 @@ public class StToArff extends StLikeConvertor {
     private static final String ONE_FILE_MODE = "one_file";   
     /** The omit_semclass parameter name */
     private static final String OMIT_SEMCLASS = "omit_semclass";
+    /** The hash_dims parameter name */
+    private static final String HASH_DIMS = "hash_dims";
+    /** The hash_signed parameter name */
+    private static final String HASH_SIGNED = "hash_signed";
+    /** The hash_split_sets parameter name */
+    private static final String HASH_SPLIT_SETS = "hash_split_sets";
+    /** The hash_seed parameter name */
+    private static final String HASH_SEED = "hash_seed";
+
+    /** Number of leading attributes (sent-id, word-id) which are passed through in the hashed output mode */
+    private static final int HASH_PASS_THROUGH = 2;
    
     /* DATA */
 
@@ -89,6 +100,21 @@ public class StToArff extends StLikeConvertor {
     /** List of POS which should be filtered on the output (or null if none) */
     private String [] filteredPOS;
 
+    /** Number of hashed output dimensions (0 if the hashed output mode is off) */
+    private int hashDims;
+    /** Use signed hashing ? */
+    private boolean hashSigned;
+    /** Split set-valued features for hashing ? */
+    private boolean hashSplitSets;
+    /** The hash function seed */
+    private int hashSeed;
+    /** The feature hasher for the current input file (null if the hashed output mode is off) */
+    private FeatureHasher hasher;
+    /** Output line buffer for the hashed output mode */
+    private FeatureOutput hashInput;
+    /** Sparse output line buffer for the hashed output mode */
+    private StringBuilder hashOutput;
+
  
     /** Used output files (for re-processing) */
     private HashMultimap<String, String> usedFiles;
@@ -119,6 +145,15 @@ public class StToArff extends StLikeConvertor {
      * e.g. meaningful for English are: "'' ( ) , . : `` EX HYPH LS NIL POS"</li>
      * <li><tt>one_file</tt> -- this turns the one-file-mode on. If set, the headers won't be set to nominal and the output
      * will go into one file only</li>
+     * <li><tt>hash_dims</tt> -- (optional) if set, the features are hashed into the given number of NUMERIC
+     * attributes (using MurmurHash3) and the output is written in sparse ARFF format. Only the sentence and word
+     * ids and the semantic class are kept unchanged. No header rewriting takes place in this mode, so one-file-mode
+     * is recommended (the headers are quite long for large numbers of dimensions).</li>
+     * <li><tt>hash_signed</tt> -- if set to non-false, the hashed features are signed (+1/-1) to reduce the effect
+     * of collisions</li>
+     * <li><tt>hash_split_sets</tt> -- if set to non-false, set-valued features (values separated by spaces)
+     * are hashed as individual members of the set</li>
+     * <li><tt>hash_seed</tt> -- (optional) the seed for the hash function, defaults to 0</li>
      * </ul>
      * <p>
      * For parameters required by the input reader helper class, see {@link StReader}.
@@ -146,6 +181,20 @@ public class StToArff extends StLikeConvertor {
         this.prune = this.getBooleanParameterVal(PRUNE);
         this.oneFileMode = this.getBooleanParameterVal(ONE_FILE_MODE);
 
+        // initialize hashing parameters
+        if (this.hasParameter(HASH_DIMS)){
+            this.hashDims = this.getIntParameterVal(HASH_DIMS);
+            if (this.hashDims <= 0){
+                throw new TaskException(TaskException.ERR_INVALID_PARAMS, this.id, "The " + HASH_DIMS
+                        + " parameter must be positive.");
+            }
+            this.hashSigned = this.getBooleanParameterVal(HASH_SIGNED);
+            this.hashSplitSets = this.getBooleanParameterVal(HASH_SPLIT_SETS);
+            this.hashSeed = this.hasParameter(HASH_SEED) ? this.getIntParameterVal(HASH_SEED) : 0;
+            this.hashInput = new FeatureOutput();
+            this.hashOutput = new StringBuilder();
+        }
+
         // initialize string parameter
         if (this.getParameterVal(FILTER_POS) != null){
             this.filteredPOS = this.getParameterVal(FILTER_POS).split("\\s+");
@@ -196,7 +245,7 @@ public class StToArff extends StLikeConvertor {
                 this.convert(this.input.get(i), this.output.get(i));
             }
 
-            if (!this.oneFileMode){
+            if (!this.oneFileMode && this.hashDims == 0){
                 // now convert the string attributes to nominal types in the output
                 for (String predicate : this.usedFiles.keySet()){
                     Logger.getInstance().message(this.id + ": Rewriting header(s) for " + predicate + " ...",
@@ -237,15 +286,21 @@ public class StToArff extends StLikeConvertor {
         stData.setInputFile(st);
         this.initGenFeats();
 
+        if (this.hashDims > 0){
+            this.hasher = new FeatureHasher(this.getAttributeHeaders(), HASH_PASS_THROUGH, this.hashDims,
+                    this.hashSigned, this.hashSplitSets, this.hashSeed);
+        }
+
         if (this.oneFileMode){
             os = new FileOutputStream(arff);
             out = new PrintStream(os);
-            this.writeHeader(out, StringUtils.truncateFileName(arff), true, !this.omitSemClass);
+            this.writeHeader(out, StringUtils.truncateFileName(arff), true, !this.omitSemClass, this.hasher);
         }
 
         while (stData.loadNextSentence()){
 
             predNums = stData.getPredicates();
+            this.clearGenFeatCache();
             outputs = this.findOutputs(predNums, arff); // find corresponding output predicate & file names
             if (!this.oneFileMode){
                 this.writeHeaders(outputs); // prepare output file headers
@@ -268,6 +323,11 @@ public class StToArff extends StLikeConvertor {
                         continue;
                     }
 
+                    if (this.hasher != null){
+                        this.printHashed(j, i, predNums[i], this.oneFileMode ? outputs.get(i).first : null, out);
+                        continue;
+                    }
+
                     // print the compulsory fields
                     if (this.oneFileMode){
                         out.print("\"" + StringUtils.escape(outputs.get(i).first) + "\",");
@@ -277,9 +337,7 @@ public class StToArff extends StLikeConvertor {
                     out.print(stData.getInputFields(j));
                     
                     // add generated features
-                    for (Feature f : this.genFeats){
-                        out.print("," + f.generate(j, predNums[i]));
-                    }
+                    this.printGenFeats(j, predNums[i], out);
 
                     // print the resulting semantic relation to the given predicate
                     if (!this.omitSemClass){
@@ -296,8 +354,8 @@ public class StToArff extends StLikeConvertor {
             }
 
             if (stData.getSentenceId() % 1000 == 0){
-                Logger.getInstance().message(this.id + ": Input: " + st + ", sentence: " + stData.getSentenceId(),
-                        Logger.V_DEBUG);
+                Logger.getInstance().messagef("%s: Input: %s, sentence: %d", Logger.V_DEBUG, this.id, st,
+                        stData.getSentenceId());
             }
         }
 
@@ -308,6 +366,48 @@ public class StToArff extends StLikeConvertor {
     }
 
 
+    /**
+     * Prints one output line in the hashed sparse output mode. The sentence and word ids are passed through,
+     * all other input fields and generated features are hashed and the semantic class values are appended
+     * unchanged.
+     *
+     * @param wordNo the current word number
+     * @param predOrd the ordinal number of the current predicate in the sentence
+     * @param predNo the word number of the current predicate
+     * @param fileAttr the value of the "file" attribute (for one-file mode), or null
+     * @param out the output stream
+     */
+    private void printHashed(int wordNo, int predOrd, int predNo, String fileAttr, PrintStream out) {
+
+        StReader stData = (StReader) this.reader;
+        int offset = 0;
+
+        this.hashInput.clear();
+        this.hashInput.raw(stData.getSentenceId());
+        this.hashInput.raw(stData.getInputFields(wordNo));
+        this.appendGenFeats(wordNo, predNo, this.hashInput);
+
+        this.hashOutput.setLength(0);
+        this.hashOutput.append('{');
+        if (fileAttr != null){
+            this.hashOutput.append("0 \"").append(StringUtils.escape(fileAttr)).append("\",");
+            offset = 1;
+        }
+        this.hasher.appendSparse(this.hashInput, offset, this.hashOutput);
+
+        // the semantic class values are not hashed
+        if (!this.omitSemClass){
+            String [] classVals = StringUtils.split(stData.getSemRole(wordNo, predOrd), ',');
+            offset += this.hasher.numOutputAttributes();
+
+            for (int i = 0; i < classVals.length; ++i){
+                this.hashOutput.append(',').append(offset + i).append(' ').append(classVals[i]);
+            }
+        }
+        this.hashOutput.append('}');
+        out.println(this.hashOutput);
+    }
+
     /**
      * Writes output ARFF files headers for the given predicates and file names. Heeds the "multiclass" parameter
      * (see {@link StToArff}). Some parameter types are left as STRING at first. They are converted
@@ -332,7 +432,7 @@ public class StToArff extends StLikeConvertor {
             FileOutputStream os = new FileOutputStream(fileName);
             PrintStream out = new PrintStream(os);
 
-            this.writeHeader(out, predName, false, !this.omitSemClass);
+            this.writeHeader(out, predName, false, !this.omitSemClass, this.hasher);
 
             out.close();
             out = null;
@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.manipulation;
+
+import en_deep.mlprocess.Logger;
+import en_deep.mlprocess.exception.TaskException;
+import en_deep.mlprocess.utils.FileUtils;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.util.Hashtable;
+import java.util.Vector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+/**
+ * This is a base for attribute manipulation tasks that only change the header and each instance separately,
+ * so that they support the streaming mode, in which the data are read and written row by row and never held
+ * in the memory as a whole.
+ * <p>
+ * Files with string or relational attributes are still processed in the batch mode, using
+ * {@link #manipulateAttributes(Instances)}.
+ * </p>
+ * @author Ondrej Dusek
+ */
+public abstract class StreamableAttributeManipulation extends AbstractAttributeManipulation {
+
+    /* METHODS */
+
+    /**
+     * This just checks that the number of inputs and outputs is the same and that there are no patterns
+     * in inputs and outputs.
+     */
+    protected StreamableAttributeManipulation(String id, Hashtable<String, String> parameters,
+            Vector<String> input, Vector<String> output) throws TaskException {
+        super(id, parameters, input, output);
+    }
+
+    /**
+     * This processes the given file in the streaming mode, if it contains no string or relational attributes.
+     */
+    @Override
+    protected boolean tryStream(String inFile, String outFile) throws Exception {
+
+        Instances header = FileUtils.readArffStructure(inFile);
+
+        if (canStream(header)){
+            this.streamFile(inFile, header, outFile);
+            return true;
+        }
+        Logger.getInstance().message(this.id + ": " + inFile + " contains string values, "
+                + "processing it in the memory.", Logger.V_DEBUG);
+        return false;
+    }
+
+    /**
+     * This reads the given file row by row, transforms its header using {@link #manipulateHeader(Instances)},
+     * each instance using {@link #manipulateInstance(Instance)} and writes the results to the output file.
+     *
+     * @param inFile the input file name
+     * @param header the header of the input file
+     * @param outFile the output file name
+     */
+    void streamFile(String inFile, Instances header, String outFile) throws Exception {
+
+        BufferedReader in = FileUtils.openArffData(inFile);
+        ArffLoader.ArffReader rows = new ArffLoader.ArffReader(in, header, 0, 0);
+        Instances outHeader = this.manipulateHeader(new Instances(header, 0));
+        BufferedWriter out = FileUtils.openArffWriter(outFile, outHeader);
+        Instance inst;
+
+        while ((inst = rows.readInstance(header)) != null){
+
+            Instance result = this.manipulateInstance(inst);
+
+            result.setDataset(outHeader);
+            out.write(result.toString());
+            out.newLine();
+        }
+        out.close();
+        in.close();
+        this.finishStreaming();
+    }
+
+    /**
+     * This should manipulate the attributes in the header of one ARFF file in the streaming mode. It is called
+     * once for every file, before the file's instances are processed.
+     *
+     * @param header the file header (empty data set), which may be changed
+     * @return the header of the output file
+     */
+    protected abstract Instances manipulateHeader(Instances header) throws TaskException;
+
+    /**
+     * This should manipulate one instance in the streaming mode. The instance belongs to the input header,
+     * the result must conform to the header returned by {@link #manipulateHeader(Instances)}.
+     *
+     * @param inst the instance to be processed
+     * @return the resulting instance (may be the same object)
+     */
+    protected abstract Instance manipulateInstance(Instance inst) throws TaskException;
+
+    /**
+     * This is called in the streaming mode after all the instances of one file have been processed.
+     * The default implementation does nothing.
+     */
+    protected void finishStreaming() throws Exception {
+    }
+}
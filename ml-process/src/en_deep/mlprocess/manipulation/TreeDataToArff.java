@@ -8,7 +8,6 @@ package en_deep.mlprocess.manipulation;
 import en_deep.mlprocess.Logger;
 import en_deep.mlprocess.Task;
 import en_deep.mlprocess.exception.TaskException;
-import en_deep.mlprocess.manipulation.genfeat.Feature;
 import en_deep.mlprocess.utils.StringUtils;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -122,6 +121,8 @@ public class TreeDataToArff extends StLikeConvertor {
 
         while (this.reader.loadNextSentence()){
 
+            this.clearGenFeatCache();
+
             for (int j = 0; j < this.reader.getSentenceLength(); ++j){
 
                 out.print(this.reader.getSentenceId());
@@ -129,9 +130,7 @@ public class TreeDataToArff extends StLikeConvertor {
                 out.print(this.reader.getInputFields(j));
 
                 // add generated features
-                for (Feature f : this.genFeats){
-                    out.print("," + f.generate(j, j)); // let each word be its own predicate
-                }
+                this.printGenFeats(j, j, out); // let each word be its own predicate
 
                 out.println();
             }
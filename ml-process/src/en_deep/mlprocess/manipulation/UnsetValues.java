@@ -18,13 +18,18 @@ import weka.core.Instances;
  * This unsets all values for some attributes in an ARFF file.
  * @author odusek
  */
-public class UnsetValues extends AbstractAttributeManipulation {
+public class UnsetValues extends StreamableAttributeManipulation {
 
     /* CONSTANTS */
 
     /** The 'attribs' parameter name */
     private static final String ATTRIBS = "attribs";
 
+    /* DATA */
+
+    /** Indexes of the attributes to be unset in the current file (streaming mode) */
+    private int [] attribIdxs;
+
     /* METHODS */
     /**
      * This creates a new {@link UnsetValues} {@link Task}. There must be the same number of
@@ -65,4 +70,39 @@ public class UnsetValues extends AbstractAttributeManipulation {
         }
     }
 
+    /**
+     * This finds the indexes of all the attributes to be unset, the header remains unchanged.
+     * @param header the file header
+     * @return the same header
+     */
+    @Override
+    protected Instances manipulateHeader(Instances header) throws TaskException {
+
+        String [] attribs = this.getParameterVal(ATTRIBS).split("\\s+");
+        Vector<Integer> idxs = new Vector<Integer>(attribs.length);
+
+        for (int i = 0; i < attribs.length; ++i){
+            if (header.attribute(attribs[i]) == null){
+                Logger.getInstance().message("Attribute " + attribs[i] + " not found in data set " + header.relationName(),
+                        Logger.V_WARNING);
+                continue;
+            }
+            idxs.add(header.attribute(attribs[i]).index());
+        }
+        this.attribIdxs = new int [idxs.size()];
+        for (int i = 0; i < this.attribIdxs.length; ++i){
+            this.attribIdxs[i] = idxs.get(i);
+        }
+        return header;
+    }
+
+    @Override
+    protected Instance manipulateInstance(Instance inst) throws TaskException {
+
+        for (int idx : this.attribIdxs){
+            inst.setMissing(idx);
+        }
+        return inst;
+    }
+
 }
@@ -0,0 +1,162 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.manipulation.featmodif;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This wraps any {@link FeatureModifier} and memoizes its outputs for each distinct input value. This pays off
+ * since the modified features (e.g. morphological tags) have a small number of distinct values which repeat
+ * over and over in the data.
+ * <p>
+ * The cache is bounded: after it reaches the maximum size, no new values are stored and the underlying modifier
+ * is called for the values not yet cached. Since the most frequent values usually appear early, this keeps most
+ * of the benefit. The cache may be used from multiple threads concurrently.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+public class CachingFeatureModifier extends FeatureModifier {
+
+    /* CONSTANTS */
+
+    /** Default maximum number of cached input values */
+    public static final int DEFAULT_MAX_SIZE = 65536;
+
+    /* DATA */
+
+    /** The underlying feature modifier */
+    private final FeatureModifier modifier;
+    /** The maximum number of cached values in each of the caches */
+    private final int maxSize;
+
+    /** Cached outputs of {@link #getOutputValues(String)} */
+    private final ConcurrentHashMap<String, String []> valuesCache;
+    /** Cached outputs of {@link #listFeats(String)} */
+    private final ConcurrentHashMap<String, String> listCache;
+
+    /** Output of {@link #getOutputValues(String)} for null (which cannot be stored in the map) */
+    private volatile String [] nullValues;
+    /** Output of {@link #listFeats(String)} for null (which cannot be stored in the map) */
+    private volatile String nullList;
+
+    /* METHODS */
+
+    /**
+     * This creates a caching wrapper for the given feature modifier, with the given cache size limit.
+     *
+     * @param modifier the feature modifier whose outputs should be cached
+     * @param maxSize the maximum number of cached input values
+     */
+    public CachingFeatureModifier(FeatureModifier modifier, int maxSize){
+
+        this.modifier = modifier;
+        this.maxSize = maxSize;
+        this.valuesCache = new ConcurrentHashMap<String, String []>();
+        this.listCache = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * This creates a caching wrapper for the given feature modifier, with the {@link #DEFAULT_MAX_SIZE default}
+     * cache size limit.
+     *
+     * @param modifier the feature modifier whose outputs should be cached
+     */
+    public CachingFeatureModifier(FeatureModifier modifier){
+        this(modifier, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * This tries to find the feature handling class with the given name, initialize it and wrap it in a
+     * {@link CachingFeatureModifier}.
+     *
+     * @param className the feature handling class name, see {@link FeatureModifier#createHandler(String)}
+     * @return the desired feature handler, with caching, or null if not successful
+     */
+    public static FeatureModifier createCachingHandler(String className){
+
+        FeatureModifier handler = FeatureModifier.createHandler(className);
+
+        if (handler == null){
+            return null;
+        }
+        return new CachingFeatureModifier(handler);
+    }
+
+    @Override
+    public String [] getOutputFeatsList(String prefix) {
+        return this.modifier.getOutputFeatsList(prefix);
+    }
+
+    @Override
+    public String getHeader(String prefix) {
+        return this.modifier.getHeader(prefix);
+    }
+
+    /**
+     * {@inheritDoc} The result is a copy of the cached value, so it may be modified by the caller.
+     */
+    @Override
+    public String [] getOutputValues(String value) {
+
+        String [] values;
+
+        if (value == null){
+            if ((values = this.nullValues) == null){
+                this.nullValues = values = this.modifier.getOutputValues(null).clone();
+            }
+        }
+        else if ((values = this.valuesCache.get(value)) == null){
+            values = this.modifier.getOutputValues(value).clone();
+            if (this.valuesCache.size() < this.maxSize){
+                this.valuesCache.putIfAbsent(value, values);
+            }
+        }
+        return values.clone();
+    }
+
+    @Override
+    public String listFeats(String value) {
+
+        String list;
+
+        if (value == null){
+            if ((list = this.nullList) == null){
+                this.nullList = list = this.modifier.listFeats(null);
+            }
+        }
+        else if ((list = this.listCache.get(value)) == null){
+            list = this.modifier.listFeats(value);
+            if (this.listCache.size() < this.maxSize){
+                this.listCache.putIfAbsent(value, list);
+            }
+        }
+        return list;
+    }
+}
@@ -50,6 +50,8 @@ public abstract class FeatureModifier {
     protected static final String LF = System.getProperty("line.separator");
     /** Separator for multiple values */
     protected static final String SEP = Feature.SEP;
+    /** Separator for multiple values, as a character */
+    protected static final char SEP_CHAR = SEP.charAt(0);
 
 
     /**
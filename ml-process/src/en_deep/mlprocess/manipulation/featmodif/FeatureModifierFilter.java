@@ -154,7 +154,7 @@ public class FeatureModifierFilter
     super.setInputFormat(instanceInfo);
 
     m_Columns.setUpper(instanceInfo.numAttributes() - 1);
-    if (this.m_OperClassName == null || (this.m_OperClass = FeatureModifier.createHandler(m_OperClassName)) == null){
+    if (this.m_OperClassName == null || (this.m_OperClass = CachingFeatureModifier.createCachingHandler(m_OperClassName)) == null){
         throw new Exception("The operating class must be set and a name of an existing filter class.");
     }
     setOutputFormat();
@@ -27,6 +27,8 @@
 
 package en_deep.mlprocess.manipulation.featmodif;
 
+import en_deep.mlprocess.utils.StringUtils;
+
 /**
  * This allows truncating Czech morphological lemmas to just the lemma-proper part.
  * @author Ondrej Dusek
@@ -59,13 +61,36 @@ public class LemmaCsTrunc extends FeatureModifier {
     @Override
     public String [] getOutputValues(String value) {
 
-        String [] values = value != null ? value.split(SEP) : new String[0]; // allow multiple values
+        String [] values = value != null ? StringUtils.split(value, SEP_CHAR) : new String[0]; // allow multiple values
         String [] trunc = new String [1];
 
         for (String val : values){
-            trunc[0] = (trunc[0] == null ? "" : trunc[0] + SEP) + val.replaceFirst("(-|`|_;|_:|_;|_,|_\\^).*$", "");
+            trunc[0] = (trunc[0] == null ? "" : trunc[0] + SEP) + val.substring(0, findLemmaEnd(val));
         }
         return trunc;
     }
 
+    /**
+     * Finds the end of the bare lemma, i.e.\ the first occurrence of any of "-", "`", "_;", "_:", "_,", "_^"
+     * (lemma number, comments and derivation info), or the string length, if none of them is found.
+     *
+     * @param lemma the full lemma
+     * @return the position where the bare lemma ends
+     */
+    private static int findLemmaEnd(String lemma) {
+
+        for (int i = 0; i < lemma.length(); ++i){
+
+            char c = lemma.charAt(i);
+
+            if (c == '-' || c == '`'){
+                return i;
+            }
+            if (c == '_' && i < lemma.length() - 1 && ";:,^".indexOf(lemma.charAt(i + 1)) >= 0){
+                return i;
+            }
+        }
+        return lemma.length();
+    }
+
 }
@@ -28,6 +28,7 @@
 package en_deep.mlprocess.manipulation.featmodif;
 
 import en_deep.mlprocess.manipulation.StReader;
+import en_deep.mlprocess.utils.StringUtils;
 import java.util.HashMap;
 
 /**
@@ -78,18 +79,18 @@ public class POSFeatsCs extends FeatureModifier {
     @Override
     public String [] getOutputValues(String value) {
 
-        String [] values = value != null ? value.split(SEP) : new String[0]; // allow multiple values
+        String [] values = value != null ? StringUtils.split(value, SEP_CHAR) : new String[0]; // allow multiple values
         String [] feats = new String [FEATS_LIST.length];
 
         for (String val : values){
 
             if (!val.equals(StReader.EMPTY_VALUE)){
 
-                String [] featInfos = val.split("\\|");
+                String [] featInfos = StringUtils.split(val, '|');
 
                 for (String featInfo : featInfos){  // split into individual features listed
 
-                    String [] nameVal = featInfo.split("=", 2); // extract the name and value
+                    String [] nameVal = StringUtils.split(featInfo, '=', 2); // extract the name and value
                     int pos = FEAT_POS.get(nameVal[0]); // find the position of each feature in the array
 
                     feats[pos] = (feats[pos] == null ? "" : feats[pos] + SEP) + nameVal[1]; // set it at the right position in the array
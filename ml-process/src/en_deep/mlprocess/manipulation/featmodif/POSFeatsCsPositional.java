@@ -28,6 +28,7 @@
 package en_deep.mlprocess.manipulation.featmodif;
 
 import en_deep.mlprocess.manipulation.StReader;
+import en_deep.mlprocess.utils.StringUtils;
 
 /**
  * This feature handles Czech positional POS tags, splitting them into separate features for
@@ -70,17 +71,16 @@ public class POSFeatsCsPositional extends FeatureModifier {
     @Override
     public String [] getOutputValues(String value) {
 
-        String [] values = value != null ? value.split(SEP) : new String[0]; // allow multiple values
+        String [] values = value != null ? StringUtils.split(value, SEP_CHAR) : new String[0]; // allow multiple values
         String [] feats = new String [13];
 
         for (String val : values){
 
             // standard Czech POS tag, ignore otherwise
             if (val.length() == 15){
-                val = (val.substring(0, 12) + val.charAt(14)); // omit two empty (unused) positions
-                
                 for (int i = 0; i < feats.length; ++i){
-                    feats[i] = (feats[i] == null ? "" : feats[i] + SEP) + val.charAt(i);
+                    char c = val.charAt(i < 12 ? i : 14); // omit two empty (unused) positions
+                    feats[i] = feats[i] == null ? String.valueOf(c) : feats[i] + SEP + c;
                 }
             }
         }
@@ -62,7 +62,7 @@ public class POSFirstChar extends FeatureModifier {
     @Override
     public String [] getOutputValues(String value) {
 
-        String [] values = value != null ? value.split(SEP) : new String[0]; // allow multiple values
+        String [] values = value != null ? StringUtils.split(value, SEP_CHAR) : new String[0]; // allow multiple values
         String [] feats = new String [1];
 
         for (String val : values){
@@ -64,13 +64,14 @@ public class SemPOSTrunc extends FeatureModifier {
     @Override
     public String [] getOutputValues(String value) {
 
-        String [] values = value != null ? value.split(SEP) : new String[0]; // allow multiple values
+        String [] values = value != null ? StringUtils.split(value, SEP_CHAR) : new String[0]; // allow multiple values
         String [] trunc = new String [2];
 
         for (String val : values){
 
+            String [] fields = StringUtils.split(val, '.');
+
             for (int i = 0; i < 2; ++i){
-                String [] fields = val.split("\\.");
                 trunc[i] = (trunc[i] == null ? "" : trunc[i] + SEP) + StringUtils.join(fields, 0, i+1, ".");
             }
         }
@@ -29,7 +29,6 @@ package en_deep.mlprocess.manipulation.genfeat;
 
 import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
-import en_deep.mlprocess.utils.StringUtils;
 
 /**
  * This feature lists all the PsOS, lemmas and tags of the children of the given
@@ -48,18 +47,16 @@ public class Children extends ParametrizedFeature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
-
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         int [] children = this.reader.getChildren(wordNo);
-        String [] [] data = new String [children.length] [];
-
-        for (int i = 0; i < children.length; ++i){            
-            data[i] = this.getFields(children[i]);
-        }
 
-        return StringUtils.join(StringUtils.nGrams(data, this.attrPos.length, SEP), ",", true);
+        this.appendNGrams(children, 0, children.length, out);
     }
 
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
+    }
 
 }
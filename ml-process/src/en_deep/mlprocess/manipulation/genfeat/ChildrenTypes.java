@@ -32,7 +32,7 @@ import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
 import en_deep.mlprocess.manipulation.DataReader.WordInfo;
 import en_deep.mlprocess.manipulation.StToArff;
-import en_deep.mlprocess.utils.StringUtils;
+import java.util.regex.Pattern;
 
 /**
  * This provides several features for the different POS-types of children (nominal, verbal,
@@ -50,6 +50,8 @@ public class ChildrenTypes extends ParametrizedFeature {
 
     /** Children patterns */
     private final String [] patterns;
+    /** Compiled children patterns (same as {@link #patterns}) */
+    private final Pattern [] compiledPatterns;
     /** Names for all possible features (depend on {@link #patterns}) */
     private final String [] names;
     
@@ -80,8 +82,10 @@ public class ChildrenTypes extends ParametrizedFeature {
         patterns = reader.getTaskParameter(CHILDREN_TYPES).split("\\s+");
 
         names = new String [patterns.length];
+        compiledPatterns = new Pattern [patterns.length];
         for (int i = 0; i < patterns.length; i++) {
             names[i] = patterns[i].replaceAll("[^A-Z]", "");
+            compiledPatterns[i] = Pattern.compile(patterns[i]);
         }
     }
 
@@ -110,39 +114,33 @@ public class ChildrenTypes extends ParametrizedFeature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         int [] children = this.reader.getChildren(wordNo);
-        String [] pos = this.reader.getWordsInfo(children, WordInfo.POS);
-        String [] [] data = new String [children.length] [];
+        int [] matching = new int [children.length];
 
-        for (int i = 0; i < children.length; ++i){
-            data[i] = this.getFields(children[i]);
-        }
-
-        StringBuilder out = new StringBuilder();
-
-        for (int j = 0; j < patterns.length; j++) {
+        for (int j = 0; j < this.compiledPatterns.length; j++) {
 
             // find and count matching children
             int num = 0;
-            String [] [] matching = new String [children.length] [];
 
-            for (int i = 0; i < pos.length; i++) {
-                if (pos[i].matches(patterns[j])){
-                    matching[i] = data[i];
-                    num++;
+            for (int i = 0; i < children.length; i++) {
+                if (this.compiledPatterns[j].matcher(this.reader.getWordInfo(children[i], WordInfo.POS)).matches()){
+                    matching[num++] = children[i];
                 }
             }
             // add them to the data
-            out.append(StringUtils.join(StringUtils.nGrams(matching, this.attrPos.length, SEP), ",", true));
-            out.append(",").append(num);
-
-            if (j < patterns.length-1){
-                out.append(",");
+            if (j > 0){
+                out.sep();
             }
+            this.appendNGrams(matching, 0, num, out);
+            out.sep().raw(num);
         }
-        
-        return out.toString();
     }
+
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
+    }
+
 }
@@ -140,53 +140,50 @@ public class Clusters extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
-
-        StringBuilder text = new StringBuilder();
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         for (int clusterType = 0; clusterType < this.clusters.length; ++clusterType){
 
             if (clusterType > 0){
-                text.append(",");
+                out.sep();
             }
             // the word itself
-            text.append(this.getCluster(clusterType, wordNo)).append(",");
+            out.raw(this.getCluster(clusterType, wordNo)).sep();
 
             // left3 ... right3
-            text.append(this.getCluster(clusterType, wordNo - 3)).append(",");
-            text.append(this.getCluster(clusterType, wordNo - 2)).append(",");
-            text.append(this.getCluster(clusterType, wordNo - 1)).append(",");
-            text.append(this.getCluster(clusterType, wordNo - 2)).append(SEP).append(
-                    this.getCluster(clusterType, wordNo - 1)).append(",");
-            text.append(this.getCluster(clusterType, wordNo + 1)).append(SEP).append(
-                    this.getCluster(clusterType, wordNo + 2)).append(",");
-            text.append(this.getCluster(clusterType, wordNo + 1)).append(",");
-            text.append(this.getCluster(clusterType, wordNo + 2)).append(",");
-            text.append(this.getCluster(clusterType, wordNo + 3)).append(",");
+            out.raw(this.getCluster(clusterType, wordNo - 3)).sep();
+            out.raw(this.getCluster(clusterType, wordNo - 2)).sep();
+            out.raw(this.getCluster(clusterType, wordNo - 1)).sep();
+            out.raw(this.getCluster(clusterType, wordNo - 2)).raw(SEP).raw(
+                    this.getCluster(clusterType, wordNo - 1)).sep();
+            out.raw(this.getCluster(clusterType, wordNo + 1)).raw(SEP).raw(
+                    this.getCluster(clusterType, wordNo + 2)).sep();
+            out.raw(this.getCluster(clusterType, wordNo + 1)).sep();
+            out.raw(this.getCluster(clusterType, wordNo + 2)).sep();
+            out.raw(this.getCluster(clusterType, wordNo + 3)).sep();
 
             // parent
-            text.append(this.getCluster(clusterType, this.reader.getHead(wordNo))).append(",");
+            out.raw(this.getCluster(clusterType, this.reader.getHead(wordNo))).sep();
 
             // children
             int [] childrenPos = this.reader.getChildren(wordNo);
             if (childrenPos.length == 0){
-                text.append("-");
+                out.raw('-');
             }
             else {
                 for (int j = 0; j < childrenPos.length; ++j){
                     if (j > 0){
-                        text.append(SEP);
+                        out.raw(SEP);
                     }
-                    text.append(this.getCluster(clusterType, childrenPos[j]));
+                    out.raw(this.getCluster(clusterType, childrenPos[j]));
                 }
             }
-            text.append(",");
+            out.sep();
 
             // left & right sibling
-            text.append(this.getCluster(clusterType, this.reader.getSibling(wordNo, Direction.LEFT))).append(",");
-            text.append(this.getCluster(clusterType, this.reader.getSibling(wordNo, Direction.RIGHT)));
+            out.raw(this.getCluster(clusterType, this.reader.getSibling(wordNo, Direction.LEFT))).sep();
+            out.raw(this.getCluster(clusterType, this.reader.getSibling(wordNo, Direction.RIGHT)));
         }
-        return text.toString();
     }
 
     
@@ -313,4 +310,9 @@ public class Clusters extends Feature {
         return data;
     }
 
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
+    }
+
 }
@@ -29,7 +29,6 @@ package en_deep.mlprocess.manipulation.genfeat;
 
 import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
-import en_deep.mlprocess.utils.StringUtils;
 import java.util.Arrays;
 
 /**
@@ -57,7 +56,7 @@ public class DepPath extends ParametrizedFeature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         int [] pathBack = new int [this.reader.getSentenceLength()];
         int curPos = predNo + 1; // current position
@@ -74,7 +73,8 @@ public class DepPath extends ParametrizedFeature {
         Arrays.fill(pathBack, -1);
 
         if (wordNo == predNo){ // special case -- argument == predicate
-            return "\"+\",\"+\",\"+\",\"+\",0";
+            out.raw("\"+\",\"+\",\"+\",\"+\",0");
+            return;
         }
 
         while(curPos > 0){ // find the way from the root to the predicate and store it in pathBack
@@ -145,12 +145,10 @@ public class DepPath extends ParametrizedFeature {
             pathDir.append("/");
         }
 
-        StringBuilder res = new StringBuilder();
         for (int i = 0; i < paths.length; ++i){
-            res.append(StringUtils.protect(paths[i].toString())).append(",");
+            out.protect(paths[i].toString()).sep();
         }
-        res.append(StringUtils.protect(pathDir.toString())).append(",").append(Integer.toString(pathLength));
-        return res.toString();
+        out.protect(pathDir.toString()).sep().raw(pathLength);
     }
 
 }
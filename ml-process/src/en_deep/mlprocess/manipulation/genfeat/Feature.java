@@ -42,6 +42,14 @@ import java.lang.reflect.InvocationTargetException;
 public abstract class Feature {
 
     /* CONSTANTS */
+
+    /**
+     * The values a generated feature depends on -- only the word, only the predicate, the word-predicate
+     * pair or the sentence as a whole. The converters may reuse feature values within the whole scope.
+     */
+    public enum Scope {
+        WORD, PREDICATE, PAIR, SENTENCE
+    }
     
     protected static final String LF = System.getProperty("line.separator");
     
@@ -115,12 +123,50 @@ public abstract class Feature {
 
     /**
      * The main method -- generates the feature value for the given word
-     * relative to the given predicate, in the sentence that is currently loaded in the {@link #reader}.
+     * relative to the given predicate, in the sentence that is currently loaded in the {@link #reader},
+     * and appends it to the given output buffer.
+     *
+     * @param wordNo the number of the word to which the value applies
+     * @param predNo the number of the word which is a predicate and to which the value of the feature is related
+     * @param out the output buffer to which the value of the generated feature is appended
+     */
+    public abstract void generate(int wordNo, int predNo, FeatureOutput out);
+
+    /**
+     * Generates the feature value for the given word relative to the given predicate and returns it as
+     * a string. This is a convenience wrapper around {@link #generate(int, int, FeatureOutput)}, which
+     * should be preferred in performance-critical code.
      *
      * @param wordNo the number of the word to which the value applies
      * @param predNo the number of the word which is a predicate and to which the value of the feature is related
      * @return the value of the generated feature, in a string representation
      */
-    public abstract String generate(int wordNo, int predNo);
+    public String generate(int wordNo, int predNo){
+
+        FeatureOutput out = new FeatureOutput();
+
+        this.generate(wordNo, predNo, out);
+        return out.toString();
+    }
+
+    /**
+     * Returns the scope of this feature, i.e.\ what its values depend on. If the value depends only on
+     * the word (or the predicate), {@link #generate(int, int)} may be called only once for each word
+     * (or predicate) in the sentence, with an arbitrary value of the other parameter. The default scope
+     * is {@link Scope#PAIR}, which is always safe.
+     *
+     * @return the scope of this feature's values
+     */
+    public Scope getScope(){
+        return Scope.PAIR;
+    }
+
+    /**
+     * This is called by the converters each time a new sentence has been loaded in the {@link #reader},
+     * before any values are generated for it. Features that cache some values for the current sentence
+     * must clear them here. The default implementation does nothing.
+     */
+    public void startSentence(){
+    }
 
 }
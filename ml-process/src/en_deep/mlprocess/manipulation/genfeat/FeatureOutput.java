@@ -0,0 +1,301 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.manipulation.genfeat;
+
+/**
+ * A reusable character buffer into which the generated {@link Feature}s write their values. It provides
+ * helpers for ARFF-quoting and escaping that write directly into the buffer, so that no intermediate strings
+ * are created.
+ *
+ * @author Ondrej Dusek
+ */
+public class FeatureOutput implements CharSequence {
+
+    /* CONSTANTS */
+
+    /** Default initial capacity */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /* DATA */
+
+    /** The underlying buffer */
+    private final StringBuilder buf;
+
+    /* METHODS */
+
+    /**
+     * Creates a new empty output buffer.
+     */
+    public FeatureOutput(){
+        this.buf = new StringBuilder(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity for reuse.
+     */
+    public void clear(){
+        this.buf.setLength(0);
+    }
+
+    /**
+     * Returns the current length of the buffer contents.
+     * @return the current length, in characters
+     */
+    public int length(){
+        return this.buf.length();
+    }
+
+    public char charAt(int index){
+        return this.buf.charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end){
+        return this.buf.subSequence(start, end);
+    }
+
+    /**
+     * Returns the contents of the buffer from the given position to the end.
+     * @param start the starting position
+     * @return the buffer contents from the given position on
+     */
+    public String substring(int start){
+        return this.buf.substring(start);
+    }
+
+    /**
+     * Returns the whole contents of the buffer.
+     * @return the buffer contents
+     */
+    @Override
+    public String toString(){
+        return this.buf.toString();
+    }
+
+    /**
+     * Appends the ARFF value separator (comma).
+     * @return this object, for chaining
+     */
+    public FeatureOutput sep(){
+        this.buf.append(',');
+        return this;
+    }
+
+    /**
+     * Appends the given string as-is, without any quoting.
+     * @param str the string to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput raw(String str){
+        this.buf.append(str);
+        return this;
+    }
+
+    /**
+     * Appends the given character as-is.
+     * @param c the character to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput raw(char c){
+        this.buf.append(c);
+        return this;
+    }
+
+    /**
+     * Appends the given integer value.
+     * @param val the value to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput raw(int val){
+        this.buf.append(val);
+        return this;
+    }
+
+    /**
+     * Appends the given string in quotes, escaped. Null values are output as unquoted `?'s. This is the
+     * same as the output of {@link en_deep.mlprocess.utils.StringUtils#join(Object[], String, boolean)}
+     * with escaping for one string.
+     *
+     * @param str the string to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput quoted(String str){
+
+        if (str == null){
+            this.buf.append('?');
+        }
+        else {
+            this.buf.append('"');
+            this.escaped(str);
+            this.buf.append('"');
+        }
+        return this;
+    }
+
+    /**
+     * Appends the given string with backslashes and quotes escaped, but not enclosed in quotes
+     * (same as {@link en_deep.mlprocess.utils.StringUtils#escape(String)}).
+     *
+     * @param str the string to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput escaped(String str){
+
+        for (int i = 0; i < str.length(); ++i){
+            char c = str.charAt(i);
+            if (c == '\\' || c == '"'){
+                this.buf.append('\\');
+            }
+            this.buf.append(c);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the given string, enclosed in quotes only if needed, i.e.\ if it's not a number or an alphanumeric
+     * string (same as {@link en_deep.mlprocess.utils.StringUtils#protect(String)}). Null values are output
+     * as `?'s.
+     *
+     * @param str the string to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput protect(String str){
+
+        if (str == null){
+            this.buf.append('?');
+            return this;
+        }
+        if (isAlnum(str) || looksNumeric(str)){
+            this.buf.append(str);
+            return this;
+        }
+        return this.quoted(str);
+    }
+
+    /**
+     * Appends all the given values quoted, separated by commas (same as
+     * {@link en_deep.mlprocess.utils.StringUtils#join(Object[], String, boolean)} with escaping).
+     *
+     * @param data the values to append
+     * @return this object, for chaining
+     */
+    public FeatureOutput quoted(String [] data){
+
+        for (int i = 0; i < data.length; ++i){
+            if (i > 0){
+                this.buf.append(',');
+            }
+            this.quoted(data[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the n-grams of the given information about several words, quoted and separated by commas. This
+     * produces the same output as joining the result of
+     * {@link en_deep.mlprocess.utils.StringUtils#nGrams(String[][], int, String)} with escaping.
+     *
+     * @param data an array of data for each word of the n-gram, some members may be null (the whole array may be null)
+     * @param infoLen the number of information fields
+     * @param sep the separator for the individual words' values
+     * @return this object, for chaining
+     */
+    public FeatureOutput nGrams(String [] [] data, int infoLen, String sep){
+
+        for (int j = 0; j < infoLen; ++j){
+
+            boolean first = true;
+
+            if (j > 0){
+                this.buf.append(',');
+            }
+            this.buf.append('"');
+            if (data != null){
+                for (int i = 0; i < data.length; ++i){
+                    if (data[i] != null && j < data[i].length){
+                        if (!first){
+                            this.buf.append(sep);
+                        }
+                        this.escaped(String.valueOf(data[i][j]));
+                        first = false;
+                    }
+                }
+            }
+            this.buf.append('"');
+        }
+        return this;
+    }
+
+    /**
+     * Returns true if the given string consists of ASCII letters and numbers only (and is not empty).
+     * @param str the string to test
+     * @return true for non-empty alphanumeric strings
+     */
+    private static boolean isAlnum(String str){
+
+        if (str.length() == 0){
+            return false;
+        }
+        for (int i = 0; i < str.length(); ++i){
+            char c = str.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given string is a number. Only strings that start with a number-like character
+     * are tried to be parsed, so that exceptions are avoided for most non-numeric values.
+     *
+     * @param str the string to test
+     * @return true if the string may be parsed as a double value
+     */
+    private static boolean looksNumeric(String str){
+
+        int pos = 0;
+        while (pos < str.length() && str.charAt(pos) <= ' '){
+            pos++;
+        }
+        if (pos == str.length()){
+            return false;
+        }
+        char c = str.charAt(pos);
+        if (!(c >= '0' && c <= '9' || c == '.' || c == '-' || c == '+' || c == 'N' || c == 'I')){
+            return false;
+        }
+        try {
+            Double.parseDouble(str);
+            return true;
+        }
+        catch (NumberFormatException e){
+            return false;
+        }
+    }
+}
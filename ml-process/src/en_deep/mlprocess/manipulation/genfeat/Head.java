@@ -29,7 +29,6 @@ package en_deep.mlprocess.manipulation.genfeat;
 
 import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
-import en_deep.mlprocess.utils.StringUtils;
 
 /**
  * This feature returns the lemma, POS, coarse POS and form of the parent node.
@@ -47,24 +46,26 @@ public class Head extends ParametrizedFeature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
-        
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
+
         Integer headPos = this.reader.getHead(wordNo);
-        StringBuilder sb = new StringBuilder();
 
         for (int i = 0; i < this.attrPos.length; ++i){
             if (i > 0){
-                sb.append(",");
+                out.sep();
             }
             if (headPos == 0){
-                sb.append("\"\"");
+                out.raw("\"\"");
             }
             else {
-                sb.append(StringUtils.protect(this.reader.getWordInfo(headPos, this.attrPos[i])));
+                out.protect(this.reader.getWordInfo(headPos, this.attrPos[i]));
             }
         }
+    }
 
-        return sb.toString();
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
     }
 
 }
@@ -46,9 +46,14 @@ public class HeadDistance extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
-        return Integer.toString(Math.abs(wordNo - this.reader.getHead(wordNo)));
+        out.raw(Math.abs(wordNo - this.reader.getHead(wordNo)));
+    }
+
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
     }
 
 }
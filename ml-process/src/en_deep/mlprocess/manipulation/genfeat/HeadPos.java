@@ -48,20 +48,24 @@ public class HeadPos extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         int headPos = this.reader.getHead(wordNo);
 
         if (headPos < 0){
-            return "_";
+            out.raw("_");
         }
-
-        if (wordNo < headPos){
-            return "Before";
+        else if (wordNo < headPos){
+            out.raw("Before");
         }
         else {
-            return "After";
+            out.raw("After");
         }
     }
 
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
+    }
+
 }
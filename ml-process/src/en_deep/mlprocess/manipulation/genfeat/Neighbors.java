@@ -30,7 +30,6 @@ package en_deep.mlprocess.manipulation.genfeat;
 import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
 import en_deep.mlprocess.manipulation.DataReader.WordInfo;
-import en_deep.mlprocess.utils.StringUtils;
 
 /**
  * This encapsulates several features containing the topological neighbors of the given word.
@@ -60,25 +59,44 @@ public class Neighbors extends ParametrizedFeature {
 
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
-        return this.getInfo(wordNo-3, false) + "," + this.getInfo(wordNo-2, false)
-                + "," + this.getInfo(wordNo-1, false) + "," + this.getInfo(wordNo-2, true)
-                + "," + this.getInfo(wordNo+1, true) + "," + this.getInfo(wordNo+1, false)
-                + "," + this.getInfo(wordNo+2, false) + "," + this.getInfo(wordNo+3, false);
+        this.appendInfo(wordNo - 3, false, out);
+        out.sep();
+        this.appendInfo(wordNo - 2, false, out);
+        out.sep();
+        this.appendInfo(wordNo - 1, false, out);
+        out.sep();
+        this.appendInfo(wordNo - 2, true, out);
+        out.sep();
+        this.appendInfo(wordNo + 1, true, out);
+        out.sep();
+        this.appendInfo(wordNo + 1, false, out);
+        out.sep();
+        this.appendInfo(wordNo + 2, false, out);
+        out.sep();
+        this.appendInfo(wordNo + 3, false, out);
     }
 
     /**
-     * Retrieves all the required information about one word or a word and its successor.
+     * Appends all the required information about one word or a word and its successor to the given output.
      * @param wordNo the number of the word in question
      * @param bindWithNext should also its successor's values be added ?
-     * @return all the required information, as ARFF quoted list
+     * @param out the output to append the information to, as ARFF quoted list
      */
-    private String getInfo(int wordNo, boolean bindWithNext){
+    private void appendInfo(int wordNo, boolean bindWithNext, FeatureOutput out){
 
         if (!bindWithNext){
-            return StringUtils.join(this.getFields(wordNo), ",", true);
+            this.appendFields(wordNo, out);
+        }
+        else {
+            this.appendBigrams(wordNo, wordNo + 1, out);
         }
-        return StringUtils.join(StringUtils.bigrams(this.getFields(wordNo), this.getFields(wordNo+1), SEP), ",", true);
     }
+
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
+    }
+
 }
@@ -100,4 +100,69 @@ public abstract class ParametrizedFeature extends Feature {
         return info;
     }
 
+    /**
+     * This appends all the needed information about one word to the given output, quoted and separated
+     * by commas (same as joining the result of {@link #getFields(int)}).
+     *
+     * @param wordNo the number of the word
+     * @param out the output to append to
+     */
+    protected void appendFields(int wordNo, FeatureOutput out) {
+
+        for (int i = 0; i < this.attrPos.length; ++i){
+            if (i > 0){
+                out.sep();
+            }
+            out.quoted(this.reader.getWordInfo(wordNo, this.attrPos[i]));
+        }
+    }
+
+    /**
+     * This appends the bigrams of the needed information about the two given words to the given output, quoted
+     * and separated by commas (same as joining the bigrams of the {@link #getFields(int)} for both words).
+     *
+     * @param first the position of the first word
+     * @param second the position of the second word
+     * @param out the output to append to
+     */
+    protected void appendBigrams(int first, int second, FeatureOutput out) {
+
+        for (int i = 0; i < this.attrPos.length; ++i){
+            if (i > 0){
+                out.sep();
+            }
+            out.raw('"');
+            out.escaped(String.valueOf(this.reader.getWordInfo(first, this.attrPos[i])));
+            out.raw(SEP);
+            out.escaped(String.valueOf(this.reader.getWordInfo(second, this.attrPos[i])));
+            out.raw('"');
+        }
+    }
+
+    /**
+     * This appends the n-grams of the needed information about the given words to the given output, quoted
+     * and separated by commas (same as joining the n-grams of the {@link #getFields(int)} for all the words).
+     *
+     * @param words the positions of the words in the sentence
+     * @param lo the first word to be used (index to words, inclusive)
+     * @param hi the last word to be used (index to words, exclusive)
+     * @param out the output to append to
+     */
+    protected void appendNGrams(int [] words, int lo, int hi, FeatureOutput out) {
+
+        for (int i = 0; i < this.attrPos.length; ++i){
+            if (i > 0){
+                out.sep();
+            }
+            out.raw('"');
+            for (int j = lo; j < hi; ++j){
+                if (j > lo){
+                    out.raw(SEP);
+                }
+                out.escaped(String.valueOf(this.reader.getWordInfo(words[j], this.attrPos[i])));
+            }
+            out.raw('"');
+        }
+    }
+
 }
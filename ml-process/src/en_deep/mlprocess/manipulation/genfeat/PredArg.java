@@ -29,7 +29,7 @@ package en_deep.mlprocess.manipulation.genfeat;
 
 import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
-import en_deep.mlprocess.utils.StringUtils;
+import java.util.Arrays;
 
 /**
  * This feature yields some information about the predicate (bundled/not-bundled with the same information
@@ -38,6 +38,17 @@ import en_deep.mlprocess.utils.StringUtils;
  */
 public class PredArg extends ParametrizedFeature {
 
+    /* DATA */
+
+    /** Cached predicate half of the output for the current sentence, indexed by predicate position */
+    private String [] predOutCache;
+    /** Is the {@link #predOutCache} valid for the current sentence ? */
+    private boolean cacheValid;
+    /** Id of the sentence the {@link #predOutCache} was filled for */
+    private int cacheSentId;
+    /** Length of the sentence the {@link #predOutCache} was filled for */
+    private int cacheSentLen;
+
     /* METHODS */
 
     /**
@@ -56,12 +67,40 @@ public class PredArg extends ParametrizedFeature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
+
+        // the predicate half depends only on the predicate, so it's computed once per predicate and sentence
+        // (the cache also checks the sentence itself, in case the caller never called startSentence())
+        int len = this.reader.getSentenceLength();
+
+        if (!this.cacheValid || this.cacheSentId != this.reader.getSentenceId() || this.cacheSentLen != len){
 
-        String [] predInfo = this.getFields(predNo);
-        String [] predWordInfo = StringUtils.bigrams(predInfo, this.getFields(wordNo), SEP);
+            if (this.predOutCache == null || this.predOutCache.length < len){
+                this.predOutCache = new String [len];
+            }
+            else {
+                Arrays.fill(this.predOutCache, null);
+            }
+            this.cacheSentId = this.reader.getSentenceId();
+            this.cacheSentLen = len;
+            this.cacheValid = true;
+        }
+        if (this.predOutCache[predNo] == null){
+            int start = out.length();
+            this.appendFields(predNo, out);
+            this.predOutCache[predNo] = out.substring(start);
+        }
+        else {
+            out.raw(this.predOutCache[predNo]);
+        }
 
-        return StringUtils.join(predInfo, ",", true) + "," + StringUtils.join(predWordInfo, ",", true);
+        out.sep();
+        this.appendBigrams(predNo, wordNo, out);
+    }
+
+    @Override
+    public void startSentence() {
+        this.cacheValid = false;
     }
     
 
@@ -48,16 +48,16 @@ public class RelPos extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         if (wordNo < predNo){
-            return "Before";
+            out.raw("Before");
         }
         else if (wordNo == predNo){
-            return "On";
+            out.raw("On");
         }
         else {
-            return "After";
+            out.raw("After");
         }
     }
 
@@ -30,7 +30,6 @@ package en_deep.mlprocess.manipulation.genfeat;
 import en_deep.mlprocess.manipulation.DataReader;
 import en_deep.mlprocess.manipulation.DataReader.Direction;
 import en_deep.mlprocess.manipulation.DataReader.FeatType;
-import en_deep.mlprocess.utils.StringUtils;
 
 /**
  * This generated feature adds the word form of the left and right sibling of
@@ -40,6 +39,10 @@ import en_deep.mlprocess.utils.StringUtils;
  */
 public class Siblings extends ParametrizedFeature {
 
+    /* CONSTANTS */
+
+    /** An empty list of words */
+    private static final int [] NO_WORDS = new int [0];
 
     /* METHODS */
 
@@ -56,48 +59,34 @@ public class Siblings extends ParametrizedFeature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         int head = this.reader.getHead(wordNo);
-        String left = null;
-        String right = null;
+        int [] siblings = NO_WORDS;
+        int leftLen = 0;
 
         // only non-root nodes may have some siblings
         if (head != -1){
-            int [] siblings = this.reader.getChildren(head);
+            siblings = this.reader.getChildren(head);
 
-            int leftLen = 0;
             while (siblings[leftLen] != wordNo){
                 leftLen++;
             }
-
-            if (leftLen > 0){ // there are some left siblings
-                String [] [] data = new String [leftLen] [];
-                for (int i = 0; i < data.length; ++i){
-                    data[i] = this.getFields(siblings[i]);
-                }
-                left = StringUtils.join(StringUtils.nGrams(data, this.attrPos.length, SEP), ",", true);
-            }
-            if (leftLen < siblings.length - 1){ // there are some right siblings
-                String [] [] data = new String [siblings.length - leftLen - 1] [];
-
-                for (int i = 0; i < data.length; ++i){
-                    data[i] = this.getFields(siblings[leftLen + i + 1]);
-                }
-                right = StringUtils.join(StringUtils.nGrams(data, this.attrPos.length, SEP), ",", true);
-            }
-        }
-        // dummy values if there are no such siblings
-        if (left == null){
-            left = StringUtils.join(StringUtils.nGrams(null, this.attrPos.length, SEP), ",", true);
-        }
-        if (right == null){
-            right = StringUtils.join(StringUtils.nGrams(null, this.attrPos.length, SEP), ",", true);
         }
 
-        return StringUtils.join(this.getFields(this.reader.getSibling(wordNo, Direction.LEFT)), ",", true)
-                + "," + StringUtils.join(this.getFields(this.reader.getSibling(wordNo, Direction.RIGHT)), ",", true)
-                + "," + left + "," + right;
+        this.appendFields(this.reader.getSibling(wordNo, Direction.LEFT), out);
+        out.sep();
+        this.appendFields(this.reader.getSibling(wordNo, Direction.RIGHT), out);
+        out.sep();
+        // all left and right siblings (dummy values if there are no such siblings)
+        this.appendNGrams(siblings, 0, leftLen, out);
+        out.sep();
+        this.appendNGrams(siblings, Math.min(leftLen + 1, siblings.length), siblings.length, out);
+    }
+
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
     }
 
 }
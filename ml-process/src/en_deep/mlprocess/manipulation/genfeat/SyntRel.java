@@ -48,7 +48,7 @@ public class SyntRel extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
         boolean siblChild = false;
         boolean syntDep = false;
@@ -72,7 +72,7 @@ public class SyntRel extends Feature {
             siblChild = true;
         }
 
-        return (siblChild ? "1" : "0") + "," + (syntDep ? "1" : "0");
+        out.raw(siblChild ? '1' : '0').sep().raw(syntDep ? '1' : '0');
     }
 
 
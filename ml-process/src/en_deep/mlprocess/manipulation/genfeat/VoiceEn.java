@@ -50,7 +50,18 @@ public class VoiceEn extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
+
+        out.raw(this.getVoice(wordNo));
+    }
+
+    /**
+     * Returns the voice of the given word (Active, Passive, Infinite or "_" for non-verbs).
+     *
+     * @param wordNo the number of the word in question
+     * @return the voice of the given word
+     */
+    private String getVoice(int wordNo) {
 
         String wordPOS = this.reader.getWordInfo(wordNo, WordInfo.POS);
         // head POS -- will be "" for root node
@@ -79,5 +90,9 @@ public class VoiceEn extends Feature {
         }
     }
 
+    @Override
+    public Scope getScope() {
+        return Scope.WORD;
+    }
 
 }
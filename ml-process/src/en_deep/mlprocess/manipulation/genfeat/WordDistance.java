@@ -45,9 +45,9 @@ public class WordDistance extends Feature {
     }
 
     @Override
-    public String generate(int wordNo, int predNo) {
+    public void generate(int wordNo, int predNo, FeatureOutput out) {
 
-        return Integer.toString(Math.abs(wordNo - predNo));
+        out.raw(Math.abs(wordNo - predNo));
     }
 
 
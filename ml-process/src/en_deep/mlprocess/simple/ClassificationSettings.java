@@ -83,7 +83,7 @@ public class ClassificationSettings {
      * 
      * @param outputFile name of the target output file
      */
-    void save(String outputFile) throws IOException {
+    public void save(String outputFile) throws IOException {
 
         Logger.getInstance().message("Saving models to " + outputFile + "...", Logger.V_DEBUG);
         ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(outputFile)));
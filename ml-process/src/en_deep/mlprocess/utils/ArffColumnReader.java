@@ -0,0 +1,417 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package en_deep.mlprocess.utils;
+
+import en_deep.mlprocess.Process;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * A light-weight streaming ARFF reader that only extracts the values of some selected columns
+ * from each data line, without creating any WEKA {@link weka.core.Instance} objects. The header
+ * is parsed using WEKA code, the data lines are read one by one and only split up to the last
+ * selected column. Both dense and sparse data lines are supported.
+ *
+ * @author Ondrej Dusek
+ */
+public class ArffColumnReader {
+
+    /* CONSTANTS */
+
+    /** Buffer size for the underlying reader */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /* DATA */
+
+    /** The input file name (for error messages) */
+    private String fileName;
+    /** The open input file */
+    private BufferedReader in;
+    /** The ARFF header (no instances) */
+    private Instances header;
+    /** The attribute indexes of the selected columns */
+    private int [] columns;
+    /** The attribute indexes of the selected columns, sorted */
+    private int [] sortedColumns;
+    /** Positions of the sorted columns in {@link #columns} */
+    private int [] sortedPos;
+    /** The raw string values of the selected columns on the current line (null for missing values) */
+    private String [] values;
+    /** The current line number (in the whole file) */
+    private int lineNo;
+
+    /* METHODS */
+
+    /**
+     * This opens the given ARFF file (may be gzipped) and reads its header. No columns are
+     * selected at the beginning, {@link #setColumns(int[])} must be called before reading
+     * the data.
+     *
+     * @param fileName the name of the file to be read
+     * @throws IOException if the file cannot be opened or the header is invalid
+     */
+    public ArffColumnReader(String fileName) throws IOException {
+
+        FileInputStream fis = new FileInputStream(fileName);
+        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(fis) : fis;
+        StringBuilder headerText = new StringBuilder();
+        String line;
+
+        this.fileName = fileName;
+        this.in = new BufferedReader(new InputStreamReader(plainIn, Process.getInstance().getCharset()),
+                BUFFER_SIZE);
+
+        while ((line = this.in.readLine()) != null){
+            this.lineNo++;
+            headerText.append(line).append("\n");
+            if (line.trim().toLowerCase().startsWith("@data")){
+                break;
+            }
+        }
+        if (line == null){
+            this.in.close();
+            throw new IOException("No @data section found in " + fileName);
+        }
+        this.header = new Instances(new StringReader(headerText.toString()));
+        this.setColumns(new int [0]);
+    }
+
+    /**
+     * Returns the ARFF header of the file (with no instances).
+     * @return the file structure
+     */
+    public Instances getHeader(){
+        return this.header;
+    }
+
+    /**
+     * This selects the columns (attribute indexes) whose values will be extracted from the
+     * data lines. Their order in the given array corresponds to the column numbers used
+     * by {@link #getString(int)} and {@link #getValue(int)}.
+     *
+     * @param attribs the attribute indexes to be extracted
+     * @throws IOException if some of the indexes is out of range
+     */
+    public void setColumns(int... attribs) throws IOException {
+
+        for (int attrib : attribs){
+            if (attrib < 0 || attrib >= this.header.numAttributes()){
+                throw new IOException("Attribute index " + attrib + " out of range in " + this.fileName);
+            }
+        }
+        this.columns = attribs.clone();
+        this.sortedColumns = attribs.clone();
+        Arrays.sort(this.sortedColumns);
+        this.sortedPos = new int [attribs.length];
+
+        boolean [] used = new boolean [attribs.length];
+        for (int i = 0; i < this.sortedColumns.length; ++i){
+            for (int j = 0; j < this.columns.length; ++j){
+                if (!used[j] && this.columns[j] == this.sortedColumns[i]){
+                    this.sortedPos[i] = j;
+                    used[j] = true;
+                    break;
+                }
+            }
+        }
+        this.values = new String [attribs.length];
+    }
+
+    /**
+     * This reads the next data line and extracts the values of the selected columns.
+     *
+     * @return true if a data line has been read, false on end of file
+     * @throws IOException if an I/O error occurs or the line is malformed
+     */
+    public boolean next() throws IOException {
+
+        String line;
+
+        while ((line = this.in.readLine()) != null){
+            this.lineNo++;
+            if (line.length() == 0 || line.charAt(0) == '%' || line.trim().length() == 0){
+                continue;
+            }
+            line = line.trim();
+            if (line.charAt(0) == '{'){
+                this.parseSparse(line);
+            }
+            else {
+                this.parseDense(line);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the raw (unquoted) string value of the given selected column on the current line.
+     * Sparse lines return the value at index 0 for all nominal attributes that are not listed.
+     *
+     * @param colNo the column number (position in the array given to {@link #setColumns(int[])})
+     * @return the string value, or null if the value is missing
+     */
+    public String getString(int colNo){
+        return this.values[colNo];
+    }
+
+    /**
+     * Returns the WEKA-like internal value of the given selected column on the current line: label index
+     * for nominal attributes, the number for numeric attributes and NaN for missing values or unknown labels.
+     * String attributes always return NaN.
+     *
+     * @param colNo the column number (position in the array given to {@link #setColumns(int[])})
+     * @return the internal value of the column
+     * @throws IOException if a numeric value cannot be parsed
+     */
+    public double getValue(int colNo) throws IOException {
+
+        String val = this.values[colNo];
+        Attribute attr = this.header.attribute(this.columns[colNo]);
+
+        if (val == null){
+            return Double.NaN;
+        }
+        if (attr.isNominal()){
+            int idx = attr.indexOfValue(val);
+            return idx == -1 ? Double.NaN : idx;
+        }
+        if (attr.isNumeric()){
+            try {
+                return Double.parseDouble(val);
+            }
+            catch (NumberFormatException e){
+                throw new IOException("Invalid numeric value on line " + this.lineNo + " of " + this.fileName);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Returns the number of the line that has been read last.
+     * @return the current line number
+     */
+    public int getLineNumber(){
+        return this.lineNo;
+    }
+
+    /**
+     * Closes the underlying file.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * This extracts the selected columns' values from a dense data line.
+     * @param line the current data line
+     */
+    private void parseDense(String line) throws IOException {
+
+        int pos = 0;
+        int attrNo = 0;
+
+        for (int i = 0; i < this.sortedColumns.length; ++i){
+
+            // the same column may be selected twice
+            if (i > 0 && this.sortedColumns[i] == this.sortedColumns[i-1]){
+                this.values[this.sortedPos[i]] = this.values[this.sortedPos[i-1]];
+                continue;
+            }
+            // skip to the desired attribute
+            while (attrNo < this.sortedColumns[i]){
+                pos = this.skipValue(line, pos);
+                if (pos >= line.length()){
+                    throw new IOException("Too few values on line " + this.lineNo + " of " + this.fileName);
+                }
+                pos++; // skip the comma
+                attrNo++;
+            }
+            this.values[this.sortedPos[i]] = this.unquote(line, pos, this.skipValue(line, pos));
+        }
+    }
+
+    /**
+     * This extracts the selected columns' values from a sparse data line.
+     * @param line the current data line
+     */
+    private void parseSparse(String line) throws IOException {
+
+        int pos = 1;
+        int end = line.lastIndexOf('}');
+        int i = 0;
+
+        if (end == -1){
+            throw new IOException("Unterminated sparse instance on line " + this.lineNo + " of " + this.fileName);
+        }
+        while (pos < end && i < this.sortedColumns.length){
+
+            while (pos < end && Character.isWhitespace(line.charAt(pos))){
+                pos++;
+            }
+            int idxEnd = pos;
+            while (idxEnd < end && !Character.isWhitespace(line.charAt(idxEnd))){
+                idxEnd++;
+            }
+            if (idxEnd == pos){
+                break;
+            }
+            int attrNo;
+            try {
+                attrNo = Integer.parseInt(line.substring(pos, idxEnd));
+            }
+            catch (NumberFormatException e){
+                throw new IOException("Invalid sparse index on line " + this.lineNo + " of " + this.fileName);
+            }
+            int valEnd = this.skipValue(line, idxEnd);
+            if (valEnd > end){
+                valEnd = end;
+            }
+            // fill in the default values for all columns that are not listed
+            while (i < this.sortedColumns.length && this.sortedColumns[i] < attrNo){
+                this.values[this.sortedPos[i]] = this.getSparseDefault(this.sortedColumns[i]);
+                i++;
+            }
+            while (i < this.sortedColumns.length && this.sortedColumns[i] == attrNo){
+                this.values[this.sortedPos[i]] = this.unquote(line, idxEnd, valEnd);
+                i++;
+            }
+            pos = valEnd + 1;
+        }
+        while (i < this.sortedColumns.length){
+            this.values[this.sortedPos[i]] = this.getSparseDefault(this.sortedColumns[i]);
+            i++;
+        }
+    }
+
+    /**
+     * Returns the value of an attribute that is not listed in a sparse data line.
+     * @param attrNo the attribute index
+     * @return the default value (first label for nominal attributes, zero otherwise)
+     */
+    private String getSparseDefault(int attrNo){
+
+        Attribute attr = this.header.attribute(attrNo);
+
+        if (attr.isNominal() || attr.isString()){
+            return attr.numValues() > 0 ? attr.value(0) : "";
+        }
+        return "0";
+    }
+
+    /**
+     * Finds the end of the value that starts at the given position (i.e. the position of the next unquoted
+     * comma or the end of the line).
+     *
+     * @param line the current line
+     * @param pos the starting position
+     * @return the position of the next separating comma or the line length
+     */
+    private int skipValue(String line, int pos){
+
+        char quote = 0;
+
+        for (; pos < line.length(); ++pos){
+
+            char c = line.charAt(pos);
+
+            if (quote != 0){
+                if (c == '\\'){
+                    pos++;
+                }
+                else if (c == quote){
+                    quote = 0;
+                }
+            }
+            else if (c == '\'' || c == '"'){
+                quote = c;
+            }
+            else if (c == ',' || c == '}'){
+                return pos;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the unquoted and unescaped value in the given part of the line.
+     *
+     * @param line the current line
+     * @param start the start of the value
+     * @param end the end of the value (position of the separator)
+     * @return the value, or null for missing values
+     */
+    private String unquote(String line, int start, int end){
+
+        while (start < end && Character.isWhitespace(line.charAt(start))){
+            start++;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))){
+            end--;
+        }
+        if (end - start == 1 && line.charAt(start) == '?'){
+            return null;
+        }
+        if (end - start < 2 || (line.charAt(start) != '\'' && line.charAt(start) != '"')){
+            return line.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+
+        for (int pos = start + 1; pos < end - 1; ++pos){
+
+            char c = line.charAt(pos);
+
+            if (c == '\\' && pos < end - 2){
+                c = line.charAt(++pos);
+                switch (c){
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
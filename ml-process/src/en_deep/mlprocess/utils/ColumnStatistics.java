@@ -0,0 +1,673 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.utils;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+/**
+ * This collects per-attribute statistics (missing value counts, value frequencies and distinct value counts)
+ * over several data sets with compatible headers in a single pass over the instances. The instances are
+ * split into ranges that are processed in parallel, the partial statistics of all ranges are then merged.
+ * <p>
+ * Nominal attributes always have exact frequency tables. Other attributes keep exact frequencies in a primitive
+ * hash map until the number of their distinct values exceeds a limit; the distinct values are then only
+ * estimated using {@link HyperLogLog}. Missing values are never counted among the values.
+ * </p>
+ *
+ * @author Ondrej Dusek
+ */
+public class ColumnStatistics {
+
+    /* CONSTANTS */
+
+    /** The default maximum number of distinct values of non-nominal attributes that are counted exactly */
+    public static final int DEFAULT_EXACT_LIMIT = 1024;
+
+    /* DATA */
+
+    /** The collected statistics, by attribute name */
+    private final Hashtable<String, Column> columns;
+    /** The total number of instances examined */
+    private int numInstances;
+
+    /* METHODS */
+
+    /**
+     * This collects the statistics for the given attributes in all the given data sets, which must have
+     * compatible headers.
+     *
+     * @param data the data sets to be examined
+     * @param attribs the indexes of the attributes for which the statistics should be collected
+     * @param exactLimit the maximum number of distinct values of non-nominal attributes to be counted exactly
+     * @param threads the maximum number of threads to use
+     * @throws Exception if the statistics collection fails in one of the threads
+     */
+    public ColumnStatistics(final Instances [] data, int [] attribs, int exactLimit, int threads) throws Exception {
+
+        final int [] unique = uniqueSorted(attribs);
+
+        for (int i = 0; i < data.length; ++i){
+            this.numInstances += data[i].numInstances();
+        }
+
+        // prepare the columns, and a lookup from the attribute index to the column
+        Column [] cols = this.createColumns(data[0], unique, exactLimit);
+
+        this.columns = new Hashtable<String, Column>(unique.length);
+        for (int i = 0; i < unique.length; ++i){
+            this.columns.put(data[0].attribute(unique[i]).name(), cols[unique[i]]);
+        }
+        if (unique.length == 0){
+            return;
+        }
+
+        // process the ranges of instances in parallel, each into its own partial statistics
+        int partsNo = Math.max(1, Math.min(threads, this.numInstances));
+        final Column [][] parts = new Column [partsNo][];
+        ExecutorService pool = Executors.newFixedThreadPool(partsNo);
+        Vector<Future<Object>> done = new Vector<Future<Object>>(partsNo);
+
+        parts[0] = cols;
+        try {
+            int from = 0;
+            for (int i = 0; i < partsNo; ++i){
+
+                final int part = i, lo = from,
+                        hi = from + this.numInstances / partsNo + (i < this.numInstances % partsNo ? 1 : 0);
+
+                if (i > 0){
+                    parts[i] = this.createColumns(data[0], unique, exactLimit);
+                }
+                done.add(pool.submit(new Callable<Object>() {
+                    public Object call() {
+                        scanInstances(data, unique, lo, hi, parts[part]);
+                        return null;
+                    }
+                }));
+                from = hi;
+            }
+            for (Future<Object> f : done){
+                try {
+                    f.get();
+                }
+                catch (ExecutionException e){
+                    if (e.getCause() instanceof Exception){
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        // merge the partial statistics, sparse instances do not store zeros
+        for (int k = 0; k < unique.length; ++k){
+            for (int i = 1; i < partsNo; ++i){
+                cols[unique[k]].merge(parts[i][unique[k]]);
+            }
+            cols[unique[k]].addImplicitZeros(this.numInstances);
+        }
+    }
+
+    /**
+     * This collects the statistics for all the attributes in the given data sets, using the
+     * {@link #DEFAULT_EXACT_LIMIT}.
+     *
+     * @param data the data sets to be examined
+     * @param threads the maximum number of threads to use
+     * @throws Exception if the statistics collection fails in one of the threads
+     */
+    public ColumnStatistics(Instances [] data, int threads) throws Exception {
+        this(data, allAttributes(data[0]), DEFAULT_EXACT_LIMIT, threads);
+    }
+
+    /**
+     * Returns the indexes of all attributes in the given data set.
+     */
+    private static int [] allAttributes(Instances data){
+
+        int [] ret = new int [data.numAttributes()];
+        for (int i = 0; i < ret.length; ++i){
+            ret[i] = i;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the given attribute indexes sorted and without duplicates.
+     */
+    private static int [] uniqueSorted(int [] attribs){
+
+        int [] sorted = attribs.clone();
+        int len = 0;
+
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ++i){
+            if (i == 0 || sorted[i] != sorted[i - 1]){
+                sorted[len++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, len);
+    }
+
+    /**
+     * Creates empty statistics for the given attributes.
+     *
+     * @param header the data header
+     * @param attribs the (sorted, unique) indexes of the attributes
+     * @param exactLimit the maximum number of distinct values of non-nominal attributes to be counted exactly
+     * @return the statistics, indexed by attribute index (null for the other attributes)
+     */
+    private Column [] createColumns(Instances header, int [] attribs, int exactLimit){
+
+        Column [] cols = new Column [header.numAttributes()];
+
+        for (int i = 0; i < attribs.length; ++i){
+            cols[attribs[i]] = new Column(header.attribute(attribs[i]).isNominal()
+                    ? header.attribute(attribs[i]).numValues() : -1, exactLimit);
+        }
+        return cols;
+    }
+
+    /**
+     * This reads the values of the given attributes from the given range of instances and updates the
+     * statistics. The range is given by positions in all the data sets, taken one after another.
+     *
+     * @param data the data sets to be examined
+     * @param attribs the (sorted, unique) indexes of the attributes to be examined
+     * @param lo the position of the first instance in the range
+     * @param hi the position after the last instance in the range
+     * @param cols the statistics, indexed by attribute index
+     */
+    private void scanInstances(Instances [] data, int [] attribs, int lo, int hi, Column [] cols) {
+
+        int first = attribs[0], last = attribs[attribs.length - 1];
+        int offset = 0;
+
+        for (int i = 0; i < data.length && offset < hi; offset += data[i].numInstances(), ++i){
+
+            int from = Math.max(0, lo - offset), to = Math.min(data[i].numInstances(), hi - offset);
+
+            for (int j = from; j < to; ++j){
+
+                Instance inst = data[i].instance(j);
+
+                if (inst instanceof SparseInstance){
+                    // walk only the explicitly stored values of the examined attributes
+                    for (int pos = firstPosition(inst, first); pos < inst.numValues(); ++pos){
+
+                        int idx = inst.index(pos);
+                        if (idx > last){
+                            break;
+                        }
+                        if (cols[idx] != null){
+                            cols[idx].add(inst.valueSparse(pos));
+                        }
+                    }
+                }
+                else {
+                    for (int k = 0; k < attribs.length; ++k){
+                        cols[attribs[k]].add(inst.value(attribs[k]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first position in a sparse instance whose attribute index is greater than or equal to the given one.
+     */
+    private static int firstPosition(Instance inst, int attrIndex){
+
+        int lo = 0, hi = inst.numValues();
+
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (inst.index(mid) < attrIndex){
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the statistics for the given attribute.
+     */
+    private Column getColumn(String attrName){
+
+        Column col = this.columns.get(attrName);
+
+        if (col == null){
+            throw new IllegalArgumentException("No statistics collected for attribute " + attrName);
+        }
+        return col;
+    }
+
+    /**
+     * Returns true if the statistics have been collected for the given attribute.
+     * @param attrName the attribute name
+     * @return true if the statistics for the attribute are available
+     */
+    public boolean hasAttribute(String attrName){
+        return this.columns.containsKey(attrName);
+    }
+
+    /**
+     * Returns the total number of instances examined.
+     * @return the number of instances in all the data sets
+     */
+    public int getNumInstances(){
+        return this.numInstances;
+    }
+
+    /**
+     * Returns the number of missing values of the given attribute.
+     * @param attrName the attribute name
+     * @return the number of missing values
+     */
+    public int getMissingCount(String attrName){
+        return this.getColumn(attrName).missing;
+    }
+
+    /**
+     * Returns the number of distinct (non-missing) values of the given attribute. This is only an estimate
+     * if {@link #isExact(String)} returns false.
+     *
+     * @param attrName the attribute name
+     * @return the number of distinct values
+     */
+    public long getDistinctCount(String attrName){
+        return this.getColumn(attrName).getDistinctCount();
+    }
+
+    /**
+     * Returns true if the exact value frequencies are known for the given attribute.
+     * @param attrName the attribute name
+     * @return true for exact statistics, false if the distinct values are only estimated
+     */
+    public boolean isExact(String attrName){
+        return this.getColumn(attrName).sketch == null;
+    }
+
+    /**
+     * Returns true if it is known for sure whether some value of the given attribute occurs more than once,
+     * i.e. the statistics are exact or a repeated value has been found before exceeding the exact limit.
+     *
+     * @param attrName the attribute name
+     * @return true if the result of {@link #hasRepeatedValues(String)} is exact
+     */
+    public boolean isRepeatKnown(String attrName){
+
+        Column col = this.getColumn(attrName);
+        return col.sketch == null || col.repeated;
+    }
+
+    /**
+     * Returns true if some (non-missing) value of the given attribute has been found to occur more than once.
+     * If {@link #isRepeatKnown(String)} is false, this returns false, but there still may be repeated values.
+     *
+     * @param attrName the attribute name
+     * @return true if there are repeated values of the attribute
+     */
+    public boolean hasRepeatedValues(String attrName){
+
+        Column col = this.getColumn(attrName);
+
+        if (col.sketch == null){
+            return col.getDistinctCount() < col.values;
+        }
+        return col.repeated;
+    }
+
+    /**
+     * Returns true if some (non-missing) value of the given attribute probably occurs more than once. This
+     * is the same as {@link #hasRepeatedValues(String)} for exact statistics; otherwise, it is true if a repeated
+     * value has been found or if the estimate of distinct values is significantly lower than the number of values.
+     *
+     * @param attrName the attribute name
+     * @return true if there probably are repeated values of the attribute
+     */
+    public boolean estimateRepeatedValues(String attrName){
+
+        Column col = this.getColumn(attrName);
+
+        if (this.isRepeatKnown(attrName)){
+            return this.hasRepeatedValues(attrName);
+        }
+        return col.sketch.estimate() < col.values * (1.0 - 3 * col.sketch.getStandardError());
+    }
+
+    /**
+     * Returns the number of occurrences of the given value of the given attribute. Only available for
+     * exact statistics.
+     *
+     * @param attrName the attribute name
+     * @param value the attribute value (an index for nominal attributes)
+     * @return the number of occurrences of the value
+     */
+    public int getCount(String attrName, double value){
+
+        Column col = this.getColumn(attrName);
+
+        if (col.sketch != null){
+            throw new IllegalStateException("Value frequencies for " + attrName + " are not known.");
+        }
+        if (col.nominal != null){
+            return value >= 0 && value < col.nominal.length ? col.nominal[(int) value] : 0;
+        }
+        return col.map.get(value);
+    }
+
+    /**
+     * Returns the occurrence counts for all values of the given nominal attribute.
+     *
+     * @param attrName the attribute name
+     * @return the occurrence counts, indexed by value index
+     */
+    public int [] getNominalCounts(String attrName){
+
+        Column col = this.getColumn(attrName);
+
+        if (col.nominal == null){
+            throw new IllegalArgumentException("Attribute " + attrName + " is not nominal.");
+        }
+        return col.nominal.clone();
+    }
+
+    /**
+     * The statistics of one attribute. Nominal attributes use a simple counts array, others use
+     * a hash map, which is replaced by an estimator if there are too many distinct values.
+     */
+    private static class Column {
+
+        /** The value counts for nominal attributes */
+        int [] nominal;
+        /** The value counts for other attributes */
+        DoubleIntMap map;
+        /** Distinct values estimator, used after the exact limit has been exceeded */
+        HyperLogLog sketch;
+        /** The maximum number of distinct values counted exactly */
+        final int exactLimit;
+        /** The number of missing values */
+        int missing;
+        /** The number of non-missing values */
+        int values;
+        /** The number of explicitly stored values seen (including missing) */
+        int seen;
+        /** Has some value been seen more than once (only kept for the non-nominal attributes) */
+        boolean repeated;
+
+        /**
+         * Creates the statistics for a nominal attribute with the given number of values, or for
+         * a non-nominal one if numValues is negative.
+         */
+        Column(int numValues, int exactLimit){
+
+            this.exactLimit = exactLimit;
+            if (numValues >= 0){
+                this.nominal = new int [numValues];
+            }
+            else {
+                this.map = new DoubleIntMap();
+            }
+        }
+
+        /**
+         * Adds one value.
+         */
+        void add(double value){
+
+            this.seen++;
+            if (Double.isNaN(value)){
+                this.missing++;
+                return;
+            }
+            this.add(value, 1);
+        }
+
+        /**
+         * Adds the given number of occurrences of a (non-missing) value.
+         */
+        private void add(double value, int count){
+
+            this.values += count;
+
+            if (this.nominal != null){
+                this.nominal[(int) value] += count;
+            }
+            else if (this.sketch != null){
+                this.sketch.add(value);
+            }
+            else {
+                if (this.map.add(value, count) > 1){
+                    this.repeated = true;
+                }
+                if (this.map.size() > this.exactLimit){
+                    this.sketch = new HyperLogLog();
+                    this.map.addKeysTo(this.sketch);
+                    this.map = null;
+                }
+            }
+        }
+
+        /**
+         * Adds the partial statistics of the same attribute, collected over other instances.
+         */
+        void merge(Column other){
+
+            this.seen += other.seen;
+            this.missing += other.missing;
+            this.repeated |= other.repeated;
+
+            if (this.nominal != null){
+                for (int i = 0; i < this.nominal.length; ++i){
+                    this.nominal[i] += other.nominal[i];
+                }
+                this.values += other.values;
+            }
+            else if (other.sketch != null){
+                if (this.sketch == null){
+                    this.sketch = new HyperLogLog();
+                    this.map.addKeysTo(this.sketch);
+                    this.map = null;
+                }
+                this.sketch.merge(other.sketch);
+                this.values += other.values;
+            }
+            else {
+                other.map.addTo(this);
+            }
+        }
+
+        /**
+         * Adds all the zero values that have not been stored explicitly, given the total number of instances.
+         */
+        void addImplicitZeros(int numInstances){
+
+            if (numInstances > this.seen){
+                this.add(0.0, numInstances - this.seen);
+                this.seen = numInstances;
+            }
+        }
+
+        /**
+         * Returns the (exact or estimated) number of distinct non-missing values.
+         */
+        long getDistinctCount(){
+
+            if (this.nominal != null){
+                int ret = 0;
+                for (int i = 0; i < this.nominal.length; ++i){
+                    if (this.nominal[i] > 0){
+                        ret++;
+                    }
+                }
+                return ret;
+            }
+            if (this.sketch != null){
+                return this.sketch.estimate();
+            }
+            return this.map.size();
+        }
+    }
+
+    /**
+     * An open-addressing hash map from double values to integer counts, which avoids boxing.
+     * Values are compared by their bit patterns.
+     */
+    private static class DoubleIntMap {
+
+        /** The maximum fill ratio before the map is enlarged */
+        private static final double LOAD_FACTOR = 0.5;
+
+        /** The keys, stored as bit patterns */
+        private long [] keys;
+        /** The counts, zero for empty slots */
+        private int [] counts;
+        /** The number of keys stored */
+        private int size;
+
+        /**
+         * Creates an empty map.
+         */
+        DoubleIntMap(){
+            this.keys = new long [16];
+            this.counts = new int [16];
+        }
+
+        /**
+         * Returns the slot for the given key (either the one containing it, or an empty one).
+         */
+        private int slot(long key){
+
+            int mask = this.keys.length - 1;
+            // Fibonacci hashing, the top bits of the product are the best mixed
+            int pos = (int) (((key ^ (key >>> 32)) * 0x9E3779B97F4A7C15L)
+                    >>> (64 - Integer.numberOfTrailingZeros(this.keys.length)));
+
+            while (this.counts[pos] != 0 && this.keys[pos] != key){
+                pos = (pos + 1) & mask;
+            }
+            return pos;
+        }
+
+        /**
+         * Adds the given count to the given value, returns the new count.
+         */
+        int add(double value, int count){
+
+            long key = Double.doubleToLongBits(value);
+            int pos = this.slot(key);
+
+            if (this.counts[pos] == 0){
+                if (this.size + 1 > this.keys.length * LOAD_FACTOR){
+                    this.rehash();
+                    pos = this.slot(key);
+                }
+                this.keys[pos] = key;
+                this.size++;
+            }
+            this.counts[pos] += count;
+            return this.counts[pos];
+        }
+
+        /**
+         * Returns the count for the given value.
+         */
+        int get(double value){
+            return this.counts[this.slot(Double.doubleToLongBits(value))];
+        }
+
+        /**
+         * Returns the number of distinct values.
+         */
+        int size(){
+            return this.size;
+        }
+
+        /**
+         * Adds all the stored values to the given estimator.
+         */
+        void addKeysTo(HyperLogLog sketch){
+
+            for (int i = 0; i < this.keys.length; ++i){
+                if (this.counts[i] != 0){
+                    sketch.add(Double.longBitsToDouble(this.keys[i]));
+                }
+            }
+        }
+
+        /**
+         * Adds all the stored values with their counts to the given statistics.
+         */
+        void addTo(Column col){
+
+            for (int i = 0; i < this.keys.length; ++i){
+                if (this.counts[i] != 0){
+                    col.add(Double.longBitsToDouble(this.keys[i]), this.counts[i]);
+                }
+            }
+        }
+
+        /**
+         * Doubles the capacity of the map.
+         */
+        private void rehash(){
+
+            long [] oldKeys = this.keys;
+            int [] oldCounts = this.counts;
+
+            this.keys = new long [oldKeys.length * 2];
+            this.counts = new int [oldCounts.length * 2];
+
+            for (int i = 0; i < oldKeys.length; ++i){
+                if (oldCounts[i] != 0){
+                    int pos = this.slot(oldKeys[i]);
+                    this.keys[pos] = oldKeys[i];
+                    this.counts[pos] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@
 package en_deep.mlprocess.utils;
 
 import en_deep.mlprocess.Process;
+import en_deep.mlprocess.TaskMetrics;
 import java.io.*;
 import java.nio.channels.*;
 import java.nio.charset.Charset;
@@ -54,6 +55,9 @@ public class FileUtils{
      * for encoding) */
     private static final String BAD_CHARS = "[]<>|&#!:/\\*?$^@%={}`~\"'";
 
+    /** Buffer size for incremental ARFF reading and writing */
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /* METHODS */
 
     /**
@@ -88,6 +92,7 @@ public class FileUtils{
            while (position < size) {
               position += inChannel.transferTo(position, maxCount, outChannel);
            }
+           countBytes(size, size);
         }
         catch (IOException e) {
             throw e;
@@ -113,7 +118,7 @@ public class FileUtils{
     public static Instances readArff(String fileName, boolean close) throws Exception {
 
         FileInputStream in = new FileInputStream(fileName);
-        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(in) : in;
+        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(countRead(in)) : countRead(in);
         
         ConverterUtils.DataSource reader = new ConverterUtils.DataSource(plainIn);
         Instances data = reader.getDataSet();
@@ -160,7 +165,7 @@ public class FileUtils{
     public static Instances readArffStructure(String fileName, boolean close) throws Exception {
 
         FileInputStream in = new FileInputStream(fileName);
-        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(in) : in;
+        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(countRead(in)) : countRead(in);
         
         ConverterUtils.DataSource reader = new ConverterUtils.DataSource(plainIn);
         Instances data = reader.getStructure();
@@ -175,6 +180,121 @@ public class FileUtils{
         return data;
     }
 
+    /**
+     * This opens an ARFF file for incremental reading and skips its header, so that the instances
+     * may be read one by one, e.g. using WEKA's <tt>ArffLoader.ArffReader</tt> with the structure obtained
+     * by {@link #readArffStructure(String)}.
+     *
+     * @param fileName the name of the file to read
+     * @return the open file reader, positioned after the initial @data line
+     * @throws IOException if an I/O error occurs
+     */
+    public static BufferedReader openArffData(String fileName) throws IOException {
+
+        FileInputStream in = new FileInputStream(fileName);
+        InputStream plainIn = fileName.endsWith(".gz") ? new GZIPInputStream(countRead(in)) : countRead(in);
+        BufferedReader inRead = new BufferedReader(new InputStreamReader(plainIn, Process.getInstance().getCharset()),
+                BUFFER_SIZE);
+
+        String line = inRead.readLine();
+
+        while (line != null && !line.matches("^@[dD][aA][tT][aA]\\s*")) {
+            line = inRead.readLine();
+        }
+        return inRead;
+    }
+
+    /**
+     * Returns true if the given ARFF file may be reopened at a stored position, using
+     * {@link #openArffData(String, long)}. This is possible for uncompressed files in the charsets supported
+     * by {@link PositionReader}.
+     *
+     * @param fileName the name of the file
+     * @return true if the file may be reopened at a given position
+     */
+    public static boolean isArffSeekable(String fileName){
+        return !fileName.endsWith(".gz") && PositionReader.supports(Process.getInstance().getCharset());
+    }
+
+    /**
+     * This opens an uncompressed ARFF file for incremental reading at the given position in the data section,
+     * which has been obtained from {@link PositionReader#getPosition()} while the file was read before. If
+     * the position is 0, the header is skipped and the reader is positioned after the initial @data line.
+     *
+     * @param fileName the name of the file to read (must be seekable, see {@link #isArffSeekable(String)})
+     * @param position the position in the file to start at, in bytes (0 for the start of the data)
+     * @return the open file reader, which keeps track of the position in the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static PositionReader openArffData(String fileName, long position) throws IOException {
+
+        FileInputStream in = new FileInputStream(fileName);
+
+        in.getChannel().position(position);
+
+        BufferedReader inRead = new BufferedReader(new InputStreamReader(countRead(in),
+                Process.getInstance().getCharset()), BUFFER_SIZE);
+        PositionReader posRead = new PositionReader(inRead, Process.getInstance().getCharset(), position);
+
+        if (position == 0){
+            // skip the header, reading only through the position reader
+            StringBuilder line = new StringBuilder();
+            int c;
+
+            while ((c = posRead.read()) != -1){
+                if (c != '\n'){
+                    line.append((char) c);
+                }
+                else if (line.toString().matches("^@[dD][aA][tT][aA]\\s*")){
+                    break;
+                }
+                else {
+                    line.setLength(0);
+                }
+            }
+        }
+        return posRead;
+    }
+
+    /**
+     * This creates an ARFF file for incremental writing and writes the given header into it. The
+     * instances should then be written one per line, using their <tt>toString()</tt> method.
+     *
+     * @param fileName the name of the file to write into
+     * @param header the ARFF file header (any instances in it are ignored)
+     * @return the open file writer, positioned after the @data line
+     * @throws IOException if an I/O error occurs
+     */
+    public static BufferedWriter openArffWriter(String fileName, Instances header) throws IOException {
+
+        FileOutputStream os = new FileOutputStream(fileName);
+        OutputStream out = fileName.endsWith(".gz") ? new GZIPOutputStream(countWritten(os), BUFFER_SIZE)
+                : countWritten(os);
+        BufferedWriter outWrite = new BufferedWriter(new OutputStreamWriter(out, Process.getInstance().getCharset()),
+                BUFFER_SIZE);
+
+        outWrite.write(new Instances(header, 0).toString());
+        outWrite.newLine();
+        return outWrite;
+    }
+
+    /**
+     * This opens an ARFF file previously created by {@link #openArffWriter(String, Instances)} for appending
+     * more instances. A new GZIP member is started for compressed files (which are still readable as a whole).
+     *
+     * @param fileName the name of the file to append to
+     * @return the open file writer, positioned at the end of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static BufferedWriter openArffAppender(String fileName) throws IOException {
+
+        FileOutputStream os = new FileOutputStream(fileName, true);
+        OutputStream out = fileName.endsWith(".gz") ? new GZIPOutputStream(countWritten(os), BUFFER_SIZE)
+                : countWritten(os);
+
+        return new BufferedWriter(new OutputStreamWriter(out, Process.getInstance().getCharset()), BUFFER_SIZE);
+    }
+
     /**
      * Filter a data set: keep only some of the attributes. Only the attributes whose bit is
      * set to true are kept. Uses the WEKA {@link Reorder} filter to perform the removal.
@@ -206,7 +326,7 @@ public class FileUtils{
     public static void writeArff(String fileName, Instances data) throws Exception {
 
         FileOutputStream os = new FileOutputStream(fileName);
-        OutputStream out = fileName.endsWith(".gz") ? new GZIPOutputStream(os) : os;
+        OutputStream out = fileName.endsWith(".gz") ? new GZIPOutputStream(countWritten(os)) : countWritten(os);
        
         ConverterUtils.DataSink writer = new ConverterUtils.DataSink(out);
 
@@ -225,9 +345,11 @@ public class FileUtils{
     public static void writeString(String fileName, String str) throws IOException {
 
         FileOutputStream os = new FileOutputStream(fileName);
+        byte [] bytes = str.getBytes();
 
-        os.write(str.getBytes());
+        os.write(bytes);
         os.close();
+        countBytes(0, bytes.length);
     }
 
 
@@ -295,7 +417,7 @@ public class FileUtils{
      */
     public static String readString(String fileName, boolean firstLineOnly) throws IOException {
     
-        Scanner in = new Scanner(new File(fileName), Process.getInstance().getCharset());
+        Scanner in = new Scanner(countRead(new FileInputStream(fileName)), Process.getInstance().getCharset());
         StringBuilder sb = new StringBuilder();
 
         while (in.hasNextLine()){
@@ -322,6 +444,8 @@ public class FileUtils{
         String line = file.readLine();
         Double val = null;
 
+        countBytes(file.length(), 0);
+
         while (line != null) {
 
             String[] args = line.split(":");
@@ -338,6 +462,92 @@ public class FileUtils{
         return val;
     }
 
+    /**
+     * Adds the given numbers of bytes to the I/O counters of the current task, if it is measured.
+     * @param read the number of bytes read
+     * @param written the number of bytes written
+     */
+    private static void countBytes(long read, long written){
+
+        TaskMetrics metrics = TaskMetrics.current();
+
+        if (metrics != null){
+            metrics.addBytesRead(read);
+            metrics.addBytesWritten(written);
+        }
+    }
+
+    /**
+     * Returns a stream that counts the bytes read into the metrics of the current task, or the
+     * original stream if the task is not measured.
+     * @param in the stream to be counted
+     * @return the counting stream
+     */
+    private static InputStream countRead(InputStream in){
+
+        final TaskMetrics metrics = TaskMetrics.current();
+
+        if (metrics == null){
+            return in;
+        }
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1){
+                    metrics.addBytesRead(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte [] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0){
+                    metrics.addBytesRead(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                metrics.addBytesRead(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Returns a stream that counts the bytes written into the metrics of the current task, or the
+     * original stream if the task is not measured.
+     * @param out the stream to be counted
+     * @return the counting stream
+     */
+    private static OutputStream countWritten(OutputStream out){
+
+        final TaskMetrics metrics = TaskMetrics.current();
+
+        if (metrics == null){
+            return out;
+        }
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(int b) throws IOException {
+                this.out.write(b);
+                metrics.addBytesWritten(1);
+            }
+
+            @Override
+            public void write(byte [] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+                metrics.addBytesWritten(len);
+            }
+        };
+    }
+
     /**
      * This encodes a string so that it may be used as a file name, converting the illegal
      * characters to their Unicode HEX values.
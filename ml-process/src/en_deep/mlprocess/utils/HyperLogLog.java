@@ -0,0 +1,153 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.utils;
+
+/**
+ * A HyperLogLog distinct-count estimator for double values. It uses 2<sup>p</sup> one-byte registers, the
+ * relative standard error of the estimate is about 1.04 / sqrt(2<sup>p</sup>). Small cardinalities are
+ * corrected using linear counting.
+ *
+ * @author Ondrej Dusek
+ */
+public class HyperLogLog {
+
+    /* CONSTANTS */
+
+    /** The default number of index bits (4096 registers, ~1.6% error) */
+    public static final int DEFAULT_PRECISION = 12;
+
+    /* DATA */
+
+    /** The number of index bits */
+    private final int precision;
+    /** The registers (maximum ranks of the hashes that fell into the bucket) */
+    private final byte [] registers;
+
+    /* METHODS */
+
+    /**
+     * This creates a new estimator with the given number of index bits.
+     * @param precision the number of index bits, between 4 and 16
+     */
+    public HyperLogLog(int precision){
+
+        if (precision < 4 || precision > 16){
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16.");
+        }
+        this.precision = precision;
+        this.registers = new byte [1 << precision];
+    }
+
+    /**
+     * This creates a new estimator with the {@link #DEFAULT_PRECISION}.
+     */
+    public HyperLogLog(){
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Adds one value to the estimator.
+     * @param value the value to be added
+     */
+    public void add(double value){
+
+        long hash = mix(Double.doubleToLongBits(value));
+        int bucket = (int) (hash >>> (64 - this.precision));
+        // rank = position of the first set bit in the remaining bits (capped, so that it fits)
+        int rank = Long.numberOfLeadingZeros((hash << this.precision) | (1L << (this.precision - 1))) + 1;
+
+        if (rank > this.registers[bucket]){
+            this.registers[bucket] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another estimator with the same precision into this one.
+     * @param other the estimator to be merged
+     */
+    public void merge(HyperLogLog other){
+
+        if (other.precision != this.precision){
+            throw new IllegalArgumentException("Cannot merge HyperLogLogs of different precision.");
+        }
+        for (int i = 0; i < this.registers.length; ++i){
+            if (other.registers[i] > this.registers[i]){
+                this.registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added.
+     * @return the distinct count estimate
+     */
+    public long estimate(){
+
+        int m = this.registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+
+        for (int i = 0; i < m; ++i){
+            sum += 1.0 / (1L << this.registers[i]);
+            if (this.registers[i] == 0){
+                zeros++;
+            }
+        }
+
+        double alpha = m == 16 ? 0.673 : (m == 32 ? 0.697 : (m == 64 ? 0.709 : 0.7213 / (1.0 + 1.079 / m)));
+        double est = alpha * m * m / sum;
+
+        // small range correction
+        if (est <= 2.5 * m && zeros > 0){
+            est = m * Math.log((double) m / zeros);
+        }
+        return Math.round(est);
+    }
+
+    /**
+     * Returns the relative standard error of the estimates.
+     * @return the relative standard error
+     */
+    public double getStandardError(){
+        return 1.04 / Math.sqrt(this.registers.length);
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, spreads the bits of the double values evenly.
+     */
+    private static long mix(long h){
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e77ce53a9L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
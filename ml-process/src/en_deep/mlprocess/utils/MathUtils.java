@@ -231,4 +231,57 @@ public class MathUtils {
         }
         return maxIdx;
     }
+
+    /**
+     * Computes the 32-bit MurmurHash3 (x86 variant) of the given range of characters. The characters are
+     * taken as UTF-16 code units, two of them forming one 32-bit block.
+     *
+     * @param data the characters to be hashed
+     * @param start the starting position (inclusive)
+     * @param end the ending position (exclusive)
+     * @param seed the hash seed
+     * @return the hash value
+     */
+    public static int murmurHash3(CharSequence data, int start, int end, int seed){
+
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h = seed;
+        int pos = start;
+
+        // body: two characters per block
+        for (; pos + 1 < end; pos += 2){
+
+            int k = data.charAt(pos) | (data.charAt(pos + 1) << 16);
+
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        // tail: one remaining character
+        if (pos < end){
+
+            int k = data.charAt(pos);
+
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+        }
+
+        // finalization
+        h ^= (end - start) * 2;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+
 }
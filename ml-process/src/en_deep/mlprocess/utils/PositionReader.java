@@ -0,0 +1,151 @@
+/*
+ *  Copyright (c) 2012 Ondrej Dusek
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this list 
+ *  of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice, this 
+ *  list of conditions and the following disclaimer in the documentation and/or other 
+ *  materials provided with the distribution.
+ *  Neither the name of Ondrej Dusek nor the names of their contributors may be
+ *  used to endorse or promote products derived from this software without specific 
+ *  prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ *  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF 
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE 
+ *  OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ *  OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package en_deep.mlprocess.utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * A reader that keeps track of the position (in bytes) in the underlying file of the characters read
+ * through it, so that the file may be reopened later at the same place. This only works for the charsets
+ * where the number of bytes may be derived from the characters alone, i.e.\ UTF-8 and single-byte charsets
+ * (see {@link #supports(String)}).
+ *
+ * @author Ondrej Dusek
+ */
+public class PositionReader extends FilterReader {
+
+    /* DATA */
+
+    /** Is the charset UTF-8 (or single-byte) ? */
+    private final boolean utf8;
+    /** The current position in the file, in bytes */
+    private long position;
+
+    /* METHODS */
+
+    /**
+     * This creates a new reader.
+     *
+     * @param in the underlying reader, which must be positioned at the given place of the file
+     * @param charsetName the charset of the file (must be supported, see {@link #supports(String)})
+     * @param position the current position in the file, in bytes
+     */
+    public PositionReader(Reader in, String charsetName, long position){
+
+        super(in);
+        this.utf8 = Charset.forName(charsetName).name().equals("UTF-8");
+        this.position = position;
+    }
+
+    /**
+     * Returns true if the byte positions may be computed for the given charset.
+     * @param charsetName the charset name
+     * @return true for UTF-8 and single-byte charsets
+     */
+    public static boolean supports(String charsetName){
+
+        Charset charset = Charset.forName(charsetName);
+
+        return charset.name().equals("UTF-8") || charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+
+    /**
+     * Returns the current position in the file, i.e.\ the position of the next character to be read.
+     * @return the current position, in bytes
+     */
+    public long getPosition(){
+        return this.position;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        int c = super.read();
+
+        if (c != -1){
+            this.position += this.width((char) c);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char [] cbuf, int off, int len) throws IOException {
+
+        int n = super.read(cbuf, off, len);
+
+        for (int i = 0; i < n; ++i){
+            this.position += this.width(cbuf[off + i]);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long skipped = 0;
+
+        while (skipped < n && this.read() != -1){
+            ++skipped;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Returns the number of bytes of the given character in the file (a surrogate pair has 4 bytes in UTF-8,
+     * i.e.\ 2 for each surrogate).
+     */
+    private int width(char c){
+
+        if (!this.utf8 || c < 0x80){
+            return 1;
+        }
+        if (c < 0x800 || (c >= 0xD800 && c <= 0xDFFF)){
+            return 2;
+        }
+        return 3;
+    }
+}
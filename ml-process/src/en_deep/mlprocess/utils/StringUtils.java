@@ -301,6 +301,165 @@ public class StringUtils {
         return prefixParams;
     }
 
+    /**
+     * Splits the given string around the given separator character. This behaves exactly as
+     * {@link String#split(String, int)} with the separator given as a literal, but avoids using regular
+     * expressions.
+     *
+     * @param str the string to be split
+     * @param sep the separator character
+     * @param limit the maximum number of resulting parts if positive; if zero, trailing empty strings are removed
+     * @return the parts of the string between the separators
+     */
+    public static String [] split(String str, char sep, int limit){
+
+        int count = 1;
+
+        for (int i = 0; i < str.length(); ++i){
+            if (str.charAt(i) == sep){
+                count++;
+            }
+        }
+        if (count == 1){ // no separator found
+            return new String [] { str };
+        }
+        if (limit > 0 && count > limit){
+            count = limit;
+        }
+
+        String [] parts = new String [count];
+        int start = 0, found = 0;
+
+        for (int i = 0; i < str.length() && found < count - 1; ++i){
+            if (str.charAt(i) == sep){
+                parts[found++] = str.substring(start, i);
+                start = i + 1;
+            }
+        }
+        parts[found] = str.substring(start);
+
+        if (limit == 0){ // remove trailing empty strings
+            int len = count;
+            while (len > 0 && parts[len - 1].length() == 0){
+                len--;
+            }
+            if (len < count){
+                parts = Arrays.copyOf(parts, len);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Returns the textual value of the given attribute from an ARFF data line (dense or sparse), without
+     * parsing the whole instance.
+     *
+     * @param line the ARFF data line
+     * @param attrNo the attribute index
+     * @return the value of the attribute, as it appears in the line (with quotes, if there are any); "0" for
+     *  values omitted in sparse lines
+     */
+    public static String getArffValue(String line, int attrNo){
+
+        String [] value = new String [1];
+
+        getArffValues(line, new int [] {attrNo}, value);
+        return value[0];
+    }
+
+    /**
+     * Finds the textual values of the given attributes in an ARFF data line (dense or sparse), scanning
+     * the line only once.
+     *
+     * @param line the ARFF data line
+     * @param attrNos the attribute indexes, in ascending order
+     * @param values output array for the values, as they appear in the line (with quotes, if there are any);
+     *  "0" for values omitted in sparse lines
+     */
+    public static void getArffValues(String line, int [] attrNos, String [] values){
+
+        boolean sparse = line.startsWith("{");
+        int pos = sparse ? 1 : 0;
+        int fieldNo = 0;
+        int found = 0;
+
+        while (found < attrNos.length && pos <= line.length()){
+
+            int end = findArffFieldEnd(line, pos);
+            String field = line.substring(pos, end).trim();
+
+            if (sparse){
+                int space = field.indexOf(' ');
+                if (space > 0){
+                    fieldNo = Integer.parseInt(field.substring(0, space));
+                    field = field.substring(space + 1).trim();
+                }
+                else { // empty sparse instance
+                    fieldNo = -1;
+                }
+                while (found < attrNos.length && attrNos[found] < fieldNo){ // omitted in the sparse line
+                    values[found++] = "0";
+                }
+            }
+            if (found < attrNos.length && attrNos[found] == fieldNo){
+                values[found++] = field;
+            }
+            if (end >= line.length() || sparse && line.charAt(end) == '}'){
+                break;
+            }
+            pos = end + 1;
+            fieldNo++;
+        }
+        while (found < attrNos.length){
+            values[found++] = sparse ? "0" : "?";
+        }
+    }
+
+    /**
+     * Finds the end of a comma-separated field in an ARFF data line, skipping quoted commas.
+     *
+     * @param line the ARFF data line
+     * @param pos the start position of the field
+     * @return the position of the comma or closing brace ending the field, or the line length
+     */
+    private static int findArffFieldEnd(String line, int pos){
+
+        char quote = 0;
+
+        for (int i = pos; i < line.length(); ++i){
+
+            char c = line.charAt(i);
+
+            if (quote != 0){
+                if (c == '\\'){
+                    ++i;
+                }
+                else if (c == quote){
+                    quote = 0;
+                }
+            }
+            else if (c == '\'' || c == '"'){
+                quote = c;
+            }
+            else if (c == ',' || c == '}'){
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+    /**
+     * Splits the given string around the given separator character, removing trailing empty strings
+     * (same as {@link String#split(String)} with a literal separator).
+     *
+     * @param str the string to be split
+     * @param sep the separator character
+     * @return the parts of the string between the separators
+     */
+    public static String [] split(String str, char sep){
+        return split(str, sep, 0);
+    }
+
     /**
      * Return specified substrings for all the members of the given array. If the strings are not long enough,
      * returns the longest possible part.
@@ -495,11 +654,20 @@ public class StringUtils {
      * @return the values (expansions) of all variables contained in the pattern, or null
      */
     public static String [] matchesEx(String string, String pattern){
+        return matchesEx(string, compileFilePattern(pattern));
+    }
 
-        String matchPat = pattern.replaceAll("([\\(\\)\\[\\]])", "\\\\$1")
-                .replaceAll("\\$[0-9]", "(.*)").replaceAll("\\*+", "(.*)");
-        Pattern p = Pattern.compile(matchPat);
-        Matcher m = p.matcher(string);
+    /**
+     * This returns the expansions for all the variables in the order they appear in the string, if the string matches
+     * the given pattern that contains them.
+     *
+     * @param string the string to be matched
+     * @param pattern a pattern compiled using {@link #compileFilePattern(String)}
+     * @return the values (expansions) of all variables contained in the pattern, or null
+     */
+    public static String [] matchesEx(String string, Pattern pattern){
+
+        Matcher m = pattern.matcher(string);
         if (m.matches()){
             String [] vals = new String [m.groupCount()];
             for (int i = 0; i < vals.length; ++i){
@@ -510,6 +678,66 @@ public class StringUtils {
         return null;
     }
 
+    /**
+     * This compiles a pattern with expansion variables into a regular expression, so that it may be used
+     * repeatedly in {@link #matchesEx(String, Pattern)}.
+     *
+     * @param pattern a pattern with expansion variables (normalized using {@link #normalizeFilePattern(String)})
+     * @return the compiled regular expression, with a group for each variable
+     */
+    public static Pattern compileFilePattern(String pattern){
+
+        String matchPat = pattern.replaceAll("([\\(\\)\\[\\]])", "\\\\$1")
+                .replaceAll("\\$[0-9]", "(.*)").replaceAll("\\*+", "(.*)");
+        return Pattern.compile(matchPat);
+    }
+
+    /**
+     * This returns the longest constant prefix of a pattern with expansion variables, i.e. the part before the
+     * first variable or regular expression special character. All strings that match the pattern must start with
+     * this prefix.
+     *
+     * @param pattern a pattern with expansion variables (normalized using {@link #normalizeFilePattern(String)})
+     * @return the constant prefix of the pattern (may be empty)
+     */
+    public static String getFixedPrefix(String pattern){
+
+        int pos = 0;
+        while (pos < pattern.length() && !isFilePatternSpecial(pattern.charAt(pos))){
+            pos++;
+        }
+        return pattern.substring(0, pos);
+    }
+
+    /**
+     * This returns the longest constant suffix of a pattern with expansion variables, i.e. the part after the
+     * last variable or regular expression special character. All strings that match the pattern must end with
+     * this suffix.
+     *
+     * @param pattern a pattern with expansion variables (normalized using {@link #normalizeFilePattern(String)})
+     * @return the constant suffix of the pattern (may be empty)
+     */
+    public static String getFixedSuffix(String pattern){
+
+        int pos = pattern.length();
+        while (pos > 0 && !isFilePatternSpecial(pattern.charAt(pos - 1))
+                && !(pos >= 2 && pattern.charAt(pos - 2) == '$')){ // skip variable numbers
+            pos--;
+        }
+        return pattern.substring(pos);
+    }
+
+    /**
+     * Returns true for characters that have a special meaning in the regular expressions created by
+     * {@link #compileFilePattern(String)} (including the pattern variables).
+     *
+     * @param c the character to be checked
+     * @return true if the character is not matched literally
+     */
+    private static boolean isFilePatternSpecial(char c){
+        return "*$.^|?+{}\\".indexOf(c) != -1;
+    }
+
     /**
      * This simplifies a filename pattern, i.e. removes all the file sub-specifications and puts them into
      * the constant part of the pattern, so that only a pattern with a single "*"/"**" or a list of variables remains.